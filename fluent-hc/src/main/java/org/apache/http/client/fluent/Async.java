@@ -31,6 +31,7 @@ import java.util.concurrent.Future;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.VirtualThreads;
 
 public class Async {
 
@@ -55,6 +56,19 @@ public class Async {
         return this;
     }
 
+    /**
+     * Makes requests execute on a virtual thread each rather than on a new
+     * platform thread. Requires Java 21 or newer.
+     *
+     * @throws UnsupportedOperationException if the JVM does not support
+     *   virtual threads.
+     * @since 4.3
+     */
+    public Async useVirtualThreads() {
+        this.concurrentExec = VirtualThreads.newExecutor("fluent-async-");
+        return this;
+    }
+
     static class ExecRunnable<T> implements Runnable {
 
         private final BasicFuture<T> future;
@@ -44,6 +44,7 @@ import org.apache.http.client.methods.HttpExecutionAware;
 import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.VirtualThreads;
 
 /**
  * Class used for asynchronous revalidations to be used when the "stale-
@@ -51,6 +52,7 @@ import org.apache.http.conn.routing.HttpRoute;
  */
 class AsynchronousValidator implements Closeable {
     private final ExecutorService executor;
+    private final int maxQueued;
     private final Set<String> queued;
     private final CacheKeyGenerator cacheKeyGenerator;
 
@@ -64,15 +66,30 @@ class AsynchronousValidator implements Closeable {
      * {@link CacheConfig#getAsynchronousWorkersMax()},
      * {@link CacheConfig#getAsynchronousWorkersCore()},
      * {@link CacheConfig#getAsynchronousWorkerIdleLifetimeSecs()},
-     * and {@link CacheConfig#getRevalidationQueueSize()}.
+     * and {@link CacheConfig#getRevalidationQueueSize()}. If
+     * {@link CacheConfig#isAsynchronousWorkersVirtual()} is set and
+     * the JVM supports virtual threads, every revalidation runs on a virtual
+     * thread of its own instead.
      */
     public AsynchronousValidator(final CacheConfig config) {
-        this(new ThreadPoolExecutor(config.getAsynchronousWorkersCore(),
-                        config.getAsynchronousWorkersMax(),
-                        config.getAsynchronousWorkerIdleLifetimeSecs(),
-                        TimeUnit.SECONDS,
-                        new ArrayBlockingQueue<Runnable>(config.getRevalidationQueueSize()))
-                );
+        this(createExecutor(config), useVirtualThreads(config) ?
+                config.getAsynchronousWorkersMax() + config.getRevalidationQueueSize() :
+                Integer.MAX_VALUE);
+    }
+
+    private static boolean useVirtualThreads(final CacheConfig config) {
+        return config.isAsynchronousWorkersVirtual() && VirtualThreads.isSupported();
+    }
+
+    private static ExecutorService createExecutor(final CacheConfig config) {
+        if (useVirtualThreads(config)) {
+            return VirtualThreads.newExecutor("cache-revalidation-");
+        }
+        return new ThreadPoolExecutor(config.getAsynchronousWorkersCore(),
+                config.getAsynchronousWorkersMax(),
+                config.getAsynchronousWorkerIdleLifetimeSecs(),
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(config.getRevalidationQueueSize()));
     }
 
     /**
@@ -82,7 +99,16 @@ class AsynchronousValidator implements Closeable {
      * @param executor used to manage a thread pool of revalidation workers
      */
     AsynchronousValidator(final ExecutorService executor) {
+        this(executor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxQueued the maximum number of revalidations scheduled at
+     *   the same time, for executors that do not limit them by themselves.
+     */
+    AsynchronousValidator(final ExecutorService executor, final int maxQueued) {
         this.executor = executor;
+        this.maxQueued = maxQueued;
         this.queued = new HashSet<String>();
         this.cacheKeyGenerator = new CacheKeyGenerator();
     }
@@ -105,6 +131,10 @@ class AsynchronousValidator implements Closeable {
         final String uri = cacheKeyGenerator.getVariantURI(route.getTargetHost(), request, entry);
 
         if (!queued.contains(uri)) {
+            if (queued.size() >= maxQueued) {
+                log.debug("Revalidation for [" + uri + "] not scheduled: too many revalidations pending");
+                return;
+            }
             final AsynchronousValidationRequest revalidationRequest =
                 new AsynchronousValidationRequest(
                         this, cachingExec, route, request, context, execAware, entry, uri);
@@ -81,7 +81,10 @@ import org.apache.http.util.Args;
  * CacheConfig#getAsynchronousWorkerIdleLifetimeSecs() maximum time they
  * can be idle before being reclaimed}. You can also control the {@link
  * CacheConfig#getRevalidationQueueSize() size of the queue} used for
- * revalidations when there aren't enough workers to keep up with demand.</b>
+ * revalidations when there aren't enough workers to keep up with demand.
+ * On Java 21 or newer revalidations can {@link
+ * CacheConfig#isAsynchronousWorkersVirtual() run on virtual threads}
+ * instead.</b>
  */
 public class CacheConfig implements Cloneable {
 
@@ -148,6 +151,7 @@ public class CacheConfig implements Cloneable {
     private int asynchronousWorkerIdleLifetimeSecs;
     private int revalidationQueueSize;
     private boolean neverCacheHTTP10ResponsesWithQuery;
+    private boolean asynchronousWorkersVirtual;
 
     /**
      * @deprecated (4.3) use {@link Builder}.
@@ -180,7 +184,8 @@ public class CacheConfig implements Cloneable {
             final int asynchronousWorkersCore,
             final int asynchronousWorkerIdleLifetimeSecs,
             final int revalidationQueueSize,
-            final boolean neverCacheHTTP10ResponsesWithQuery) {
+            final boolean neverCacheHTTP10ResponsesWithQuery,
+            final boolean asynchronousWorkersVirtual) {
         super();
         this.maxObjectSize = maxObjectSize;
         this.maxCacheEntries = maxCacheEntries;
@@ -193,6 +198,7 @@ public class CacheConfig implements Cloneable {
         this.asynchronousWorkersCore = asynchronousWorkersCore;
         this.asynchronousWorkerIdleLifetimeSecs = asynchronousWorkerIdleLifetimeSecs;
         this.revalidationQueueSize = revalidationQueueSize;
+        this.asynchronousWorkersVirtual = asynchronousWorkersVirtual;
     }
 
     /**
@@ -461,6 +467,16 @@ public class CacheConfig implements Cloneable {
         this.revalidationQueueSize = size;
     }
 
+    /**
+     * Returns whether background revalidations run on virtual threads rather
+     * than on a pool of worker threads. Revalidations are still limited to
+     * the {@link #getAsynchronousWorkersMax() maximum number of workers} plus
+     * the {@link #getRevalidationQueueSize() queue size}.
+     */
+    public boolean isAsynchronousWorkersVirtual() {
+        return asynchronousWorkersVirtual;
+    }
+
     @Override
     protected CacheConfig clone() throws CloneNotSupportedException {
         return (CacheConfig) super.clone();
@@ -484,7 +500,8 @@ public class CacheConfig implements Cloneable {
             .setAsynchronousWorkersCore(config.getAsynchronousWorkersCore())
             .setAsynchronousWorkerIdleLifetimeSecs(config.getAsynchronousWorkerIdleLifetimeSecs())
             .setRevalidationQueueSize(config.getRevalidationQueueSize())
-            .setNeverCacheHTTP10ResponsesWithQueryString(config.isNeverCacheHTTP10ResponsesWithQuery());
+            .setNeverCacheHTTP10ResponsesWithQueryString(config.isNeverCacheHTTP10ResponsesWithQuery())
+            .setAsynchronousWorkersVirtual(config.isAsynchronousWorkersVirtual());
     }
 
 
@@ -502,6 +519,7 @@ public class CacheConfig implements Cloneable {
         private int asynchronousWorkerIdleLifetimeSecs;
         private int revalidationQueueSize;
         private boolean neverCacheHTTP10ResponsesWithQuery;
+        private boolean asynchronousWorkersVirtual;
 
         Builder() {
             this.maxObjectSize = DEFAULT_MAX_OBJECT_SIZE_BYTES;
@@ -647,6 +665,15 @@ public class CacheConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets whether background revalidations should run on virtual threads.
+         * Has no effect on JVMs that do not support virtual threads.
+         */
+        public Builder setAsynchronousWorkersVirtual(final boolean asynchronousWorkersVirtual) {
+            this.asynchronousWorkersVirtual = asynchronousWorkersVirtual;
+            return this;
+        }
+
         public CacheConfig build() {
             return new CacheConfig(
                     maxObjectSize,
@@ -660,7 +687,8 @@ public class CacheConfig implements Cloneable {
                     asynchronousWorkersCore,
                     asynchronousWorkerIdleLifetimeSecs,
                     revalidationQueueSize,
-                    neverCacheHTTP10ResponsesWithQuery);
+                    neverCacheHTTP10ResponsesWithQuery,
+                    asynchronousWorkersVirtual);
         }
 
     }
@@ -679,6 +707,7 @@ public class CacheConfig implements Cloneable {
                 .append(", asynchronousWorkerIdleLifetimeSecs=").append(this.asynchronousWorkerIdleLifetimeSecs)
                 .append(", revalidationQueueSize=").append(this.revalidationQueueSize)
                 .append(", neverCacheHTTP10ResponsesWithQuery=").append(this.neverCacheHTTP10ResponsesWithQuery)
+                .append(", asynchronousWorkersVirtual=").append(this.asynchronousWorkersVirtual)
                 .append("]");
         return builder.toString();
     }
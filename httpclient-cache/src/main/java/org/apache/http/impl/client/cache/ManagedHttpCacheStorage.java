@@ -30,9 +30,13 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.http.annotation.GuardedBy;
 import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.HttpCacheStorage;
@@ -57,14 +61,18 @@ import org.apache.http.util.Args;
 @ThreadSafe
 public class ManagedHttpCacheStorage implements HttpCacheStorage, Closeable {
 
+    private final ReentrantLock lock;
+    @GuardedBy("lock")
     private final CacheMap entries;
     private final ReferenceQueue<HttpCacheEntry> morque;
+    @GuardedBy("lock")
     private final Set<ResourceReference> resources;
 
     private volatile boolean shutdown;
 
     public ManagedHttpCacheStorage(final CacheConfig config) {
         super();
+        this.lock = new ReentrantLock();
         this.entries = new CacheMap(config.getMaxCacheEntries());
         this.morque = new ReferenceQueue<HttpCacheEntry>();
         this.resources = new HashSet<ResourceReference>();
@@ -89,27 +97,36 @@ public class ManagedHttpCacheStorage implements HttpCacheStorage, Closeable {
         Args.notNull(url, "URL");
         Args.notNull(entry, "Cache entry");
         ensureValidState();
-        synchronized (this) {
+        this.lock.lock();
+        try {
             this.entries.put(url, entry);
             keepResourceReference(entry);
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public HttpCacheEntry getEntry(final String url) throws IOException {
         Args.notNull(url, "URL");
         ensureValidState();
-        synchronized (this) {
+        this.lock.lock();
+        try {
             return this.entries.get(url);
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public void removeEntry(final String url) throws IOException {
         Args.notNull(url, "URL");
         ensureValidState();
-        synchronized (this) {
+        this.lock.lock();
+        try {
             // Cannot deallocate the associated resources immediately as the
             // cache entry may still be in use
             this.entries.remove(url);
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -119,13 +136,16 @@ public class ManagedHttpCacheStorage implements HttpCacheStorage, Closeable {
         Args.notNull(url, "URL");
         Args.notNull(callback, "Callback");
         ensureValidState();
-        synchronized (this) {
+        this.lock.lock();
+        try {
             final HttpCacheEntry existing = this.entries.get(url);
             final HttpCacheEntry updated = callback.update(existing);
             this.entries.put(url, updated);
             if (existing != updated) {
                 keepResourceReference(updated);
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -135,8 +155,11 @@ public class ManagedHttpCacheStorage implements HttpCacheStorage, Closeable {
         }
         ResourceReference ref;
         while ((ref = (ResourceReference) this.morque.poll()) != null) {
-            synchronized (this) {
+            this.lock.lock();
+            try {
                 this.resources.remove(ref);
+            } finally {
+                this.lock.unlock();
             }
             ref.getResource().dispose();
         }
@@ -147,14 +170,20 @@ public class ManagedHttpCacheStorage implements HttpCacheStorage, Closeable {
             return;
         }
         this.shutdown = true;
-        synchronized (this) {
+        final List<ResourceReference> refs;
+        this.lock.lock();
+        try {
             this.entries.clear();
-            for (final ResourceReference ref: this.resources) {
-                ref.getResource().dispose();
-            }
+            refs = new ArrayList<ResourceReference>(this.resources);
             this.resources.clear();
             while (this.morque.poll() != null) {
             }
+        } finally {
+            this.lock.unlock();
+        }
+        // dispose of resources without holding the lock
+        for (final ResourceReference ref: refs) {
+            ref.getResource().dispose();
         }
     }
 
@@ -0,0 +1,52 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.client;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Represents a budget that caps the number of retries sent to a route
+ * relative to the number of requests that succeeded, so that retries do
+ * not multiply the load on a backend that is already struggling.
+ *
+ * @since 4.3
+ */
+public interface RetryBudget {
+
+    /**
+     * Called when a request has been executed successfully.
+     */
+    void success(HttpRoute route);
+
+    /**
+     * Called before a request is retried. Returns <code>false</code> if the
+     * budget of the route has been exhausted and the retry must not be sent.
+     */
+    boolean tryRetry(HttpRoute route);
+
+}
@@ -0,0 +1,56 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Strategy interface that determines how long to wait before a request
+ * is retried, either after an I/O error or after a response the
+ * {@link ServiceUnavailableRetryStrategy} decided to retry.
+ *
+ * @since 4.3
+ */
+public interface RetryIntervalStrategy {
+
+    /**
+     * Returns the interval in milliseconds to wait before the next retry.
+     *
+     * @param executionCount the number of times the request has been
+     * unsuccessfully executed
+     * @param response the response that caused the retry or <code>null</code>
+     * if the retry is caused by an I/O error
+     * @param context the context for the request execution
+     *
+     * @return the retry interval in milliseconds. A non-positive value means
+     * the request is retried immediately.
+     */
+    long getRetryInterval(int executionCount, HttpResponse response, HttpContext context);
+
+}
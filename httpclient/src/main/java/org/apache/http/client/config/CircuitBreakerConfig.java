@@ -0,0 +1,243 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.client.config;
+
+/**
+ * Configuration of the per-route circuit breakers that stop requests to a
+ * failing backend from tying up connections and threads. A circuit opens
+ * when the failure rate or the slow call rate of the last calls exceeds
+ * its threshold, fails requests fast while open, and lets a limited
+ * number of probe requests through once the wait duration has elapsed.
+ *
+ * @since 4.3
+ */
+public class CircuitBreakerConfig implements Cloneable {
+
+    public static final CircuitBreakerConfig DEFAULT = new Builder().build();
+
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final int slowCallDuration;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final int waitDurationInOpenState;
+    private final int permittedCallsInHalfOpenState;
+
+    CircuitBreakerConfig(
+            final int failureRateThreshold,
+            final int slowCallRateThreshold,
+            final int slowCallDuration,
+            final int slidingWindowSize,
+            final int minimumNumberOfCalls,
+            final int waitDurationInOpenState,
+            final int permittedCallsInHalfOpenState) {
+        super();
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.slidingWindowSize = slidingWindowSize;
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.waitDurationInOpenState = waitDurationInOpenState;
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * Returns the percentage of failed calls (I/O errors and <code>5xx</code>
+     * responses) in the sliding window at which the circuit opens.
+     * <p/>
+     * Default: <code>50</code>
+     */
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Returns the percentage of slow calls in the sliding window at which
+     * the circuit opens.
+     * <p/>
+     * Default: <code>100</code>
+     */
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Returns the time in milliseconds after which a call that has not
+     * received a response head yet is considered slow.
+     * <p/>
+     * Default: <code>60000</code>
+     */
+    public int getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * Returns the number of most recent calls the failure and slow call
+     * rates are computed over.
+     * <p/>
+     * Default: <code>100</code>
+     */
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * Returns the number of calls that must have been recorded before the
+     * failure and slow call rates are evaluated.
+     * <p/>
+     * Default: <code>10</code>
+     */
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    /**
+     * Returns the time in milliseconds an open circuit fails requests fast
+     * before letting probe requests through.
+     * <p/>
+     * Default: <code>60000</code>
+     */
+    public int getWaitDurationInOpenState() {
+        return waitDurationInOpenState;
+    }
+
+    /**
+     * Returns the number of probe requests let through while the circuit is
+     * half-open. The circuit closes again if their failure and slow call
+     * rates stay below the thresholds and opens otherwise.
+     * <p/>
+     * Default: <code>10</code>
+     */
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    @Override
+    protected CircuitBreakerConfig clone() throws CloneNotSupportedException {
+        return (CircuitBreakerConfig) super.clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[failureRateThreshold=").append(failureRateThreshold);
+        builder.append(", slowCallRateThreshold=").append(slowCallRateThreshold);
+        builder.append(", slowCallDuration=").append(slowCallDuration);
+        builder.append(", slidingWindowSize=").append(slidingWindowSize);
+        builder.append(", minimumNumberOfCalls=").append(minimumNumberOfCalls);
+        builder.append(", waitDurationInOpenState=").append(waitDurationInOpenState);
+        builder.append(", permittedCallsInHalfOpenState=").append(permittedCallsInHalfOpenState);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    public static CircuitBreakerConfig.Builder custom() {
+        return new Builder();
+    }
+
+    public static CircuitBreakerConfig.Builder copy(final CircuitBreakerConfig config) {
+        return new Builder()
+            .setFailureRateThreshold(config.getFailureRateThreshold())
+            .setSlowCallRateThreshold(config.getSlowCallRateThreshold())
+            .setSlowCallDuration(config.getSlowCallDuration())
+            .setSlidingWindowSize(config.getSlidingWindowSize())
+            .setMinimumNumberOfCalls(config.getMinimumNumberOfCalls())
+            .setWaitDurationInOpenState(config.getWaitDurationInOpenState())
+            .setPermittedCallsInHalfOpenState(config.getPermittedCallsInHalfOpenState());
+    }
+
+    public static class Builder {
+
+        private int failureRateThreshold;
+        private int slowCallRateThreshold;
+        private int slowCallDuration;
+        private int slidingWindowSize;
+        private int minimumNumberOfCalls;
+        private int waitDurationInOpenState;
+        private int permittedCallsInHalfOpenState;
+
+        Builder() {
+            super();
+            this.failureRateThreshold = 50;
+            this.slowCallRateThreshold = 100;
+            this.slowCallDuration = 60000;
+            this.slidingWindowSize = 100;
+            this.minimumNumberOfCalls = 10;
+            this.waitDurationInOpenState = 60000;
+            this.permittedCallsInHalfOpenState = 10;
+        }
+
+        public Builder setFailureRateThreshold(final int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder setSlowCallRateThreshold(final int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder setSlowCallDuration(final int slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        public Builder setSlidingWindowSize(final int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        public Builder setMinimumNumberOfCalls(final int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        public Builder setWaitDurationInOpenState(final int waitDurationInOpenState) {
+            this.waitDurationInOpenState = waitDurationInOpenState;
+            return this;
+        }
+
+        public Builder setPermittedCallsInHalfOpenState(final int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public CircuitBreakerConfig build() {
+            return new CircuitBreakerConfig(
+                    failureRateThreshold,
+                    slowCallRateThreshold,
+                    slowCallDuration,
+                    slidingWindowSize,
+                    minimumNumberOfCalls,
+                    waitDurationInOpenState,
+                    permittedCallsInHalfOpenState);
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.config;
+
+/**
+ * Configuration of the client side rate limiters that keep requests to
+ * a route or host within the quota of the server. Each limiter is a token
+ * bucket holding up to {@link #getPermitsPerPeriod()} permits and refilled
+ * at a rate of that many permits per {@link #getPeriod()}.
+ *
+ * @since 4.3
+ */
+public class RateLimitConfig implements Cloneable {
+
+    public static final RateLimitConfig DEFAULT = new Builder().build();
+
+    private final int permitsPerPeriod;
+    private final int period;
+    private final int maxWait;
+    private final boolean perHost;
+    private final boolean adaptive;
+
+    RateLimitConfig(
+            final int permitsPerPeriod,
+            final int period,
+            final int maxWait,
+            final boolean perHost,
+            final boolean adaptive) {
+        super();
+        this.permitsPerPeriod = permitsPerPeriod;
+        this.period = period;
+        this.maxWait = maxWait;
+        this.perHost = perHost;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Returns the number of requests permitted per period. This is also the
+     * number of requests that may be sent in a burst after an idle period.
+     * <p/>
+     * Default: <code>100</code>
+     */
+    public int getPermitsPerPeriod() {
+        return permitsPerPeriod;
+    }
+
+    /**
+     * Returns the length of the period in milliseconds.
+     * <p/>
+     * Default: <code>1000</code>
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds a request waits for a permit.
+     * A value of zero makes requests fail fast when no permit is available,
+     * a negative value makes them wait as long as necessary. The wait is
+     * additionally bounded by the deadline of the request, if there is one.
+     * <p/>
+     * Default: <code>-1</code>
+     */
+    public int getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Determines whether the routes to a target host share one rate limiter
+     * rather than each route having its own.
+     * <p/>
+     * Default: <code>false</code>
+     */
+    public boolean isPerHost() {
+        return perHost;
+    }
+
+    /**
+     * Determines whether the rate limiter adapts to the <code>Retry-After</code>
+     * and <code>X-RateLimit-Remaining</code> / <code>X-RateLimit-Reset</code>
+     * headers of responses. The rate is never raised above the configured one.
+     * <p/>
+     * Default: <code>true</code>
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    @Override
+    protected RateLimitConfig clone() throws CloneNotSupportedException {
+        return (RateLimitConfig) super.clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[permitsPerPeriod=").append(permitsPerPeriod);
+        builder.append(", period=").append(period);
+        builder.append(", maxWait=").append(maxWait);
+        builder.append(", perHost=").append(perHost);
+        builder.append(", adaptive=").append(adaptive);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    public static RateLimitConfig.Builder custom() {
+        return new Builder();
+    }
+
+    public static RateLimitConfig.Builder copy(final RateLimitConfig config) {
+        return new Builder()
+            .setPermitsPerPeriod(config.getPermitsPerPeriod())
+            .setPeriod(config.getPeriod())
+            .setMaxWait(config.getMaxWait())
+            .setPerHost(config.isPerHost())
+            .setAdaptive(config.isAdaptive());
+    }
+
+    public static class Builder {
+
+        private int permitsPerPeriod;
+        private int period;
+        private int maxWait;
+        private boolean perHost;
+        private boolean adaptive;
+
+        Builder() {
+            super();
+            this.permitsPerPeriod = 100;
+            this.period = 1000;
+            this.maxWait = -1;
+            this.adaptive = true;
+        }
+
+        public Builder setPermitsPerPeriod(final int permitsPerPeriod) {
+            this.permitsPerPeriod = permitsPerPeriod;
+            return this;
+        }
+
+        public Builder setPeriod(final int period) {
+            this.period = period;
+            return this;
+        }
+
+        public Builder setMaxWait(final int maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public Builder setPerHost(final boolean perHost) {
+            this.perHost = perHost;
+            return this;
+        }
+
+        public Builder setAdaptive(final boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        public RateLimitConfig build() {
+            return new RateLimitConfig(
+                    permitsPerPeriod,
+                    period,
+                    maxWait,
+                    perHost,
+                    adaptive);
+        }
+
+    }
+
+}
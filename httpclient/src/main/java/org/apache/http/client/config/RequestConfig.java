@@ -51,6 +51,10 @@ public class RequestConfig implements Cloneable {
     private final int connectionRequestTimeout;
     private final int connectTimeout;
     private final int socketTimeout;
+    private final int priority;
+    private final int hedgeDelay;
+    private final boolean idempotent;
+    private final int requestTimeout;
 
     RequestConfig(
             final boolean expectContinueEnabled,
@@ -67,7 +71,11 @@ public class RequestConfig implements Cloneable {
             final Collection<String> proxyPreferredAuthSchemes,
             final int connectionRequestTimeout,
             final int connectTimeout,
-            final int socketTimeout) {
+            final int socketTimeout,
+            final int priority,
+            final int hedgeDelay,
+            final boolean idempotent,
+            final int requestTimeout) {
         super();
         this.expectContinueEnabled = expectContinueEnabled;
         this.proxy = proxy;
@@ -84,6 +92,10 @@ public class RequestConfig implements Cloneable {
         this.connectionRequestTimeout = connectionRequestTimeout;
         this.connectTimeout = connectTimeout;
         this.socketTimeout = socketTimeout;
+        this.priority = priority;
+        this.hedgeDelay = hedgeDelay;
+        this.idempotent = idempotent;
+        this.requestTimeout = requestTimeout;
     }
 
     public boolean isExpectContinueEnabled() {
@@ -146,6 +158,61 @@ public class RequestConfig implements Cloneable {
         return socketTimeout;
     }
 
+    /**
+     * Returns the priority of the request when waiting for a connection
+     * from a saturated connection pool. Requests with a higher value are
+     * served first.
+     * <p/>
+     * Default: <code>0</code>
+     *
+     * @since 4.3
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the delay in milliseconds after which a hedged copy of an
+     * idempotent request is sent over a separate connection if no response
+     * head has been received yet. A non-positive value disables hedging.
+     * <p/>
+     * Default: <code>-1</code>
+     *
+     * @since 4.3
+     */
+    public int getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Determines whether the request may be treated as idempotent and hence
+     * hedged even if its method is not <code>GET</code> or <code>HEAD</code>.
+     * <p/>
+     * Default: <code>false</code>
+     *
+     * @since 4.3
+     */
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * Returns the end-to-end deadline of a request execution in milliseconds.
+     * It limits the total time spent on connection leasing, connecting, TLS
+     * handshakes, retries, redirects, authentication round trips and reading
+     * the response body; each of them only gets the time remaining. Once the
+     * deadline has passed, execution fails with
+     * {@link org.apache.http.conn.RequestTimeoutException}.
+     * A non-positive value means no deadline.
+     * <p/>
+     * Default: <code>-1</code>
+     *
+     * @since 4.3
+     */
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
     @Override
     protected RequestConfig clone() throws CloneNotSupportedException {
         return (RequestConfig) super.clone();
@@ -169,6 +236,10 @@ public class RequestConfig implements Cloneable {
         builder.append(", connectionRequestTimeout=").append(connectionRequestTimeout);
         builder.append(", connectTimeout=").append(connectTimeout);
         builder.append(", socketTimeout=").append(socketTimeout);
+        builder.append(", priority=").append(priority);
+        builder.append(", hedgeDelay=").append(hedgeDelay);
+        builder.append(", idempotent=").append(idempotent);
+        builder.append(", requestTimeout=").append(requestTimeout);
         builder.append("]");
         return builder.toString();
     }
@@ -193,7 +264,11 @@ public class RequestConfig implements Cloneable {
             .setProxyPreferredAuthSchemes(config.getProxyPreferredAuthSchemes())
             .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
             .setConnectTimeout(config.getConnectTimeout())
-            .setSocketTimeout(config.getSocketTimeout());
+            .setSocketTimeout(config.getSocketTimeout())
+            .setPriority(config.getPriority())
+            .setHedgeDelay(config.getHedgeDelay())
+            .setIdempotent(config.isIdempotent())
+            .setRequestTimeout(config.getRequestTimeout());
     }
 
     public static class Builder {
@@ -213,6 +288,10 @@ public class RequestConfig implements Cloneable {
         private int connectionRequestTimeout;
         private int connectTimeout;
         private int socketTimeout;
+        private int priority;
+        private int hedgeDelay;
+        private boolean idempotent;
+        private int requestTimeout;
 
         Builder() {
             super();
@@ -224,6 +303,8 @@ public class RequestConfig implements Cloneable {
             this.connectionRequestTimeout = -1;
             this.connectTimeout = -1;
             this.socketTimeout = -1;
+            this.hedgeDelay = -1;
+            this.requestTimeout = -1;
         }
 
         public Builder setExpectContinueEnabled(final boolean expectContinueEnabled) {
@@ -301,6 +382,26 @@ public class RequestConfig implements Cloneable {
             return this;
         }
 
+        public Builder setPriority(final int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public Builder setHedgeDelay(final int hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        public Builder setIdempotent(final boolean idempotent) {
+            this.idempotent = idempotent;
+            return this;
+        }
+
+        public Builder setRequestTimeout(final int requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
         public RequestConfig build() {
             return new RequestConfig(
                     expectContinueEnabled,
@@ -317,7 +418,11 @@ public class RequestConfig implements Cloneable {
                     proxyPreferredAuthSchemes,
                     connectionRequestTimeout,
                     connectTimeout,
-                    socketTimeout);
+                    socketTimeout,
+                    priority,
+                    hedgeDelay,
+                    idempotent,
+                    requestTimeout);
         }
 
     }
@@ -138,4 +138,13 @@ public interface ClientContext {
      */
     public static final String REQUEST_CONFIG = "http.request-config";
 
+    /**
+     * Attribute name of a {@link Long} object that represents the time in
+     * milliseconds since the epoch by which the actual request execution
+     * has to complete.
+     *
+     * @since 4.3
+     */
+    public static final String REQUEST_DEADLINE = "http.request-deadline";
+
 }
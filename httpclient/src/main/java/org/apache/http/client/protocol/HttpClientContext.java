@@ -168,4 +168,26 @@ public class HttpClientContext extends HttpCoreContext implements ClientContext
         setAttribute(REQUEST_CONFIG, config);
     }
 
+    /**
+     * Returns the time in milliseconds since the epoch by which the request
+     * execution has to complete or <code>0</code> if there is no deadline.
+     *
+     * @since 4.3
+     */
+    public long getRequestDeadline() {
+        final Long deadline = getAttribute(REQUEST_DEADLINE, Long.class);
+        return deadline != null ? deadline.longValue() : 0;
+    }
+
+    /**
+     * @since 4.3
+     */
+    public void setRequestDeadline(final long deadline) {
+        if (deadline > 0) {
+            setAttribute(REQUEST_DEADLINE, Long.valueOf(deadline));
+        } else {
+            removeAttribute(REQUEST_DEADLINE);
+        }
+    }
+
 }
@@ -0,0 +1,75 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.conn;
+
+import org.apache.http.annotation.Immutable;
+
+/**
+ * Helpers for fitting the timeouts of the individual execution stages into
+ * the end-to-end deadline of a request.
+ *
+ * @since 4.3
+ */
+@Immutable
+public final class Deadlines {
+
+    private Deadlines() {
+    }
+
+    /**
+     * Returns the time in milliseconds remaining until the deadline.
+     *
+     * @throws RequestTimeoutException if the deadline has passed.
+     */
+    public static long remaining(final long deadline) throws RequestTimeoutException {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new RequestTimeoutException("Request deadline exceeded");
+        }
+        return remaining;
+    }
+
+    /**
+     * Caps the given timeout, where <code>0</code> means infinite, at the time
+     * remaining until the deadline. Returns the timeout unchanged if there is
+     * no deadline.
+     *
+     * @throws RequestTimeoutException if the deadline has passed.
+     */
+    public static int cap(final long deadline, final int timeout) throws RequestTimeoutException {
+        if (deadline <= 0) {
+            return timeout;
+        }
+        final long remaining = remaining(deadline);
+        if (timeout > 0 && timeout <= remaining) {
+            return timeout;
+        }
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+}
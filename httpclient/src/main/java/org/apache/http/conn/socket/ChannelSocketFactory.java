@@ -0,0 +1,318 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Socket factory for plain (unencrypted) sockets backed by
+ * {@link SocketChannel}s. Connections are established in non-blocking mode
+ * and completed by a single selector thread shared by all connection
+ * attempts of the factory, which also enforces their connect timeouts.
+ * Closing the socket, for instance by shutting down the connection it is
+ * bound to, aborts a pending connect within a few milliseconds. Once
+ * connected, the channel is switched back to blocking mode, so that
+ * the socket can be used like any other.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ChannelSocketFactory implements ConnectionSocketFactory {
+
+    public static final ChannelSocketFactory INSTANCE = new ChannelSocketFactory();
+
+    public static ChannelSocketFactory getSocketFactory() {
+        return INSTANCE;
+    }
+
+    /** Interval in milliseconds pending connects are checked for aborts. */
+    private static final long CHECK_INTERVAL = 10;
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    @GuardedBy("this")
+    private Connector connector;
+    @GuardedBy("this")
+    private boolean isShutDown;
+
+    public ChannelSocketFactory() {
+        super();
+    }
+
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return SocketChannel.open().socket();
+    }
+
+    public Socket connectSocket(
+            final int connectTimeout,
+            final Socket socket,
+            final HttpHost host,
+            final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress,
+            final HttpContext context) throws IOException, ConnectTimeoutException {
+        final Socket sock = socket != null ? socket : createSocket(context);
+        if (localAddress != null) {
+            sock.bind(localAddress);
+        }
+        final SocketChannel channel = sock.getChannel();
+        if (channel == null) {
+            try {
+                sock.connect(remoteAddress, connectTimeout);
+            } catch (final SocketTimeoutException ex) {
+                throw new ConnectTimeoutException(host, remoteAddress);
+            }
+            return sock;
+        }
+        boolean connected = false;
+        try {
+            channel.configureBlocking(false);
+            if (!channel.connect(remoteAddress)) {
+                getConnector().connect(channel, connectTimeout);
+            }
+            channel.configureBlocking(true);
+            connected = true;
+        } catch (final SocketTimeoutException ex) {
+            throw new ConnectTimeoutException(host, remoteAddress);
+        } finally {
+            if (!connected) {
+                sock.close();
+            }
+        }
+        return sock;
+    }
+
+    private synchronized Connector getConnector() throws IOException {
+        if (this.isShutDown) {
+            throw new SocketException("Socket factory shut down");
+        }
+        if (this.connector == null) {
+            this.connector = new Connector(Selector.open());
+            final Thread thread = new Thread(this.connector,
+                    "channel-connector-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return this.connector;
+    }
+
+    /**
+     * Stops the selector thread and aborts pending connects. Connects
+     * attempted afterwards fail.
+     */
+    public void shutdown() {
+        final Connector connector;
+        synchronized (this) {
+            this.isShutDown = true;
+            connector = this.connector;
+            this.connector = null;
+        }
+        if (connector != null) {
+            connector.shutdown();
+        }
+    }
+
+    static class PendingConnect {
+
+        final SocketChannel channel;
+        final long deadline;
+        final CountDownLatch latch;
+        volatile IOException failure;
+        SelectionKey key;
+
+        PendingConnect(final SocketChannel channel, final long deadline) {
+            super();
+            this.channel = channel;
+            this.deadline = deadline;
+            this.latch = new CountDownLatch(1);
+        }
+
+    }
+
+    class Connector implements Runnable {
+
+        private final Selector selector;
+        private final Queue<PendingConnect> requests;
+        private final Set<PendingConnect> pending;
+        private volatile boolean shutdown;
+
+        Connector(final Selector selector) {
+            super();
+            this.selector = selector;
+            this.requests = new ConcurrentLinkedQueue<PendingConnect>();
+            this.pending = new HashSet<PendingConnect>();
+        }
+
+        void connect(final SocketChannel channel, final int timeout) throws IOException {
+            final PendingConnect request = new PendingConnect(channel,
+                    timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE);
+            this.requests.add(request);
+            if (this.shutdown && this.requests.remove(request)) {
+                throw new SocketException("Socket factory shut down");
+            }
+            this.selector.wakeup();
+            try {
+                request.latch.await();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                channel.close();
+                throw new InterruptedIOException("Connect interrupted");
+            }
+            if (request.failure != null) {
+                throw request.failure;
+            }
+        }
+
+        public void run() {
+            try {
+                while (!this.shutdown) {
+                    this.selector.select(this.pending.isEmpty() && this.requests.isEmpty()
+                            ? 0 : CHECK_INTERVAL);
+                    final List<PendingConnect> completed = new ArrayList<PendingConnect>();
+                    register(completed);
+                    processSelected(completed);
+                    processTimeouts(completed);
+                    if (!completed.isEmpty()) {
+                        // Deregister cancelled keys before handing the channels back
+                        this.selector.selectNow();
+                        for (final PendingConnect request: completed) {
+                            request.latch.countDown();
+                        }
+                    }
+                }
+            } catch (final Exception ex) {
+                log.error("Channel connector terminated", ex);
+            } finally {
+                failAll(new SocketException("Socket factory shut down"));
+                try {
+                    this.selector.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+
+        private void register(final List<PendingConnect> completed) {
+            PendingConnect request;
+            while ((request = this.requests.poll()) != null) {
+                try {
+                    request.key = request.channel.register(
+                            this.selector, SelectionKey.OP_CONNECT, request);
+                    this.pending.add(request);
+                } catch (final ClosedChannelException ex) {
+                    request.failure = new SocketException("Connect aborted");
+                    completed.add(request);
+                }
+            }
+        }
+
+        private void processSelected(final List<PendingConnect> completed) {
+            final Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                final SelectionKey key = it.next();
+                it.remove();
+                final PendingConnect request = (PendingConnect) key.attachment();
+                boolean done;
+                try {
+                    done = key.isValid() && request.channel.finishConnect();
+                } catch (final IOException ex) {
+                    request.failure = ex;
+                    done = true;
+                }
+                if (done) {
+                    key.cancel();
+                    this.pending.remove(request);
+                    completed.add(request);
+                }
+            }
+        }
+
+        private void processTimeouts(final List<PendingConnect> completed) {
+            final long now = System.currentTimeMillis();
+            final Iterator<PendingConnect> it = this.pending.iterator();
+            while (it.hasNext()) {
+                final PendingConnect request = it.next();
+                if (!request.channel.isOpen()) {
+                    request.failure = new SocketException("Connect aborted");
+                } else if (now >= request.deadline) {
+                    request.failure = new SocketTimeoutException("Connect timed out");
+                } else {
+                    continue;
+                }
+                request.key.cancel();
+                it.remove();
+                completed.add(request);
+            }
+        }
+
+        private void failAll(final IOException ex) {
+            final List<PendingConnect> all = new ArrayList<PendingConnect>(this.pending);
+            PendingConnect request;
+            while ((request = this.requests.poll()) != null) {
+                all.add(request);
+            }
+            this.pending.clear();
+            for (final PendingConnect pendingConnect: all) {
+                pendingConnect.failure = ex;
+                pendingConnect.latch.countDown();
+            }
+        }
+
+        void shutdown() {
+            this.shutdown = true;
+            this.selector.wakeup();
+        }
+
+    }
+
+}
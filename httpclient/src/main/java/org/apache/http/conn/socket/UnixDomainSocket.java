@@ -0,0 +1,463 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * {@link Socket} view of a Unix domain socket channel. The channel is
+ * operated in non-blocking mode with a private selector, so that read
+ * operations can honour the socket timeout and so that closing the socket
+ * from another thread aborts pending operations. TCP specific options are
+ * accepted and ignored.
+ * <p/>
+ * Unix domain socket channels were introduced in Java 16 and are accessed
+ * by reflection.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class UnixDomainSocket extends Socket {
+
+    private static final Object UNIX;
+    private static final Method OPEN;
+    private static final Method ADDRESS_OF;
+    private static final Method SHUTDOWN_INPUT;
+    private static final Method SHUTDOWN_OUTPUT;
+
+    static {
+        Object unix = null;
+        Method open = null;
+        Method addressOf = null;
+        Method shutdownInput = null;
+        Method shutdownOutput = null;
+        try {
+            final Class<?> familyClass = Class.forName("java.net.ProtocolFamily");
+            final Class<?> standardFamilyClass = Class.forName("java.net.StandardProtocolFamily");
+            final Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            unix = standardFamilyClass.getField("UNIX").get(null);
+            open = SocketChannel.class.getMethod("open", familyClass);
+            addressOf = addressClass.getMethod("of", String.class);
+            shutdownInput = SocketChannel.class.getMethod("shutdownInput");
+            shutdownOutput = SocketChannel.class.getMethod("shutdownOutput");
+        } catch (final Exception ex) {
+            unix = null;
+        }
+        UNIX = unix;
+        OPEN = open;
+        ADDRESS_OF = addressOf;
+        SHUTDOWN_INPUT = shutdownInput;
+        SHUTDOWN_OUTPUT = shutdownOutput;
+    }
+
+    static boolean isSupported() {
+        return UNIX != null;
+    }
+
+    private final ReentrantLock lock;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    private volatile SocketChannel channel;
+    private volatile Selector selector;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile boolean inputShutdown;
+    private volatile boolean outputShutdown;
+    private volatile int soTimeout;
+
+    UnixDomainSocket() {
+        super();
+        this.lock = new ReentrantLock();
+        this.inputStream = new ChannelInputStream();
+        this.outputStream = new ChannelOutputStream();
+    }
+
+    private static Object invoke(
+            final Method method, final Object target, final Object... args) throws IOException {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SocketException(String.valueOf(cause));
+        } catch (final IllegalAccessException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    void connect(final String path, final int timeout) throws IOException {
+        if (!isSupported()) {
+            throw new SocketException("Unix domain sockets are not supported");
+        }
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                throw new SocketException("Socket is closed");
+            }
+            if (this.channel != null) {
+                throw new SocketException("Already connected");
+            }
+            this.channel = (SocketChannel) invoke(OPEN, null, UNIX);
+            this.selector = Selector.open();
+        } finally {
+            this.lock.unlock();
+        }
+        try {
+            final SocketChannel ch = this.channel;
+            ch.configureBlocking(false);
+            if (!ch.connect((SocketAddress) invoke(ADDRESS_OF, null, path))) {
+                while (!ch.finishConnect()) {
+                    if (!await(SelectionKey.OP_CONNECT, timeout)) {
+                        throw new SocketTimeoutException("Connect timed out");
+                    }
+                }
+            }
+            this.connected = true;
+        } catch (final IOException ex) {
+            close();
+            throw ex;
+        }
+        if (this.closed) {
+            throw new SocketException("Socket is closed");
+        }
+    }
+
+    /**
+     * Waits for the channel to become ready for the given operation.
+     *
+     * @return <code>false</code> if the timeout expired first
+     */
+    private boolean await(final int op, final int timeout) throws IOException {
+        this.lock.lock();
+        try {
+            final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+            try {
+                this.channel.register(this.selector, op);
+                for (;;) {
+                    if (this.closed) {
+                        throw new SocketException("Socket is closed");
+                    }
+                    final int n;
+                    if (timeout > 0) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        n = this.selector.select(remaining);
+                    } else {
+                        n = this.selector.select();
+                    }
+                    this.selector.selectedKeys().clear();
+                    if (n > 0) {
+                        return true;
+                    }
+                }
+            } catch (final ClosedSelectorException ex) {
+                throw new SocketException("Socket is closed");
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private SocketChannel getConnectedChannel() throws SocketException {
+        if (this.closed) {
+            throw new SocketException("Socket is closed");
+        }
+        if (!this.connected) {
+            throw new SocketException("Socket is not connected");
+        }
+        return this.channel;
+    }
+
+    @Override
+    public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+        throw new SocketException("Unix domain socket can only be connected to a path");
+    }
+
+    @Override
+    public void bind(final SocketAddress bindpoint) throws IOException {
+        throw new SocketException("Unix domain socket cannot be bound to a local address");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        getConnectedChannel();
+        if (this.inputShutdown) {
+            throw new SocketException("Socket input is shutdown");
+        }
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        getConnectedChannel();
+        if (this.outputShutdown) {
+            throw new SocketException("Socket output is shutdown");
+        }
+        return this.outputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        final Selector sel = this.selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+        try {
+            final SocketChannel ch = this.channel;
+            if (ch != null) {
+                ch.close();
+            }
+        } finally {
+            if (sel != null) {
+                sel.close();
+            }
+        }
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        invoke(SHUTDOWN_INPUT, getConnectedChannel());
+        this.inputShutdown = true;
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        invoke(SHUTDOWN_OUTPUT, getConnectedChannel());
+        this.outputShutdown = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    @Override
+    public boolean isBound() {
+        return this.connected;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return this.inputShutdown;
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return this.outputShutdown;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return null;
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return -1;
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        return null;
+    }
+
+    @Override
+    public int getSoTimeout() {
+        return this.soTimeout;
+    }
+
+    @Override
+    public void setSoTimeout(final int timeout) throws SocketException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout may not be negative");
+        }
+        this.soTimeout = timeout;
+    }
+
+    @Override
+    public void setTcpNoDelay(final boolean on) {
+    }
+
+    @Override
+    public boolean getTcpNoDelay() {
+        return false;
+    }
+
+    @Override
+    public void setKeepAlive(final boolean on) {
+    }
+
+    @Override
+    public boolean getKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public void setSoLinger(final boolean on, final int linger) {
+    }
+
+    @Override
+    public int getSoLinger() {
+        return -1;
+    }
+
+    @Override
+    public void setReuseAddress(final boolean on) {
+    }
+
+    @Override
+    public boolean getReuseAddress() {
+        return false;
+    }
+
+    @Override
+    public void setSendBufferSize(final int size) {
+    }
+
+    @Override
+    public void setReceiveBufferSize(final int size) {
+    }
+
+    @Override
+    public String toString() {
+        return "UnixDomainSocket[" + (this.connected ? "connected" : "unconnected") + "]";
+    }
+
+    class ChannelInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final SocketChannel ch = getConnectedChannel();
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            for (;;) {
+                final int n = ch.read(buffer);
+                if (n != 0) {
+                    return n;
+                }
+                if (!await(SelectionKey.OP_READ, soTimeout)) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            UnixDomainSocket.this.close();
+        }
+
+    }
+
+    class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final SocketChannel ch = getConnectedChannel();
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (ch.write(buffer) == 0) {
+                    await(SelectionKey.OP_WRITE, 0);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            UnixDomainSocket.this.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.annotation.Immutable;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * Socket factory for connections to a Unix domain socket, such as one
+ * exposed by a local sidecar or forward proxy. All connections created by
+ * the factory go to the configured socket path; the remote and local
+ * addresses handed to {@link #connectSocket(int, Socket, HttpHost,
+ * InetSocketAddress, InetSocketAddress, HttpContext) connectSocket} are
+ * ignored. Routes are usually directed at the factory by means of
+ * {@link org.apache.http.impl.conn.UnixDomainRoutePlanner}, which keeps
+ * the resulting connections pooled like any other.
+ * <p/>
+ * Unix domain sockets are only available on Java 16 or newer.
+ * {@link #isSupported()} can be used to find out whether the running JVM
+ * provides them.
+ *
+ * @since 4.3
+ */
+@Immutable
+public class UnixDomainSocketFactory implements ConnectionSocketFactory {
+
+    private final String path;
+
+    public UnixDomainSocketFactory(final String path) {
+        super();
+        Args.notBlank(path, "Socket path");
+        this.path = path;
+    }
+
+    /**
+     * Returns <code>true</code> if Unix domain sockets are supported
+     * by the running JVM.
+     */
+    public static boolean isSupported() {
+        return UnixDomainSocket.isSupported();
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return new UnixDomainSocket();
+    }
+
+    public Socket connectSocket(
+            final int connectTimeout,
+            final Socket socket,
+            final HttpHost host,
+            final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress,
+            final HttpContext context) throws IOException, ConnectTimeoutException {
+        final UnixDomainSocket sock = socket instanceof UnixDomainSocket ?
+                (UnixDomainSocket) socket : new UnixDomainSocket();
+        try {
+            sock.connect(this.path, connectTimeout);
+        } catch (final SocketTimeoutException ex) {
+            throw new ConnectTimeoutException("Connect to " + this.path + " timed out");
+        }
+        return sock;
+    }
+
+    @Override
+    public String toString() {
+        return "unix:" + this.path;
+    }
+
+}
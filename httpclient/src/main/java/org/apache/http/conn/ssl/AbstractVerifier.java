@@ -287,7 +287,7 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
      * @param hostname
      * @return Array of SubjectALT DNS or IP names stored in the certificate.
      */
-    private static String[] getSubjectAlts(
+    static String[] getSubjectAlts(
             final X509Certificate cert, final String hostname) {
         int subjectType;
         if (isIPAddress(hostname)) {
@@ -355,7 +355,7 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
         return count;
     }
 
-    private static boolean isIPAddress(final String hostname) {
+    static boolean isIPAddress(final String hostname) {
         return hostname != null &&
             (InetAddressUtils.isIPv4Address(hostname) ||
                     InetAddressUtils.isIPv6Address(hostname));
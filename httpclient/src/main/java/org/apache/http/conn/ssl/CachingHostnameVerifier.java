@@ -0,0 +1,201 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.io.IOException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.util.Args;
+
+/**
+ * {@link X509HostnameVerifier} that remembers the decisions of another
+ * verifier per certificate and host name, so that repeated handshakes with
+ * the same server do not have to extract and match the names of its
+ * certificate again. Certificates are identified by their SHA-256
+ * fingerprint. The names parsed from a certificate are cached as well when
+ * the verifier is an {@link AbstractVerifier}.
+ * <p/>
+ * Decisions are kept for the given time to live, but never beyond the
+ * expiry of the certificate. The least recently used decisions are
+ * discarded once the cache is full.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class CachingHostnameVerifier implements X509HostnameVerifier {
+
+    private final X509HostnameVerifier verifier;
+    private final CertificateCache<String> results;
+    private final CertificateCache<CertificateNames> names;
+
+    /**
+     * @param verifier the verifier to cache the decisions of.
+     * @param maxEntries the maximum number of cached decisions.
+     * @param timeToLive the maximum time decisions are cached for.
+     * @param tunit the unit of the time to live.
+     */
+    public CachingHostnameVerifier(
+            final X509HostnameVerifier verifier,
+            final int maxEntries,
+            final long timeToLive,
+            final TimeUnit tunit) {
+        super();
+        Args.notNull(verifier, "Hostname verifier");
+        Args.positive(maxEntries, "Max entries");
+        Args.notNull(tunit, "Time unit");
+        this.verifier = verifier;
+        this.results = new CertificateCache<String>(maxEntries, tunit.toMillis(timeToLive));
+        this.names = new CertificateCache<CertificateNames>(maxEntries, tunit.toMillis(timeToLive));
+    }
+
+    /**
+     * Caches up to 1000 decisions for an hour.
+     */
+    public CachingHostnameVerifier(final X509HostnameVerifier verifier) {
+        this(verifier, 1000, 1, TimeUnit.HOURS);
+    }
+
+    public X509HostnameVerifier getVerifier() {
+        return this.verifier;
+    }
+
+    public void verify(final String host, final SSLSocket ssl) throws IOException {
+        Args.notNull(host, "Host");
+        SSLSession session = ssl.getSession();
+        if (session == null) {
+            ssl.startHandshake();
+            session = ssl.getSession();
+        }
+        final Certificate[] certs = session.getPeerCertificates();
+        verify(host, (X509Certificate) certs[0]);
+    }
+
+    public boolean verify(final String host, final SSLSession session) {
+        try {
+            final Certificate[] certs = session.getPeerCertificates();
+            verify(host, (X509Certificate) certs[0]);
+            return true;
+        } catch (final SSLException ex) {
+            return false;
+        }
+    }
+
+    public void verify(final String host, final X509Certificate cert) throws SSLException {
+        Args.notNull(host, "Host");
+        final long now = System.currentTimeMillis();
+        final String fingerprint = CertificateCache.fingerprint(cert);
+        final String key = fingerprint + '/' + host;
+        String failure = this.results.get(key, now);
+        if (failure == null) {
+            failure = "";
+            try {
+                check(host, cert, fingerprint, now);
+            } catch (final SSLException ex) {
+                failure = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+            }
+            this.results.put(key, failure, new X509Certificate[] { cert }, now);
+        }
+        if (failure.length() > 0) {
+            throw new SSLException(failure);
+        }
+    }
+
+    private void check(
+            final String host,
+            final X509Certificate cert,
+            final String fingerprint,
+            final long now) throws SSLException {
+        if (this.verifier instanceof AbstractVerifier) {
+            CertificateNames certNames = this.names.get(fingerprint, now);
+            if (certNames == null) {
+                certNames = new CertificateNames(cert);
+                this.names.put(fingerprint, certNames, new X509Certificate[] { cert }, now);
+            }
+            this.verifier.verify(host, certNames.cns,
+                    AbstractVerifier.isIPAddress(host) ? certNames.ipAlts : certNames.dnsAlts);
+        } else {
+            this.verifier.verify(host, cert);
+        }
+    }
+
+    public void verify(
+            final String host,
+            final String[] cns,
+            final String[] subjectAlts) throws SSLException {
+        this.verifier.verify(host, cns, subjectAlts);
+    }
+
+    /**
+     * Discards all cached decisions.
+     */
+    public void clear() {
+        this.results.clear();
+        this.names.clear();
+    }
+
+    /**
+     * Returns the number of verifications answered from the cache.
+     */
+    public long getHitCount() {
+        return this.results.getHitCount();
+    }
+
+    /**
+     * Returns the number of verifications delegated to the verifier.
+     */
+    public long getMissCount() {
+        return this.results.getMissCount();
+    }
+
+    @Override
+    public String toString() {
+        return "Caching " + this.verifier;
+    }
+
+    static class CertificateNames {
+
+        final String[] cns;
+        final String[] dnsAlts;
+        final String[] ipAlts;
+
+        CertificateNames(final X509Certificate cert) {
+            super();
+            this.cns = AbstractVerifier.getCNs(cert);
+            this.dnsAlts = AbstractVerifier.getDNSSubjectAlts(cert);
+            this.ipAlts = AbstractVerifier.getSubjectAlts(cert, "127.0.0.1");
+        }
+
+    }
+
+}
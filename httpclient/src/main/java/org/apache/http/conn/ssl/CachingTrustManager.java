@@ -0,0 +1,134 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.util.Args;
+
+/**
+ * {@link X509TrustManager} that remembers which server certificate chains
+ * another trust manager, for instance one consulting a {@link TrustStrategy},
+ * has accepted. Chains are identified by the SHA-256 fingerprints of their
+ * certificates and the authentication type. Rejected chains are not cached.
+ * <p/>
+ * Decisions are kept for the given time to live, but never beyond the
+ * expiry of any certificate of the chain. The cache belongs to the trust
+ * manager, so an SSL context initialized with a different trust
+ * configuration starts with an empty cache. {@link #clear()} discards
+ * cached decisions when the configuration of the decorated trust manager
+ * changes.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class CachingTrustManager implements X509TrustManager {
+
+    private final X509TrustManager trustManager;
+    private final CertificateCache<Boolean> trusted;
+
+    /**
+     * @param trustManager the trust manager to cache the decisions of.
+     * @param maxEntries the maximum number of cached decisions.
+     * @param timeToLive the maximum time decisions are cached for.
+     * @param tunit the unit of the time to live.
+     */
+    public CachingTrustManager(
+            final X509TrustManager trustManager,
+            final int maxEntries,
+            final long timeToLive,
+            final TimeUnit tunit) {
+        super();
+        Args.notNull(trustManager, "Trust manager");
+        Args.positive(maxEntries, "Max entries");
+        Args.notNull(tunit, "Time unit");
+        this.trustManager = trustManager;
+        this.trusted = new CertificateCache<Boolean>(maxEntries, tunit.toMillis(timeToLive));
+    }
+
+    /**
+     * Caches up to 1000 decisions for an hour.
+     */
+    public CachingTrustManager(final X509TrustManager trustManager) {
+        this(trustManager, 1000, 1, TimeUnit.HOURS);
+    }
+
+    public void checkClientTrusted(
+            final X509Certificate[] chain, final String authType) throws CertificateException {
+        this.trustManager.checkClientTrusted(chain, authType);
+    }
+
+    public void checkServerTrusted(
+            final X509Certificate[] chain, final String authType) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            this.trustManager.checkServerTrusted(chain, authType);
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(authType);
+        for (final X509Certificate cert: chain) {
+            buffer.append('/').append(CertificateCache.fingerprint(cert));
+        }
+        final String key = buffer.toString();
+        if (this.trusted.get(key, now) == null) {
+            this.trustManager.checkServerTrusted(chain, authType);
+            this.trusted.put(key, Boolean.TRUE, chain, now);
+        }
+    }
+
+    public X509Certificate[] getAcceptedIssuers() {
+        return this.trustManager.getAcceptedIssuers();
+    }
+
+    /**
+     * Discards all cached decisions.
+     */
+    public void clear() {
+        this.trusted.clear();
+    }
+
+    /**
+     * Returns the number of chains accepted from the cache.
+     */
+    public long getHitCount() {
+        return this.trusted.getHitCount();
+    }
+
+    /**
+     * Returns the number of chains checked by the trust manager.
+     */
+    public long getMissCount() {
+        return this.trusted.getMissCount();
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Bounded cache of decisions made about certificates. Entries are evicted
+ * in least recently used order and never outlive the certificates they
+ * were made for.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class CertificateCache<V> {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @GuardedBy("this")
+    private final Map<String, CacheEntry<V>> map;
+    private final long timeToLive;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    CertificateCache(final int maxEntries, final long timeToLive) {
+        super();
+        this.map = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CacheEntry<V>> eldest) {
+                return size() > maxEntries;
+            }
+
+        };
+        this.timeToLive = timeToLive;
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached value or <code>null</code> if there is none or
+     * it has expired.
+     */
+    V get(final String key, final long now) {
+        final CacheEntry<V> entry;
+        synchronized (this) {
+            entry = this.map.get(key);
+            if (entry != null && now >= entry.expiry) {
+                this.map.remove(key);
+            }
+        }
+        if (entry != null && now < entry.expiry) {
+            this.hitCount.incrementAndGet();
+            return entry.value;
+        } else {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Caches the value until the time to live elapses or any of the given
+     * certificates expires, whichever comes first. Nothing is cached
+     * unless all certificates are valid at the given time.
+     */
+    void put(final String key, final V value, final X509Certificate[] certs, final long now) {
+        long expiry = this.timeToLive > 0 ? now + this.timeToLive : now;
+        for (final X509Certificate cert: certs) {
+            if (now < cert.getNotBefore().getTime()) {
+                return;
+            }
+            expiry = Math.min(expiry, cert.getNotAfter().getTime());
+        }
+        if (expiry > now) {
+            synchronized (this) {
+                this.map.put(key, new CacheEntry<V>(value, expiry));
+            }
+        }
+    }
+
+    synchronized void clear() {
+        this.map.clear();
+    }
+
+    synchronized int size() {
+        return this.map.size();
+    }
+
+    long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 fingerprint of the certificate.
+     */
+    static String fingerprint(final X509Certificate cert) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 digest not supported", ex);
+        }
+        final byte[] hash;
+        try {
+            hash = digest.digest(cert.getEncoded());
+        } catch (final CertificateEncodingException ex) {
+            throw new IllegalArgumentException("Invalid certificate encoding", ex);
+        }
+        final char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[hash[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    static class CacheEntry<V> {
+
+        final V value;
+        final long expiry;
+
+        CacheEntry(final V value, final long expiry) {
+            super();
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Counts the TLS handshakes performed by an {@link SSLSocketFactory}
+ * and the time spent on them.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class SSLHandshakeMetrics {
+
+    private final AtomicLong fullCount;
+    private final AtomicLong resumedCount;
+    private final AtomicLong failedCount;
+    private final AtomicLong fullTime;
+    private final AtomicLong resumedTime;
+
+    SSLHandshakeMetrics() {
+        super();
+        this.fullCount = new AtomicLong();
+        this.resumedCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.fullTime = new AtomicLong();
+        this.resumedTime = new AtomicLong();
+    }
+
+    void completed(final boolean resumed, final long nanos) {
+        if (resumed) {
+            this.resumedCount.incrementAndGet();
+            this.resumedTime.addAndGet(nanos);
+        } else {
+            this.fullCount.incrementAndGet();
+            this.fullTime.addAndGet(nanos);
+        }
+    }
+
+    void failed() {
+        this.failedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of handshakes that established a new session.
+     */
+    public long getFullHandshakeCount() {
+        return this.fullCount.get();
+    }
+
+    /**
+     * Returns the number of handshakes that resumed a cached session.
+     */
+    public long getResumedHandshakeCount() {
+        return this.resumedCount.get();
+    }
+
+    public long getFailedHandshakeCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * Returns the fraction of successful handshakes that resumed a session.
+     */
+    public double getResumptionRatio() {
+        final long resumed = this.resumedCount.get();
+        final long total = resumed + this.fullCount.get();
+        return total > 0 ? (double) resumed / total : 0;
+    }
+
+    /**
+     * Returns the mean duration of full handshakes in microseconds.
+     */
+    public double getMeanFullHandshakeTime() {
+        final long count = this.fullCount.get();
+        return count > 0 ? this.fullTime.get() / 1000d / count : 0;
+    }
+
+    /**
+     * Returns the mean duration of resumed handshakes in microseconds.
+     */
+    public double getMeanResumedHandshakeTime() {
+        final long count = this.resumedCount.get();
+        return count > 0 ? this.resumedTime.get() / 1000d / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[full: ").append(getFullHandshakeCount());
+        buffer.append("; resumed: ").append(getResumedHandshakeCount());
+        buffer.append("; failed: ").append(getFailedHandshakeCount());
+        buffer.append("; mean full time: ").append(Math.round(getMeanFullHandshakeTime()));
+        buffer.append(" us; mean resumed time: ").append(Math.round(getMeanResumedHandshakeTime()));
+        buffer.append(" us]");
+        return buffer.toString();
+    }
+
+}
@@ -47,6 +47,8 @@ import java.security.cert.CertificateException;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -137,6 +139,13 @@ import org.apache.http.util.Asserts;
  *      </p>
  *     </li>
  *   </ul>
+ * <p>
+ * Factories created with a session cache size and timeout manage the client
+ * session cache of their SSL context and always perform the TLS handshake
+ * against the target host name and port rather than the resolved address,
+ * so that sessions are reliably resumed for the same target.
+ * {@link #getHandshakeMetrics()} reports how many handshakes resumed
+ * a session and how long handshakes took.
  *
  * @since 4.0
  */
@@ -203,6 +212,8 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
     private final HostNameResolver nameResolver;
     // TODO: make final
     private volatile X509HostnameVerifier hostnameVerifier;
+    private final boolean pinSessions;
+    private final SSLHandshakeMetrics handshakeMetrics = new SSLHandshakeMetrics();
 
     private static SSLContext createSSLContext(
             String algorithm,
@@ -475,6 +486,7 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
         this.socketfactory = sslContext.getSocketFactory();
         this.hostnameVerifier = BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
         this.nameResolver = nameResolver;
+        this.pinSessions = false;
     }
 
     /**
@@ -487,6 +499,40 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
         this.socketfactory = sslContext.getSocketFactory();
         this.hostnameVerifier = hostnameVerifier;
         this.nameResolver = null;
+        this.pinSessions = false;
+    }
+
+    /**
+     * Creates a factory that manages the client session cache of the given
+     * SSL context. Sessions are cached per target host name and port.
+     * As the cache belongs to the SSL context, factories sharing a context
+     * share their sessions.
+     *
+     * @param sessionCacheSize the maximum number of cached sessions,
+     *   <code>0</code> for no limit.
+     * @param sessionTimeout the time in seconds cached sessions can be
+     *   resumed for, <code>0</code> for no limit.
+     *
+     * @since 4.3
+     */
+    public SSLSocketFactory(
+            final SSLContext sslContext,
+            final X509HostnameVerifier hostnameVerifier,
+            final int sessionCacheSize,
+            final int sessionTimeout) {
+        super();
+        Args.notNull(sslContext, "SSL context");
+        Args.notNegative(sessionCacheSize, "Session cache size");
+        Args.notNegative(sessionTimeout, "Session timeout");
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+        this.socketfactory = sslContext.getSocketFactory();
+        this.hostnameVerifier = hostnameVerifier;
+        this.nameResolver = null;
+        this.pinSessions = true;
     }
 
     /**
@@ -499,6 +545,7 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
         this.socketfactory = socketfactory;
         this.hostnameVerifier = hostnameVerifier;
         this.nameResolver = null;
+        this.pinSessions = false;
     }
 
     /**
@@ -608,6 +655,15 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
         return this.hostnameVerifier;
     }
 
+    /**
+     * Returns the counters of the TLS handshakes performed by this factory.
+     *
+     * @since 4.3
+     */
+    public SSLHandshakeMetrics getHandshakeMetrics() {
+        return this.handshakeMetrics;
+    }
+
     /**
      * @deprecated (4.1) Use {@link #connectSocket(Socket, InetSocketAddress, InetSocketAddress,
      *   HttpParams)}
@@ -662,10 +718,16 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Factories that pin sessions to the target host return a plain socket,
+     * which gets layered once connected.
      *
      * @since 4.3
      */
     public Socket createSocket(final HttpContext context) throws IOException {
+        if (this.pinSessions) {
+            return new Socket();
+        }
         final SSLSocket sock = (SSLSocket) this.socketfactory.createSocket();
         prepareSocket(sock);
         return sock;
@@ -696,6 +758,7 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
         }
         // Setup SSL layering if necessary
         if (sock instanceof SSLSocket) {
+            handshake((SSLSocket) sock);
             verifyHostname((SSLSocket) sock, host.getHostName());
         } else {
             sock = createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
@@ -714,10 +777,30 @@ public class SSLSocketFactory implements LayeredConnectionSocketFactory, SchemeL
                 port,
                 true);
           prepareSocket(sslSocket);
+          handshake(sslSocket);
           verifyHostname(sslSocket, target);
           return sslSocket;
     }
 
+    /**
+     * Completes the handshake of the given socket and records whether
+     * it resumed a cached session. Handshake failures are left to be
+     * reported by the hostname verifier or the first I/O operation.
+     */
+    private void handshake(final SSLSocket sslsock) {
+        final long start = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final SSLSession session = sslsock.getSession();
+        final long nanos = System.nanoTime() - startNanos;
+        if (session == null || !session.isValid()
+                || "SSL_NULL_WITH_NULL_NULL".equals(session.getCipherSuite())) {
+            this.handshakeMetrics.failed();
+        } else {
+            // Resumed sessions were created by an earlier handshake
+            this.handshakeMetrics.completed(session.getCreationTime() < start, nanos);
+        }
+    }
+
     private void verifyHostname(final SSLSocket sslsock, final String hostname) throws IOException {
         if (this.hostnameVerifier != null) {
             try {
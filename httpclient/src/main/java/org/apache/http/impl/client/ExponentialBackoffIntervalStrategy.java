@@ -0,0 +1,96 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client;
+
+import java.util.Random;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.RetryIntervalStrategy;
+import org.apache.http.impl.execchain.RetryAfter;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * {@link RetryIntervalStrategy} implementation that backs off exponentially
+ * with full jitter: the n-th retry waits a random interval between zero and
+ * <code>min(maxInterval, baseInterval * 2^(n-1))</code>, which keeps clients
+ * that failed at the same time from retrying in lockstep. If the response
+ * carries a <code>Retry-After</code> header its value is honoured instead,
+ * capped at the maximum interval.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ExponentialBackoffIntervalStrategy implements RetryIntervalStrategy {
+
+    private final long baseInterval;
+    private final long maxInterval;
+    private final Random random;
+    private final Clock clock;
+
+    /**
+     * @param baseInterval interval in milliseconds the first retry waits at most.
+     * @param maxInterval upper bound of any retry interval in milliseconds.
+     */
+    public ExponentialBackoffIntervalStrategy(final long baseInterval, final long maxInterval) {
+        this(baseInterval, maxInterval, new Random(), new SystemClock());
+    }
+
+    public ExponentialBackoffIntervalStrategy() {
+        this(100, 30000);
+    }
+
+    ExponentialBackoffIntervalStrategy(
+            final long baseInterval,
+            final long maxInterval,
+            final Random random,
+            final Clock clock) {
+        super();
+        Args.positive(baseInterval, "Base interval");
+        Args.check(maxInterval >= baseInterval, "Max interval may not be less than base interval");
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    public long getRetryInterval(
+            final int executionCount, final HttpResponse response, final HttpContext context) {
+        if (response != null) {
+            final long retryAfter = RetryAfter.getInterval(response, this.clock.getCurrentTime());
+            if (retryAfter >= 0) {
+                return Math.min(retryAfter, this.maxInterval);
+            }
+        }
+        final int exponent = Math.max(0, Math.min(executionCount - 1, 30));
+        final long ceiling = Math.min(this.maxInterval, this.baseInterval << exponent);
+        return (long) (this.random.nextDouble() * ceiling);
+    }
+
+}
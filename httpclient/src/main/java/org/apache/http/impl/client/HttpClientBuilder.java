@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.Header;
@@ -49,9 +50,13 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.RetryBudget;
+import org.apache.http.client.RetryIntervalStrategy;
 import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.client.UserTokenHandler;
 import org.apache.http.client.config.AuthSchemes;
+import org.apache.http.client.config.CircuitBreakerConfig;
+import org.apache.http.client.config.RateLimitConfig;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.protocol.RequestAcceptEncoding;
@@ -67,6 +72,7 @@ import org.apache.http.config.Lookup;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.SchemePortResolver;
 import org.apache.http.conn.routing.HttpRoutePlanner;
@@ -85,6 +91,9 @@ import org.apache.http.impl.auth.SPNegoSchemeFactory;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.apache.http.impl.conn.DefaultRoutePlanner;
 import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolConcurrencyPolicy;
+import org.apache.http.impl.conn.PoolReusePolicy;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
 import org.apache.http.impl.cookie.BestMatchSpecFactory;
@@ -94,7 +103,10 @@ import org.apache.http.impl.cookie.NetscapeDraftSpecFactory;
 import org.apache.http.impl.cookie.RFC2109SpecFactory;
 import org.apache.http.impl.cookie.RFC2965SpecFactory;
 import org.apache.http.impl.execchain.BackoffStrategyExec;
+import org.apache.http.impl.execchain.CircuitBreakerExec;
 import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.impl.execchain.HedgingExec;
+import org.apache.http.impl.execchain.RateLimitingExec;
 import org.apache.http.impl.execchain.MainClientExec;
 import org.apache.http.impl.execchain.ProtocolExec;
 import org.apache.http.impl.execchain.RedirectExec;
@@ -143,6 +155,7 @@ public class HttpClientBuilder {
     private LayeredConnectionSocketFactory sslSocketFactory;
     private HttpClientConnectionManager connManager;
     private SchemePortResolver schemePortResolver;
+    private DnsResolver dnsResolver;
     private ConnectionReuseStrategy reuseStrategy;
     private ConnectionKeepAliveStrategy keepAliveStrategy;
     private AuthenticationStrategy targetAuthStrategy;
@@ -161,6 +174,10 @@ public class HttpClientBuilder {
     private ConnectionBackoffStrategy connectionBackoffStrategy;
     private BackoffManager backoffManager;
     private ServiceUnavailableRetryStrategy serviceUnavailStrategy;
+    private RetryIntervalStrategy retryIntervalStrategy;
+    private RetryBudget retryBudget;
+    private CircuitBreakerConfig circuitBreakerConfig;
+    private RateLimitConfig rateLimitConfig;
     private Lookup<AuthSchemeProvider> authSchemeRegistry;
     private Lookup<CookieSpecProvider> cookieSpecRegistry;
     private CookieStore cookieStore;
@@ -182,6 +199,24 @@ public class HttpClientBuilder {
 
     private int maxConnTotal = 0;
     private int maxConnPerRoute = 0;
+    private PoolConcurrencyPolicy poolConcurrencyPolicy;
+    private PoolReusePolicy poolReusePolicy;
+    private int validateAfterInactivity;
+    private long maxRouteIdleTime;
+    private long connTimeToLive = -1;
+    private TimeUnit connTimeToLiveUnit = TimeUnit.MILLISECONDS;
+    private double connTimeToLiveJitter;
+    private long connDrainPeriod;
+    private TimeUnit connDrainPeriodUnit;
+    private TimeUnit maxRouteIdleTimeUnit;
+    private long connectStaggerDelay;
+    private TimeUnit connectStaggerDelayUnit;
+    private int connectorThreads;
+    private boolean evictExpiredConnections;
+    private boolean evictIdleConnections;
+    private long maxIdleTime;
+    private TimeUnit maxIdleTimeUnit;
+    private int hedgeBudget = HedgingExec.DEFAULT_BUDGET;
 
     private List<Closeable> closeables;
 
@@ -216,6 +251,15 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Sets the DNS resolver used by the default connection manager, for
+     * instance a {@link org.apache.http.impl.conn.CachingDnsResolver}.
+     */
+    public final HttpClientBuilder setDnsResolver(final DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+        return this;
+    }
+
     public final HttpClientBuilder setMaxConnTotal(final int maxConnTotal) {
         this.maxConnTotal = maxConnTotal;
         return this;
@@ -226,6 +270,116 @@ public class HttpClientBuilder {
         return this;
     }
 
+    public final HttpClientBuilder setPoolConcurrencyPolicy(
+            final PoolConcurrencyPolicy poolConcurrencyPolicy) {
+        this.poolConcurrencyPolicy = poolConcurrencyPolicy;
+        return this;
+    }
+
+    public final HttpClientBuilder setPoolReusePolicy(final PoolReusePolicy poolReusePolicy) {
+        this.poolReusePolicy = poolReusePolicy;
+        return this;
+    }
+
+    /**
+     * Makes the connection manager re-validate persistent connections that
+     * have been inactive for longer than the given period in milliseconds
+     * instead of checking every connection for staleness prior to its use.
+     * Unless a default request config is given, per-request stale connection
+     * checks get disabled.
+     */
+    public final HttpClientBuilder setValidateAfterInactivity(final int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * Makes the connection manager discard the state kept for routes that
+     * have had no connections for longer than the given time. Unless a pool
+     * concurrency policy is given, the striped connection pool is used, as
+     * only that one supports this option.
+     */
+    public final HttpClientBuilder setMaxRouteIdleTime(
+            final long maxRouteIdleTime, final TimeUnit maxRouteIdleTimeUnit) {
+        this.maxRouteIdleTime = maxRouteIdleTime;
+        this.maxRouteIdleTimeUnit = maxRouteIdleTimeUnit;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time persistent connections are kept alive for.
+     */
+    public final HttpClientBuilder setConnectionTimeToLive(
+            final long connTimeToLive, final TimeUnit connTimeToLiveUnit) {
+        this.connTimeToLive = connTimeToLive;
+        this.connTimeToLiveUnit = connTimeToLiveUnit;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the connection time to live by which the lifetime
+     * of individual connections is randomly shortened.
+     *
+     * @see PoolingHttpClientConnectionManager#setTimeToLiveJitter(double)
+     */
+    public final HttpClientBuilder setConnectionTimeToLiveJitter(final double connTimeToLiveJitter) {
+        this.connTimeToLiveJitter = connTimeToLiveJitter;
+        return this;
+    }
+
+    /**
+     * Makes the connection manager retire connections gradually during
+     * the given period ahead of the end of their lifetime.
+     *
+     * @see PoolingHttpClientConnectionManager#setDrainPeriod(long, TimeUnit)
+     */
+    public final HttpClientBuilder setConnectionDrainPeriod(
+            final long connDrainPeriod, final TimeUnit connDrainPeriodUnit) {
+        this.connDrainPeriod = connDrainPeriod;
+        this.connDrainPeriodUnit = connDrainPeriodUnit;
+        return this;
+    }
+
+    /**
+     * Makes the connection manager race connection attempts to hosts that
+     * resolve to several addresses, starting the next attempt whenever
+     * the previous one has not succeeded within the given delay.
+     *
+     * @see PoolingHttpClientConnectionManager#setConnectStaggerDelay(long, TimeUnit)
+     */
+    public final HttpClientBuilder setConnectStaggerDelay(
+            final long connectStaggerDelay, final TimeUnit connectStaggerDelayUnit) {
+        this.connectStaggerDelay = connectStaggerDelay;
+        this.connectStaggerDelayUnit = connectStaggerDelayUnit;
+        return this;
+    }
+
+    /**
+     * Makes the connection manager establish new connections on the given
+     * number of connector threads, handing requests whichever connection
+     * becomes available first. Connections established that way use
+     * the connect timeout of the {@link #setDefaultRequestConfig(RequestConfig)
+     * default request configuration}.
+     *
+     * @see PoolingHttpClientConnectionManager#setConnectorThreads(int)
+     */
+    public final HttpClientBuilder setConnectorThreads(final int connectorThreads) {
+        this.connectorThreads = connectorThreads;
+        return this;
+    }
+
+    /**
+     * Limits the hedged copies of idempotent requests to the given
+     * percentage of eligible requests. Hedging itself is enabled per
+     * request with {@link RequestConfig#getHedgeDelay()}.
+     *
+     * @see HedgingExec
+     */
+    public final HttpClientBuilder setHedgeBudget(final int hedgeBudget) {
+        this.hedgeBudget = hedgeBudget;
+        return this;
+    }
+
     public final HttpClientBuilder setConnectionReuseStrategy(
             final ConnectionReuseStrategy reuseStrategy) {
         this.reuseStrategy = reuseStrategy;
@@ -336,6 +490,53 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Assigns the strategy that determines how long to wait before retrying
+     * a request after an I/O error or a service unavailable response.
+     *
+     * @see ExponentialBackoffIntervalStrategy
+     */
+    public final HttpClientBuilder setRetryIntervalStrategy(
+            final RetryIntervalStrategy retryIntervalStrategy) {
+        this.retryIntervalStrategy = retryIntervalStrategy;
+        return this;
+    }
+
+    /**
+     * Assigns the budget that caps automatic retries per route.
+     *
+     * @see TokenBucketRetryBudget
+     */
+    public final HttpClientBuilder setRetryBudget(final RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * Enables per-route circuit breakers with the given configuration.
+     * Circuits that open or close are reported to the back-off manager,
+     * if one is set.
+     *
+     * @see CircuitBreakerExec
+     */
+    public final HttpClientBuilder setCircuitBreakerConfig(final CircuitBreakerConfig config) {
+        this.circuitBreakerConfig = config;
+        return this;
+    }
+
+    /**
+     * Enables client side rate limiting per route or host with the given
+     * configuration. Every attempt to execute a request, including retries
+     * and hedged copies, takes a permit, except for attempts rejected by
+     * an open circuit breaker.
+     *
+     * @see RateLimitingExec
+     */
+    public final HttpClientBuilder setRateLimitConfig(final RateLimitConfig config) {
+        this.rateLimitConfig = config;
+        return this;
+    }
+
     public final HttpClientBuilder setDefaultCookieStore(final CookieStore cookieStore) {
         this.cookieStore = cookieStore;
         return this;
@@ -409,6 +610,30 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Makes this instance of HttpClient proactively evict expired connections
+     * from the connection pool using a background thread. Only applies to
+     * {@link PoolingHttpClientConnectionManager}.
+     */
+    public final HttpClientBuilder evictExpiredConnections() {
+        evictExpiredConnections = true;
+        return this;
+    }
+
+    /**
+     * Makes this instance of HttpClient proactively evict expired connections
+     * and connections idle for longer than the given time from the connection
+     * pool using a background thread. Only applies to
+     * {@link PoolingHttpClientConnectionManager}.
+     */
+    public final HttpClientBuilder evictIdleConnections(
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this.evictIdleConnections = true;
+        this.maxIdleTime = maxIdleTime;
+        this.maxIdleTimeUnit = maxIdleTimeUnit;
+        return this;
+    }
+
     public final HttpClientBuilder useSystemProperties() {
         systemProperties = true;
         return this;
@@ -449,14 +674,46 @@ public class HttpClientBuilder {
                     sslSocketFactory = SSLSocketFactory.getSocketFactory();
                 }
             }
+            PoolConcurrencyPolicy poolConcurrencyPolicy = this.poolConcurrencyPolicy;
+            if (poolConcurrencyPolicy == null && maxRouteIdleTime > 0) {
+                poolConcurrencyPolicy = PoolConcurrencyPolicy.STRIPED;
+            }
             final PoolingHttpClientConnectionManager poolingmgr = new PoolingHttpClientConnectionManager(
                     RegistryBuilder.<ConnectionSocketFactory>create()
                         .register("http", PlainSocketFactory.getSocketFactory())
                         .register("https", sslSocketFactory)
-                        .build());
+                        .build(),
+                    null, null, dnsResolver,
+                    connTimeToLive, connTimeToLiveUnit != null ? connTimeToLiveUnit : TimeUnit.MILLISECONDS,
+                    poolConcurrencyPolicy,
+                    poolReusePolicy);
             if (defaultSocketConfig != null) {
                 poolingmgr.setDefaultSocketConfig(defaultSocketConfig);
             }
+            if (validateAfterInactivity > 0) {
+                poolingmgr.setValidateAfterInactivity(validateAfterInactivity);
+            }
+            if (connTimeToLiveJitter > 0) {
+                poolingmgr.setTimeToLiveJitter(connTimeToLiveJitter);
+            }
+            if (connDrainPeriod > 0) {
+                poolingmgr.setDrainPeriod(connDrainPeriod,
+                        connDrainPeriodUnit != null ? connDrainPeriodUnit : TimeUnit.MILLISECONDS);
+            }
+            if (maxRouteIdleTime > 0) {
+                poolingmgr.setMaxRouteIdleTime(maxRouteIdleTime,
+                        maxRouteIdleTimeUnit != null ? maxRouteIdleTimeUnit : TimeUnit.MILLISECONDS);
+            }
+            if (connectStaggerDelay > 0) {
+                poolingmgr.setConnectStaggerDelay(connectStaggerDelay,
+                        connectStaggerDelayUnit != null ? connectStaggerDelayUnit : TimeUnit.MILLISECONDS);
+            }
+            if (connectorThreads > 0) {
+                poolingmgr.setConnectorThreads(connectorThreads);
+                if (defaultRequestConfig != null && defaultRequestConfig.getConnectTimeout() > 0) {
+                    poolingmgr.setConnectorConnectTimeout(defaultRequestConfig.getConnectTimeout());
+                }
+            }
             if (defaultConnectionConfig != null) {
                 poolingmgr.setDefaultConnectionConfig(defaultConnectionConfig);
             }
@@ -591,13 +848,33 @@ public class HttpClientBuilder {
 
         execChain = decorateProtocolExec(execChain);
 
+        // Optionally, add rate limiting executor; it sits inside the circuit
+        // breaker so that requests failing fast do not use up permits
+        if (rateLimitConfig != null) {
+            execChain = new RateLimitingExec(execChain, rateLimitConfig);
+        }
+
+        // Optionally, add circuit breaker executor
+        if (circuitBreakerConfig != null) {
+            execChain = new CircuitBreakerExec(execChain, circuitBreakerConfig, backoffManager);
+        }
+
+        // Add request hedging executor; it is a no-op unless a hedge delay is configured.
+        // Hedged copies pass the circuit breaker and the rate limiter like any other attempt
+        final HedgingExec hedgingExec = new HedgingExec(execChain, hedgeBudget);
+        execChain = hedgingExec;
+
         // Add request retry executor, if not disabled
         if (!automaticRetriesDisabled) {
             HttpRequestRetryHandler retryHandler = this.retryHandler;
             if (retryHandler == null) {
                 retryHandler = DefaultHttpRequestRetryHandler.INSTANCE;
             }
-            execChain = new RetryExec(execChain, retryHandler);
+            execChain = new RetryExec(execChain, retryHandler, retryIntervalStrategy, retryBudget);
+        } else if (retryBudget != null) {
+            // Successful responses still need to be credited to the retry budget
+            execChain = new RetryExec(execChain, new DefaultHttpRequestRetryHandler(0, false),
+                    null, retryBudget);
         }
 
         // Add redirect executor, if not disabled
@@ -623,7 +900,8 @@ public class HttpClientBuilder {
         // Optionally, add service unavailable retry executor
         final ServiceUnavailableRetryStrategy serviceUnavailStrategy = this.serviceUnavailStrategy;
         if (serviceUnavailStrategy != null) {
-            execChain = new ServiceUnavailableRetryExec(execChain, serviceUnavailStrategy);
+            execChain = new ServiceUnavailableRetryExec(execChain, serviceUnavailStrategy,
+                    retryIntervalStrategy, retryBudget);
         }
         // Optionally, add connection back-off executor
         final BackoffManager backoffManager = this.backoffManager;
@@ -664,6 +942,30 @@ public class HttpClientBuilder {
             defaultCredentialsProvider = new BasicCredentialsProvider();
         }
 
+        RequestConfig defaultRequestConfig = this.defaultRequestConfig;
+        if (defaultRequestConfig == null) {
+            if (validateAfterInactivity > 0) {
+                defaultRequestConfig = RequestConfig.custom()
+                    .setStaleConnectionCheckEnabled(false)
+                    .build();
+            } else {
+                defaultRequestConfig = RequestConfig.DEFAULT;
+            }
+        }
+
+        final List<Closeable> closeablesCopy = closeables != null
+                ? new ArrayList<Closeable>(closeables) : new ArrayList<Closeable>(2);
+        closeablesCopy.add(hedgingExec);
+        if ((evictExpiredConnections || evictIdleConnections)
+                && connManager instanceof PoolingHttpClientConnectionManager) {
+            final IdleConnectionEvictor connectionEvictor = new IdleConnectionEvictor(
+                    (PoolingHttpClientConnectionManager) connManager,
+                    evictIdleConnections ? maxIdleTime : 0,
+                    maxIdleTimeUnit != null ? maxIdleTimeUnit : TimeUnit.MILLISECONDS);
+            closeablesCopy.add(connectionEvictor);
+            connectionEvictor.start();
+        }
+
         return new InternalHttpClient(
                 execChain,
                 connManager,
@@ -672,8 +974,8 @@ public class HttpClientBuilder {
                 authSchemeRegistry,
                 defaultCookieStore,
                 defaultCredentialsProvider,
-                defaultRequestConfig != null ? defaultRequestConfig : RequestConfig.DEFAULT,
-                closeables != null ? new ArrayList<Closeable>(closeables) : null);
+                defaultRequestConfig,
+                closeablesCopy);
     }
 
 }
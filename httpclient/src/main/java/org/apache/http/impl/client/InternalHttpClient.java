@@ -181,6 +181,9 @@ class InternalHttpClient extends CloseableHttpClient {
                 localcontext.setRequestConfig(config);
             }
             setupContext(localcontext);
+            final int requestTimeout = localcontext.getRequestConfig().getRequestTimeout();
+            localcontext.setRequestDeadline(requestTimeout > 0 ?
+                    System.currentTimeMillis() + requestTimeout : 0);
             final HttpRoute route = determineRoute(target, wrapper, localcontext);
             return this.execChain.execute(route, wrapper, localcontext, execAware);
         } catch (final HttpException httpException) {
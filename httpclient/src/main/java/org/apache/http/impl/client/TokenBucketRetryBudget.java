@@ -0,0 +1,153 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.RetryBudget;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+
+/**
+ * {@link RetryBudget} implementation that keeps a token bucket per route.
+ * Every successful request deposits a fraction of a token, every retry
+ * withdraws a whole one, and the balance never exceeds the bucket size.
+ * Retries are thus capped at the given ratio of successful traffic, plus
+ * a burst of up to the bucket size that also allows a few retries before
+ * any request has succeeded.
+ * <p/>
+ * A full bucket is no different from a fresh one, so buckets are only kept
+ * for routes that have spent retries and not yet earned them back. Routes
+ * that are no longer in use do not accumulate state.
+ * <p/>
+ * The retries attempted and suppressed are counted by the executors using
+ * the budget, see {@link org.apache.http.impl.execchain.RetryExec} and
+ * {@link org.apache.http.impl.execchain.ServiceUnavailableRetryExec}.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class TokenBucketRetryBudget implements RetryBudget {
+
+    private static final long TOKEN = 1000;
+    // balance of a bucket that has been removed from the map
+    private static final long EVICTED = -1;
+
+    private final long deposit;
+    private final long capacity;
+    private final ConcurrentMap<HttpRoute, AtomicLong> buckets;
+
+    /**
+     * @param ratio number of retries allowed per successful request.
+     * @param maxTokens maximum number of retries that may be sent in a burst.
+     */
+    public TokenBucketRetryBudget(final double ratio, final int maxTokens) {
+        super();
+        Args.check(ratio >= 0, "Retry ratio may not be negative");
+        Args.positive(maxTokens, "Max tokens");
+        this.deposit = Math.round(ratio * TOKEN);
+        this.capacity = maxTokens * TOKEN;
+        this.buckets = new ConcurrentHashMap<HttpRoute, AtomicLong>();
+    }
+
+    public TokenBucketRetryBudget() {
+        this(0.1, 10);
+    }
+
+    private AtomicLong getBucket(final HttpRoute route) {
+        AtomicLong bucket = this.buckets.get(route);
+        if (bucket == null) {
+            final AtomicLong newBucket = new AtomicLong(this.capacity);
+            bucket = this.buckets.putIfAbsent(route, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    public void success(final HttpRoute route) {
+        for (;;) {
+            final AtomicLong bucket = this.buckets.get(route);
+            if (bucket == null) {
+                // no bucket means a full one
+                return;
+            }
+            final long current = bucket.get();
+            if (current == EVICTED) {
+                this.buckets.remove(route, bucket);
+                continue;
+            }
+            final long next = Math.min(current + this.deposit, this.capacity);
+            if (next == this.capacity) {
+                // mark the bucket before removing it, so that a concurrent
+                // retry cannot withdraw from it unnoticed
+                if (bucket.compareAndSet(current, EVICTED)) {
+                    this.buckets.remove(route, bucket);
+                    return;
+                }
+            } else if (next == current || bucket.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public boolean tryRetry(final HttpRoute route) {
+        for (;;) {
+            final AtomicLong bucket = getBucket(route);
+            final long current = bucket.get();
+            if (current == EVICTED) {
+                this.buckets.remove(route, bucket);
+                continue;
+            }
+            if (current < TOKEN) {
+                return false;
+            }
+            if (bucket.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of retries currently available to the given route.
+     */
+    public double getAvailableRetries(final HttpRoute route) {
+        final AtomicLong bucket = this.buckets.get(route);
+        final long balance = bucket != null ? bucket.get() : EVICTED;
+        return (double) (balance != EVICTED ? balance : this.capacity) / TOKEN;
+    }
+
+    int getBucketCount() {
+        return this.buckets.size();
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.annotation.Immutable;
+
+/**
+ * Factory methods for executors running each task on a virtual thread of
+ * its own. Virtual threads are cheap enough to execute tens of thousands of
+ * blocking requests concurrently. They were introduced in Java 21 and are
+ * accessed by reflection, {@link #isSupported()} tells whether the running
+ * JVM provides them.
+ *
+ * @since 4.3
+ */
+@Immutable
+public class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, Long.TYPE);
+            factory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod(
+                    "newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (final Exception ex) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+        super();
+    }
+
+    /**
+     * Returns <code>true</code> if the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UnsupportedOperationException(String.valueOf(cause));
+        } catch (final IllegalAccessException ex) {
+            throw new UnsupportedOperationException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns a thread factory creating virtual threads named after
+     * the given prefix and a sequence number.
+     *
+     * @throws UnsupportedOperationException if virtual threads are not
+     *   supported.
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported");
+        }
+        final Object builder = invoke(NAME, invoke(OF_VIRTUAL, null),
+                prefix != null ? prefix : "virtual-", Long.valueOf(1));
+        return (ThreadFactory) invoke(FACTORY, builder);
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException if virtual threads are not
+     *   supported.
+     */
+    public static ExecutorService newExecutor(final String prefix) {
+        final ThreadFactory threadFactory = newThreadFactory(prefix);
+        return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, threadFactory);
+    }
+
+}
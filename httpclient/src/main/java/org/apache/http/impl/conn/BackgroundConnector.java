@@ -0,0 +1,322 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+import org.apache.http.util.LangUtils;
+
+/**
+ * Establishes new pooled connections on a small number of connector threads
+ * on behalf of {@link PoolingHttpClientConnectionManager}. A request waiting
+ * for a new connection is handed whichever arrives first: the newly
+ * established connection or a connection of the same route released by
+ * another request in the meantime. Newly established connections nobody
+ * claims are returned to the pool.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class BackgroundConnector {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final PoolingHttpClientConnectionManager connManager;
+    private final ConcurrentMap<HttpRoute, Queue<Waiter>> waiterMap;
+
+    private volatile int threads;
+    private volatile int connectTimeout;
+    @GuardedBy("this")
+    private ExecutorService executor;
+    @GuardedBy("this")
+    private boolean isShutDown;
+
+    BackgroundConnector(final PoolingHttpClientConnectionManager connManager) {
+        super();
+        this.connManager = connManager;
+        this.waiterMap = new ConcurrentHashMap<HttpRoute, Queue<Waiter>>();
+    }
+
+    int getThreads() {
+        return this.threads;
+    }
+
+    synchronized void setThreads(final int threads) {
+        Args.notNegative(threads, "Number of connector threads");
+        if (threads != this.threads && this.executor != null) {
+            // let connects already submitted complete
+            this.executor.shutdown();
+            this.executor = null;
+        }
+        this.threads = threads;
+    }
+
+    int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    void setConnectTimeout(final int connectTimeout) {
+        Args.notNegative(connectTimeout, "Connect timeout");
+        this.connectTimeout = connectTimeout;
+    }
+
+    boolean isEnabled() {
+        return this.threads > 0;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (this.isShutDown || this.threads <= 0) {
+            return null;
+        }
+        if (this.executor == null) {
+            this.executor = Executors.newFixedThreadPool(this.threads,
+                    new DaemonThreadFactory("connection-connector"));
+        }
+        return this.executor;
+    }
+
+    /**
+     * Starts establishing the connection of the given entry in the background.
+     * The entry is owned by the connector from now on, the returned future
+     * completes with whichever entry the caller is to use.
+     *
+     * @param entry the leased pool entry with an unconnected connection.
+     * @param state the state of the connection requested.
+     */
+    Future<CPoolEntry> connect(final CPoolEntry entry, final Object state) {
+        final Waiter waiter = new Waiter(entry.getRoute(), state);
+        final Queue<Waiter> queue = getQueue(entry.getRoute());
+        queue.add(waiter);
+        final ExecutorService executor = getExecutor();
+        try {
+            if (executor == null) {
+                throw new RejectedExecutionException();
+            }
+            executor.execute(new ConnectTask(entry, waiter, this.connectTimeout));
+        } catch (final RejectedExecutionException ex) {
+            // shut down or disabled in the meantime: the caller connects itself
+            queue.remove(waiter);
+            waiter.completed(entry);
+        }
+        return waiter;
+    }
+
+    private Queue<Waiter> getQueue(final HttpRoute route) {
+        Queue<Waiter> queue = this.waiterMap.get(route);
+        if (queue == null) {
+            final Queue<Waiter> newQueue = new ConcurrentLinkedQueue<Waiter>();
+            queue = this.waiterMap.putIfAbsent(route, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Waits for the outcome of a background connect.
+     *
+     * @param timeout the maximum time in milliseconds to wait. Zero means
+     *   no timeout.
+     * @return the entry to use, which is either connected or, should the
+     *   connect have failed, carries the connect failure.
+     */
+    CPoolEntry await(
+            final Future<CPoolEntry> future,
+            final long timeout) throws InterruptedException, TimeoutException {
+        final Waiter waiter = (Waiter) future;
+        CPoolEntry entry = null;
+        try {
+            entry = timeout > 0 ? waiter.get(timeout, TimeUnit.MILLISECONDS) : waiter.get();
+            return entry;
+        } catch (final CancellationException ex) {
+            throw new InterruptedException();
+        } catch (final ExecutionException ex) {
+            // waiters are never failed
+            final InterruptedException intex = new InterruptedException();
+            intex.initCause(ex.getCause());
+            throw intex;
+        } finally {
+            if (!waiter.cancel() && entry == null) {
+                // completed after the wait failed: nobody is going to use the entry
+                final CPoolEntry orphan = getResult(waiter);
+                if (orphan != null) {
+                    this.connManager.releaseEntry(orphan, orphan.getConnection().isOpen());
+                }
+            }
+            dequeue(waiter);
+        }
+    }
+
+    private static CPoolEntry getResult(final Waiter waiter) {
+        try {
+            // the waiter is done, so this does not block
+            return waiter.get();
+        } catch (final CancellationException ex) {
+            return null;
+        } catch (final ExecutionException ex) {
+            return null;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void dequeue(final Waiter waiter) {
+        final Queue<Waiter> queue = this.waiterMap.get(waiter.route);
+        if (queue != null) {
+            queue.remove(waiter);
+            if (queue.isEmpty()) {
+                this.waiterMap.remove(waiter.route, queue);
+            }
+        }
+    }
+
+    private void establish(final CPoolEntry entry, final Waiter waiter, final int connectTimeout) {
+        boolean success = false;
+        try {
+            if (!waiter.isDone()) {
+                this.connManager.establishRoute(entry, connectTimeout);
+                success = true;
+            }
+        } catch (final IOException ex) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Failed to connect to " + entry.getRoute() + ": " + ex.getMessage());
+            }
+            entry.setConnectFailure(ex);
+        } finally {
+            if (!success) {
+                entry.close();
+            }
+            if (!waiter.completed(entry)) {
+                // claimed a released connection or gave up waiting
+                this.connManager.releaseEntry(entry, success);
+            }
+        }
+    }
+
+    /**
+     * Hands a connection being released over to a request waiting for
+     * a connection of the same route and a compatible state.
+     *
+     * @return <code>true</code> if the connection was handed over.
+     */
+    boolean handOver(final CPoolEntry entry) {
+        final Queue<Waiter> queue = this.waiterMap.get(entry.getRoute());
+        if (queue == null) {
+            return false;
+        }
+        final Object state = entry.getState();
+        final Iterator<Waiter> it = queue.iterator();
+        while (it.hasNext()) {
+            final Waiter waiter = it.next();
+            if (waiter.isDone()) {
+                it.remove();
+            } else if ((state == null || LangUtils.equals(state, waiter.state))
+                    && waiter.completed(entry)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void shutdown() {
+        final ExecutorService executor;
+        synchronized (this) {
+            this.isShutDown = true;
+            executor = this.executor;
+        }
+        if (executor != null) {
+            // release the entries of connects that have not started yet
+            for (final Runnable runnable: executor.shutdownNow()) {
+                if (runnable instanceof ConnectTask) {
+                    this.connManager.releaseEntry(((ConnectTask) runnable).entry, false);
+                }
+            }
+        }
+        for (final Queue<Waiter> queue: this.waiterMap.values()) {
+            for (final Waiter waiter: queue) {
+                waiter.cancel();
+            }
+        }
+        this.waiterMap.clear();
+    }
+
+    class ConnectTask implements Runnable {
+
+        private final CPoolEntry entry;
+        private final Waiter waiter;
+        private final int connectTimeout;
+
+        ConnectTask(final CPoolEntry entry, final Waiter waiter, final int connectTimeout) {
+            super();
+            this.entry = entry;
+            this.waiter = waiter;
+            this.connectTimeout = connectTimeout;
+        }
+
+        public void run() {
+            establish(this.entry, this.waiter, this.connectTimeout);
+        }
+
+    }
+
+    static class Waiter extends BasicFuture<CPoolEntry> {
+
+        private final HttpRoute route;
+        private final Object state;
+
+        Waiter(final HttpRoute route, final Object state) {
+            super(null);
+            this.route = route;
+            this.state = state;
+        }
+
+    }
+
+}
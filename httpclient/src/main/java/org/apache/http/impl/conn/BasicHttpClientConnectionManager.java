@@ -33,6 +33,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -83,32 +84,33 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
 
     private final HttpClientConnectionOperator connectionOperator;
     private final HttpConnectionFactory<SocketClientConnection> connFactory;
+    private final ReentrantLock lock;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private SocketClientConnection conn;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private HttpRoute route;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private Object state;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private long updated;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private long expiry;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private boolean leased;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private SocketConfig socketConfig;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private ConnectionConfig connConfig;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private volatile boolean shutdown;
 
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
@@ -127,6 +129,7 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         this.connectionOperator = new HttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
         this.connFactory = connFactory != null ? connFactory : DefaultClientConnectionFactory.INSTANCE;
+        this.lock = new ReentrantLock();
         this.expiry = Long.MAX_VALUE;
         this.socketConfig = SocketConfig.DEFAULT;
         this.connConfig = ConnectionConfig.DEFAULT;
@@ -168,20 +171,63 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         return state;
     }
 
-    public synchronized SocketConfig getSocketConfig() {
-        return socketConfig;
+    /**
+     * Returns the connect stagger delay in milliseconds.
+     *
+     * @see #setConnectStaggerDelay(long, TimeUnit)
+     */
+    public long getConnectStaggerDelay() {
+        return this.connectionOperator.getConnectStaggerDelay();
     }
 
-    public synchronized void setSocketConfig(final SocketConfig socketConfig) {
-        this.socketConfig = socketConfig != null ? socketConfig : SocketConfig.DEFAULT;
+    /**
+     * Defines the delay after which a connection attempt to the next address
+     * of a host that resolves to several addresses is started while
+     * the previous attempt is still in progress. The first socket that
+     * connects is used and all others get closed, so that an unreachable
+     * address no longer costs the full connect timeout. A non-positive
+     * value disables racing and addresses are tried one after another.
+     */
+    public void setConnectStaggerDelay(final long delay, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        this.connectionOperator.setConnectStaggerDelay((int) Math.min(
+                tunit.toMillis(delay), Integer.MAX_VALUE));
+    }
+
+    public SocketConfig getSocketConfig() {
+        this.lock.lock();
+        try {
+            return socketConfig;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
-    public synchronized ConnectionConfig getConnectionConfig() {
-        return connConfig;
+    public void setSocketConfig(final SocketConfig socketConfig) {
+        this.lock.lock();
+        try {
+            this.socketConfig = socketConfig != null ? socketConfig : SocketConfig.DEFAULT;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
-    public synchronized void setConnectionConfig(final ConnectionConfig connConfig) {
-        this.connConfig = connConfig != null ? connConfig : ConnectionConfig.DEFAULT;
+    public ConnectionConfig getConnectionConfig() {
+        this.lock.lock();
+        try {
+            return connConfig;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void setConnectionConfig(final ConnectionConfig connConfig) {
+        this.lock.lock();
+        try {
+            this.connConfig = connConfig != null ? connConfig : ConnectionConfig.DEFAULT;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     public final ConnectionRequest requestConnection(
@@ -240,64 +286,74 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         }
     }
 
-    synchronized HttpClientConnection getConnection(final HttpRoute route, final Object state) {
-        Asserts.check(!this.shutdown, "Connection manager has been shut down");
-        if (this.log.isDebugEnabled()) {
-            this.log.debug("Get connection for route " + route);
-        }
-        Asserts.check(!this.leased, "Connection is still allocated");
-        if (!LangUtils.equals(this.route, route) || !LangUtils.equals(this.state, state)) {
-            closeConnection();
-        }
-        this.route = route;
-        this.state = state;
-        checkExpiry();
-        if (this.conn == null) {
-            this.conn = this.connFactory.create(this.connConfig);
+    HttpClientConnection getConnection(final HttpRoute route, final Object state) {
+        this.lock.lock();
+        try {
+            Asserts.check(!this.shutdown, "Connection manager has been shut down");
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Get connection for route " + route);
+            }
+            Asserts.check(!this.leased, "Connection is still allocated");
+            if (!LangUtils.equals(this.route, route) || !LangUtils.equals(this.state, state)) {
+                closeConnection();
+            }
+            this.route = route;
+            this.state = state;
+            checkExpiry();
+            if (this.conn == null) {
+                this.conn = this.connFactory.create(this.connConfig);
+            }
+            this.leased = true;
+            return this.conn;
+        } finally {
+            this.lock.unlock();
         }
-        this.leased = true;
-        return this.conn;
     }
 
-    public synchronized void releaseConnection(
+    public void releaseConnection(
             final HttpClientConnection conn,
             final Object state,
             final long keepalive, final TimeUnit tunit) {
-        Args.notNull(conn, "Connection");
-        Asserts.check(conn == this.conn, "Connection not obtained from this manager");
-        if (this.log.isDebugEnabled()) {
-            this.log.debug("Releasing connection " + conn);
-        }
-        if (this.shutdown) {
-            shutdownConnection();
-            return;
-        }
+        this.lock.lock();
         try {
-            this.updated = System.currentTimeMillis();
-            if (!this.conn.isOpen()) {
-                this.conn = null;
-                this.route = null;
-                this.conn = null;
-                this.expiry = Long.MAX_VALUE;
-            } else {
-                this.state = state;
-                if (this.log.isDebugEnabled()) {
-                    String s;
+            Args.notNull(conn, "Connection");
+            Asserts.check(conn == this.conn, "Connection not obtained from this manager");
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Releasing connection " + conn);
+            }
+            if (this.shutdown) {
+                shutdownConnection();
+                return;
+            }
+            try {
+                this.updated = System.currentTimeMillis();
+                if (!this.conn.isOpen()) {
+                    this.conn = null;
+                    this.route = null;
+                    this.conn = null;
+                    this.expiry = Long.MAX_VALUE;
+                } else {
+                    this.state = state;
+                    if (this.log.isDebugEnabled()) {
+                        String s;
+                        if (keepalive > 0) {
+                            s = "for " + keepalive + " " + tunit;
+                        } else {
+                            s = "indefinitely";
+                        }
+                        this.log.debug("Connection can be kept alive " + s);
+                    }
                     if (keepalive > 0) {
-                        s = "for " + keepalive + " " + tunit;
+                        this.expiry = this.updated + tunit.toMillis(keepalive);
                     } else {
-                        s = "indefinitely";
+                        this.expiry = Long.MAX_VALUE;
                     }
-                    this.log.debug("Connection can be kept alive " + s);
-                }
-                if (keepalive > 0) {
-                    this.expiry = this.updated + tunit.toMillis(keepalive);
-                } else {
-                    this.expiry = Long.MAX_VALUE;
                 }
+            } finally {
+                this.leased = false;
             }
         } finally {
-            this.leased = false;
+            this.lock.unlock();
         }
     }
 
@@ -325,38 +381,53 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         this.connectionOperator.upgrade(this.conn, host, context);
     }
 
-    public synchronized void closeExpiredConnections() {
-        if (this.shutdown) {
-            return;
-        }
-        if (!this.leased) {
-            checkExpiry();
+    public void closeExpiredConnections() {
+        this.lock.lock();
+        try {
+            if (this.shutdown) {
+                return;
+            }
+            if (!this.leased) {
+                checkExpiry();
+            }
+        } finally {
+            this.lock.unlock();
         }
     }
 
-    public synchronized void closeIdleConnections(final long idletime, final TimeUnit tunit) {
-        Args.notNull(tunit, "Time unit");
-        if (this.shutdown) {
-            return;
-        }
-        if (!this.leased) {
-            long time = tunit.toMillis(idletime);
-            if (time < 0) {
-                time = 0;
+    public void closeIdleConnections(final long idletime, final TimeUnit tunit) {
+        this.lock.lock();
+        try {
+            Args.notNull(tunit, "Time unit");
+            if (this.shutdown) {
+                return;
             }
-            final long deadline = System.currentTimeMillis() - time;
-            if (this.updated <= deadline) {
-                closeConnection();
+            if (!this.leased) {
+                long time = tunit.toMillis(idletime);
+                if (time < 0) {
+                    time = 0;
+                }
+                final long deadline = System.currentTimeMillis() - time;
+                if (this.updated <= deadline) {
+                    closeConnection();
+                }
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
-    public synchronized void shutdown() {
-        if (this.shutdown) {
-            return;
+    public void shutdown() {
+        this.lock.lock();
+        try {
+            if (this.shutdown) {
+                return;
+            }
+            this.shutdown = true;
+            shutdownConnection();
+        } finally {
+            this.lock.unlock();
         }
-        this.shutdown = true;
-        shutdownConnection();
     }
 
 }
@@ -26,12 +26,14 @@
  */
 package org.apache.http.impl.conn;
 
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.pool.AbstractConnPool;
@@ -41,13 +43,16 @@ import org.apache.http.pool.ConnFactory;
  * @since 4.3
  */
 @ThreadSafe
-class CPool extends AbstractConnPool<HttpRoute, SocketClientConnection, CPoolEntry> {
+class CPool extends AbstractConnPool<HttpRoute, SocketClientConnection, CPoolEntry>
+    implements ManagedConnPool {
 
     private static AtomicLong COUNTER = new AtomicLong();
 
     private final Log log = LogFactory.getLog(CPool.class);
     private final long timeToLive;
     private final TimeUnit tunit;
+    private volatile long lastExpiredScan;
+    private volatile long lastIdleDeadline;
 
     public CPool(
             final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
@@ -64,4 +69,47 @@ class CPool extends AbstractConnPool<HttpRoute, SocketClientConnection, CPoolEnt
         return new CPoolEntry(this.log, id, route, conn, this.timeToLive, this.tunit);
     }
 
+    /**
+     * The underlying pool serves waiting requests in the order of their
+     * arrival, so the priority is disregarded.
+     */
+    public Future<CPoolEntry> lease(
+            final HttpRoute route, final Object state, final int priority,
+            final FutureCallback<CPoolEntry> callback) {
+        return lease(route, state, callback);
+    }
+
+    /**
+     * The underlying pool cannot close individual entries, so this method
+     * falls back onto closing all idle or expired connections once the given
+     * one is due. The scan is skipped if an earlier one has already covered
+     * the entry, so that connections becoming due together cost one scan.
+     */
+    public void closeIfIdle(final CPoolEntry entry, final long idletime, final TimeUnit tunit) {
+        final long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            // A scan at or after the expiry has seen the entry, unless it has
+            // been released since
+            final long lastScan = this.lastExpiredScan;
+            if (entry.getExpiry() > lastScan || entry.getUpdated() >= lastScan) {
+                this.lastExpiredScan = now;
+                closeExpired();
+            }
+        }
+        if (idletime > 0) {
+            final long deadline = now - tunit.toMillis(idletime);
+            if (entry.getUpdated() <= deadline && entry.getUpdated() > this.lastIdleDeadline) {
+                this.lastIdleDeadline = deadline;
+                closeIdle(idletime, tunit);
+            }
+        }
+    }
+
+    /**
+     * Route pools are managed by the underlying pool, which keeps them for
+     * the lifetime of the pool. This method does nothing.
+     */
+    public void purgeIdleRoutes(final long idletime, final TimeUnit tunit) {
+    }
+
 }
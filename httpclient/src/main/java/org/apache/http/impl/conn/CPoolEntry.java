@@ -29,6 +29,7 @@ package org.apache.http.impl.conn;
 import java.io.IOException;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.http.HttpClientConnection;
@@ -45,6 +46,13 @@ class CPoolEntry extends PoolEntry<HttpRoute, SocketClientConnection> {
 
     private final Log log;
 
+    private final AtomicBoolean closed;
+    private volatile long lastUsed;
+    private volatile boolean expired;
+    private volatile long retireTime;
+    private volatile ConnPoolMetrics.Recorder recorder;
+    private volatile IOException connectFailure;
+
     public CPoolEntry(
             final Log log,
             final String id,
@@ -53,13 +61,64 @@ class CPoolEntry extends PoolEntry<HttpRoute, SocketClientConnection> {
             final long timeToLive, final TimeUnit tunit) {
         super(id, route, conn, timeToLive, tunit);
         this.log = log;
+        this.closed = new AtomicBoolean(false);
+        this.lastUsed = getCreated();
+    }
+
+    /**
+     * Returns the time the connection is due to be retired, which may be
+     * ahead of its expiry, or <code>0</code> if not determined yet.
+     */
+    long getRetireTime() {
+        return this.retireTime;
+    }
+
+    void setRetireTime(final long retireTime) {
+        this.retireTime = retireTime;
+    }
+
+    /**
+     * Returns and clears the failure of a connect attempt made in
+     * the background, if any.
+     */
+    IOException takeConnectFailure() {
+        final IOException failure = this.connectFailure;
+        this.connectFailure = null;
+        return failure;
+    }
+
+    void setConnectFailure(final IOException failure) {
+        this.connectFailure = failure;
+    }
+
+    ConnPoolMetrics.Recorder getRecorder() {
+        return this.recorder;
+    }
+
+    void setRecorder(final ConnPoolMetrics.Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the time the connection was last released back to the pool
+     * after use.
+     */
+    public long getLastUsed() {
+        return this.lastUsed;
+    }
+
+    public void updateLastUsed(final long now) {
+        this.lastUsed = now;
     }
 
     @Override
     public boolean isExpired(final long now) {
         final boolean expired = super.isExpired(now);
-        if (expired && this.log.isDebugEnabled()) {
-            this.log.debug("Connection " + this + " expired @ " + new Date(getExpiry()));
+        if (expired) {
+            this.expired = true;
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Connection " + this + " expired @ " + new Date(getExpiry()));
+            }
         }
         return expired;
     }
@@ -78,6 +137,10 @@ class CPoolEntry extends PoolEntry<HttpRoute, SocketClientConnection> {
         } catch (final IOException ex) {
             this.log.debug("I/O error closing connection", ex);
         }
+        final ConnPoolMetrics.Recorder recorder = this.recorder;
+        if (recorder != null && this.closed.compareAndSet(false, true)) {
+            recorder.closed(this.expired);
+        }
     }
 
 }
@@ -27,38 +27,42 @@
 package org.apache.http.impl.conn;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.net.ssl.SSLSession;
 
 import org.apache.http.HttpClientConnection;
-import org.apache.http.HttpConnection;
-import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.protocol.HttpContext;
 
 /**
+ * Connection handed out to the consumer of a pooled connection. It delegates
+ * all calls to the connection of the pool entry it is attached to until the
+ * entry gets detached upon release. Once detached the proxy reports itself
+ * as closed and any I/O operation fails with
+ * {@link ConnectionShutdownException}.
+ * <p/>
+ * The proxy may be released by one thread while another one aborts the
+ * request or reads from it. Detaching is atomic, so that the entry goes
+ * back to the pool exactly once, and a thread that finds the proxy detached
+ * never reaches the connection of the entry. Calls that do reach the
+ * connection are as thread-safe as the connection itself.
+ *
  * @since 4.3
  */
-@NotThreadSafe
-class CPoolProxy implements InvocationHandler {
-
-    private static final Method CLOSE_METHOD;
-    private static final Method SHUTDOWN_METHOD;
-    private static final Method IS_OPEN_METHOD;
-    private static final Method IS_STALE_METHOD;
-
-    static {
-        try {
-            CLOSE_METHOD = HttpConnection.class.getMethod("close");
-            SHUTDOWN_METHOD = HttpConnection.class.getMethod("shutdown");
-            IS_OPEN_METHOD = HttpConnection.class.getMethod("isOpen");
-            IS_STALE_METHOD = HttpConnection.class.getMethod("isStale");
-        } catch (final NoSuchMethodException ex) {
-            throw new Error(ex);
-        }
-    }
+@ThreadSafe
+class CPoolProxy implements SocketClientConnection, HttpContext {
+
+    private static final AtomicReferenceFieldUpdater<CPoolProxy, CPoolEntry> POOL_ENTRY_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(CPoolProxy.class, CPoolEntry.class, "poolEntry");
 
     private volatile CPoolEntry poolEntry;
 
@@ -71,13 +75,15 @@ class CPoolProxy implements InvocationHandler {
         return this.poolEntry;
     }
 
+    /**
+     * Detaches the pool entry from the proxy. Only one of several concurrent
+     * callers obtains the entry, all others get <code>null</code>.
+     */
     CPoolEntry detach() {
-        final CPoolEntry local = this.poolEntry;
-        this.poolEntry = null;
-        return local;
+        return POOL_ENTRY_UPDATER.getAndSet(this, null);
     }
 
-    HttpClientConnection getConnection() {
+    SocketClientConnection getConnection() {
         final CPoolEntry local = this.poolEntry;
         if (local == null) {
             return null;
@@ -85,19 +91,25 @@ class CPoolProxy implements InvocationHandler {
         return local.getConnection();
     }
 
+    SocketClientConnection getValidConnection() {
+        final SocketClientConnection conn = getConnection();
+        if (conn == null) {
+            throw new ConnectionShutdownException();
+        }
+        return conn;
+    }
+
     public void close() throws IOException {
         final CPoolEntry local = this.poolEntry;
         if (local != null) {
-            final HttpClientConnection conn = local.getConnection();
-            conn.close();
+            local.getConnection().close();
         }
     }
 
     public void shutdown() throws IOException {
         final CPoolEntry local = this.poolEntry;
         if (local != null) {
-            final HttpClientConnection conn = local.getConnection();
-            conn.shutdown();
+            local.getConnection().shutdown();
         }
     }
 
@@ -119,55 +131,122 @@ class CPoolProxy implements InvocationHandler {
         }
     }
 
-    public Object invoke(
-            final Object proxy, final Method method, final Object[] args) throws Throwable {
-        if (method.equals(CLOSE_METHOD)) {
-            close();
+    public void setSocketTimeout(final int timeout) {
+        getValidConnection().setSocketTimeout(timeout);
+    }
+
+    public int getSocketTimeout() {
+        return getValidConnection().getSocketTimeout();
+    }
+
+    public HttpConnectionMetrics getMetrics() {
+        return getValidConnection().getMetrics();
+    }
+
+    public InetAddress getLocalAddress() {
+        return getValidConnection().getLocalAddress();
+    }
+
+    public int getLocalPort() {
+        return getValidConnection().getLocalPort();
+    }
+
+    public InetAddress getRemoteAddress() {
+        return getValidConnection().getRemoteAddress();
+    }
+
+    public int getRemotePort() {
+        return getValidConnection().getRemotePort();
+    }
+
+    public boolean isResponseAvailable(final int timeout) throws IOException {
+        return getValidConnection().isResponseAvailable(timeout);
+    }
+
+    public void sendRequestHeader(final HttpRequest request) throws HttpException, IOException {
+        getValidConnection().sendRequestHeader(request);
+    }
+
+    public void sendRequestEntity(
+            final HttpEntityEnclosingRequest request) throws HttpException, IOException {
+        getValidConnection().sendRequestEntity(request);
+    }
+
+    public HttpResponse receiveResponseHeader() throws HttpException, IOException {
+        return getValidConnection().receiveResponseHeader();
+    }
+
+    public void receiveResponseEntity(final HttpResponse response) throws HttpException, IOException {
+        getValidConnection().receiveResponseEntity(response);
+    }
+
+    public void flush() throws IOException {
+        getValidConnection().flush();
+    }
+
+    public void bind(final Socket socket) throws IOException {
+        getValidConnection().bind(socket);
+    }
+
+    public Socket getSocket() {
+        return getValidConnection().getSocket();
+    }
+
+    public SSLSession getSSLSession() {
+        return getValidConnection().getSSLSession();
+    }
+
+    public Object getAttribute(final String id) {
+        final SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            return ((HttpContext) conn).getAttribute(id);
+        } else {
             return null;
-        } else if (method.equals(SHUTDOWN_METHOD)) {
-            shutdown();
+        }
+    }
+
+    public void setAttribute(final String id, final Object obj) {
+        final SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            ((HttpContext) conn).setAttribute(id, obj);
+        }
+    }
+
+    public Object removeAttribute(final String id) {
+        final SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            return ((HttpContext) conn).removeAttribute(id);
+        } else {
             return null;
-        } else if (method.equals(IS_OPEN_METHOD)) {
-            return Boolean.valueOf(isOpen());
-        } else if (method.equals(IS_STALE_METHOD)) {
-            return Boolean.valueOf(isStale());
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CPoolProxy{");
+        final SocketClientConnection conn = getConnection();
+        if (conn != null) {
+            sb.append(conn);
         } else {
-            final HttpClientConnection conn = getConnection();
-            if (conn == null) {
-                throw new ConnectionShutdownException();
-            }
-            try {
-                return method.invoke(conn, args);
-            } catch (final InvocationTargetException ex) {
-                final Throwable cause = ex.getCause();
-                if (cause != null) {
-                    throw cause;
-                } else {
-                    throw ex;
-                }
-            }
+            sb.append("detached");
         }
+        sb.append('}');
+        return sb.toString();
     }
 
-    public static HttpClientConnection newProxy(
-            final CPoolEntry poolEntry) {
-        return (HttpClientConnection) Proxy.newProxyInstance(
-                CPoolProxy.class.getClassLoader(),
-                new Class<?>[] { SocketClientConnection.class, HttpContext.class },
-                new CPoolProxy(poolEntry));
+    public static HttpClientConnection newProxy(final CPoolEntry poolEntry) {
+        return new CPoolProxy(poolEntry);
     }
 
-    private static CPoolProxy getHandler(
-            final HttpClientConnection proxy) {
-        final InvocationHandler handler = Proxy.getInvocationHandler(proxy);
-        if (!CPoolProxy.class.isInstance(handler)) {
-            throw new IllegalStateException("Unexpected proxy handler class: " + handler);
+    private static CPoolProxy getProxy(final HttpClientConnection conn) {
+        if (!CPoolProxy.class.isInstance(conn)) {
+            throw new IllegalStateException("Unexpected connection proxy class: " + conn.getClass());
         }
-        return CPoolProxy.class.cast(handler);
+        return CPoolProxy.class.cast(conn);
     }
 
     public static CPoolEntry getPoolEntry(final HttpClientConnection proxy) {
-        final CPoolEntry entry = getHandler(proxy).getPoolEntry();
+        final CPoolEntry entry = getProxy(proxy).getPoolEntry();
         if (entry == null) {
             throw new ConnectionShutdownException();
         }
@@ -175,7 +254,7 @@ class CPoolProxy implements InvocationHandler {
     }
 
     public static CPoolEntry detach(final HttpClientConnection proxy) {
-        return getHandler(proxy).detach();
+        return getProxy(proxy).detach();
     }
 
 }
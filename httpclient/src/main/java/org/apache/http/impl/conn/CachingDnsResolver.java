@@ -0,0 +1,388 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.util.Args;
+
+/**
+ * DNS resolver that caches the results of another {@link DnsResolver}.
+ * <p/>
+ * Successful resolutions are kept for the time to live of the entry and
+ * failed ones for the negative time to live. Entries that are about to
+ * expire are refreshed in the background while the cached addresses keep
+ * being served, so that callers do not block on frequently used host names.
+ * Concurrent lookups of the same host name are coalesced into a single
+ * resolution. If a resolution timeout is set, host names are resolved on
+ * a background thread and callers give up waiting after the timeout.
+ * <p/>
+ * {@link DnsResolver}s do not report the TTL of DNS records, so all entries
+ * use the same time to live unless {@link #getTimeToLive(String, InetAddress[])}
+ * is overridden.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class CachingDnsResolver implements DnsResolver {
+
+    private final Log log = LogFactory.getLog(CachingDnsResolver.class);
+
+    private final DnsResolver resolver;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final long refreshAhead;
+    private final long resolveTimeout;
+    private final ConcurrentMap<String, CacheEntry> cache;
+    private final ConcurrentMap<String, FutureTask<CacheEntry>> pending;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong refreshCount;
+    private final AtomicLong timeoutCount;
+
+    @GuardedBy("this")
+    private ExecutorService executor;
+    @GuardedBy("this")
+    private boolean isShutDown;
+
+    /**
+     * @param resolver the resolver to cache the results of.
+     *   If <code>null</code> {@link SystemDefaultDnsResolver} is used.
+     * @param timeToLive the time successful resolutions are cached for.
+     * @param negativeTimeToLive the time failed resolutions are cached for.
+     *   A non-positive value disables negative caching.
+     * @param refreshAhead the time ahead of the expiry of an entry at which
+     *   it gets refreshed in the background on its next use. A non-positive
+     *   value disables refreshing.
+     * @param resolveTimeout the maximum time to wait for a resolution.
+     *   A non-positive value makes callers resolve host names on their
+     *   own thread without a timeout.
+     * @param tunit the unit of the given times.
+     */
+    public CachingDnsResolver(
+            final DnsResolver resolver,
+            final long timeToLive,
+            final long negativeTimeToLive,
+            final long refreshAhead,
+            final long resolveTimeout,
+            final TimeUnit tunit) {
+        super();
+        Args.notNull(tunit, "Time unit");
+        this.resolver = resolver != null ? resolver : SystemDefaultDnsResolver.INSTANCE;
+        this.timeToLive = tunit.toMillis(timeToLive);
+        this.negativeTimeToLive = tunit.toMillis(negativeTimeToLive);
+        this.refreshAhead = tunit.toMillis(refreshAhead);
+        this.resolveTimeout = tunit.toMillis(resolveTimeout);
+        this.cache = new ConcurrentHashMap<String, CacheEntry>();
+        this.pending = new ConcurrentHashMap<String, FutureTask<CacheEntry>>();
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.refreshCount = new AtomicLong();
+        this.timeoutCount = new AtomicLong();
+    }
+
+    /**
+     * Caches the results of the given resolver for 30 seconds, failed
+     * resolutions for 10 seconds, refreshes entries within the last
+     * 5 seconds of their lifetime and waits no longer than 10 seconds for
+     * a resolution.
+     */
+    public CachingDnsResolver(final DnsResolver resolver) {
+        this(resolver, 30, 10, 5, 10, TimeUnit.SECONDS);
+    }
+
+    public CachingDnsResolver() {
+        this(null);
+    }
+
+    /**
+     * Returns the time in milliseconds the given successful resolution is
+     * cached for.
+     */
+    protected long getTimeToLive(final String host, final InetAddress[] addresses) {
+        return this.timeToLive;
+    }
+
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        Args.notNull(host, "Host name");
+        final long now = System.currentTimeMillis();
+        CacheEntry entry = this.cache.get(host);
+        if (entry != null && now < entry.expiry) {
+            this.hitCount.incrementAndGet();
+            if (now >= entry.refreshTime && entry.refreshing.compareAndSet(false, true)) {
+                refresh(host);
+            }
+        } else {
+            this.missCount.incrementAndGet();
+            entry = lookup(host);
+        }
+        return entry.getAddresses(host);
+    }
+
+    private CacheEntry lookup(final String host) throws UnknownHostException {
+        final FutureTask<CacheEntry> task = new FutureTask<CacheEntry>(new Resolution(host));
+        FutureTask<CacheEntry> current = this.pending.putIfAbsent(host, task);
+        try {
+            if (current == null) {
+                current = task;
+                if (this.resolveTimeout > 0) {
+                    submit(task);
+                } else {
+                    task.run();
+                }
+            }
+            if (this.resolveTimeout > 0) {
+                return current.get(this.resolveTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                return current.get();
+            }
+        } catch (final TimeoutException ex) {
+            this.timeoutCount.incrementAndGet();
+            throw new UnknownHostException(host + " could not be resolved within "
+                    + this.resolveTimeout + " ms");
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("Resolution of " + host + " interrupted");
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            final UnknownHostException uhe = new UnknownHostException(host + " cannot be resolved");
+            uhe.initCause(cause);
+            throw uhe;
+        }
+    }
+
+    private void refresh(final String host) {
+        final FutureTask<CacheEntry> task = new FutureTask<CacheEntry>(new Resolution(host));
+        if (this.pending.putIfAbsent(host, task) == null) {
+            this.refreshCount.incrementAndGet();
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Refreshing " + host);
+            }
+            submit(task);
+        }
+    }
+
+    private void submit(final FutureTask<CacheEntry> task) {
+        try {
+            getExecutor().execute(task);
+        } catch (final RejectedExecutionException ex) {
+            task.run();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (this.isShutDown) {
+            throw new RejectedExecutionException("DNS resolver shut down");
+        }
+        if (this.executor == null) {
+            this.executor = Executors.newCachedThreadPool(
+                    new DaemonThreadFactory("dns-resolver"));
+        }
+        return this.executor;
+    }
+
+    /**
+     * Stops the background resolution threads. Host names are resolved on
+     * the caller's thread afterwards.
+     */
+    public void shutdown() {
+        final ExecutorService executor;
+        synchronized (this) {
+            this.isShutDown = true;
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Discards all cached entries.
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * Discards the cached entry of the given host name.
+     */
+    public void remove(final String host) {
+        this.cache.remove(host);
+    }
+
+    /**
+     * Discards expired entries.
+     */
+    public void removeExpired() {
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, CacheEntry> e: this.cache.entrySet()) {
+            if (now >= e.getValue().expiry) {
+                this.cache.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    public int getCacheSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * Returns the number of resolutions served from the cache,
+     * including cached failures.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Returns the number of resolutions that had to wait for a lookup.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the number of background refreshes of cached entries.
+     */
+    public long getRefreshCount() {
+        return this.refreshCount.get();
+    }
+
+    /**
+     * Returns the number of resolutions that timed out.
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[entries: ").append(getCacheSize());
+        buffer.append("; hits: ").append(getHitCount());
+        buffer.append("; misses: ").append(getMissCount());
+        buffer.append("; refreshes: ").append(getRefreshCount());
+        buffer.append("; timeouts: ").append(getTimeoutCount());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    class Resolution implements Callable<CacheEntry> {
+
+        private final String host;
+
+        Resolution(final String host) {
+            super();
+            this.host = host;
+        }
+
+        public CacheEntry call() throws Exception {
+            try {
+                final CacheEntry previous = cache.get(this.host);
+                CacheEntry entry;
+                try {
+                    final InetAddress[] addresses = resolver.resolve(this.host);
+                    entry = new CacheEntry(addresses, null, getTimeToLive(this.host, addresses));
+                } catch (final UnknownHostException ex) {
+                    if (previous != null && previous.failure == null
+                            && System.currentTimeMillis() < previous.expiry) {
+                        // Failed refresh, keep serving the entry until it expires
+                        throw ex;
+                    }
+                    entry = new CacheEntry(null, ex, negativeTimeToLive);
+                }
+                if (entry.expiry > System.currentTimeMillis()) {
+                    cache.put(this.host, entry);
+                } else {
+                    cache.remove(this.host);
+                }
+                return entry;
+            } finally {
+                pending.remove(this.host);
+            }
+        }
+
+    }
+
+    class CacheEntry {
+
+        final InetAddress[] addresses;
+        final UnknownHostException failure;
+        final long expiry;
+        final long refreshTime;
+        final AtomicBoolean refreshing;
+
+        CacheEntry(final InetAddress[] addresses, final UnknownHostException failure,
+                final long ttl) {
+            super();
+            final long now = System.currentTimeMillis();
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiry = ttl > 0 ? now + ttl : now;
+            this.refreshTime = failure == null && refreshAhead > 0
+                ? this.expiry - refreshAhead : Long.MAX_VALUE;
+            this.refreshing = new AtomicBoolean(false);
+        }
+
+        InetAddress[] getAddresses(final String host) throws UnknownHostException {
+            if (this.failure != null) {
+                final UnknownHostException ex = new UnknownHostException(
+                        this.failure.getMessage() != null ? this.failure.getMessage() : host);
+                ex.initCause(this.failure);
+                throw ex;
+            }
+            return this.addresses.clone();
+        }
+
+    }
+
+}
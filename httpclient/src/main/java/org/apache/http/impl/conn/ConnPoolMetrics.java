@@ -0,0 +1,188 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Records connection pool usage per route. Recording uses atomic counters
+ * only and never blocks.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class ConnPoolMetrics {
+
+    private static final RouteMetrics EMPTY = new Recorder().snapshot();
+
+    private final ConcurrentMap<HttpRoute, Recorder> recorders;
+    // statistics of purged routes
+    private final AtomicReference<RouteMetrics> purged;
+
+    ConnPoolMetrics() {
+        super();
+        this.recorders = new ConcurrentHashMap<HttpRoute, Recorder>();
+        this.purged = new AtomicReference<RouteMetrics>(EMPTY);
+    }
+
+    Recorder getRecorder(final HttpRoute route) {
+        Recorder recorder = this.recorders.get(route);
+        if (recorder == null) {
+            final Recorder newRecorder = new Recorder();
+            recorder = this.recorders.putIfAbsent(route, newRecorder);
+            if (recorder == null) {
+                recorder = newRecorder;
+            }
+        }
+        return recorder;
+    }
+
+    RouteMetrics getMetrics(final HttpRoute route) {
+        final Recorder recorder = this.recorders.get(route);
+        return recorder != null ? recorder.snapshot() : EMPTY;
+    }
+
+    Map<HttpRoute, RouteMetrics> getMetrics() {
+        final Map<HttpRoute, RouteMetrics> map = new HashMap<HttpRoute, RouteMetrics>();
+        for (final Map.Entry<HttpRoute, Recorder> entry: this.recorders.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return map;
+    }
+
+    RouteMetrics getTotalMetrics() {
+        RouteMetrics total = this.purged.get();
+        for (final Recorder recorder: this.recorders.values()) {
+            total = total.merge(recorder.snapshot());
+        }
+        return total;
+    }
+
+    /**
+     * Discards the statistics of routes with no activity since the given
+     * time and no connections in the pool. Their figures remain included
+     * in the totals.
+     */
+    void purgeIdle(final ConnPoolControl<HttpRoute> pool, final long time) {
+        final Iterator<Map.Entry<HttpRoute, Recorder>> it = this.recorders.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<HttpRoute, Recorder> entry = it.next();
+            final Recorder recorder = entry.getValue();
+            if (recorder.lastActivity > time) {
+                continue;
+            }
+            final PoolStats stats = pool.getStats(entry.getKey());
+            if (stats.getLeased() + stats.getAvailable() + stats.getPending() > 0) {
+                continue;
+            }
+            if (this.recorders.remove(entry.getKey(), recorder)) {
+                final RouteMetrics snapshot = recorder.snapshot();
+                for (;;) {
+                    final RouteMetrics current = this.purged.get();
+                    if (this.purged.compareAndSet(current, current.merge(snapshot))) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    int getRouteCount() {
+        return this.recorders.size();
+    }
+
+    static class Recorder {
+
+        private final AtomicLong leaseCount = new AtomicLong();
+        private final AtomicLong reusedCount = new AtomicLong();
+        private final AtomicLong leaseTimeoutCount = new AtomicLong();
+        private final AtomicLong createdCount = new AtomicLong();
+        private final AtomicLong closedCount = new AtomicLong();
+        private final AtomicLong expiredCount = new AtomicLong();
+        private final AtomicLong totalLeaseWait = new AtomicLong();
+        private final AtomicLongArray leaseWaitHistogram = new AtomicLongArray(RouteMetrics.BUCKETS);
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        void leased(final long waitNanos, final boolean reused) {
+            final long micros = waitNanos / 1000;
+            this.leaseWaitHistogram.incrementAndGet(RouteMetrics.getBucket(micros));
+            this.totalLeaseWait.addAndGet(micros);
+            if (reused) {
+                this.reusedCount.incrementAndGet();
+            }
+            this.leaseCount.incrementAndGet();
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        void leaseTimedOut() {
+            this.leaseTimeoutCount.incrementAndGet();
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        void created() {
+            this.createdCount.incrementAndGet();
+        }
+
+        void closed(final boolean expired) {
+            this.closedCount.incrementAndGet();
+            if (expired) {
+                this.expiredCount.incrementAndGet();
+            }
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        RouteMetrics snapshot() {
+            final long[] histogram = new long[RouteMetrics.BUCKETS];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = this.leaseWaitHistogram.get(i);
+            }
+            return new RouteMetrics(
+                    this.leaseCount.get(),
+                    this.reusedCount.get(),
+                    this.leaseTimeoutCount.get(),
+                    this.createdCount.get(),
+                    this.closedCount.get(),
+                    this.expiredCount.get(),
+                    this.totalLeaseWait.get(),
+                    histogram);
+        }
+
+    }
+
+}
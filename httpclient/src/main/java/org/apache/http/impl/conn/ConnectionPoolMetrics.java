@@ -0,0 +1,126 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.Map;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+
+/**
+ * Standard MBean exposing the usage statistics of
+ * a {@link PoolingHttpClientConnectionManager}. Register it with
+ * an {@link javax.management.MBeanServer} to make the statistics
+ * available over JMX:
+ * <pre>
+ * MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+ * server.registerMBean(new ConnectionPoolMetrics(connManager),
+ *     new ObjectName("org.apache.http:type=ConnectionPool,name=default"));
+ * </pre>
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ConnectionPoolMetrics implements ConnectionPoolMetricsMBean {
+
+    private final PoolingHttpClientConnectionManager connManager;
+
+    public ConnectionPoolMetrics(final PoolingHttpClientConnectionManager connManager) {
+        super();
+        Args.notNull(connManager, "Connection manager");
+        this.connManager = connManager;
+    }
+
+    public long getLeaseCount() {
+        return this.connManager.getTotalMetrics().getLeaseCount();
+    }
+
+    public long getLeaseTimeoutCount() {
+        return this.connManager.getTotalMetrics().getLeaseTimeoutCount();
+    }
+
+    public long getCreatedCount() {
+        return this.connManager.getTotalMetrics().getCreatedCount();
+    }
+
+    public long getClosedCount() {
+        return this.connManager.getTotalMetrics().getClosedCount();
+    }
+
+    public long getExpiredCount() {
+        return this.connManager.getTotalMetrics().getExpiredCount();
+    }
+
+    public double getReuseRatio() {
+        return this.connManager.getTotalMetrics().getReuseRatio();
+    }
+
+    public double getMeanLeaseWait() {
+        return this.connManager.getTotalMetrics().getMeanLeaseWait();
+    }
+
+    public long getLeaseWait99thPercentile() {
+        return this.connManager.getTotalMetrics().getLeaseWaitPercentile(99);
+    }
+
+    public int getLeased() {
+        return this.connManager.getTotalStats().getLeased();
+    }
+
+    public int getAvailable() {
+        return this.connManager.getTotalStats().getAvailable();
+    }
+
+    public int getPending() {
+        return this.connManager.getTotalStats().getPending();
+    }
+
+    public int getMaxTotal() {
+        return this.connManager.getMaxTotal();
+    }
+
+    public String[] getRoutes() {
+        final Map<HttpRoute, RouteMetrics> map = this.connManager.getMetrics();
+        final String[] routes = new String[map.size()];
+        int i = 0;
+        for (final HttpRoute route: map.keySet()) {
+            routes[i++] = route.toString();
+        }
+        return routes;
+    }
+
+    public String getRouteMetrics(final String route) {
+        for (final Map.Entry<HttpRoute, RouteMetrics> entry: this.connManager.getMetrics().entrySet()) {
+            if (entry.getKey().toString().equals(route)) {
+                return entry.getValue().toString();
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+import org.apache.http.util.Asserts;
+
+/**
+ * Opens pooled connections ahead of demand on behalf of
+ * {@link PoolingHttpClientConnectionManager}, either on request or in order
+ * to keep a minimum number of idle connections per route.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class ConnectionPrewarmer {
+
+    private static final long MAINTENANCE_INTERVAL = 1000;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final PoolingHttpClientConnectionManager connManager;
+    private final ManagedConnPool pool;
+    private final ConcurrentMap<HttpRoute, Integer> minIdleMap;
+
+    @GuardedBy("this")
+    private ExecutorService connectExecutor;
+    @GuardedBy("this")
+    private ScheduledExecutorService maintenanceExecutor;
+    @GuardedBy("this")
+    private boolean isShutDown;
+
+    ConnectionPrewarmer(
+            final PoolingHttpClientConnectionManager connManager,
+            final ManagedConnPool pool) {
+        super();
+        this.connManager = connManager;
+        this.pool = pool;
+        this.minIdleMap = new ConcurrentHashMap<HttpRoute, Integer>();
+    }
+
+    private synchronized ExecutorService getConnectExecutor() {
+        Asserts.check(!this.isShutDown, "Connection pre-warming shut down");
+        if (this.connectExecutor == null) {
+            this.connectExecutor = Executors.newCachedThreadPool(
+                    new DaemonThreadFactory("connection-prewarm"));
+        }
+        return this.connectExecutor;
+    }
+
+    /**
+     * Makes sure at least the given number of connections to the route are
+     * established and available in the pool, within the limits of the pool.
+     * Missing connections are opened in parallel.
+     *
+     * @return the number of connections opened.
+     */
+    int prewarm(
+            final HttpRoute route,
+            final int count,
+            final int connectTimeout) throws InterruptedException {
+        Args.notNull(route, "Route");
+        Args.check(!route.isTunnelled(), "Pre-warming of tunnelled routes not supported");
+        // Lease connections without waiting for the pool. Idle ones are
+        // leased first, so holding on to them makes the pool allocate new ones.
+        final List<CPoolEntry> entries = new ArrayList<CPoolEntry>(count);
+        for (int i = 0; i < count; i++) {
+            final Future<CPoolEntry> future = this.pool.lease(route, null, null);
+            try {
+                entries.add(future.get(1, TimeUnit.MILLISECONDS));
+            } catch (final InterruptedException ex) {
+                future.cancel(true);
+                for (final CPoolEntry entry: entries) {
+                    this.pool.release(entry, entry.getConnection().isOpen());
+                }
+                throw ex;
+            } catch (final TimeoutException ex) {
+                future.cancel(true);
+                break;
+            } catch (final ExecutionException ex) {
+                this.log.debug("Unexpected error leasing connection", ex.getCause());
+                break;
+            }
+        }
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final CPoolEntry entry = entries.get(i);
+            if (entry.getConnection().isOpen()) {
+                this.pool.release(entry, true);
+                continue;
+            }
+            try {
+                results.add(getConnectExecutor().submit(new Callable<Boolean>() {
+
+                    public Boolean call() {
+                        return Boolean.valueOf(establish(entry, connectTimeout));
+                    }
+
+                }));
+            } catch (final RuntimeException ex) {
+                for (int n = i; n < entries.size(); n++) {
+                    final CPoolEntry remaining = entries.get(n);
+                    this.pool.release(remaining, remaining.getConnection().isOpen());
+                }
+                throw ex;
+            }
+        }
+        int opened = 0;
+        for (final Future<Boolean> result: results) {
+            try {
+                if (result.get().booleanValue()) {
+                    opened++;
+                }
+            } catch (final ExecutionException ex) {
+                this.log.debug("Unexpected error pre-warming connection", ex.getCause());
+            }
+        }
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Opened " + opened + " connection(s) to " + route);
+        }
+        return opened;
+    }
+
+    /**
+     * Makes sure in the background that a connection to the route is
+     * available in place of one that has been retired.
+     */
+    void replace(final HttpRoute route) {
+        if (route.isTunnelled()) {
+            return;
+        }
+        final ExecutorService executor;
+        synchronized (this) {
+            if (this.isShutDown) {
+                return;
+            }
+            executor = getConnectExecutor();
+        }
+        try {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        prewarm(route, 1, 0);
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } catch (final RuntimeException ex) {
+                        log.debug("Unexpected error replacing connection", ex);
+                    }
+                }
+
+            });
+        } catch (final RejectedExecutionException ex) {
+            // shut down in the meantime
+        }
+    }
+
+    private boolean establish(final CPoolEntry entry, final int connectTimeout) {
+        boolean success = false;
+        try {
+            this.connManager.establishRoute(entry, connectTimeout);
+            success = true;
+        } catch (final IOException ex) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Failed to pre-warm connection to " + entry.getRoute()
+                        + ": " + ex.getMessage());
+            }
+            entry.close();
+        } finally {
+            this.connManager.releaseEntry(entry, success);
+        }
+        return success;
+    }
+
+    void setMinIdle(final HttpRoute route, final int minIdle) {
+        Args.notNull(route, "Route");
+        Args.notNegative(minIdle, "Min idle value");
+        if (minIdle > 0) {
+            this.minIdleMap.put(route, Integer.valueOf(minIdle));
+            startMaintenance();
+        } else {
+            this.minIdleMap.remove(route);
+        }
+    }
+
+    int getMinIdle(final HttpRoute route) {
+        final Integer v = this.minIdleMap.get(route);
+        return v != null ? v.intValue() : 0;
+    }
+
+    private synchronized void startMaintenance() {
+        if (this.maintenanceExecutor != null || this.isShutDown) {
+            return;
+        }
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("connection-min-idle"));
+        this.maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                try {
+                    maintainMinIdle();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (final RuntimeException ex) {
+                    log.debug("Unexpected error maintaining idle connections", ex);
+                }
+            }
+
+        }, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tops up idle connections of routes that have fallen below their
+     * minimum.
+     */
+    void maintainMinIdle() throws InterruptedException {
+        for (final Map.Entry<HttpRoute, Integer> entry: this.minIdleMap.entrySet()) {
+            final HttpRoute route = entry.getKey();
+            final int minIdle = entry.getValue().intValue();
+            if (this.pool.getStats(route).getAvailable() < minIdle) {
+                prewarm(route, minIdle, 0);
+            }
+        }
+    }
+
+    void shutdown() {
+        final ExecutorService connectExecutor;
+        final ScheduledExecutorService maintenanceExecutor;
+        synchronized (this) {
+            this.isShutDown = true;
+            connectExecutor = this.connectExecutor;
+            maintenanceExecutor = this.maintenanceExecutor;
+        }
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (connectExecutor != null) {
+            connectExecutor.shutdownNow();
+        }
+    }
+
+}
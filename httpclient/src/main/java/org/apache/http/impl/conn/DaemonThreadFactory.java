@@ -0,0 +1,60 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * {@link ThreadFactory} creating daemon threads named after the given
+ * prefix and a sequence number, used by the background tasks of the
+ * client so that they never keep the JVM alive.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count;
+
+    public DaemonThreadFactory(final String name) {
+        super();
+        this.name = name;
+        this.count = new AtomicInteger(0);
+    }
+
+    public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, this.name + "-" + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
@@ -50,25 +50,52 @@ import org.apache.http.util.Args;
 public class DefaultClientConnectionFactory implements HttpConnectionFactory<SocketClientConnection> {
 
     private static final int DEFAULT_BUFSIZE = 8 * 1024;
+    // size of the buffers connections keep while borrowing from a buffer pool
+    private static final int RESIDENT_BUFSIZE = 512;
 
     public static final DefaultClientConnectionFactory INSTANCE = new DefaultClientConnectionFactory();
 
     private final int bufferSize;
+    private final SessionBufferPool bufferPool;
     private final HttpMessageWriterFactory<HttpRequest> requestWriterFactory;
     private final HttpMessageParserFactory<HttpResponse> responseParserFactory;
 
-    public DefaultClientConnectionFactory(
+    private DefaultClientConnectionFactory(
             final int bufferSize,
+            final SessionBufferPool bufferPool,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
             final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
         super();
         this.bufferSize = Args.notNegative(bufferSize, "Buffer size");
+        this.bufferPool = bufferPool;
         this.requestWriterFactory = requestWriterFactory != null ? requestWriterFactory :
             DefaultHttpRequestWriterFactory.INSTANCE;
         this.responseParserFactory = responseParserFactory != null ? responseParserFactory :
             DefaultHttpResponseParserFactory.INSTANCE;
     }
 
+    public DefaultClientConnectionFactory(
+            final int bufferSize,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(bufferSize, null, requestWriterFactory, responseParserFactory);
+    }
+
+    /**
+     * Creates a factory of connections that borrow their session buffers
+     * from the given pool while leased and keep only small buffers of their
+     * own while idle in the connection pool.
+     *
+     * @param bufferPool the shared session buffer pool.
+     */
+    public DefaultClientConnectionFactory(
+            final SessionBufferPool bufferPool,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(RESIDENT_BUFSIZE, Args.notNull(bufferPool, "Buffer pool"),
+                requestWriterFactory, responseParserFactory);
+    }
+
     public DefaultClientConnectionFactory(
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
             final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
@@ -110,7 +137,8 @@ public class DefaultClientConnectionFactory implements HttpConnectionFactory<Soc
                 cconfig.getMessageConstraints(),
                 null, null,
                 requestWriterFactory,
-                responseParserFactory);
+                responseParserFactory,
+                bufferPool);
     }
 
 }
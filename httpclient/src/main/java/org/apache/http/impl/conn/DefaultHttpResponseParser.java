@@ -31,6 +31,7 @@ import java.io.IOException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseFactory;
@@ -46,12 +47,18 @@ import org.apache.http.message.BasicLineParser;
 import org.apache.http.message.LineParser;
 import org.apache.http.message.ParserCursor;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.Args;
 import org.apache.http.util.CharArrayBuffer;
 
 /**
  * Lenient HTTP response parser implementation that can skip malformed data until
  * a valid HTTP response message head is encountered.
+ * <p/>
+ * Optionally the parser can create lazy headers. Header lines are then read
+ * into a reused buffer and copied into a single character block per
+ * response. Well-known header names and common values are shared string
+ * instances, other values are only materialized when requested.
  *
  * @since 4.2
  */
@@ -63,6 +70,13 @@ public class DefaultHttpResponseParser extends AbstractMessageParser<HttpRespons
 
     private final HttpResponseFactory responseFactory;
     private final CharArrayBuffer lineBuf;
+    private final SessionInputBuffer sessionBuffer;
+    private final MessageConstraints constraints;
+    private final boolean lazyHeaders;
+
+    // header lines and their start and end offsets, reused across responses
+    private CharArrayBuffer headerBlock;
+    private int[] headerBounds;
 
     /**
      * @deprecated (4.3) use {@link DefaultHttpResponseParser#DefaultHttpResponseParser(
@@ -78,6 +92,9 @@ public class DefaultHttpResponseParser extends AbstractMessageParser<HttpRespons
         Args.notNull(responseFactory, "Response factory");
         this.responseFactory = responseFactory;
         this.lineBuf = new CharArrayBuffer(128);
+        this.sessionBuffer = buffer;
+        this.constraints = MessageConstraints.DEFAULT;
+        this.lazyHeaders = false;
     }
 
     /**
@@ -90,6 +107,8 @@ public class DefaultHttpResponseParser extends AbstractMessageParser<HttpRespons
      *   {@link DefaultHttpResponseFactory#INSTANCE} will be used.
      * @param constraints the message constraints. If <code>null</code>
      *   {@link MessageConstraints#DEFAULT} will be used.
+     * @param lazyHeaders whether to create lazy headers. The line parser
+     *   is then only used to parse the status line.
      *
      * @since 4.3
      */
@@ -97,11 +116,36 @@ public class DefaultHttpResponseParser extends AbstractMessageParser<HttpRespons
             final SessionInputBuffer buffer,
             final LineParser lineParser,
             final HttpResponseFactory responseFactory,
-            final MessageConstraints constraints) {
+            final MessageConstraints constraints,
+            final boolean lazyHeaders) {
         super(buffer, lineParser, constraints);
         this.responseFactory = responseFactory != null ? responseFactory :
                 DefaultHttpResponseFactory.INSTANCE;
         this.lineBuf = new CharArrayBuffer(128);
+        this.sessionBuffer = buffer;
+        this.constraints = constraints != null ? constraints : MessageConstraints.DEFAULT;
+        this.lazyHeaders = lazyHeaders;
+    }
+
+    /**
+     * Creates new instance of DefaultHttpResponseParser.
+     *
+     * @param buffer the session input buffer.
+     * @param lineParser the line parser. If <code>null</code> {@link BasicLineParser#INSTANCE}
+     *   will be used.
+     * @param responseFactory HTTP response factory. If <code>null</code>
+     *   {@link DefaultHttpResponseFactory#INSTANCE} will be used.
+     * @param constraints the message constraints. If <code>null</code>
+     *   {@link MessageConstraints#DEFAULT} will be used.
+     *
+     * @since 4.3
+     */
+    public DefaultHttpResponseParser(
+            final SessionInputBuffer buffer,
+            final LineParser lineParser,
+            final HttpResponseFactory responseFactory,
+            final MessageConstraints constraints) {
+        this(buffer, lineParser, responseFactory, constraints, false);
     }
 
     /**
@@ -166,4 +210,102 @@ public class DefaultHttpResponseParser extends AbstractMessageParser<HttpRespons
         return false;
     }
 
+    @Override
+    public HttpResponse parse() throws IOException, HttpException {
+        if (!this.lazyHeaders) {
+            return super.parse();
+        }
+        final HttpResponse response = parseHead(this.sessionBuffer);
+        response.setHeaders(parseLazyHeaders());
+        return response;
+    }
+
+    private Header[] parseLazyHeaders() throws IOException, HttpException {
+        final int maxHeaderCount = this.constraints.getMaxHeaderCount();
+        final int maxLineLen = this.constraints.getMaxLineLength();
+        if (this.headerBlock == null) {
+            this.headerBlock = new CharArrayBuffer(1024);
+            this.headerBounds = new int[64];
+        }
+        final CharArrayBuffer block = this.headerBlock;
+        block.clear();
+        int[] bounds = this.headerBounds;
+        int count = 0;
+        for (;;) {
+            final int start = block.length();
+            final int l = this.sessionBuffer.readLine(block);
+            if (l == -1 || block.length() == start) {
+                break;
+            }
+            final char[] chars = block.buffer();
+            final char first = chars[start];
+            if ((first == ' ' || first == '\t') && count > 0) {
+                // Folded header: join the continuation with a single space
+                int i = start;
+                while (i < block.length() && (chars[i] == ' ' || chars[i] == '\t')) {
+                    i++;
+                }
+                final int len = block.length() - i;
+                if (maxLineLen > 0 && start - bounds[2 * (count - 1)] + 1 + len > maxLineLen) {
+                    throw new ProtocolException("Maximum line length limit exceeded");
+                }
+                chars[start] = ' ';
+                System.arraycopy(chars, i, chars, start + 1, len);
+                block.setLength(start + 1 + len);
+                bounds[2 * (count - 1) + 1] = block.length();
+            } else {
+                if (2 * count == bounds.length) {
+                    final int[] newbounds = new int[bounds.length * 2];
+                    System.arraycopy(bounds, 0, newbounds, 0, bounds.length);
+                    bounds = newbounds;
+                    this.headerBounds = bounds;
+                }
+                bounds[2 * count] = start;
+                bounds[2 * count + 1] = block.length();
+                count++;
+            }
+            if (maxHeaderCount > 0 && count >= maxHeaderCount) {
+                throw new ProtocolException("Maximum header count exceeded");
+            }
+        }
+        // Headers share a copy of the block, the block itself is reused
+        final char[] chars = new char[block.length()];
+        System.arraycopy(block.buffer(), 0, chars, 0, chars.length);
+        final Header[] headers = new Header[count];
+        for (int n = 0; n < count; n++) {
+            headers[n] = createHeader(chars, bounds[2 * n], bounds[2 * n + 1]);
+        }
+        return headers;
+    }
+
+    private static Header createHeader(
+            final char[] chars, final int start, final int end) throws ProtocolException {
+        int colon = start;
+        while (colon < end && chars[colon] != ':') {
+            colon++;
+        }
+        int nameStart = start;
+        int nameEnd = colon;
+        while (nameStart < nameEnd && HTTP.isWhitespace(chars[nameStart])) {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && HTTP.isWhitespace(chars[nameEnd - 1])) {
+            nameEnd--;
+        }
+        if (colon == end || nameStart == nameEnd) {
+            throw new ProtocolException("Invalid header: " + new String(chars, start, end - start));
+        }
+        int valueStart = colon + 1;
+        int valueEnd = end;
+        while (valueStart < valueEnd && HTTP.isWhitespace(chars[valueStart])) {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && HTTP.isWhitespace(chars[valueEnd - 1])) {
+            valueEnd--;
+        }
+        return new LazyHeader(
+                KnownHeaders.name(chars, nameStart, nameEnd - nameStart),
+                chars, valueStart, valueEnd - valueStart);
+    }
+
 }
@@ -50,14 +50,27 @@ public class DefaultHttpResponseParserFactory implements HttpMessageParserFactor
 
     private final LineParser lineParser;
     private final HttpResponseFactory responseFactory;
+    private final boolean lazyHeaders;
 
+    /**
+     * @param lazyHeaders whether parsers create lazy headers with shared
+     *   instances of well-known names, see {@link DefaultHttpResponseParser}.
+     */
     public DefaultHttpResponseParserFactory(
             final LineParser lineParser,
-            final HttpResponseFactory responseFactory) {
+            final HttpResponseFactory responseFactory,
+            final boolean lazyHeaders) {
         super();
         this.lineParser = lineParser != null ? lineParser : BasicLineParser.INSTANCE;
         this.responseFactory = responseFactory != null ? responseFactory
                 : DefaultHttpResponseFactory.INSTANCE;
+        this.lazyHeaders = lazyHeaders;
+    }
+
+    public DefaultHttpResponseParserFactory(
+            final LineParser lineParser,
+            final HttpResponseFactory responseFactory) {
+        this(lineParser, responseFactory, false);
     }
 
     public DefaultHttpResponseParserFactory(
@@ -71,7 +84,8 @@ public class DefaultHttpResponseParserFactory implements HttpMessageParserFactor
 
     public HttpMessageParser<HttpResponse> create(final SessionInputBuffer buffer,
             final MessageConstraints constraints) {
-        return new DefaultHttpResponseParser(buffer, lineParser, responseFactory, constraints);
+        return new DefaultHttpResponseParser(
+                buffer, lineParser, responseFactory, constraints, lazyHeaders);
     }
 
 }
@@ -27,15 +27,28 @@
 package org.apache.http.impl.conn;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpHost;
-import org.apache.http.annotation.Immutable;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Lookup;
@@ -49,19 +62,45 @@ import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainSocketFactory;
+import org.apache.http.conn.Deadlines;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.Args;
 import org.apache.http.util.Asserts;
 
-@Immutable
+/**
+ * Opens and upgrades the sockets of client connections.
+ * <p/>
+ * By default the addresses a host name resolves to are tried one after
+ * another, each of them with the full connect timeout. With a positive
+ * connect stagger delay the operator races the addresses instead: it
+ * starts connecting to the next address, alternating between IPv6 and
+ * IPv4 ones, whenever the previous attempt has not succeeded within
+ * the delay, keeps the first socket that connects and closes all others.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
 class HttpClientConnectionOperator {
 
+    @GuardedBy("HttpClientConnectionOperator.class")
+    private static ExecutorService raceExecutor;
+
+    private static synchronized ExecutorService getRaceExecutor() {
+        if (raceExecutor == null) {
+            raceExecutor = Executors.newCachedThreadPool(
+                    new DaemonThreadFactory("connection-race"));
+        }
+        return raceExecutor;
+    }
+
     private final Log log = LogFactory.getLog(HttpClientConnectionManager.class);
 
     private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
     private final SchemePortResolver schemePortResolver;
     private final DnsResolver dnsResolver;
 
+    private volatile int connectStaggerDelay;
+
     HttpClientConnectionOperator(
             final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
             final SchemePortResolver schemePortResolver,
@@ -85,6 +124,19 @@ class HttpClientConnectionOperator {
         return reg;
     }
 
+    int getConnectStaggerDelay() {
+        return this.connectStaggerDelay;
+    }
+
+    /**
+     * Defines the delay in milliseconds after which a connection attempt to
+     * the next address of a multi-homed host is started while the previous
+     * one is still in progress. A non-positive value disables racing.
+     */
+    void setConnectStaggerDelay(final int connectStaggerDelay) {
+        this.connectStaggerDelay = connectStaggerDelay;
+    }
+
     public void connect(
             final SocketClientConnection conn,
             final HttpHost host,
@@ -99,6 +151,14 @@ class HttpClientConnectionOperator {
         }
         final InetAddress[] addresses = this.dnsResolver.resolve(host.getHostName());
         final int port = this.schemePortResolver.resolve(host);
+        final long deadline = HttpClientContext.adapt(context).getRequestDeadline();
+        final int staggerDelay = this.connectStaggerDelay;
+        if (staggerDelay > 0 && addresses.length > 1) {
+            final Socket sock = race(sf, interleave(addresses), port, staggerDelay,
+                    host, localAddress, Deadlines.cap(deadline, connectTimeout), socketConfig, context);
+            conn.bind(sock);
+            return;
+        }
         for (int i = 0; i < addresses.length; i++) {
             final InetAddress address = addresses[i];
             final boolean last = i == addresses.length - 1;
@@ -112,15 +172,11 @@ class HttpClientConnectionOperator {
                 this.log.debug("Connecting to " + remoteAddress);
             }
             try {
-                sock.setSoTimeout(socketConfig.getSoTimeout());
-                sock = sf.connectSocket(
-                        connectTimeout, sock, host, remoteAddress, localAddress, context);
-                sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
-                sock.setKeepAlive(socketConfig.isSoKeepAlive());
-                final int linger = socketConfig.getSoLinger();
-                if (linger >= 0) {
-                    sock.setSoLinger(linger > 0, linger);
-                }
+                final int soTimeout = Deadlines.cap(deadline, socketConfig.getSoTimeout());
+                sock.setSoTimeout(soTimeout);
+                sock = sf.connectSocket(Deadlines.cap(deadline, connectTimeout),
+                        sock, host, remoteAddress, localAddress, context);
+                configure(sock, socketConfig, soTimeout);
                 conn.bind(sock);
                 return;
             } catch (final ConnectException ex) {
@@ -139,6 +195,226 @@ class HttpClientConnectionOperator {
         }
     }
 
+    private static void configure(
+            final Socket sock, final SocketConfig socketConfig, final int soTimeout) throws IOException {
+        if (soTimeout != socketConfig.getSoTimeout()) {
+            // Restore the socket timeout shortened for the handshake
+            sock.setSoTimeout(socketConfig.getSoTimeout());
+        }
+        sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
+        sock.setKeepAlive(socketConfig.isSoKeepAlive());
+        final int linger = socketConfig.getSoLinger();
+        if (linger >= 0) {
+            sock.setSoLinger(linger > 0, linger);
+        }
+    }
+
+    /**
+     * Re-orders the addresses so that IPv6 and IPv4 ones alternate, starting
+     * with the family of the first address and otherwise preserving
+     * the order of the resolver.
+     */
+    static InetAddress[] interleave(final InetAddress[] addresses) {
+        final List<InetAddress> first = new ArrayList<InetAddress>(addresses.length);
+        final List<InetAddress> second = new ArrayList<InetAddress>(addresses.length);
+        final boolean ipv6First = addresses[0] instanceof Inet6Address;
+        for (final InetAddress address: addresses) {
+            if ((address instanceof Inet6Address) == ipv6First) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+        final InetAddress[] result = new InetAddress[addresses.length];
+        int i = 0;
+        for (int n = 0; n < first.size() || n < second.size(); n++) {
+            if (n < first.size()) {
+                result[i++] = first.get(n);
+            }
+            if (n < second.size()) {
+                result[i++] = second.get(n);
+            }
+        }
+        return result;
+    }
+
+    private Socket race(
+            final ConnectionSocketFactory sf,
+            final InetAddress[] addresses,
+            final int port,
+            final int staggerDelay,
+            final HttpHost host,
+            final InetSocketAddress localAddress,
+            final int connectTimeout,
+            final SocketConfig socketConfig,
+            final HttpContext context) throws IOException {
+        final CompletionService<Socket> completionService =
+            new ExecutorCompletionService<Socket>(getRaceExecutor());
+        final List<ConnectAttempt> attempts = new ArrayList<ConnectAttempt>(addresses.length);
+        final List<Future<Socket>> futures = new ArrayList<Future<Socket>>(addresses.length);
+        Socket winner = null;
+        IOException lastFailure = null;
+        try {
+            int failed = 0;
+            while (failed < addresses.length) {
+                final boolean more = attempts.size() < addresses.length;
+                if (more && attempts.size() == failed) {
+                    // Nothing in flight, start the next attempt straight away
+                    start(completionService, attempts, futures, sf, addresses[attempts.size()],
+                            port, host, localAddress, connectTimeout, socketConfig, context);
+                    continue;
+                }
+                final Future<Socket> future = more
+                    ? completionService.poll(staggerDelay, TimeUnit.MILLISECONDS)
+                    : completionService.take();
+                if (future == null) {
+                    start(completionService, attempts, futures, sf, addresses[attempts.size()],
+                            port, host, localAddress, connectTimeout, socketConfig, context);
+                    continue;
+                }
+                try {
+                    winner = future.get();
+                    return winner;
+                } catch (final ExecutionException ex) {
+                    failed++;
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        lastFailure = (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw (Error) cause;
+                    }
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Connect to " + host + " interrupted");
+        } finally {
+            for (int i = 0; i < attempts.size(); i++) {
+                attempts.get(i).abort(winner);
+                futures.get(i).cancel(false);
+            }
+        }
+        if (lastFailure instanceof ConnectException) {
+            throw new HttpHostConnectException(host, (ConnectException) lastFailure);
+        }
+        throw lastFailure;
+    }
+
+    private void start(
+            final CompletionService<Socket> completionService,
+            final List<ConnectAttempt> attempts,
+            final List<Future<Socket>> futures,
+            final ConnectionSocketFactory sf,
+            final InetAddress address,
+            final int port,
+            final HttpHost host,
+            final InetSocketAddress localAddress,
+            final int connectTimeout,
+            final SocketConfig socketConfig,
+            final HttpContext context) {
+        final InetSocketAddress remoteAddress = new InetSocketAddress(address, port);
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Connecting to " + remoteAddress);
+        }
+        final ConnectAttempt attempt = new ConnectAttempt(
+                sf, host, remoteAddress, localAddress, connectTimeout, socketConfig, context);
+        attempts.add(attempt);
+        futures.add(completionService.submit(attempt));
+    }
+
+    /**
+     * A single connection attempt of a race. Sockets of attempts that lose
+     * the race are closed, including those that manage to connect only
+     * after the race has been decided.
+     */
+    class ConnectAttempt implements Callable<Socket> {
+
+        private final ConnectionSocketFactory sf;
+        private final HttpHost host;
+        private final InetSocketAddress remoteAddress;
+        private final InetSocketAddress localAddress;
+        private final int connectTimeout;
+        private final SocketConfig socketConfig;
+        private final HttpContext context;
+
+        @GuardedBy("this")
+        private Socket socket;
+        @GuardedBy("this")
+        private boolean aborted;
+
+        ConnectAttempt(
+                final ConnectionSocketFactory sf,
+                final HttpHost host,
+                final InetSocketAddress remoteAddress,
+                final InetSocketAddress localAddress,
+                final int connectTimeout,
+                final SocketConfig socketConfig,
+                final HttpContext context) {
+            super();
+            this.sf = sf;
+            this.host = host;
+            this.remoteAddress = remoteAddress;
+            this.localAddress = localAddress;
+            this.connectTimeout = connectTimeout;
+            this.socketConfig = socketConfig;
+            this.context = context;
+        }
+
+        private synchronized boolean track(final Socket sock) {
+            this.socket = sock;
+            return !this.aborted;
+        }
+
+        public Socket call() throws IOException {
+            Socket sock = this.sf.createSocket(this.context);
+            if (!track(sock)) {
+                sock.close();
+                throw new InterruptedIOException("Connect to " + this.remoteAddress + " aborted");
+            }
+            try {
+                sock.setReuseAddress(this.socketConfig.isSoReuseAddress());
+                final int soTimeout = Deadlines.cap(
+                        HttpClientContext.adapt(this.context).getRequestDeadline(),
+                        this.socketConfig.getSoTimeout());
+                sock.setSoTimeout(soTimeout);
+                sock = this.sf.connectSocket(this.connectTimeout, sock, this.host,
+                        this.remoteAddress, this.localAddress, this.context);
+                configure(sock, this.socketConfig, soTimeout);
+            } catch (final IOException ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Connect to " + this.remoteAddress + " failed: " + ex.getMessage());
+                }
+                sock.close();
+                throw ex;
+            }
+            if (!track(sock)) {
+                sock.close();
+                throw new InterruptedIOException("Connect to " + this.remoteAddress + " aborted");
+            }
+            return sock;
+        }
+
+        /**
+         * Closes the socket of this attempt unless it is the given winner.
+         */
+        void abort(final Socket winner) {
+            final Socket sock;
+            synchronized (this) {
+                this.aborted = true;
+                sock = this.socket;
+            }
+            if (sock != null && sock != winner) {
+                try {
+                    sock.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+
+    }
+
     public void upgrade(
             final SocketClientConnection conn,
             final HttpHost host,
@@ -0,0 +1,272 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.util.Args;
+
+/**
+ * Background service that closes expired connections and connections that
+ * have been idle for longer than a given time in the pool of
+ * a {@link PoolingHttpClientConnectionManager}.
+ * <p/>
+ * The connection manager notifies the evictor whenever a persistent
+ * connection is released back to the pool. The evictor keeps track of the
+ * point in time the connection becomes due using a {@link TimingWheel},
+ * so that each tick only touches connections that are actually due instead
+ * of scanning the entire pool.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class IdleConnectionEvictor implements Closeable {
+
+    private static final long DONE = Long.MIN_VALUE;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final PoolingHttpClientConnectionManager connManager;
+    private final long maxIdleTime;
+    private final ConcurrentMap<CPoolEntry, Task> tasks;
+    private final Queue<Task> scheduled;
+    @GuardedBy("this")
+    private final TimingWheel<Task> wheel;
+    private final Thread thread;
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param connManager the connection manager.
+     * @param maxIdleTime maximum time connections may stay idle in the pool.
+     *   A non-positive value means only expired connections are closed.
+     * @param maxIdleTimeUnit the time unit of the maximum idle time.
+     * @param tickTime granularity the evictor checks for due connections at.
+     * @param tickTimeUnit the time unit of the tick.
+     */
+    public IdleConnectionEvictor(
+            final PoolingHttpClientConnectionManager connManager,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit,
+            final long tickTime, final TimeUnit tickTimeUnit) {
+        super();
+        Args.notNull(connManager, "Connection manager");
+        Args.notNull(maxIdleTimeUnit, "Time unit");
+        Args.notNull(tickTimeUnit, "Time unit");
+        final long tick = tickTimeUnit.toMillis(tickTime);
+        Args.positive(tick, "Tick");
+        this.connManager = connManager;
+        this.maxIdleTime = maxIdleTime > 0 ? maxIdleTimeUnit.toMillis(maxIdleTime) : 0;
+        this.tasks = new ConcurrentHashMap<CPoolEntry, Task>();
+        this.scheduled = new ConcurrentLinkedQueue<Task>();
+        this.wheel = new TimingWheel<Task>(tick, 4, System.currentTimeMillis());
+        this.thread = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    while (!shutdown) {
+                        Thread.sleep(tick);
+                        try {
+                            evict(System.currentTimeMillis());
+                        } catch (final RuntimeException ex) {
+                            log.error("Unexpected error evicting connections", ex);
+                        }
+                    }
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+        }, "Connection evictor");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Creates an evictor checking for due connections every second or
+     * more frequently if the maximum idle time is shorter.
+     */
+    public IdleConnectionEvictor(
+            final PoolingHttpClientConnectionManager connManager,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this(connManager, maxIdleTime, maxIdleTimeUnit,
+                getDefaultTick(maxIdleTime, maxIdleTimeUnit), TimeUnit.MILLISECONDS);
+    }
+
+    private static long getDefaultTick(final long maxIdleTime, final TimeUnit tunit) {
+        final long millis = maxIdleTime > 0 && tunit != null ? tunit.toMillis(maxIdleTime) : 0;
+        return millis > 0 ? Math.max(10, Math.min(1000, millis / 4)) : 1000;
+    }
+
+    /**
+     * Starts the background thread and registers the evictor with the
+     * connection manager.
+     */
+    public void start() {
+        this.connManager.setConnectionEvictor(this);
+        this.thread.start();
+    }
+
+    public void shutdown() {
+        this.shutdown = true;
+        this.connManager.removeConnectionEvictor(this);
+        this.thread.interrupt();
+        this.scheduled.clear();
+        this.tasks.clear();
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    public boolean isRunning() {
+        return this.thread.isAlive();
+    }
+
+    public void awaitTermination(final long time, final TimeUnit tunit) throws InterruptedException {
+        this.thread.join(tunit.toMillis(time));
+    }
+
+    private long getDeadline(final CPoolEntry entry) {
+        long deadline = entry.getExpiry();
+        if (this.maxIdleTime > 0) {
+            final long idleDeadline = entry.getUpdated() + this.maxIdleTime;
+            if (idleDeadline < deadline) {
+                deadline = idleDeadline;
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Notifies the evictor that the given persistent connection has been
+     * released back to the pool.
+     */
+    void track(final CPoolEntry entry) {
+        if (this.shutdown) {
+            return;
+        }
+        final long deadline = getDeadline(entry);
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+        for (;;) {
+            Task task = this.tasks.get(entry);
+            if (task == null) {
+                task = new Task(entry, deadline);
+                if (this.tasks.putIfAbsent(entry, task) == null) {
+                    this.scheduled.add(task);
+                    return;
+                }
+                continue;
+            }
+            final long current = task.deadline.get();
+            if (current == DONE) {
+                this.tasks.remove(entry, task);
+                continue;
+            }
+            if (deadline >= current) {
+                // The deadline gets re-evaluated once the scheduled one is up
+                return;
+            }
+            if (task.deadline.compareAndSet(current, deadline)) {
+                this.scheduled.add(task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the connections that have become due by the given time.
+     */
+    synchronized void evict(final long now) {
+        Task task;
+        while ((task = this.scheduled.poll()) != null) {
+            final long deadline = task.deadline.get();
+            if (deadline != DONE) {
+                this.wheel.add(task, deadline);
+            }
+        }
+        final List<TimingWheel.Timeout<Task>> due = this.wheel.advance(now);
+        for (final TimingWheel.Timeout<Task> timeout: due) {
+            task = timeout.getItem();
+            final long deadline = task.deadline.get();
+            if (deadline != timeout.getDeadline()) {
+                // Cancelled or re-scheduled
+                continue;
+            }
+            final CPoolEntry entry = task.entry;
+            final long actual = getDeadline(entry);
+            if (actual > now && actual != Long.MAX_VALUE) {
+                // The connection has been re-used since
+                if (task.deadline.compareAndSet(deadline, actual)) {
+                    this.wheel.add(task, actual);
+                }
+                continue;
+            }
+            if (task.deadline.compareAndSet(deadline, DONE)) {
+                this.tasks.remove(entry, task);
+                if (actual <= now) {
+                    if (this.log.isDebugEnabled()) {
+                        this.log.debug("Closing idle or expired connection [id: " + entry.getId() + "]");
+                    }
+                    this.connManager.closeIfIdle(entry, this.maxIdleTime, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of connections currently tracked.
+     */
+    int getTrackedCount() {
+        return this.tasks.size();
+    }
+
+    static class Task {
+
+        final CPoolEntry entry;
+        final AtomicLong deadline;
+
+        Task(final CPoolEntry entry, final long deadline) {
+            super();
+            this.entry = entry;
+            this.deadline = new AtomicLong(deadline);
+        }
+
+    }
+
+}
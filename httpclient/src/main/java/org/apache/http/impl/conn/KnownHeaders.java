@@ -0,0 +1,141 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.util.Locale;
+
+import org.apache.http.annotation.Immutable;
+
+/**
+ * Static table of header names and values commonly found in responses.
+ * Looking up a character sequence returns the shared string instance,
+ * which saves allocating the same strings for every response.
+ *
+ * @since 4.3
+ */
+@Immutable
+final class KnownHeaders {
+
+    private static final String[] NAMES = {
+        "Accept-Ranges", "Access-Control-Allow-Credentials", "Access-Control-Allow-Headers",
+        "Access-Control-Allow-Methods", "Access-Control-Allow-Origin",
+        "Access-Control-Expose-Headers", "Access-Control-Max-Age", "Age", "Allow",
+        "Alt-Svc", "Cache-Control", "Connection", "Content-Disposition", "Content-Encoding",
+        "Content-Language", "Content-Length", "Content-Location", "Content-MD5",
+        "Content-Range", "Content-Security-Policy", "Content-Type", "Date", "ETag",
+        "Expires", "Keep-Alive", "Last-Modified", "Link", "Location", "P3P", "Pragma",
+        "Proxy-Authenticate", "Proxy-Connection", "Referrer-Policy", "Retry-After", "Server",
+        "Set-Cookie", "Set-Cookie2", "Strict-Transport-Security", "Trailer",
+        "Transfer-Encoding", "Upgrade", "Vary", "Via", "Warning", "WWW-Authenticate",
+        "X-Cache", "X-Content-Type-Options", "X-Frame-Options", "X-Powered-By",
+        "X-RateLimit-Limit", "X-RateLimit-Remaining", "X-RateLimit-Reset",
+        "X-Request-Id", "X-XSS-Protection"
+    };
+
+    private static final String[] VALUES = {
+        "0", "bytes", "chunked", "close", "deflate", "gzip", "identity", "keep-alive",
+        "Keep-Alive", "Close", "no-cache", "no-store", "private", "public", "must-revalidate",
+        "Accept-Encoding", "nosniff", "DENY", "SAMEORIGIN", "*", "Origin", "none",
+        "text/html", "text/plain", "application/json", "application/xml",
+        "text/html; charset=utf-8", "text/html; charset=UTF-8",
+        "application/json; charset=utf-8", "application/json; charset=UTF-8"
+    };
+
+    private static final String[] NAME_TABLE = buildTable(NAMES, true);
+    private static final String[] VALUE_TABLE = buildTable(VALUES, false);
+
+    private KnownHeaders() {
+    }
+
+    private static String[] buildTable(final String[] strings, final boolean lowerCase) {
+        final String[] table = new String[256];
+        for (final String s: strings) {
+            put(table, s);
+            if (lowerCase) {
+                put(table, s.toLowerCase(Locale.US));
+            }
+        }
+        return table;
+    }
+
+    private static void put(final String[] table, final String s) {
+        final int mask = table.length - 1;
+        int i = s.hashCode() & mask;
+        while (table[i] != null) {
+            if (table[i].equals(s)) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = s;
+    }
+
+    private static String lookup(
+            final String[] table, final char[] chars, final int off, final int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + chars[i];
+        }
+        final int mask = table.length - 1;
+        for (int i = h & mask; table[i] != null; i = (i + 1) & mask) {
+            final String s = table[i];
+            if (s.length() == len && matches(s, chars, off)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(final String s, final char[] chars, final int off) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != chars[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the header name represented by the given characters, the shared
+     * instance if it is a well-known name.
+     */
+    static String name(final char[] chars, final int off, final int len) {
+        final String s = lookup(NAME_TABLE, chars, off, len);
+        return s != null ? s : new String(chars, off, len);
+    }
+
+    /**
+     * Returns the header value represented by the given characters, the shared
+     * instance if it is a common value.
+     */
+    static String value(final char[] chars, final int off, final int len) {
+        final String s = lookup(VALUE_TABLE, chars, off, len);
+        return s != null ? s : new String(chars, off, len);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.ParseException;
+import org.apache.http.annotation.Immutable;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHeaderValueParser;
+import org.apache.http.message.BasicLineFormatter;
+
+/**
+ * Header backed by the characters of a response head shared by all its
+ * headers. The value string is only created when first requested and
+ * header elements are only parsed when requested.
+ *
+ * @since 4.3
+ */
+@Immutable // value is cached on first access
+class LazyHeader implements Header, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 4117392880556227519L;
+
+    private final String name;
+    private final char[] chars;
+    private final int valueOff;
+    private final int valueLen;
+
+    private String value;
+
+    LazyHeader(final String name, final char[] chars, final int valueOff, final int valueLen) {
+        super();
+        this.name = name;
+        this.chars = chars;
+        this.valueOff = valueOff;
+        this.valueLen = valueLen;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getValue() {
+        String s = this.value;
+        if (s == null) {
+            s = KnownHeaders.value(this.chars, this.valueOff, this.valueLen);
+            this.value = s;
+        }
+        return s;
+    }
+
+    public HeaderElement[] getElements() throws ParseException {
+        return BasicHeaderValueParser.parseElements(getValue(), null);
+    }
+
+    @Override
+    public String toString() {
+        return BasicLineFormatter.INSTANCE.formatHeader(null, this).toString();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        return super.clone();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new BasicHeader(this.name, getValue());
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPool;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * Connection pool operations {@link PoolingHttpClientConnectionManager}
+ * relies upon.
+ *
+ * @since 4.3
+ */
+interface ManagedConnPool extends ConnPool<HttpRoute, CPoolEntry>, ConnPoolControl<HttpRoute> {
+
+    /**
+     * Attempts to lease a connection for the given route. Should the route
+     * be saturated requests of a higher priority are served first.
+     */
+    Future<CPoolEntry> lease(
+            HttpRoute route, Object state, int priority, FutureCallback<CPoolEntry> callback);
+
+    void closeIdle(long idletime, TimeUnit tunit);
+
+    void closeExpired();
+
+    /**
+     * Closes the given connection if it is available in the pool and has
+     * either expired or been idle for longer than the given time. A
+     * non-positive idle time means only connection expiry is considered.
+     */
+    void closeIfIdle(CPoolEntry entry, long idletime, TimeUnit tunit);
+
+    /**
+     * Discards the state kept for routes that have had no leased, available
+     * or pending connections for longer than the given time.
+     */
+    void purgeIdleRoutes(long idletime, TimeUnit tunit);
+
+    void shutdown() throws IOException;
+
+}
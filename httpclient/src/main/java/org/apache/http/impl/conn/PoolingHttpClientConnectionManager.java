@@ -30,12 +30,16 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -50,8 +54,8 @@ import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.DnsResolver;
-import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.PrioritizedConnectionManager;
 import org.apache.http.conn.SchemePortResolver;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.routing.HttpRoute;
@@ -61,6 +65,7 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.pool.ConnFactory;
 import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.Args;
 import org.apache.http.util.Asserts;
@@ -80,18 +85,61 @@ import org.apache.http.util.Asserts;
  * these limits may prove too constraining, especially if they use HTTP
  * as a transport protocol for their services. Connection limits, however,
  * can be adjusted using {@link ConnPoolControl} methods.
+ * <p/>
+ * Per default all pool operations are serialized by a single pool-wide lock.
+ * Applications that execute requests from many threads against many routes
+ * can reduce lock contention by choosing {@link PoolConcurrencyPolicy#STRIPED},
+ * which guards each route with a lock of its own.
+ * <p/>
+ * Idle connections are re-used in LIFO order by default, which keeps a small
+ * set of hot connections busy. {@link PoolReusePolicy#FIFO} spreads requests
+ * evenly over all pooled connections instead. Reuse policies other than LIFO
+ * are only supported by the {@link PoolConcurrencyPolicy#STRIPED} pool.
+ * <p/>
+ * Applications talking to a great number of distinct hosts should use
+ * {@link #setMaxRouteIdleTime(long, TimeUnit)} in order to discard the pool
+ * state kept for routes that are no longer in use.
+ * <p/>
+ * Connections opened in a burst would all reach the end of their time to
+ * live at the same time. {@link #setTimeToLiveJitter(double)} spreads their
+ * expiry and {@link #setDrainPeriod(long, TimeUnit)} makes the manager retire
+ * connections gradually ahead of their expiry and replace them in
+ * the background.
+ * <p/>
+ * Per default new connections are established by the requesting thread once
+ * it has been allocated a connection slot, even if another connection of
+ * the route gets released right afterwards. With
+ * {@link #setConnectorThreads(int)} new connections are established by
+ * connector threads in the background instead and the requesting thread is
+ * handed whichever connection becomes available first. Connections
+ * established that way are not affected by the execution context of
+ * the request and tunnelled routes are always connected by the requesting
+ * thread.
  *
  * @since 4.3
  */
 @ThreadSafe
 public class PoolingHttpClientConnectionManager
-    implements HttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
+    implements PrioritizedConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
 
     private final Log log = LogFactory.getLog(getClass());
 
     private final ConfigData configData;
-    private final CPool pool;
+    private final ManagedConnPool pool;
     private final HttpClientConnectionOperator connectionOperator;
+    private final ConnPoolMetrics metrics;
+
+    private volatile IdleConnectionEvictor connectionEvictor;
+    private final ConnectionPrewarmer prewarmer;
+    private final BackgroundConnector connector;
+    private volatile int validateAfterInactivity;
+    private volatile long maxRouteIdleTime;
+    private volatile double timeToLiveJitter;
+    private volatile long drainPeriod;
+    private final Random random = new Random();
+    private final ConcurrentMap<HttpRoute, AtomicLong> drainTimes =
+            new ConcurrentHashMap<HttpRoute, AtomicLong>();
+    private final AtomicLong lastRoutePurge = new AtomicLong();
 
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
         return RegistryBuilder.<ConnectionSocketFactory>create()
@@ -143,16 +191,58 @@ public class PoolingHttpClientConnectionManager
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver,
             final long timeToLive, final TimeUnit tunit) {
+        this(socketFactoryRegistry, connFactory, schemePortResolver, dnsResolver,
+                timeToLive, tunit, PoolConcurrencyPolicy.STRICT);
+    }
+
+    public PoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<SocketClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final long timeToLive, final TimeUnit tunit,
+            final PoolConcurrencyPolicy concurrencyPolicy) {
+        this(socketFactoryRegistry, connFactory, schemePortResolver, dnsResolver,
+                timeToLive, tunit, concurrencyPolicy, PoolReusePolicy.LIFO);
+    }
+
+    /**
+     * @param concurrencyPolicy the pool locking policy. If <code>null</code>
+     *   {@link PoolConcurrencyPolicy#STRICT} is used for LIFO reuse and
+     *   {@link PoolConcurrencyPolicy#STRIPED} otherwise.
+     * @param reusePolicy the order idle connections are re-used in.
+     *   If <code>null</code> {@link PoolReusePolicy#LIFO} is used.
+     */
+    public PoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<SocketClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final long timeToLive, final TimeUnit tunit,
+            final PoolConcurrencyPolicy concurrencyPolicy,
+            final PoolReusePolicy reusePolicy) {
         super();
+        final PoolReusePolicy reuse = reusePolicy != null ? reusePolicy : PoolReusePolicy.LIFO;
+        Args.check(concurrencyPolicy != PoolConcurrencyPolicy.STRICT
+                || reuse == PoolReusePolicy.LIFO,
+                "Strict pool concurrency policy supports LIFO connection reuse only");
         this.configData = new ConfigData();
-        this.pool = new CPool(
-                new InternalConnectionFactory(this.configData, connFactory), 2, 20, timeToLive, tunit);
+        final InternalConnectionFactory internalConnFactory = new InternalConnectionFactory(
+                this.configData, connFactory);
+        if (concurrencyPolicy == PoolConcurrencyPolicy.STRIPED || reuse != PoolReusePolicy.LIFO) {
+            this.pool = new StripedCPool(internalConnFactory, 2, 20, timeToLive, tunit, reuse);
+        } else {
+            this.pool = new CPool(internalConnFactory, 2, 20, timeToLive, tunit);
+        }
         this.connectionOperator = new HttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
+        this.metrics = new ConnPoolMetrics();
+        this.prewarmer = new ConnectionPrewarmer(this, this.pool);
+        this.connector = new BackgroundConnector(this);
     }
 
     PoolingHttpClientConnectionManager(
-            final CPool pool,
+            final ManagedConnPool pool,
             final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver) {
@@ -161,6 +251,9 @@ public class PoolingHttpClientConnectionManager
         this.pool = pool;
         this.connectionOperator = new HttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
+        this.metrics = new ConnPoolMetrics();
+        this.prewarmer = new ConnectionPrewarmer(this, this.pool);
+        this.connector = new BackgroundConnector(this);
     }
 
     @Override
@@ -211,21 +304,74 @@ public class PoolingHttpClientConnectionManager
     public ConnectionRequest requestConnection(
             final HttpRoute route,
             final Object state) {
+        return requestConnection(route, state, 0);
+    }
+
+    /**
+     * Requests a connection for the given route. Should the route be
+     * saturated, requests of a higher priority are served first and requests
+     * of equal priority in the order of their deadline. Priorities are only
+     * supported by the {@link PoolConcurrencyPolicy#STRIPED} pool.
+     * <p/>
+     * With debug logging off, leasing a connection and releasing it again
+     * allocates the returned request, the pending lease of the pool and the
+     * connection handed out. The {@link PoolConcurrencyPolicy#STRIPED} pool
+     * allocates nothing beyond that; the {@link PoolConcurrencyPolicy#STRICT}
+     * pool also allocates its bookkeeping nodes.
+     *
+     * @see org.apache.http.client.config.RequestConfig#getPriority()
+     */
+    public ConnectionRequest requestConnection(
+            final HttpRoute route,
+            final Object state,
+            final int priority) {
         Args.notNull(route, "HTTP route");
         if (this.log.isDebugEnabled()) {
             this.log.debug("Connection request: " + format(route, state) + formatStats(route));
         }
-        final Future<CPoolEntry> future = this.pool.lease(route, state, null);
+        purgeIdleRoutes();
+        final Future<CPoolEntry> future = priority != 0 ?
+                this.pool.lease(route, state, priority, null) :
+                this.pool.lease(route, state, null);
         return new ConnectionRequest() {
 
+            private volatile boolean cancelled;
+            private volatile Future<CPoolEntry> pending;
+
             public boolean cancel() {
+                this.cancelled = true;
+                final Future<CPoolEntry> connect = this.pending;
+                if (connect != null) {
+                    connect.cancel(true);
+                }
                 return future.cancel(true);
             }
 
             public HttpClientConnection get(
                     final long timeout,
                     final TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
-                return leaseConnection(future, timeout, tunit);
+                try {
+                    final long start = System.currentTimeMillis();
+                    final HttpClientConnection conn = leaseConnection(future, timeout, tunit);
+                    if (conn.isOpen() || route.isTunnelled() || !connector.isEnabled()) {
+                        return conn;
+                    }
+                    final Future<CPoolEntry> connect = connector.connect(
+                            CPoolProxy.detach(conn), state);
+                    this.pending = connect;
+                    if (this.cancelled) {
+                        connect.cancel(true);
+                    }
+                    long remaining = 0;
+                    if (timeout > 0) {
+                        final long elapsed = System.currentTimeMillis() - start;
+                        remaining = Math.max(tunit.toMillis(timeout) - elapsed, 1);
+                    }
+                    return awaitConnection(connect, remaining);
+                } catch (final ConnectionPoolTimeoutException ex) {
+                    metrics.getRecorder(route).leaseTimedOut();
+                    throw ex;
+                }
             }
 
         };
@@ -236,6 +382,7 @@ public class PoolingHttpClientConnectionManager
             final Future<CPoolEntry> future,
             final long timeout,
             final TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
+        final long start = System.nanoTime();
         CPoolEntry entry;
         try {
             entry = future.get(timeout, tunit);
@@ -243,6 +390,9 @@ public class PoolingHttpClientConnectionManager
                 throw new InterruptedException();
             }
             Asserts.check(entry.getConnection() != null, "Pool entry with no connection");
+            validate(entry);
+            final boolean reused = entry.getRecorder() != null && entry.getConnection().isOpen();
+            getRecorder(entry).leased(System.nanoTime() - start, reused);
             if (this.log.isDebugEnabled()) {
                 this.log.debug("Connection leased: " + format(entry) + formatStats(entry.getRoute()));
             }
@@ -260,36 +410,144 @@ public class PoolingHttpClientConnectionManager
         }
     }
 
+    private HttpClientConnection awaitConnection(
+            final Future<CPoolEntry> connect,
+            final long timeout) throws InterruptedException, ConnectionPoolTimeoutException {
+        final CPoolEntry entry;
+        try {
+            entry = this.connector.await(connect, timeout);
+        } catch (final TimeoutException ex) {
+            throw new ConnectionPoolTimeoutException("Timeout waiting for connection");
+        }
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Connection " + (entry.getConnection().isOpen() ? "ready: " : "failed: ")
+                    + format(entry) + formatStats(entry.getRoute()));
+        }
+        return CPoolProxy.newProxy(entry);
+    }
+
+    private ConnPoolMetrics.Recorder getRecorder(final CPoolEntry entry) {
+        ConnPoolMetrics.Recorder recorder = entry.getRecorder();
+        if (recorder == null) {
+            recorder = this.metrics.getRecorder(entry.getRoute());
+            recorder.created();
+            entry.setRecorder(recorder);
+        }
+        return recorder;
+    }
+
+    private long getRetireTime(final CPoolEntry entry) {
+        long retireTime = entry.getRetireTime();
+        if (retireTime == 0) {
+            retireTime = entry.getValidUnit();
+            final double jitter = this.timeToLiveJitter;
+            if (jitter > 0 && retireTime != Long.MAX_VALUE) {
+                final long ttl = retireTime - entry.getCreated();
+                retireTime -= (long) (ttl * jitter * this.random.nextDouble());
+            }
+            entry.setRetireTime(retireTime);
+        }
+        return retireTime;
+    }
+
+    /**
+     * Determines whether a connection about to be released should rather be
+     * retired. Connections within the drain period ahead of their retirement
+     * time are retired one at a time, spaced out evenly enough for all
+     * connections of the route to be replaced within the drain period.
+     */
+    private boolean shouldDrain(final CPoolEntry entry, final long now) {
+        final long remaining = getRetireTime(entry) - now;
+        if (remaining <= 0) {
+            return true;
+        }
+        final long period = this.drainPeriod;
+        if (remaining >= period) {
+            return false;
+        }
+        final HttpRoute route = entry.getRoute();
+        final PoolStats stats = this.pool.getStats(route);
+        final long spacing = period / Math.max(stats.getLeased() + stats.getAvailable(), 1);
+        AtomicLong lastDrained = this.drainTimes.get(route);
+        if (lastDrained == null) {
+            final AtomicLong newLastDrained = new AtomicLong();
+            lastDrained = this.drainTimes.putIfAbsent(route, newLastDrained);
+            if (lastDrained == null) {
+                lastDrained = newLastDrained;
+            }
+        }
+        final long last = lastDrained.get();
+        return now - last >= spacing && lastDrained.compareAndSet(last, now);
+    }
+
+    private void validate(final CPoolEntry entry) {
+        final int inactivity = this.validateAfterInactivity;
+        if (inactivity <= 0 || entry.getLastUsed() + inactivity > System.currentTimeMillis()) {
+            return;
+        }
+        final SocketClientConnection conn = entry.getConnection();
+        if (conn.isOpen() && conn.isStale()) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Connection " + format(entry) + " is stale");
+            }
+            entry.close();
+        }
+    }
+
     public void releaseConnection(
             final HttpClientConnection managedConn,
             final Object state,
             final long keepalive, final TimeUnit tunit) {
         Args.notNull(managedConn, "Managed connection");
-        synchronized (managedConn) {
-            final CPoolEntry entry = CPoolProxy.detach(managedConn);
-            if (entry == null) {
-                return;
+        // Detaching is atomic, so the entry is released at most once even if
+        // released concurrently. No monitor is held while closing connections.
+        final CPoolEntry entry = CPoolProxy.detach(managedConn);
+        if (entry == null) {
+            return;
+        }
+        final SocketClientConnection conn = entry.getConnection();
+        boolean drained = false;
+        try {
+            if (conn.isOpen() && shouldDrain(entry, System.currentTimeMillis())) {
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("Connection " + format(entry) + " retired");
+                }
+                entry.close();
+                drained = true;
             }
-            final SocketClientConnection conn = entry.getConnection();
-            try {
-                if (conn.isOpen()) {
-                    entry.setState(state);
-                    entry.updateExpiry(keepalive, tunit != null ? tunit : TimeUnit.MILLISECONDS);
-                    if (this.log.isDebugEnabled()) {
-                        String s;
-                        if (keepalive > 0) {
-                            s = "for " + (double) keepalive / 1000 + " seconds";
-                        } else {
-                            s = "indefinitely";
-                        }
-                        this.log.debug("Connection " + format(entry) + " can be kept alive " + s);
+            if (conn.isOpen()) {
+                entry.setState(state);
+                entry.updateExpiry(keepalive, tunit != null ? tunit : TimeUnit.MILLISECONDS);
+                entry.updateLastUsed(System.currentTimeMillis());
+                if (this.log.isDebugEnabled()) {
+                    String s;
+                    if (keepalive > 0) {
+                        s = "for " + (double) keepalive / 1000 + " seconds";
+                    } else {
+                        s = "indefinitely";
                     }
+                    this.log.debug("Connection " + format(entry) + " can be kept alive " + s);
                 }
-            } finally {
-                this.pool.release(entry, conn.isOpen());
+            }
+        } finally {
+            final boolean reusable = conn.isOpen();
+            releaseBuffers(conn);
+            if (reusable && this.connector.handOver(entry)) {
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("Connection handed over: " + format(entry));
+                }
+            } else {
+                this.pool.release(entry, reusable);
                 if (this.log.isDebugEnabled()) {
                     this.log.debug("Connection released: " + format(entry) + formatStats(entry.getRoute()));
                 }
+                final IdleConnectionEvictor evictor = this.connectionEvictor;
+                if (evictor != null && reusable) {
+                    evictor.track(entry);
+                }
+            }
+            if (drained && this.drainPeriod > 0) {
+                this.prewarmer.replace(entry.getRoute());
             }
         }
     }
@@ -301,11 +559,19 @@ public class PoolingHttpClientConnectionManager
             final int connectTimeout,
             final HttpContext context) throws IOException {
         Args.notNull(managedConn, "Connection");
-        SocketClientConnection conn;
-        synchronized (managedConn) {
-            final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
-            conn = entry.getConnection();
+        final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
+        final SocketClientConnection conn = entry.getConnection();
+        final IOException failure = entry.takeConnectFailure();
+        if (failure != null) {
+            // the connection has already been attempted in the background
+            throw failure;
         }
+        final InetSocketAddress localAddress = local != null ? new InetSocketAddress(local, 0) : null;
+        this.connectionOperator.connect(
+                conn, host, localAddress, connectTimeout, resolveSocketConfig(host), context);
+    }
+
+    private SocketConfig resolveSocketConfig(final HttpHost host) {
         SocketConfig socketConfig = this.configData.getSocketConfig(host);
         if (socketConfig == null) {
             socketConfig = this.configData.getDefaultSocketConfig();
@@ -313,9 +579,7 @@ public class PoolingHttpClientConnectionManager
         if (socketConfig == null) {
             socketConfig = SocketConfig.DEFAULT;
         }
-        final InetSocketAddress localAddress = local != null ? new InetSocketAddress(local, 0) : null;
-        this.connectionOperator.connect(
-                conn, host, localAddress, connectTimeout, socketConfig, context);
+        return socketConfig;
     }
 
     public void upgrade(
@@ -323,16 +587,96 @@ public class PoolingHttpClientConnectionManager
             final HttpHost host,
             final HttpContext context) throws IOException {
         Args.notNull(managedConn, "Connection");
-        SocketClientConnection conn;
-        synchronized (managedConn) {
-            final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
-            conn = entry.getConnection();
+        final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
+        this.connectionOperator.upgrade(entry.getConnection(), host, context);
+    }
+
+    /**
+     * Opens connections to the given route ahead of demand so that
+     * subsequent requests do not have to pay for connection set up. Missing
+     * connections are connected in parallel, including the TLS handshake of
+     * secure routes. Tunnelled routes are not supported.
+     *
+     * @param route the route.
+     * @param count the number of established connections the pool should
+     *   keep available for the route, within the pool limits.
+     * @return the number of connections opened.
+     */
+    public int prewarm(final HttpRoute route, final int count) throws InterruptedException {
+        return prewarm(route, count, 0);
+    }
+
+    /**
+     * @see #prewarm(HttpRoute, int)
+     */
+    public int prewarm(
+            final HttpRoute route,
+            final int count,
+            final int connectTimeout) throws InterruptedException {
+        return this.prewarmer.prewarm(route, count, connectTimeout);
+    }
+
+    /**
+     * Sets the minimum number of idle connections the connection manager
+     * keeps established for the given route. Connections are topped up in
+     * the background. Zero disables idle connection maintenance for the route.
+     */
+    public void setMinIdlePerRoute(final HttpRoute route, final int minIdle) {
+        this.prewarmer.setMinIdle(route, minIdle);
+    }
+
+    public int getMinIdlePerRoute(final HttpRoute route) {
+        return this.prewarmer.getMinIdle(route);
+    }
+
+    /**
+     * Connects the connection of a pooled entry to the first hop of its
+     * route and layers TLS on top if required.
+     */
+    void establishRoute(final CPoolEntry entry, final int connectTimeout) throws IOException {
+        final HttpRoute route = entry.getRoute();
+        final HttpHost host = route.getProxyHost() != null ? route.getProxyHost() : route.getTargetHost();
+        final InetAddress local = route.getLocalAddress();
+        final InetSocketAddress localAddress = local != null ? new InetSocketAddress(local, 0) : null;
+        final HttpContext context = new BasicHttpContext();
+        this.connectionOperator.connect(entry.getConnection(), host, localAddress,
+                connectTimeout, resolveSocketConfig(host), context);
+        if (route.isLayered()) {
+            this.connectionOperator.upgrade(entry.getConnection(), route.getTargetHost(), context);
+        }
+    }
+
+    /**
+     * Gives session buffers borrowed by the connection back to the buffer pool
+     * before the connection goes idle.
+     */
+    private static void releaseBuffers(final SocketClientConnection conn) {
+        if (conn instanceof SocketClientConnectionImpl) {
+            ((SocketClientConnectionImpl) conn).releaseBuffers();
+        }
+    }
+
+    /**
+     * Releases a pooled entry the manager has leased for its own purposes.
+     */
+    void releaseEntry(final CPoolEntry entry, final boolean reusable) {
+        getRecorder(entry);
+        if (reusable) {
+            entry.updateExpiry(-1, TimeUnit.MILLISECONDS);
+            entry.updateLastUsed(System.currentTimeMillis());
+        }
+        releaseBuffers(entry.getConnection());
+        this.pool.release(entry, reusable);
+        final IdleConnectionEvictor evictor = this.connectionEvictor;
+        if (evictor != null && reusable) {
+            evictor.track(entry);
         }
-        this.connectionOperator.upgrade(conn, host, context);
     }
 
     public void shutdown() {
         this.log.debug("Connection manager is shutting down");
+        this.prewarmer.shutdown();
+        this.connector.shutdown();
         try {
             this.pool.shutdown();
         } catch (final IOException ex) {
@@ -346,11 +690,199 @@ public class PoolingHttpClientConnectionManager
             this.log.debug("Closing connections idle longer than " + idleTimeout + " " + tunit);
         }
         this.pool.closeIdle(idleTimeout, tunit);
+        purgeIdleRoutes();
     }
 
     public void closeExpiredConnections() {
         this.log.debug("Closing expired connections");
         this.pool.closeExpired();
+        purgeIdleRoutes();
+    }
+
+    /**
+     * Discards pool state and statistics of idle routes at most once per
+     * route idle period.
+     */
+    private void purgeIdleRoutes() {
+        final long idleTime = this.maxRouteIdleTime;
+        if (idleTime <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long last = this.lastRoutePurge.get();
+        if (now - last < idleTime || !this.lastRoutePurge.compareAndSet(last, now)) {
+            return;
+        }
+        this.pool.purgeIdleRoutes(idleTime, TimeUnit.MILLISECONDS);
+        this.metrics.purgeIdle(this.pool, now - idleTime);
+        final Iterator<AtomicLong> it = this.drainTimes.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().get() < now - idleTime) {
+                it.remove();
+            }
+        }
+    }
+
+    public double getTimeToLiveJitter() {
+        return this.timeToLiveJitter;
+    }
+
+    /**
+     * Defines the fraction of the connection time to live by which
+     * the lifetime of individual connections is randomly shortened, so that
+     * connections opened at the same time do not expire all at once.
+     * The value must be in the range between <code>0</code> (no jitter, the
+     * default) and <code>1</code>. Only connections opened after the change
+     * are affected.
+     */
+    public void setTimeToLiveJitter(final double jitter) {
+        Args.check(jitter >= 0 && jitter <= 1, "Time to live jitter must be between 0 and 1");
+        this.timeToLiveJitter = jitter;
+    }
+
+    /**
+     * Returns the drain period in milliseconds.
+     *
+     * @see #setDrainPeriod(long, TimeUnit)
+     */
+    public long getDrainPeriod() {
+        return this.drainPeriod;
+    }
+
+    /**
+     * Defines the period ahead of the end of their lifetime during which
+     * connections get retired gradually upon release instead of all at
+     * once when they expire. Retired connections are replaced in
+     * the background. A non-positive value disables draining.
+     */
+    public void setDrainPeriod(final long period, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        this.drainPeriod = tunit.toMillis(period);
+    }
+
+    /**
+     * Returns the time in milliseconds after which the state kept for
+     * an idle route is discarded.
+     *
+     * @see #setMaxRouteIdleTime(long, TimeUnit)
+     */
+    public long getMaxRouteIdleTime() {
+        return this.maxRouteIdleTime;
+    }
+
+    /**
+     * Defines the time after which the state kept for a route that has had
+     * no leased, available or pending connections is discarded, including
+     * the route's {@link RouteMetrics}. Idle routes are purged while
+     * connections are requested or idle connections get closed.
+     * A non-positive value disables purging of idle routes.
+     * <p/>
+     * Only the {@link PoolConcurrencyPolicy#STRIPED} pool discards route
+     * state; the strict pool keeps it for its lifetime.
+     */
+    public void setMaxRouteIdleTime(final long time, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        this.maxRouteIdleTime = tunit.toMillis(time);
+    }
+
+    /**
+     * Returns the connect stagger delay in milliseconds.
+     *
+     * @see #setConnectStaggerDelay(long, TimeUnit)
+     */
+    public long getConnectStaggerDelay() {
+        return this.connectionOperator.getConnectStaggerDelay();
+    }
+
+    /**
+     * Defines the delay after which a connection attempt to the next address
+     * of a host that resolves to several addresses is started while
+     * the previous attempt is still in progress. The first socket that
+     * connects is used and all others get closed, so that an unreachable
+     * address no longer costs the full connect timeout. A non-positive
+     * value disables racing and addresses are tried one after another.
+     */
+    public void setConnectStaggerDelay(final long delay, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        this.connectionOperator.setConnectStaggerDelay((int) Math.min(
+                tunit.toMillis(delay), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Returns the number of threads establishing new connections in
+     * the background.
+     *
+     * @see #setConnectorThreads(int)
+     */
+    public int getConnectorThreads() {
+        return this.connector.getThreads();
+    }
+
+    /**
+     * Defines the number of threads establishing new connections in
+     * the background. While a new connection is being established,
+     * the requesting thread takes over the first connection of the route
+     * another thread releases, if any. Connections nobody claims once
+     * established are returned to the pool. Zero, the default, makes
+     * requesting threads establish new connections themselves.
+     */
+    public void setConnectorThreads(final int threads) {
+        this.connector.setThreads(threads);
+    }
+
+    /**
+     * Returns the connect timeout in milliseconds applied to connections
+     * established in the background.
+     *
+     * @see #setConnectorConnectTimeout(int)
+     */
+    public int getConnectorConnectTimeout() {
+        return this.connector.getConnectTimeout();
+    }
+
+    /**
+     * Defines the connect timeout in milliseconds applied to connections
+     * established by connector threads. Zero, the default, means no timeout.
+     *
+     * @see #setConnectorThreads(int)
+     */
+    public void setConnectorConnectTimeout(final int connectTimeout) {
+        this.connector.setConnectTimeout(connectTimeout);
+    }
+
+    /**
+     * Returns the period of inactivity in milliseconds after which persistent
+     * connections are re-validated prior to being leased.
+     *
+     * @see #setValidateAfterInactivity(int)
+     */
+    public int getValidateAfterInactivity() {
+        return this.validateAfterInactivity;
+    }
+
+    /**
+     * Defines the period of inactivity in milliseconds after which persistent
+     * connections must be re-validated prior to being leased. Connections
+     * re-used within this period are not checked for staleness, which
+     * saves a blocking read per request. A non-positive value disables
+     * connection validation by the connection manager.
+     */
+    public void setValidateAfterInactivity(final int ms) {
+        this.validateAfterInactivity = ms;
+    }
+
+    synchronized void setConnectionEvictor(final IdleConnectionEvictor connectionEvictor) {
+        this.connectionEvictor = connectionEvictor;
+    }
+
+    synchronized void removeConnectionEvictor(final IdleConnectionEvictor connectionEvictor) {
+        if (this.connectionEvictor == connectionEvictor) {
+            this.connectionEvictor = null;
+        }
+    }
+
+    void closeIfIdle(final CPoolEntry entry, final long idleTimeout, final TimeUnit tunit) {
+        this.pool.closeIfIdle(entry, idleTimeout, tunit);
     }
 
     public int getMaxTotal() {
@@ -385,6 +917,31 @@ public class PoolingHttpClientConnectionManager
         return this.pool.getStats(route);
     }
 
+    /**
+     * Returns a snapshot of the usage statistics recorded for the given route.
+     * Taking a snapshot does not lock the pool.
+     */
+    public RouteMetrics getMetrics(final HttpRoute route) {
+        Args.notNull(route, "HTTP route");
+        return this.metrics.getMetrics(route);
+    }
+
+    /**
+     * Returns snapshots of the usage statistics of all routes seen so far.
+     * Taking a snapshot does not lock the pool.
+     */
+    public Map<HttpRoute, RouteMetrics> getMetrics() {
+        return this.metrics.getMetrics();
+    }
+
+    /**
+     * Returns a snapshot of the usage statistics summed over all routes.
+     * Taking a snapshot does not lock the pool.
+     */
+    public RouteMetrics getTotalMetrics() {
+        return this.metrics.getTotalMetrics();
+    }
+
     public SocketConfig getDefaultSocketConfig() {
         return this.configData.getDefaultSocketConfig();
     }
@@ -0,0 +1,221 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import org.apache.http.annotation.Immutable;
+
+/**
+ * Snapshot of connection pool usage statistics of a route or of the pool
+ * as a whole, as recorded by {@link PoolingHttpClientConnectionManager}.
+ * <p/>
+ * Lease wait times are kept in a histogram of exponentially growing
+ * buckets. Bucket <tt>0</tt> counts waits shorter than one microsecond,
+ * bucket <tt>i</tt> counts waits of at least <tt>2^(i-1)</tt> and less than
+ * <tt>2^i</tt> microseconds.
+ *
+ * @since 4.3
+ */
+@Immutable
+public final class RouteMetrics {
+
+    static final int BUCKETS = 40;
+
+    private final long leaseCount;
+    private final long reusedCount;
+    private final long leaseTimeoutCount;
+    private final long createdCount;
+    private final long closedCount;
+    private final long expiredCount;
+    private final long totalLeaseWait;
+    private final long[] leaseWaitHistogram;
+
+    RouteMetrics(
+            final long leaseCount,
+            final long reusedCount,
+            final long leaseTimeoutCount,
+            final long createdCount,
+            final long closedCount,
+            final long expiredCount,
+            final long totalLeaseWait,
+            final long[] leaseWaitHistogram) {
+        super();
+        this.leaseCount = leaseCount;
+        this.reusedCount = reusedCount;
+        this.leaseTimeoutCount = leaseTimeoutCount;
+        this.createdCount = createdCount;
+        this.closedCount = closedCount;
+        this.expiredCount = expiredCount;
+        this.totalLeaseWait = totalLeaseWait;
+        this.leaseWaitHistogram = leaseWaitHistogram;
+    }
+
+    /**
+     * Returns the number of successful connection leases.
+     */
+    public long getLeaseCount() {
+        return this.leaseCount;
+    }
+
+    /**
+     * Returns the number of leases served with an already open connection.
+     */
+    public long getReusedCount() {
+        return this.reusedCount;
+    }
+
+    /**
+     * Returns the fraction of leases served with an already open connection.
+     */
+    public double getReuseRatio() {
+        return this.leaseCount > 0 ? (double) this.reusedCount / this.leaseCount : 0;
+    }
+
+    /**
+     * Returns the number of lease requests that timed out waiting for
+     * a connection.
+     */
+    public long getLeaseTimeoutCount() {
+        return this.leaseTimeoutCount;
+    }
+
+    /**
+     * Returns the number of connections allocated by the pool.
+     */
+    public long getCreatedCount() {
+        return this.createdCount;
+    }
+
+    /**
+     * Returns the number of pooled connections closed, including expired ones.
+     */
+    public long getClosedCount() {
+        return this.closedCount;
+    }
+
+    /**
+     * Returns the number of pooled connections closed because they expired.
+     */
+    public long getExpiredCount() {
+        return this.expiredCount;
+    }
+
+    /**
+     * Returns the mean time in microseconds spent waiting for a connection.
+     */
+    public double getMeanLeaseWait() {
+        return this.leaseCount > 0 ? (double) this.totalLeaseWait / this.leaseCount : 0;
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the histogram bucket
+     * holding the given percentile of lease wait times.
+     *
+     * @param percentile percentile in the range between 0 and 100.
+     */
+    public long getLeaseWaitPercentile(final double percentile) {
+        long total = 0;
+        for (final long count: this.leaseWaitHistogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final double threshold = total * Math.min(Math.max(percentile, 0), 100) / 100;
+        long sum = 0;
+        for (int i = 0; i < this.leaseWaitHistogram.length; i++) {
+            sum += this.leaseWaitHistogram[i];
+            if (sum >= threshold && sum > 0) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(this.leaseWaitHistogram.length - 1);
+    }
+
+    /**
+     * Returns a copy of the lease wait time histogram.
+     */
+    public long[] getLeaseWaitHistogram() {
+        final long[] copy = new long[this.leaseWaitHistogram.length];
+        System.arraycopy(this.leaseWaitHistogram, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Returns the exclusive upper bound in microseconds of the given
+     * histogram bucket.
+     */
+    public static long getBucketUpperBound(final int bucket) {
+        return 1L << bucket;
+    }
+
+    static int getBucket(final long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    RouteMetrics merge(final RouteMetrics other) {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = this.leaseWaitHistogram[i] + other.leaseWaitHistogram[i];
+        }
+        return new RouteMetrics(
+                this.leaseCount + other.leaseCount,
+                this.reusedCount + other.reusedCount,
+                this.leaseTimeoutCount + other.leaseTimeoutCount,
+                this.createdCount + other.createdCount,
+                this.closedCount + other.closedCount,
+                this.expiredCount + other.expiredCount,
+                this.totalLeaseWait + other.totalLeaseWait,
+                histogram);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[leased: ");
+        buffer.append(this.leaseCount);
+        buffer.append("; reused: ");
+        buffer.append(this.reusedCount);
+        buffer.append("; timed out: ");
+        buffer.append(this.leaseTimeoutCount);
+        buffer.append("; created: ");
+        buffer.append(this.createdCount);
+        buffer.append("; closed: ");
+        buffer.append(this.closedCount);
+        buffer.append("; expired: ");
+        buffer.append(this.expiredCount);
+        buffer.append("; mean wait: ");
+        buffer.append(Math.round(getMeanLeaseWait()));
+        buffer.append("us; p99 wait: ");
+        buffer.append(getLeaseWaitPercentile(99));
+        buffer.append("us]");
+        return buffer.toString();
+    }
+
+}
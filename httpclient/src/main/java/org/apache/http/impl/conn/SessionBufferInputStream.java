@@ -0,0 +1,125 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.annotation.NotThreadSafe;
+
+/**
+ * Input stream buffering socket reads in a buffer borrowed from
+ * a {@link SessionBufferPool}. The buffer is borrowed on the first read and
+ * can be given back with {@link #releaseBuffer()} once fully consumed.
+ *
+ * @since 4.3
+ */
+@NotThreadSafe
+class SessionBufferInputStream extends InputStream {
+
+    private final InputStream in;
+    private final SessionBufferPool pool;
+
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+
+    SessionBufferInputStream(final InputStream in, final SessionBufferPool pool) {
+        super();
+        this.in = in;
+        this.pool = pool;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (this.buffer == null) {
+            this.buffer = this.pool.lease();
+        }
+        this.pos = 0;
+        this.limit = 0;
+        final int bytesRead = this.in.read(this.buffer, 0, this.buffer.length);
+        if (bytesRead <= 0) {
+            return false;
+        }
+        this.limit = bytesRead;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.pos == this.limit && !fillBuffer()) {
+            return -1;
+        }
+        return this.buffer[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.pos == this.limit) {
+            // Large reads bypass the buffer
+            if (len >= this.pool.getBufferSize()) {
+                return this.in.read(b, off, len);
+            }
+            if (!fillBuffer()) {
+                return -1;
+            }
+        }
+        final int chunk = Math.min(len, this.limit - this.pos);
+        System.arraycopy(this.buffer, this.pos, b, off, chunk);
+        this.pos += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (this.limit - this.pos) + this.in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Gives the buffer back to the pool unless it still holds unread data.
+     *
+     * @return <code>true</code> if no buffer is held any longer.
+     */
+    boolean releaseBuffer() {
+        if (this.buffer != null && this.pos == this.limit) {
+            this.pool.release(this.buffer);
+            this.buffer = null;
+            this.pos = 0;
+            this.limit = 0;
+        }
+        return this.buffer == null;
+    }
+
+}
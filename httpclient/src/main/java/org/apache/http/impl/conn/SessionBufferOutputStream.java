@@ -0,0 +1,121 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.annotation.NotThreadSafe;
+
+/**
+ * Output stream buffering socket writes in a buffer borrowed from
+ * a {@link SessionBufferPool}. The buffer is borrowed on the first write and
+ * can be given back with {@link #releaseBuffer()} once flushed.
+ *
+ * @since 4.3
+ */
+@NotThreadSafe
+class SessionBufferOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final SessionBufferPool pool;
+
+    private byte[] buffer;
+    private int count;
+
+    SessionBufferOutputStream(final OutputStream out, final SessionBufferPool pool) {
+        super();
+        this.out = out;
+        this.pool = pool;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.buffer == null) {
+            this.buffer = this.pool.lease();
+        }
+        if (this.count == this.buffer.length) {
+            flushBuffer();
+        }
+        this.buffer[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        // Large writes bypass the buffer
+        if (len >= this.pool.getBufferSize()) {
+            flushBuffer();
+            this.out.write(b, off, len);
+            return;
+        }
+        if (this.buffer == null) {
+            this.buffer = this.pool.lease();
+        }
+        if (len > this.buffer.length - this.count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, this.buffer, this.count, len);
+        this.count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Gives the buffer back to the pool unless it still holds unflushed data.
+     *
+     * @return <code>true</code> if no buffer is held any longer.
+     */
+    boolean releaseBuffer() {
+        if (this.buffer != null && this.count == 0) {
+            this.pool.release(this.buffer);
+            this.buffer = null;
+        }
+        return this.buffer == null;
+    }
+
+}
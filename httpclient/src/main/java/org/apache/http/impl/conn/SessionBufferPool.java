@@ -0,0 +1,145 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.util.Args;
+
+/**
+ * Pool of session buffers shared by connections created by
+ * {@link DefaultClientConnectionFactory}. Connections borrow buffers while
+ * they exchange messages and give them back once released to the connection
+ * pool, so that idle connections only keep small resident buffers.
+ * <p/>
+ * At most <code>maxIdle</code> buffers are retained, any surplus is left
+ * to the garbage collector.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class SessionBufferPool {
+
+    private static final int DEFAULT_BUFSIZE = 8 * 1024;
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final Queue<byte[]> idle;
+    private final AtomicInteger idleCount;
+    private final AtomicInteger allocCount;
+
+    /**
+     * @param bufferSize the size of pooled buffers.
+     * @param maxIdle the maximum number of idle buffers to retain.
+     */
+    public SessionBufferPool(final int bufferSize, final int maxIdle) {
+        super();
+        this.bufferSize = Args.positive(bufferSize, "Buffer size");
+        this.maxIdle = Args.notNegative(maxIdle, "Max idle buffers");
+        this.idle = new ConcurrentLinkedQueue<byte[]>();
+        this.idleCount = new AtomicInteger(0);
+        this.allocCount = new AtomicInteger(0);
+    }
+
+    public SessionBufferPool() {
+        this(DEFAULT_BUFSIZE, 256);
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    public int getMaxIdle() {
+        return this.maxIdle;
+    }
+
+    /**
+     * Returns the number of buffers currently retained by the pool.
+     */
+    public int getIdleCount() {
+        return this.idleCount.get();
+    }
+
+    /**
+     * Returns the total number of buffers allocated by the pool.
+     */
+    public int getAllocatedCount() {
+        return this.allocCount.get();
+    }
+
+    /**
+     * Borrows a buffer, allocating a new one if no idle buffer is available.
+     */
+    public byte[] lease() {
+        final byte[] buffer = this.idle.poll();
+        if (buffer != null) {
+            this.idleCount.decrementAndGet();
+            return buffer;
+        }
+        this.allocCount.incrementAndGet();
+        return new byte[this.bufferSize];
+    }
+
+    /**
+     * Gives back a buffer obtained with {@link #lease()}. The buffer must no
+     * longer be used by the caller.
+     */
+    public void release(final byte[] buffer) {
+        if (buffer == null || buffer.length != this.bufferSize) {
+            return;
+        }
+        if (this.idleCount.incrementAndGet() > this.maxIdle) {
+            this.idleCount.decrementAndGet();
+            return;
+        }
+        this.idle.add(buffer);
+    }
+
+    /**
+     * Discards all idle buffers.
+     */
+    public void clear() {
+        while (this.idle.poll() != null) {
+            this.idleCount.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[buffer size: ").append(this.bufferSize);
+        buffer.append("; idle: ").append(this.idleCount.get());
+        buffer.append("; allocated: ").append(this.allocCount.get());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
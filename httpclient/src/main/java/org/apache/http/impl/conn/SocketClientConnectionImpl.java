@@ -37,6 +37,7 @@ import java.nio.charset.CharsetEncoder;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -59,14 +60,29 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
 
     private static final AtomicLong COUNT = new AtomicLong();
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SocketClientConnectionImpl, Map> ATTRIBUTES =
+        AtomicReferenceFieldUpdater.newUpdater(SocketClientConnectionImpl.class, Map.class, "attributes");
+
     private final String id;
     private final Log log;
     private final Log headerlog;
-    private final Wire wire;
-    private final Map<String, Object> attributes;
+    private final Log wirelog;
+    private final SessionBufferPool bufferPool;
+
+    // created on demand, most pooled connections never use them
+    private volatile Map<String, Object> attributes;
+    private Wire wire;
+    private SessionBufferInputStream pooledIn;
+    private SessionBufferOutputStream pooledOut;
 
     private volatile boolean shutdown;
 
+    /**
+     * @param bufferPool the pool to borrow session buffers from while
+     *   exchanging messages. If <code>null</code> the connection only uses its
+     *   own buffers of <code>buffersize</code>.
+     */
     public SocketClientConnectionImpl(
             final int buffersize,
             final CharsetDecoder chardecoder,
@@ -75,15 +91,30 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final SessionBufferPool bufferPool) {
         super(buffersize, chardecoder, charencoder,
                 constraints, incomingContentStrategy, outgoingContentStrategy,
                 requestWriterFactory, responseParserFactory);
         this.id = "http-outgoing-" + COUNT.incrementAndGet();
         this.log = LogFactory.getLog(getClass());
         this.headerlog = LogFactory.getLog("org.apache.http.headers");
-        this.wire = new Wire(LogFactory.getLog("org.apache.http.wire"), this.id);
-        this.attributes = new ConcurrentHashMap<String, Object>();
+        this.wirelog = LogFactory.getLog("org.apache.http.wire");
+        this.bufferPool = bufferPool;
+    }
+
+    public SocketClientConnectionImpl(
+            final int buffersize,
+            final CharsetDecoder chardecoder,
+            final CharsetEncoder charencoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(buffersize, chardecoder, charencoder,
+                constraints, incomingContentStrategy, outgoingContentStrategy,
+                requestWriterFactory, responseParserFactory, null);
     }
 
     public SocketClientConnectionImpl(final int buffersize) {
@@ -96,6 +127,7 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
             this.log.debug(this.id + ": Close connection");
         }
         super.close();
+        releaseBuffers();
     }
 
     @Override
@@ -110,18 +142,26 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
     @Override
     protected InputStream getSocketInputStream(final Socket socket) throws IOException {
         InputStream in = super.getSocketInputStream(socket);
-        if (this.wire.enabled()) {
+        if (this.wire != null) {
             in = new LoggingInputStream(in, this.wire);
         }
+        if (this.bufferPool != null) {
+            this.pooledIn = new SessionBufferInputStream(in, this.bufferPool);
+            in = this.pooledIn;
+        }
         return in;
     }
 
     @Override
     protected OutputStream getSocketOutputStream(final Socket socket) throws IOException {
         OutputStream out = super.getSocketOutputStream(socket);
-        if (this.wire.enabled()) {
+        if (this.wire != null) {
             out = new LoggingOutputStream(out, this.wire);
         }
+        if (this.bufferPool != null) {
+            this.pooledOut = new SessionBufferOutputStream(out, this.bufferPool);
+            out = this.pooledOut;
+        }
         return out;
     }
 
@@ -147,16 +187,41 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
         }
     }
 
+    /**
+     * Gives borrowed session buffers back to the buffer pool. Buffers still
+     * holding unread or unflushed data are retained.
+     * <p/>
+     * Must only be called by the thread that owns the connection while no
+     * message exchange is in progress.
+     */
+    void releaseBuffers() {
+        final SessionBufferInputStream in = this.pooledIn;
+        if (in != null) {
+            in.releaseBuffer();
+        }
+        final SessionBufferOutputStream out = this.pooledOut;
+        if (out != null) {
+            out.releaseBuffer();
+        }
+    }
+
     public Object getAttribute(final String id) {
-        return this.attributes.get(id);
+        final Map<String, Object> map = this.attributes;
+        return map != null ? map.get(id) : null;
     }
 
     public Object removeAttribute(final String id) {
-        return this.attributes.remove(id);
+        final Map<String, Object> map = this.attributes;
+        return map != null ? map.remove(id) : null;
     }
 
     public void setAttribute(final String id, final Object obj) {
-        this.attributes.put(id, obj);
+        Map<String, Object> map = this.attributes;
+        if (map == null) {
+            ATTRIBUTES.compareAndSet(this, null, new ConcurrentHashMap<String, Object>());
+            map = this.attributes;
+        }
+        map.put(id, obj);
     }
 
     @Override
@@ -166,6 +231,9 @@ class SocketClientConnectionImpl extends DefaultBHttpClientConnection
             // ...but if it doesn't, explicitly throw one ourselves.
             throw new InterruptedIOException("Connection already shutdown");
         }
+        if (this.wirelog.isDebugEnabled()) {
+            this.wire = new Wire(this.wirelog, this.id);
+        }
         super.bind(socket);
     }
 
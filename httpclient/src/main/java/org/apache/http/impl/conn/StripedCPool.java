@@ -0,0 +1,924 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.Args;
+import org.apache.http.util.Asserts;
+
+/**
+ * Connection pool that guards each route with a lock of its own instead of
+ * a single pool-wide lock. Threads leasing and releasing connections for
+ * different routes do not contend with each other. The total connection
+ * limit is enforced with lock-free counters.
+ * <p/>
+ * Both limits are strict: the pool never allocates more connections than
+ * the total maximum nor more than the per route maximum for any given route.
+ * Once the total limit has been reached an idle connection of another route
+ * gets closed to make room for the new one, same as {@link CPool} does.
+ * <p/>
+ * Idle connections are re-used in the order given by {@link PoolReusePolicy}.
+ * <p/>
+ * Requests waiting for a connection of a saturated route are served in order
+ * of their priority and then of their deadline. Requests whose deadline has
+ * passed fail immediately rather than keep holding their place.
+ * <p/>
+ * The state of routes that have gone idle can be discarded with
+ * {@link #purgeIdleRoutes(long, TimeUnit)}, which keeps the memory footprint
+ * of the pool bounded when talking to a great number of distinct hosts.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class StripedCPool implements ManagedConnPool {
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private final Log log = LogFactory.getLog(StripedCPool.class);
+
+    private final ConnFactory<HttpRoute, SocketClientConnection> connFactory;
+    private final long timeToLive;
+    private final TimeUnit tunit;
+    private final PoolReusePolicy reusePolicy;
+    private final ConcurrentMap<HttpRoute, RouteStripe> routeToStripe;
+    private final ConcurrentMap<HttpRoute, Integer> maxPerRoute;
+    // route stripes with requests waiting for the total limit to free up
+    private final Queue<RouteStripe> starved;
+    // leased and available connections over all routes
+    private final AtomicInteger allocated;
+    private final AtomicInteger available;
+    private final AtomicInteger pending;
+
+    private volatile boolean isShutDown;
+    private volatile int defaultMaxPerRoute;
+    private volatile int maxTotal;
+
+    public StripedCPool(
+            final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
+            final int defaultMaxPerRoute, final int maxTotal,
+            final long timeToLive, final TimeUnit tunit,
+            final PoolReusePolicy reusePolicy) {
+        super();
+        Args.notNull(connFactory, "Connection factory");
+        Args.positive(defaultMaxPerRoute, "Max per route value");
+        Args.positive(maxTotal, "Max total value");
+        this.connFactory = connFactory;
+        this.timeToLive = timeToLive;
+        this.tunit = tunit;
+        this.reusePolicy = reusePolicy != null ? reusePolicy : PoolReusePolicy.LIFO;
+        this.routeToStripe = new ConcurrentHashMap<HttpRoute, RouteStripe>();
+        this.maxPerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+        this.starved = new ConcurrentLinkedQueue<RouteStripe>();
+        this.allocated = new AtomicInteger(0);
+        this.available = new AtomicInteger(0);
+        this.pending = new AtomicInteger(0);
+        this.defaultMaxPerRoute = defaultMaxPerRoute;
+        this.maxTotal = maxTotal;
+    }
+
+    public StripedCPool(
+            final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
+            final int defaultMaxPerRoute, final int maxTotal,
+            final long timeToLive, final TimeUnit tunit) {
+        this(connFactory, defaultMaxPerRoute, maxTotal, timeToLive, tunit, PoolReusePolicy.LIFO);
+    }
+
+    public PoolReusePolicy getReusePolicy() {
+        return this.reusePolicy;
+    }
+
+    public boolean isShutdown() {
+        return this.isShutDown;
+    }
+
+    public void shutdown() throws IOException {
+        if (this.isShutDown) {
+            return;
+        }
+        this.isShutDown = true;
+        for (final RouteStripe stripe: this.routeToStripe.values()) {
+            stripe.lock.lock();
+            try {
+                for (final CPoolEntry entry: stripe.free) {
+                    entry.close();
+                }
+                for (final CPoolEntry entry: stripe.leased.keySet()) {
+                    entry.close();
+                }
+                this.available.addAndGet(-stripe.free.size());
+                this.allocated.addAndGet(-stripe.free.size() - stripe.leased.size());
+                stripe.free.clear();
+                stripe.leased.clear();
+                stripe.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        this.routeToStripe.clear();
+        this.starved.clear();
+    }
+
+    private RouteStripe getStripe(final HttpRoute route) {
+        RouteStripe stripe = this.routeToStripe.get(route);
+        if (stripe == null) {
+            final RouteStripe newStripe = new RouteStripe(route);
+            stripe = this.routeToStripe.putIfAbsent(route, newStripe);
+            if (stripe == null) {
+                stripe = newStripe;
+            }
+        }
+        return stripe;
+    }
+
+    private int getMax(final HttpRoute route) {
+        final Integer v = this.maxPerRoute.get(route);
+        if (v != null) {
+            return v.intValue();
+        } else {
+            return this.defaultMaxPerRoute;
+        }
+    }
+
+    /**
+     * Returns the number of routes the pool currently keeps state for.
+     */
+    public int getRouteCount() {
+        return this.routeToStripe.size();
+    }
+
+    public Future<CPoolEntry> lease(
+            final HttpRoute route, final Object state,
+            final FutureCallback<CPoolEntry> callback) {
+        Args.notNull(route, "Route");
+        return lease(route, state, 0, callback);
+    }
+
+    public Future<CPoolEntry> lease(
+            final HttpRoute route, final Object state, final int priority,
+            final FutureCallback<CPoolEntry> callback) {
+        Args.notNull(route, "Route");
+        Asserts.check(!this.isShutDown, "Connection pool shut down");
+        return new LeaseRequest(getStripe(route), state, priority, callback);
+    }
+
+    public Future<CPoolEntry> lease(final HttpRoute route, final Object state) {
+        return lease(route, state, null);
+    }
+
+    private boolean reserveTotal() {
+        for (;;) {
+            final int current = this.allocated.get();
+            if (current >= this.maxTotal) {
+                return false;
+            }
+            if (this.allocated.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Wakes up requests waiting for the total limit to free up. Must not be
+     * called while holding the lock of any route stripe.
+     */
+    private void wakeStarved() {
+        RouteStripe stripe;
+        while ((stripe = this.starved.poll()) != null) {
+            stripe.lock.lock();
+            try {
+                stripe.starved = false;
+                stripe.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the least recently used idle connection of another route.
+     * Route stripes currently locked by other threads are skipped.
+     */
+    private boolean evictIdle(final RouteStripe requester) {
+        if (this.available.get() <= 0) {
+            return false;
+        }
+        for (final RouteStripe stripe: this.routeToStripe.values()) {
+            if (stripe == requester || !stripe.lock.tryLock()) {
+                continue;
+            }
+            CPoolEntry lastUsed = null;
+            try {
+                if (!stripe.free.isEmpty()) {
+                    lastUsed = stripe.free.remove(0);
+                    this.available.decrementAndGet();
+                    this.allocated.decrementAndGet();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            if (lastUsed != null) {
+                lastUsed.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @GuardedBy("stripe.lock")
+    private CPoolEntry getFree(final RouteStripe stripe, final Object state) {
+        final long now = System.currentTimeMillis();
+        for (;;) {
+            final CPoolEntry entry = stripe.removeFree(
+                    state, this.reusePolicy == PoolReusePolicy.FIFO);
+            if (entry == null) {
+                return null;
+            }
+            this.available.decrementAndGet();
+            if (entry.isClosed() || entry.isExpired(now)) {
+                entry.close();
+                this.allocated.decrementAndGet();
+                stripe.freed++;
+                continue;
+            }
+            return entry;
+        }
+    }
+
+    private CPoolEntry acquire(
+            final LeaseRequest request,
+            final long timeout,
+            final TimeUnit tunit) throws IOException, InterruptedException, TimeoutException {
+        RouteStripe stripe = request.stripe;
+        final HttpRoute route = stripe.route;
+        final long deadline = timeout > 0 ? System.currentTimeMillis() + tunit.toMillis(timeout) : 0;
+        boolean success = false;
+        Waiter waiter = null;
+        stripe.lock.lock();
+        while (stripe.retired) {
+            // The route has been purged while idle since the request was made
+            stripe.lock.unlock();
+            stripe = getStripe(route);
+            request.stripe = stripe;
+            stripe.lock.lock();
+        }
+        try {
+            for (;;) {
+                Asserts.check(!this.isShutDown, "Connection pool shut down");
+                if (request.isCancelled()) {
+                    throw new InterruptedException("Operation interrupted");
+                }
+                final long now = System.currentTimeMillis();
+                if (!stripe.isNext(waiter, request.priority, deadline, now)) {
+                    // Do not jump the queue of requests that rank higher
+                    waiter = await(stripe, waiter, request.priority, deadline, now);
+                    continue;
+                }
+                CPoolEntry entry = getFree(stripe, request.state);
+                if (entry != null) {
+                    leased(stripe, entry);
+                    request.complete(entry);
+                    success = true;
+                    return entry;
+                }
+
+                final int max = getMax(route);
+                // Shrink the route pool prior to allocating a new connection
+                final int excess = Math.max(0, stripe.getAllocatedCount() + 1 - max);
+                for (int i = 0; i < excess && !stripe.free.isEmpty(); i++) {
+                    final CPoolEntry lastUsed = stripe.free.remove(0);
+                    this.available.decrementAndGet();
+                    this.allocated.decrementAndGet();
+                    stripe.freed++;
+                    lastUsed.close();
+                }
+
+                boolean starving = false;
+                if (stripe.getAllocatedCount() < max) {
+                    boolean reserved = reserveTotal();
+                    if (!reserved) {
+                        // Make room by closing an idle connection, starting with
+                        // the ones of this route kept alive with a different state
+                        if (!stripe.free.isEmpty()) {
+                            final CPoolEntry lastUsed = stripe.free.remove(0);
+                            this.available.decrementAndGet();
+                            this.allocated.decrementAndGet();
+                            lastUsed.close();
+                            reserved = reserveTotal();
+                        } else if (evictIdle(stripe)) {
+                            reserved = reserveTotal();
+                        }
+                    }
+                    if (reserved) {
+                        if (stripe.freed > 0) {
+                            stripe.freed--;
+                        }
+                        final SocketClientConnection conn;
+                        try {
+                            conn = this.connFactory.create(route);
+                        } catch (final IOException ex) {
+                            this.allocated.decrementAndGet();
+                            stripe.freed++;
+                            throw ex;
+                        }
+                        entry = new CPoolEntry(this.log, Long.toString(COUNTER.getAndIncrement()),
+                                route, conn, this.timeToLive, this.tunit);
+                        leased(stripe, entry);
+                        request.complete(entry);
+                        success = true;
+                        return entry;
+                    }
+                    starving = true;
+                }
+
+                if (stripe.freed > 0) {
+                    // Capacity has been given up that this request cannot make
+                    // use of. Let other routes have a go at it first.
+                    stripe.freed = 0;
+                    stripe.lock.unlock();
+                    try {
+                        wakeStarved();
+                    } finally {
+                        stripe.lock.lock();
+                    }
+                    continue;
+                }
+                if (starving && !stripe.starved) {
+                    // Enlist before re-checking the total limit in order not to
+                    // miss the wake-up call
+                    stripe.starved = true;
+                    this.starved.add(stripe);
+                    continue;
+                }
+
+                waiter = await(stripe, waiter, request.priority, deadline, System.currentTimeMillis());
+            }
+        } finally {
+            if (waiter != null) {
+                stripe.waiters.remove(waiter);
+            }
+            if (!stripe.waiters.isEmpty()
+                    && (!stripe.free.isEmpty() || stripe.getAllocatedCount() < getMax(route))) {
+                // Pass on a wake-up call this request might have consumed
+                // or let the next request make use of spare capacity
+                stripe.signalNext();
+            }
+            final boolean freed = stripe.freed > 0;
+            stripe.freed = 0;
+            stripe.lastActivity = System.currentTimeMillis();
+            stripe.lock.unlock();
+            if (freed) {
+                wakeStarved();
+            }
+        }
+    }
+
+    @GuardedBy("stripe.lock")
+    private void leased(final RouteStripe stripe, final CPoolEntry entry) {
+        stripe.leased.put(entry, Boolean.TRUE);
+    }
+
+    /**
+     * Waits for the stripe to be signalled, failing immediately if the deadline
+     * has passed.
+     */
+    @GuardedBy("stripe.lock")
+    private Waiter await(
+            final RouteStripe stripe,
+            final Waiter current,
+            final int priority,
+            final long deadline,
+            final long now) throws InterruptedException, TimeoutException {
+        Waiter waiter = current;
+        if (waiter == null) {
+            waiter = new Waiter(stripe.lock.newCondition(), priority, deadline, stripe.waiterCount++);
+            stripe.waiters.add(waiter);
+        }
+        if (deadline > 0) {
+            final long remaining = deadline - now;
+            if (remaining <= 0) {
+                throw new TimeoutException("Timeout waiting for connection");
+            }
+        }
+        this.pending.incrementAndGet();
+        try {
+            if (deadline > 0) {
+                waiter.condition.awaitNanos(TimeUnit.MILLISECONDS.toNanos(deadline - now));
+            } else {
+                waiter.condition.await();
+            }
+        } finally {
+            this.pending.decrementAndGet();
+        }
+        return waiter;
+    }
+
+    public void release(final CPoolEntry entry, final boolean reusable) {
+        final RouteStripe stripe = this.routeToStripe.get(entry.getRoute());
+        if (stripe == null) {
+            return;
+        }
+        boolean freed = false;
+        boolean idle = false;
+        stripe.lock.lock();
+        try {
+            if (stripe.leased.remove(entry) == null) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            stripe.lastActivity = now;
+            if (reusable && !this.isShutDown) {
+                stripe.free.add(entry);
+                this.available.incrementAndGet();
+                idle = stripe.waiters.isEmpty();
+            } else {
+                entry.close();
+                this.allocated.decrementAndGet();
+                freed = true;
+            }
+            stripe.signalNext();
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (freed || idle && !this.starved.isEmpty()) {
+            wakeStarved();
+        }
+    }
+
+    public void setMaxTotal(final int max) {
+        Args.positive(max, "Max value");
+        final int previous = this.maxTotal;
+        this.maxTotal = max;
+        if (max > previous) {
+            wakeStarved();
+        }
+    }
+
+    public int getMaxTotal() {
+        return this.maxTotal;
+    }
+
+    public void setDefaultMaxPerRoute(final int max) {
+        Args.positive(max, "Max per route value");
+        this.defaultMaxPerRoute = max;
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return this.defaultMaxPerRoute;
+    }
+
+    public void setMaxPerRoute(final HttpRoute route, final int max) {
+        Args.notNull(route, "Route");
+        Args.positive(max, "Max per route value");
+        this.maxPerRoute.put(route, Integer.valueOf(max));
+        final RouteStripe stripe = this.routeToStripe.get(route);
+        if (stripe != null) {
+            stripe.lock.lock();
+            try {
+                stripe.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public int getMaxPerRoute(final HttpRoute route) {
+        Args.notNull(route, "Route");
+        return getMax(route);
+    }
+
+    /**
+     * Returns total pool statistics. The counters are maintained without
+     * locking and the figures are accurate only when the pool is quiescent.
+     */
+    public PoolStats getTotalStats() {
+        final int avail = this.available.get();
+        final int leased = Math.max(this.allocated.get() - avail, 0);
+        return new PoolStats(leased, this.pending.get(), avail, this.maxTotal);
+    }
+
+    public PoolStats getStats(final HttpRoute route) {
+        Args.notNull(route, "Route");
+        final RouteStripe stripe = this.routeToStripe.get(route);
+        if (stripe == null) {
+            return new PoolStats(0, 0, 0, getMax(route));
+        }
+        stripe.lock.lock();
+        try {
+            return new PoolStats(
+                    stripe.leased.size(),
+                    stripe.waiters.size(),
+                    stripe.free.size(),
+                    getMax(route));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void closeIdle(final long idletime, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        long time = tunit.toMillis(idletime);
+        if (time < 0) {
+            time = 0;
+        }
+        final long deadline = System.currentTimeMillis() - time;
+        purge(deadline, false);
+    }
+
+    public void closeExpired() {
+        purge(System.currentTimeMillis(), true);
+    }
+
+    public void closeIfIdle(final CPoolEntry entry, final long idletime, final TimeUnit tunit) {
+        Args.notNull(entry, "Pool entry");
+        final RouteStripe stripe = this.routeToStripe.get(entry.getRoute());
+        if (stripe == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long idleDeadline = idletime > 0 ? now - tunit.toMillis(idletime) : Long.MIN_VALUE;
+        boolean closed = false;
+        stripe.lock.lock();
+        try {
+            if ((entry.isExpired(now) || entry.getUpdated() <= idleDeadline)
+                    && stripe.free.remove(entry)) {
+                entry.close();
+                this.available.decrementAndGet();
+                this.allocated.decrementAndGet();
+                stripe.signalNext();
+                closed = true;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (closed) {
+            wakeStarved();
+        }
+    }
+
+    public void purgeIdleRoutes(final long idletime, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        final long deadline = System.currentTimeMillis() - Math.max(tunit.toMillis(idletime), 0);
+        for (final RouteStripe stripe: this.routeToStripe.values()) {
+            if (!stripe.lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (stripe.isIdle() && stripe.lastActivity <= deadline) {
+                    stripe.retired = true;
+                    this.routeToStripe.remove(stripe.route, stripe);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private void purge(final long time, final boolean expired) {
+        boolean freed = false;
+        for (final RouteStripe stripe: this.routeToStripe.values()) {
+            stripe.lock.lock();
+            try {
+                int n = 0;
+                final Iterator<CPoolEntry> it = stripe.free.iterator();
+                while (it.hasNext()) {
+                    final CPoolEntry entry = it.next();
+                    if (expired ? entry.isExpired(time) : entry.getUpdated() <= time) {
+                        entry.close();
+                        it.remove();
+                        n++;
+                    }
+                }
+                if (n > 0) {
+                    this.available.addAndGet(-n);
+                    this.allocated.addAndGet(-n);
+                    stripe.signalAll();
+                    freed = true;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        if (freed) {
+            wakeStarved();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[allocated: ");
+        buffer.append(this.allocated.get());
+        buffer.append("][available: ");
+        buffer.append(this.available.get());
+        buffer.append("][pending: ");
+        buffer.append(this.pending.get());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    static class RouteStripe {
+
+        final HttpRoute route;
+        final ReentrantLock lock;
+        // free entries from the least recently to the most recently released one
+        @GuardedBy("lock")
+        final List<CPoolEntry> free;
+        // keyed by identity so that leasing and releasing allocate nothing
+        @GuardedBy("lock")
+        final Map<CPoolEntry, Boolean> leased;
+        @GuardedBy("lock")
+        final PriorityQueue<Waiter> waiters;
+        @GuardedBy("lock")
+        long waiterCount;
+        @GuardedBy("lock")
+        boolean starved;
+        // connections closed by the current lease operation
+        @GuardedBy("lock")
+        int freed;
+        @GuardedBy("lock")
+        long lastActivity;
+        // set once the stripe has been purged from the pool
+        @GuardedBy("lock")
+        boolean retired;
+
+        RouteStripe(final HttpRoute route) {
+            super();
+            this.route = route;
+            this.lock = new ReentrantLock();
+            this.free = new ArrayList<CPoolEntry>();
+            this.leased = new IdentityHashMap<CPoolEntry, Boolean>();
+            this.waiters = new PriorityQueue<Waiter>();
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        int getAllocatedCount() {
+            return this.free.size() + this.leased.size();
+        }
+
+        boolean isIdle() {
+            return this.free.isEmpty() && this.leased.isEmpty() && this.waiters.isEmpty();
+        }
+
+        /**
+         * Determines whether a request may take a connection now or has to
+         * let a waiting request of higher rank go first. Waiters past their
+         * deadline are disregarded.
+         */
+        boolean isNext(final Waiter waiter, final int priority, final long deadline, final long now) {
+            final Waiter head = this.waiters.peek();
+            if (head == null || head == waiter || head.deadline > 0 && head.deadline <= now) {
+                return true;
+            }
+            if (waiter != null) {
+                return waiter.compareTo(head) <= 0;
+            }
+            return Waiter.compare(priority, deadline, Long.MAX_VALUE, head) <= 0;
+        }
+
+        void signalNext() {
+            final Waiter head = this.waiters.peek();
+            if (head != null) {
+                head.condition.signal();
+                if (head.deadline > 0 && head.deadline <= System.currentTimeMillis()) {
+                    // The head is about to give up
+                    signalAll();
+                }
+            }
+        }
+
+        void signalAll() {
+            for (final Waiter waiter: this.waiters) {
+                waiter.condition.signal();
+            }
+        }
+
+        /**
+         * Removes the most recently or the least recently released free entry
+         * matching the given state.
+         */
+        CPoolEntry removeFree(final Object state, final boolean leastRecent) {
+            if (this.free.isEmpty()) {
+                return null;
+            }
+            if (state != null) {
+                final CPoolEntry entry = removeFirstMatch(state, leastRecent);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            return removeFirstMatch(null, leastRecent);
+        }
+
+        private CPoolEntry removeFirstMatch(final Object state, final boolean leastRecent) {
+            if (leastRecent) {
+                for (int i = 0; i < this.free.size(); i++) {
+                    final CPoolEntry entry = this.free.get(i);
+                    if (matches(entry, state)) {
+                        return this.free.remove(i);
+                    }
+                }
+            } else {
+                for (int i = this.free.size() - 1; i >= 0; i--) {
+                    final CPoolEntry entry = this.free.get(i);
+                    if (matches(entry, state)) {
+                        return this.free.remove(i);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static boolean matches(final CPoolEntry entry, final Object state) {
+            return state != null ? state.equals(entry.getState()) : entry.getState() == null;
+        }
+
+    }
+
+    static class Waiter implements Comparable<Waiter> {
+
+        final Condition condition;
+        final int priority;
+        final long deadline;
+        final long seqNo;
+
+        Waiter(final Condition condition, final int priority, final long deadline, final long seqNo) {
+            super();
+            this.condition = condition;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.seqNo = seqNo;
+        }
+
+        /**
+         * Orders by priority (highest first), then by deadline (earliest first,
+         * none last) and then by arrival.
+         */
+        static int compare(final int priority, final long deadline, final long seqNo, final Waiter other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            final long d1 = deadline > 0 ? deadline : Long.MAX_VALUE;
+            final long d2 = other.deadline > 0 ? other.deadline : Long.MAX_VALUE;
+            if (d1 != d2) {
+                return d1 < d2 ? -1 : 1;
+            }
+            return seqNo < other.seqNo ? -1 : (seqNo == other.seqNo ? 0 : 1);
+        }
+
+        public int compareTo(final Waiter other) {
+            return compare(this.priority, this.deadline, this.seqNo, other);
+        }
+
+    }
+
+    class LeaseRequest implements Future<CPoolEntry> {
+
+        private volatile RouteStripe stripe;
+        private final Object state;
+        private final int priority;
+        private final FutureCallback<CPoolEntry> callback;
+
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile CPoolEntry result;
+
+        LeaseRequest(
+                final RouteStripe stripe,
+                final Object state,
+                final int priority,
+                final FutureCallback<CPoolEntry> callback) {
+            super();
+            this.stripe = stripe;
+            this.state = state;
+            this.priority = priority;
+            this.callback = callback;
+        }
+
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final RouteStripe current = this.stripe;
+            current.lock.lock();
+            try {
+                if (this.completed) {
+                    return false;
+                }
+                this.completed = true;
+                this.cancelled = true;
+                current.signalAll();
+            } finally {
+                current.lock.unlock();
+            }
+            final RouteStripe replacement = this.stripe;
+            if (replacement != current) {
+                replacement.lock.lock();
+                try {
+                    replacement.signalAll();
+                } finally {
+                    replacement.lock.unlock();
+                }
+            }
+            if (this.callback != null) {
+                this.callback.cancelled();
+            }
+            return true;
+        }
+
+        @GuardedBy("stripe.lock")
+        void complete(final CPoolEntry entry) {
+            this.result = entry;
+            this.completed = true;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        public boolean isDone() {
+            return this.completed;
+        }
+
+        public CPoolEntry get() throws InterruptedException, ExecutionException {
+            try {
+                return get(0, TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException ex) {
+                throw new ExecutionException(ex);
+            }
+        }
+
+        public CPoolEntry get(
+                final long timeout,
+                final TimeUnit tunit) throws InterruptedException, ExecutionException, TimeoutException {
+            final CPoolEntry local = this.result;
+            if (local != null) {
+                return local;
+            }
+            final CPoolEntry entry;
+            try {
+                entry = acquire(this, timeout, tunit);
+            } catch (final IOException ex) {
+                this.completed = true;
+                if (this.callback != null) {
+                    this.callback.failed(ex);
+                }
+                throw new ExecutionException(ex);
+            }
+            if (this.callback != null) {
+                this.callback.completed(entry);
+            }
+            return entry;
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.util.Args;
+
+/**
+ * Hierarchical timing wheel. Timeouts due within the span of the lowest
+ * wheel are kept in a slot per tick, timeouts further in the future are
+ * kept in coarser wheels and cascaded down as time advances. Adding a
+ * timeout is constant time and advancing the wheel by a tick touches only
+ * the timeouts that are due or need to be cascaded.
+ * <p/>
+ * Timeouts are never reported early but may be reported up to one tick
+ * late.
+ *
+ * @since 4.3
+ */
+@NotThreadSafe
+class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = WHEEL_SIZE - 1;
+
+    private final long tickMillis;
+    private final int levels;
+    private final Timeout<T>[] slots;
+    private final List<Timeout<T>> overdue;
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(final long tickMillis, final int levels, final long now) {
+        super();
+        Args.positive(tickMillis, "Tick");
+        Args.check(levels > 0 && levels * SLOT_BITS < 62, "Number of wheels out of range");
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.slots = (Timeout<T>[]) new Timeout<?>[levels * WHEEL_SIZE];
+        this.overdue = new ArrayList<Timeout<T>>();
+        this.currentTick = now / tickMillis;
+    }
+
+    public long getTick() {
+        return this.tickMillis;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Schedules the given item to become due at the given time.
+     */
+    public Timeout<T> add(final T item, final long deadline) {
+        final Timeout<T> timeout = new Timeout<T>(item, deadline);
+        schedule(timeout);
+        this.size++;
+        return timeout;
+    }
+
+    private void schedule(final Timeout<T> timeout) {
+        final long deadline = timeout.deadline;
+        long deadlineTick = deadline / this.tickMillis;
+        if (deadline % this.tickMillis != 0) {
+            deadlineTick++;
+        }
+        long delta = deadlineTick - this.currentTick;
+        if (delta <= 0) {
+            this.overdue.add(timeout);
+            return;
+        }
+        int level = 0;
+        while (level < this.levels - 1 && (delta >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        final long span = 1L << (SLOT_BITS * (level + 1));
+        if (delta >= span) {
+            // Beyond the span of the top level wheel. Park the timeout in the
+            // furthest slot, it gets re-scheduled when that slot comes up.
+            delta = span - 1;
+            deadlineTick = this.currentTick + delta;
+        }
+        final int index = level * WHEEL_SIZE
+                + (int) ((deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timeout.next = this.slots[index];
+        this.slots[index] = timeout;
+    }
+
+    private Timeout<T> removeSlot(final int level, final long tick) {
+        final int index = level * WHEEL_SIZE + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final Timeout<T> head = this.slots[index];
+        this.slots[index] = null;
+        return head;
+    }
+
+    /**
+     * Advances the wheel to the given time and returns the timeouts that
+     * have become due.
+     */
+    public List<Timeout<T>> advance(final long now) {
+        final long nowTick = now / this.tickMillis;
+        final List<Timeout<T>> due = new ArrayList<Timeout<T>>(this.overdue);
+        this.overdue.clear();
+        while (this.currentTick < nowTick && this.size > due.size()) {
+            this.currentTick++;
+            // Cascade timeouts of coarser wheels whose slot has come up,
+            // starting with the coarsest one
+            for (int level = this.levels - 1; level > 0; level--) {
+                final long mask = (1L << (SLOT_BITS * level)) - 1;
+                if ((this.currentTick & mask) == 0) {
+                    Timeout<T> timeout = removeSlot(level, this.currentTick);
+                    while (timeout != null) {
+                        final Timeout<T> next = timeout.next;
+                        timeout.next = null;
+                        schedule(timeout);
+                        timeout = next;
+                    }
+                }
+            }
+            Timeout<T> timeout = removeSlot(0, this.currentTick);
+            while (timeout != null) {
+                final Timeout<T> next = timeout.next;
+                timeout.next = null;
+                schedule(timeout);
+                timeout = next;
+            }
+            due.addAll(this.overdue);
+            this.overdue.clear();
+        }
+        this.currentTick = Math.max(this.currentTick, nowTick);
+        this.size -= due.size();
+        return due;
+    }
+
+    static class Timeout<T> {
+
+        private final T item;
+        private final long deadline;
+        private Timeout<T> next;
+
+        Timeout(final T item, final long deadline) {
+            super();
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public T getItem() {
+            return this.item;
+        }
+
+        public long getDeadline() {
+            return this.deadline;
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.annotation.Immutable;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * Implementation of an {@link HttpRoutePlanner} that routes requests to
+ * the given target hosts (or to all hosts if none are given) through a
+ * proxy listening on a Unix domain socket, such as a local sidecar.
+ * The proxy is represented by a pseudo host named <code>localhost</code>
+ * with the given scheme, which is expected to be registered with
+ * a {@link org.apache.http.conn.socket.UnixDomainSocketFactory} in the
+ * socket factory registry of the connection manager:
+ * <pre>
+ * Registry&lt;ConnectionSocketFactory&gt; registry = RegistryBuilder.&lt;ConnectionSocketFactory&gt;create()
+ *     .register("http", PlainSocketFactory.getSocketFactory())
+ *     .register("sidecar", new UnixDomainSocketFactory("/var/run/sidecar.sock"))
+ *     .build();
+ * CloseableHttpClient client = HttpClients.custom()
+ *     .setConnectionManager(new PoolingHttpClientConnectionManager(registry))
+ *     .setRoutePlanner(new UnixDomainRoutePlanner("sidecar", null, "service.internal"))
+ *     .build();
+ * </pre>
+ * Requests to other hosts are routed like with {@link DefaultRoutePlanner}.
+ * Connections to the socket are kept in the pool of the connection manager
+ * and re-used like any other proxy connection.
+ *
+ * @since 4.3
+ */
+@Immutable
+public class UnixDomainRoutePlanner extends DefaultRoutePlanner {
+
+    private final HttpHost proxy;
+    private final Set<String> targetHosts;
+
+    /**
+     * @param scheme the scheme the Unix domain socket factory is registered with.
+     * @param schemePortResolver the scheme port resolver.
+     * @param targetHosts names of the hosts to route through the socket.
+     *   If empty, all requests are routed through the socket.
+     */
+    public UnixDomainRoutePlanner(
+            final String scheme,
+            final SchemePortResolver schemePortResolver,
+            final String... targetHosts) {
+        super(schemePortResolver);
+        Args.notBlank(scheme, "Scheme");
+        this.proxy = new HttpHost("localhost", -1, scheme);
+        final Set<String> hosts = new HashSet<String>();
+        if (targetHosts != null) {
+            for (final String host: targetHosts) {
+                hosts.add(host.toLowerCase(Locale.US));
+            }
+        }
+        this.targetHosts = Collections.unmodifiableSet(hosts);
+    }
+
+    /**
+     * Returns the pseudo proxy host representing the Unix domain socket.
+     */
+    public HttpHost getProxy() {
+        return this.proxy;
+    }
+
+    @Override
+    protected HttpHost determineProxy(
+            final HttpHost target,
+            final HttpRequest request,
+            final HttpContext context) throws HttpException {
+        if (this.targetHosts.isEmpty()
+                || this.targetHosts.contains(target.getHostName().toLowerCase(Locale.US))) {
+            return this.proxy;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.config.CircuitBreakerConfig;
+
+/**
+ * Circuit breaker state of a single route. Outcomes of calls are recorded
+ * in a count based sliding window while the circuit is closed; the
+ * outcomes of probe calls are recorded separately while it is half-open.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class CircuitBreaker {
+
+    enum Transition { NONE, OPENED, CLOSED, EVICTED }
+
+    private final CircuitBreakerConfig config;
+    private final Lock lock;
+
+    @GuardedBy("lock")
+    private CircuitBreakerExec.State state;
+    @GuardedBy("lock")
+    private long openedAt;
+    @GuardedBy("lock")
+    private final boolean[] failures;
+    @GuardedBy("lock")
+    private final boolean[] slowCalls;
+    @GuardedBy("lock")
+    private int index;
+    @GuardedBy("lock")
+    private int calls;
+    @GuardedBy("lock")
+    private int failureCount;
+    @GuardedBy("lock")
+    private int slowCallCount;
+    @GuardedBy("lock")
+    private int probesPermitted;
+    @GuardedBy("lock")
+    private boolean evicted;
+
+    CircuitBreaker(final CircuitBreakerConfig config) {
+        super();
+        this.config = config;
+        this.lock = new ReentrantLock();
+        this.state = CircuitBreakerExec.State.CLOSED;
+        final int windowSize = Math.max(1, config.getSlidingWindowSize());
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    CircuitBreakerExec.State getState() {
+        this.lock.lock();
+        try {
+            return this.state;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if a call may be executed, moving an open
+     * circuit to half-open once the wait duration has elapsed.
+     */
+    boolean tryAcquire(final long now) {
+        this.lock.lock();
+        try {
+            switch (this.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - this.openedAt < this.config.getWaitDurationInOpenState()) {
+                    return false;
+                }
+                this.state = CircuitBreakerExec.State.HALF_OPEN;
+                reset();
+                return tryProbe();
+            default:
+                return tryProbe();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean tryProbe() {
+        if (this.probesPermitted < getProbeCount()) {
+            this.probesPermitted++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back the permission of a call that ended without a meaningful
+     * outcome, for instance because it was aborted.
+     */
+    void release() {
+        this.lock.lock();
+        try {
+            if (this.state == CircuitBreakerExec.State.HALF_OPEN && this.probesPermitted > this.calls) {
+                this.probesPermitted--;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the breaker as evicted if its circuit is closed and its window
+     * holds neither failures nor slow calls, in which case it can be
+     * replaced by a new breaker without losing anything of note. Outcomes
+     * recorded afterwards are refused with {@link Transition#EVICTED}.
+     */
+    boolean evict() {
+        this.lock.lock();
+        try {
+            if (this.state == CircuitBreakerExec.State.CLOSED
+                    && this.failureCount == 0 && this.slowCallCount == 0) {
+                this.evicted = true;
+            }
+            return this.evicted;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    Transition record(final boolean failure, final boolean slow, final long now) {
+        this.lock.lock();
+        try {
+            if (this.evicted) {
+                return Transition.EVICTED;
+            }
+            switch (this.state) {
+            case CLOSED:
+                add(failure, slow);
+                if (this.calls >= this.config.getMinimumNumberOfCalls() && isAboveThreshold()) {
+                    open(now);
+                    return Transition.OPENED;
+                }
+                return Transition.NONE;
+            case HALF_OPEN:
+                add(failure, slow);
+                if (this.calls < getProbeCount()) {
+                    return Transition.NONE;
+                }
+                if (isAboveThreshold()) {
+                    open(now);
+                    return Transition.OPENED;
+                }
+                this.state = CircuitBreakerExec.State.CLOSED;
+                reset();
+                return Transition.CLOSED;
+            default:
+                // Outcome of a call started before the circuit opened
+                return Transition.NONE;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int getProbeCount() {
+        return Math.max(1, Math.min(this.config.getPermittedCallsInHalfOpenState(), this.failures.length));
+    }
+
+    private void add(final boolean failure, final boolean slow) {
+        if (this.calls == this.failures.length) {
+            if (this.failures[this.index]) {
+                this.failureCount--;
+            }
+            if (this.slowCalls[this.index]) {
+                this.slowCallCount--;
+            }
+        } else {
+            this.calls++;
+        }
+        this.failures[this.index] = failure;
+        this.slowCalls[this.index] = slow;
+        if (failure) {
+            this.failureCount++;
+        }
+        if (slow) {
+            this.slowCallCount++;
+        }
+        this.index = (this.index + 1) % this.failures.length;
+    }
+
+    private boolean isAboveThreshold() {
+        return this.failureCount * 100 >= this.config.getFailureRateThreshold() * this.calls
+            || this.slowCallCount * 100 >= this.config.getSlowCallRateThreshold() * this.calls;
+    }
+
+    private void open(final long now) {
+        this.state = CircuitBreakerExec.State.OPEN;
+        this.openedAt = now;
+        reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.failures.length; i++) {
+            this.failures[i] = false;
+            this.slowCalls[i] = false;
+        }
+        this.index = 0;
+        this.calls = 0;
+        this.failureCount = 0;
+        this.slowCallCount = 0;
+        this.probesPermitted = 0;
+    }
+
+}
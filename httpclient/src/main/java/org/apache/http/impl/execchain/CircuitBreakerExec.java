@@ -0,0 +1,218 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpException;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.BackoffManager;
+import org.apache.http.client.config.CircuitBreakerConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+
+/**
+ * {@link ClientExecChain} implementation that keeps a circuit breaker per
+ * {@link HttpRoute}. While the circuit of a route is closed, the outcome of
+ * every request is recorded; I/O errors and <code>5xx</code> responses count
+ * as failures, and requests that take longer than
+ * {@link CircuitBreakerConfig#getSlowCallDuration()} to produce a response
+ * head count as slow. Protocol errors, runtime exceptions, exceeded request
+ * deadlines and requests rejected by a client side rate limit say nothing
+ * about the health of the route and are not recorded. Once the failure rate
+ * or the slow call rate exceeds its threshold the circuit opens and requests
+ * fail immediately with {@link CircuitBreakerOpenException}, without leasing
+ * a connection. After the wait duration the circuit becomes half-open and
+ * lets a limited number of probe requests through, which either close it
+ * again or re-open it.
+ * <p/>
+ * Breakers of closed circuits whose window holds neither failures nor slow
+ * calls are discarded as routes accumulate, so that the number of breakers
+ * kept follows the number of routes that have seen trouble lately.
+ * <p/>
+ * If a {@link BackoffManager} is given, it is told to back off whenever
+ * a circuit opens and to probe whenever one closes again, so that the
+ * connection pool of a failing route shrinks while it recovers.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class CircuitBreakerExec implements ClientExecChain {
+
+    /**
+     * States of a circuit breaker.
+     */
+    public enum State {
+
+        /** Requests are executed and their outcomes recorded. */
+        CLOSED,
+        /** Requests fail fast. */
+        OPEN,
+        /** A limited number of probe requests are executed. */
+        HALF_OPEN
+
+    }
+
+    // number of breakers that makes the creation of another one purge
+    // evictable breakers first
+    private static final int MIN_PURGE_SIZE = 64;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ClientExecChain requestExecutor;
+    private final CircuitBreakerConfig config;
+    private final BackoffManager backoffManager;
+    private final ConcurrentMap<HttpRoute, CircuitBreaker> breakers;
+    private volatile int purgeSize;
+
+    public CircuitBreakerExec(
+            final ClientExecChain requestExecutor,
+            final CircuitBreakerConfig config,
+            final BackoffManager backoffManager) {
+        super();
+        Args.notNull(requestExecutor, "HTTP request executor");
+        Args.notNull(config, "Circuit breaker config");
+        Args.positive(config.getFailureRateThreshold(), "Failure rate threshold");
+        Args.positive(config.getSlowCallRateThreshold(), "Slow call rate threshold");
+        this.requestExecutor = requestExecutor;
+        this.config = config;
+        this.backoffManager = backoffManager;
+        this.breakers = new ConcurrentHashMap<HttpRoute, CircuitBreaker>();
+        this.purgeSize = MIN_PURGE_SIZE;
+    }
+
+    public CircuitBreakerExec(
+            final ClientExecChain requestExecutor,
+            final CircuitBreakerConfig config) {
+        this(requestExecutor, config, null);
+    }
+
+    private CircuitBreaker getBreaker(final HttpRoute route) {
+        CircuitBreaker breaker = this.breakers.get(route);
+        if (breaker == null) {
+            if (this.breakers.size() >= this.purgeSize) {
+                purgeBreakers();
+            }
+            final CircuitBreaker newBreaker = new CircuitBreaker(this.config);
+            breaker = this.breakers.putIfAbsent(route, newBreaker);
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
+    private void purgeBreakers() {
+        for (final Map.Entry<HttpRoute, CircuitBreaker> entry: this.breakers.entrySet()) {
+            final CircuitBreaker breaker = entry.getValue();
+            if (breaker.evict()) {
+                this.breakers.remove(entry.getKey(), breaker);
+            }
+        }
+        // purge again once the number of breakers has doubled
+        this.purgeSize = Math.max(MIN_PURGE_SIZE, this.breakers.size() * 2);
+    }
+
+    int getBreakerCount() {
+        return this.breakers.size();
+    }
+
+    /**
+     * Returns the state of the circuit breaker of the given route.
+     */
+    public State getState(final HttpRoute route) {
+        final CircuitBreaker breaker = this.breakers.get(route);
+        return breaker != null ? breaker.getState() : State.CLOSED;
+    }
+
+    public CloseableHttpResponse execute(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        Args.notNull(route, "HTTP route");
+        CircuitBreaker breaker = getBreaker(route);
+        final long start = System.currentTimeMillis();
+        if (!breaker.tryAcquire(start)) {
+            throw new CircuitBreakerOpenException("Circuit breaker of route " + route + " is open");
+        }
+        boolean completed = false;
+        boolean failure = false;
+        try {
+            final CloseableHttpResponse response = this.requestExecutor.execute(
+                    route, request, context, execAware);
+            failure = response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            completed = true;
+            return response;
+        } catch (final RequestTimeoutException ex) {
+            throw ex;
+        } catch (final RateLimitExceededException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            failure = true;
+            completed = true;
+            throw ex;
+        } finally {
+            if (!completed || (execAware != null && execAware.isAborted())) {
+                breaker.release();
+            } else {
+                final long now = System.currentTimeMillis();
+                final boolean slow = now - start >= this.config.getSlowCallDuration();
+                CircuitBreaker.Transition transition;
+                while ((transition = breaker.record(failure, slow, now)) == CircuitBreaker.Transition.EVICTED) {
+                    // evicted while the request was executing
+                    this.breakers.remove(route, breaker);
+                    breaker = getBreaker(route);
+                }
+                if (transition == CircuitBreaker.Transition.OPENED) {
+                    this.log.info("Circuit breaker of route " + route + " opened");
+                    if (this.backoffManager != null) {
+                        this.backoffManager.backOff(route);
+                    }
+                } else if (transition == CircuitBreaker.Transition.CLOSED) {
+                    this.log.info("Circuit breaker of route " + route + " closed");
+                    if (this.backoffManager != null) {
+                        this.backoffManager.probe(route);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ package org.apache.http.impl.execchain;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.http.HttpClientConnection;
@@ -50,10 +51,13 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
 
     private final HttpClientConnectionManager manager;
     private final HttpClientConnection managedConn;
+    private final ReentrantLock lock;
     private volatile boolean reusable;
     private volatile Object state;
     private volatile long validDuration;
     private volatile TimeUnit tunit;
+    private volatile long deadline;
+    private volatile int socketTimeout;
 
     private volatile boolean released;
 
@@ -65,6 +69,7 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
         this.log = log;
         this.manager = manager;
         this.managedConn = managedConn;
+        this.lock = new ReentrantLock();
     }
 
     public boolean isReusable() {
@@ -84,19 +89,55 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
     }
 
     public void setValidFor(final long duration, final TimeUnit tunit) {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             this.validDuration = duration;
             this.tunit = tunit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the deadline of the request execution along with the socket
+     * timeout to restore once the connection is released.
+     */
+    public void setDeadline(final long deadline, final int socketTimeout) {
+        this.deadline = deadline;
+        this.socketTimeout = socketTimeout;
+    }
+
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    public int getSocketTimeout() {
+        return this.socketTimeout;
+    }
+
+    public void setSocketTimeout(final int timeout) {
+        this.lock.lock();
+        try {
+            if (!this.released) {
+                this.managedConn.setSocketTimeout(timeout);
+            }
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public void releaseConnection() {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             if (this.released) {
                 return;
             }
             this.released = true;
             if (this.reusable) {
+                if (this.deadline > 0) {
+                    // Undo the socket timeout shortened to fit the deadline
+                    this.managedConn.setSocketTimeout(this.socketTimeout);
+                }
                 this.manager.releaseConnection(this.managedConn,
                         this.state, this.validDuration, this.tunit);
             } else {
@@ -112,11 +153,14 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
                             this.managedConn, null, 0, TimeUnit.MILLISECONDS);
                 }
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public void abortConnection() {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             if (this.released) {
                 return;
             }
@@ -132,6 +176,8 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
                 this.manager.releaseConnection(
                         this.managedConn, null, 0, TimeUnit.MILLISECONDS);
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
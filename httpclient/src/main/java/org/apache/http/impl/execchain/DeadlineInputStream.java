@@ -0,0 +1,113 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.conn.Deadlines;
+
+/**
+ * Input stream of a response entity that fails once the deadline has passed.
+ * The socket timeout of the underlying connection is left alone while it
+ * expires before the deadline. Once the time remaining drops below it, the
+ * timeout is shortened to the time remaining, and shortened again whenever
+ * it would overshoot the deadline by more than a tenth of the time remaining,
+ * so that reads from a busy stream do not reset the timeout every time.
+ *
+ * @since 4.3
+ */
+@NotThreadSafe
+class DeadlineInputStream extends FilterInputStream {
+
+    private final ConnectionHolder connHolder;
+    private final long deadline;
+    private final int socketTimeout;
+    private int currentTimeout;
+
+    DeadlineInputStream(
+            final InputStream in,
+            final ConnectionHolder connHolder,
+            final long deadline,
+            final int socketTimeout) {
+        super(in);
+        this.connHolder = connHolder;
+        this.deadline = deadline;
+        this.socketTimeout = socketTimeout;
+        this.currentTimeout = -1;
+    }
+
+    private void beforeRead() throws IOException {
+        final long remaining = Deadlines.remaining(this.deadline);
+        final int timeout;
+        if (this.socketTimeout > 0 && remaining >= this.socketTimeout) {
+            timeout = this.socketTimeout;
+        } else if (this.currentTimeout > 0 && this.currentTimeout - remaining <= remaining / 10) {
+            return;
+        } else {
+            timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+        if (timeout != this.currentTimeout) {
+            this.connHolder.setSocketTimeout(timeout);
+            this.currentTimeout = timeout;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        beforeRead();
+        try {
+            return super.read();
+        } catch (final IOException ex) {
+            throw RequestTimeouts.translate(this.deadline, ex);
+        }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        beforeRead();
+        try {
+            return super.read(b, off, len);
+        } catch (final IOException ex) {
+            throw RequestTimeouts.translate(this.deadline, ex);
+        }
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        beforeRead();
+        try {
+            return super.skip(n);
+        } catch (final IOException ex) {
+            throw RequestTimeouts.translate(this.deadline, ex);
+        }
+    }
+
+}
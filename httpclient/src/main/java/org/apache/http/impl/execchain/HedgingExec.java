@@ -0,0 +1,470 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.auth.AuthState;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DaemonThreadFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * {@link ClientExecChain} implementation that hedges idempotent requests.
+ * If no response head has been received for a <code>GET</code> or
+ * <code>HEAD</code> request (or a request explicitly marked as idempotent
+ * with {@link RequestConfig#isIdempotent()}) within
+ * {@link RequestConfig#getHedgeDelay()}, a copy of the request is sent over
+ * a separate connection. The first response head to arrive is returned and
+ * the other attempt is aborted through its connection holder.
+ * <p/>
+ * Hedged copies are limited by a budget expressed as a percentage of
+ * eligible requests, so that a slow server is not flooded with duplicate
+ * requests. The timer and the threads sending hedged copies are released
+ * by {@link #close()}.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class HedgingExec implements ClientExecChain, Closeable {
+
+    /**
+     * Default hedge budget: at most one hedged copy per ten eligible requests.
+     */
+    public static final int DEFAULT_BUDGET = 10;
+
+    private static final long TOKEN = 1000;
+    private static final long MAX_BALANCE = 10 * TOKEN;
+
+    private static final String[] RESULT_ATTRIBUTES = new String[] {
+        HttpClientContext.HTTP_CONNECTION,
+        HttpClientContext.HTTP_REQUEST,
+        HttpClientContext.HTTP_RESPONSE,
+        HttpClientContext.HTTP_REQ_SENT,
+        HttpClientContext.HTTP_TARGET_HOST,
+        HttpClientContext.ROUTE,
+        HttpClientContext.USER_TOKEN,
+        HttpClientContext.TARGET_AUTH_STATE,
+        HttpClientContext.PROXY_AUTH_STATE,
+        HttpClientContext.COOKIE_SPEC,
+        HttpClientContext.COOKIE_ORIGIN
+    };
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ClientExecChain requestExecutor;
+    private final long deposit;
+    private final AtomicLong balance;
+    private final AtomicLong hedgesSent;
+    private final AtomicLong hedgesWon;
+    private final ScheduledExecutorService hedgeScheduler;
+    private final ExecutorService hedgeExecutor;
+
+    /**
+     * @param requestExecutor the next executor in the chain.
+     * @param budget percentage of eligible requests that may be hedged.
+     */
+    public HedgingExec(final ClientExecChain requestExecutor, final int budget) {
+        super();
+        Args.notNull(requestExecutor, "HTTP request executor");
+        Args.notNegative(budget, "Hedge budget");
+        this.requestExecutor = requestExecutor;
+        this.deposit = budget * TOKEN / 100;
+        this.balance = new AtomicLong(0);
+        this.hedgesSent = new AtomicLong(0);
+        this.hedgesWon = new AtomicLong(0);
+        this.hedgeScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("request-hedge-timer"));
+        this.hedgeExecutor = Executors.newCachedThreadPool(
+                new DaemonThreadFactory("request-hedge"));
+    }
+
+    public HedgingExec(final ClientExecChain requestExecutor) {
+        this(requestExecutor, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Returns the number of hedged copies sent so far.
+     */
+    public long getHedgesSent() {
+        return this.hedgesSent.get();
+    }
+
+    /**
+     * Returns the number of hedged copies whose response head arrived first.
+     */
+    public long getHedgesWon() {
+        return this.hedgesWon.get();
+    }
+
+    /**
+     * Stops the hedge timer and aborts hedged copies still in progress.
+     * Requests executed afterwards are no longer hedged.
+     */
+    public void close() {
+        this.hedgeScheduler.shutdownNow();
+        this.hedgeExecutor.shutdownNow();
+    }
+
+    public CloseableHttpResponse execute(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        Args.notNull(route, "HTTP route");
+        Args.notNull(request, "HTTP request");
+        Args.notNull(context, "HTTP context");
+        final RequestConfig config = context.getRequestConfig();
+        final int delay = config.getHedgeDelay();
+        if (delay <= 0 || !isHedgeable(request, config)) {
+            return this.requestExecutor.execute(route, request, context, execAware);
+        }
+        deposit();
+        final Race race = new Race(route, request, context, execAware);
+        return race.run(delay);
+    }
+
+    private static boolean isHedgeable(final HttpRequestWrapper request, final RequestConfig config) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && !entity.isRepeatable()) {
+                return false;
+            }
+        }
+        if (config.isIdempotent()) {
+            return true;
+        }
+        final String method = request.getRequestLine().getMethod();
+        return method.equalsIgnoreCase("GET") || method.equalsIgnoreCase("HEAD");
+    }
+
+    private void deposit() {
+        for (;;) {
+            final long current = this.balance.get();
+            final long next = Math.min(current + this.deposit, MAX_BALANCE);
+            if (next == current || this.balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private boolean withdraw() {
+        for (;;) {
+            final long current = this.balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (this.balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    private static HttpClientContext createHedgeContext(final HttpClientContext context) {
+        final HttpClientContext hedgeContext = HttpClientContext.adapt(new BasicHttpContext(context));
+        hedgeContext.setAttribute(HttpClientContext.TARGET_AUTH_STATE,
+                copy(context.getTargetAuthState()));
+        hedgeContext.setAttribute(HttpClientContext.PROXY_AUTH_STATE,
+                copy(context.getProxyAuthState()));
+        return hedgeContext;
+    }
+
+    private static AuthState copy(final AuthState authState) {
+        final AuthState copy = new AuthState();
+        if (authState != null) {
+            if (authState.getAuthScheme() != null) {
+                copy.update(authState.getAuthScheme(), authState.getCredentials());
+            }
+            copy.setState(authState.getState());
+        }
+        return copy;
+    }
+
+    /**
+     * Execution aware handle of a single attempt that can be aborted on
+     * its own or together with the original request.
+     */
+    static class Attempt implements HttpExecutionAware, Cancellable {
+
+        private final HttpExecutionAware parent;
+        private final AtomicReference<Cancellable> cancellableRef;
+        private volatile boolean aborted;
+
+        Attempt(final HttpExecutionAware parent) {
+            super();
+            this.parent = parent;
+            this.cancellableRef = new AtomicReference<Cancellable>();
+        }
+
+        public boolean isAborted() {
+            return this.aborted || (this.parent != null && this.parent.isAborted());
+        }
+
+        public void setCancellable(final Cancellable cancellable) {
+            this.cancellableRef.set(cancellable);
+            if (this.aborted && cancellable != null) {
+                cancellable.cancel();
+            }
+        }
+
+        public boolean cancel() {
+            this.aborted = true;
+            final Cancellable cancellable = this.cancellableRef.get();
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+            return true;
+        }
+
+    }
+
+    class Race implements Runnable {
+
+        private final HttpRoute route;
+        private final HttpClientContext context;
+        private final HttpExecutionAware execAware;
+        private final HttpRequestWrapper request;
+        private final HttpRequestWrapper hedgeRequest;
+        private final HttpClientContext hedgeContext;
+        private final Attempt primary;
+        private final Attempt hedge;
+        private final Lock lock;
+        private final Condition condition;
+
+        @GuardedBy("lock")
+        private boolean primaryDone;
+        @GuardedBy("lock")
+        private boolean primaryResponded;
+        @GuardedBy("lock")
+        private boolean hedgeStarted;
+        @GuardedBy("lock")
+        private boolean hedgeDone;
+        @GuardedBy("lock")
+        private CloseableHttpResponse hedgeResponse;
+        @GuardedBy("lock")
+        private boolean hedgeWon;
+
+        Race(
+                final HttpRoute route,
+                final HttpRequestWrapper request,
+                final HttpClientContext context,
+                final HttpExecutionAware execAware) {
+            super();
+            this.route = route;
+            this.request = request;
+            this.context = context;
+            this.execAware = execAware;
+            // Copy the request up front, as the primary attempt is going to
+            // mutate the original while the hedge is pending
+            this.hedgeRequest = HttpRequestWrapper.wrap(request.getOriginal());
+            this.hedgeRequest.setHeaders(request.getAllHeaders());
+            this.hedgeRequest.setURI(request.getURI());
+            this.hedgeContext = createHedgeContext(context);
+            this.primary = new Attempt(execAware);
+            this.hedge = new Attempt(execAware);
+            this.lock = new ReentrantLock();
+            this.condition = this.lock.newCondition();
+        }
+
+        CloseableHttpResponse run(final int delay) throws IOException, HttpException {
+            if (this.execAware != null) {
+                this.execAware.setCancellable(new Cancellable() {
+
+                    public boolean cancel() {
+                        primary.cancel();
+                        hedge.cancel();
+                        return true;
+                    }
+
+                });
+            }
+            Future<?> timer;
+            try {
+                timer = hedgeScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException ex) {
+                // closed: execute the request without a hedge
+                timer = null;
+            }
+            CloseableHttpResponse response = null;
+            IOException ioex = null;
+            HttpException httpex = null;
+            RuntimeException rtex = null;
+            try {
+                response = requestExecutor.execute(this.route, this.request, this.context, this.primary);
+            } catch (final IOException ex) {
+                ioex = ex;
+            } catch (final HttpException ex) {
+                httpex = ex;
+            } catch (final RuntimeException ex) {
+                rtex = ex;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+
+            final CloseableHttpResponse winner;
+            this.lock.lock();
+            try {
+                this.primaryDone = true;
+                this.primaryResponded = response != null;
+                if (response == null) {
+                    try {
+                        while (this.hedgeStarted && !this.hedgeDone) {
+                            this.condition.await();
+                        }
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        this.hedge.cancel();
+                        throw new InterruptedIOException(ex.getMessage());
+                    }
+                }
+                winner = this.hedgeWon ? this.hedgeResponse : null;
+            } finally {
+                this.lock.unlock();
+            }
+
+            if (winner != null) {
+                if (response != null) {
+                    response.close();
+                }
+                for (final String name: RESULT_ATTRIBUTES) {
+                    this.context.setAttribute(name, this.hedgeContext.getAttribute(name));
+                }
+                return winner;
+            }
+            this.hedge.cancel();
+            if (response != null) {
+                return response;
+            }
+            if (ioex != null) {
+                throw ioex;
+            } else if (httpex != null) {
+                throw httpex;
+            } else {
+                throw rtex;
+            }
+        }
+
+        public void run() {
+            this.lock.lock();
+            try {
+                if (this.primaryDone || this.hedge.isAborted() || !withdraw()) {
+                    return;
+                }
+                this.hedgeStarted = true;
+            } finally {
+                this.lock.unlock();
+            }
+            hedgesSent.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("No response within hedge delay; sending hedged request to " + this.route);
+            }
+            try {
+                hedgeExecutor.execute(new Runnable() {
+
+                    public void run() {
+                        executeHedge();
+                    }
+
+                });
+            } catch (final RejectedExecutionException ex) {
+                this.lock.lock();
+                try {
+                    this.hedgeDone = true;
+                    this.condition.signalAll();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+        }
+
+        private void executeHedge() {
+            CloseableHttpResponse response = null;
+            try {
+                response = requestExecutor.execute(
+                        this.route, this.hedgeRequest, this.hedgeContext, this.hedge);
+            } catch (final Exception ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Hedged request failed: " + ex.getMessage());
+                }
+            }
+            boolean won = false;
+            this.lock.lock();
+            try {
+                // a failed primary attempt does not stop the hedge from winning
+                if (response != null && !this.primaryResponded) {
+                    this.hedgeResponse = response;
+                    this.hedgeWon = true;
+                    won = true;
+                }
+                this.hedgeDone = true;
+                this.condition.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+            if (won) {
+                hedgesWon.incrementAndGet();
+                this.primary.cancel();
+            } else if (response != null) {
+                try {
+                    response.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+
+    }
+
+}
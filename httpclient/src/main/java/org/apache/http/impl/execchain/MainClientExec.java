@@ -29,12 +29,17 @@ package org.apache.http.impl.execchain;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
@@ -58,7 +63,9 @@ import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.protocol.RequestClientConnControl;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.Deadlines;
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.PrioritizedConnectionManager;
 import org.apache.http.conn.routing.BasicRouteDirector;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.routing.HttpRouteDirector;
@@ -80,6 +87,9 @@ import org.apache.http.util.EntityUtils;
 @Immutable
 public class MainClientExec implements ClientExecChain {
 
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(
+            Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
     private final Log log = LogFactory.getLog(getClass());
 
     private final HttpRequestExecutor requestExecutor;
@@ -150,7 +160,19 @@ public class MainClientExec implements ClientExecChain {
 
         Object userToken = context.getUserToken();
 
-        final ConnectionRequest connRequest = connManager.requestConnection(route, userToken);
+        final RequestConfig config = context.getRequestConfig();
+        final long deadline = context.getRequestDeadline();
+        final int connectionRequestTimeout = config.getConnectionRequestTimeout();
+        final int leaseTimeout = Deadlines.cap(deadline,
+                connectionRequestTimeout > 0 ? connectionRequestTimeout : 0);
+
+        final ConnectionRequest connRequest;
+        if (config.getPriority() != 0 && connManager instanceof PrioritizedConnectionManager) {
+            connRequest = ((PrioritizedConnectionManager) connManager).requestConnection(
+                    route, userToken, config.getPriority());
+        } else {
+            connRequest = connManager.requestConnection(route, userToken);
+        }
         if (execAware != null) {
             if (execAware.isAborted()) {
                 connRequest.cancel();
@@ -160,14 +182,13 @@ public class MainClientExec implements ClientExecChain {
             }
         }
 
-        final RequestConfig config = context.getRequestConfig();
-
         HttpClientConnection managedConn;
         try {
-            final int timeout = config.getConnectionRequestTimeout();
-            managedConn = connRequest.get(timeout > 0 ? timeout : 0, TimeUnit.MILLISECONDS);
+            managedConn = connRequest.get(leaseTimeout, TimeUnit.MILLISECONDS);
         } catch(final InterruptedException interrupted) {
             throw new RequestAbortedException("Request aborted", interrupted);
+        } catch (final IOException ex) {
+            throw RequestTimeouts.translate(deadline, ex);
         }
 
         context.setAttribute(ExecutionContext.HTTP_CONNECTION, managedConn);
@@ -195,6 +216,7 @@ public class MainClientExec implements ClientExecChain {
             }
 
             HttpResponse response = null;
+            boolean replayed = false;
             for (int execCount = 1;; execCount++) {
 
                 if (execCount > 1 && !Proxies.isRepeatable(request)) {
@@ -206,7 +228,8 @@ public class MainClientExec implements ClientExecChain {
                     throw new RequestAbortedException("Request aborted");
                 }
 
-                if (!managedConn.isOpen()) {
+                final boolean reused = managedConn.isOpen();
+                if (!reused) {
                     this.log.debug("Opening connection " + route);
                     try {
                         establishRoute(proxyAuthState, managedConn, route, request, context);
@@ -245,7 +268,35 @@ public class MainClientExec implements ClientExecChain {
                     this.authenticator.generateAuthResponse(request, proxyAuthState, context);
                 }
 
-                response = requestExecutor.execute(request, managedConn, context);
+                if (deadline > 0) {
+                    if (connHolder.getDeadline() == 0) {
+                        connHolder.setDeadline(deadline, managedConn.getSocketTimeout());
+                    }
+                    managedConn.setSocketTimeout(Deadlines.cap(deadline, connHolder.getSocketTimeout()));
+                }
+
+                final long received = reused ? getReceivedBytes(managedConn) : 0;
+                try {
+                    response = requestExecutor.execute(request, managedConn, context);
+                } catch (final IOException ex) {
+                    // A persistent connection may have been closed by the opposite
+                    // endpoint while idle. Replay idempotent requests once on a fresh
+                    // connection provided no part of the response has been received.
+                    if (replayed || !reused || received < 0
+                            || ex instanceof InterruptedIOException
+                            || !isReplayable(request)
+                            || getReceivedBytes(managedConn) != received) {
+                        throw ex;
+                    }
+                    if (this.log.isDebugEnabled()) {
+                        this.log.debug("I/O exception (" + ex.getClass().getName()
+                                + ") on a re-used connection: " + ex.getMessage());
+                        this.log.debug("Replaying request " + request.getRequestLine());
+                    }
+                    replayed = true;
+                    managedConn.close();
+                    continue;
+                }
 
                 // The connection is in or can be brought to a re-usable state.
                 if (reuseStrategy.keepAlive(response, context)) {
@@ -324,13 +375,23 @@ public class MainClientExec implements ClientExecChain {
             throw ex;
         } catch (final IOException ex) {
             connHolder.abortConnection();
-            throw ex;
+            throw RequestTimeouts.translate(deadline, ex);
         } catch (final RuntimeException ex) {
             connHolder.abortConnection();
             throw ex;
         }
     }
 
+    private static long getReceivedBytes(final HttpClientConnection managedConn) {
+        final HttpConnectionMetrics metrics = managedConn.getMetrics();
+        return metrics != null ? metrics.getReceivedBytesCount() : -1;
+    }
+
+    private static boolean isReplayable(final HttpRequest request) {
+        final String method = request.getRequestLine().getMethod().toUpperCase(Locale.US);
+        return IDEMPOTENT_METHODS.contains(method) && Proxies.isRepeatable(request);
+    }
+
     /**
      * Establishes the target route.
      */
@@ -342,6 +403,7 @@ public class MainClientExec implements ClientExecChain {
             final HttpClientContext context) throws HttpException, IOException {
         final RequestConfig config = context.getRequestConfig();
         final int timeout = config.getConnectTimeout();
+        final long deadline = context.getRequestDeadline();
         final RouteTracker tracker = new RouteTracker(route);
         int step;
         do {
@@ -354,7 +416,7 @@ public class MainClientExec implements ClientExecChain {
                 this.connManager.connect(
                         managedConn,
                         route.getTargetHost(), route.getLocalAddress(),
-                        timeout > 0 ? timeout : 0,
+                        Deadlines.cap(deadline, timeout > 0 ? timeout : 0),
                         context);
                 tracker.connectTarget(route.isSecure());
                 break;
@@ -362,7 +424,7 @@ public class MainClientExec implements ClientExecChain {
                 this.connManager.connect(
                         managedConn,
                         route.getProxyHost(), route.getLocalAddress(),
-                        timeout > 0 ? timeout : 0,
+                        Deadlines.cap(deadline, timeout > 0 ? timeout : 0),
                         context);
                 final HttpHost proxy  = route.getProxyHost();
                 tracker.connectProxy(proxy, false);
@@ -386,7 +448,18 @@ public class MainClientExec implements ClientExecChain {
             }   break;
 
             case HttpRouteDirector.LAYER_PROTOCOL:
-                this.connManager.upgrade(managedConn, route.getTargetHost(), context);
+                if (deadline > 0) {
+                    // Bound the TLS handshake by the time remaining
+                    final int socketTimeout = managedConn.getSocketTimeout();
+                    managedConn.setSocketTimeout(Deadlines.cap(deadline, socketTimeout));
+                    try {
+                        this.connManager.upgrade(managedConn, route.getTargetHost(), context);
+                    } finally {
+                        restoreSocketTimeout(managedConn, socketTimeout);
+                    }
+                } else {
+                    this.connManager.upgrade(managedConn, route.getTargetHost(), context);
+                }
                 break;
 
             case HttpRouteDirector.UNREACHABLE:
@@ -403,6 +476,15 @@ public class MainClientExec implements ClientExecChain {
         } while (step > HttpRouteDirector.COMPLETE);
     }
 
+    private static void restoreSocketTimeout(
+            final HttpClientConnection managedConn, final int socketTimeout) {
+        // A failed connection is about to be discarded; do not let it mask
+        // the original exception
+        if (managedConn.isOpen()) {
+            managedConn.setSocketTimeout(socketTimeout);
+        }
+    }
+
     /**
      * Creates a tunnel to the target server.
      * The connection must be established to the (last) proxy.
@@ -420,6 +502,7 @@ public class MainClientExec implements ClientExecChain {
 
         final RequestConfig config = context.getRequestConfig();
         final int timeout = config.getConnectTimeout();
+        final long deadline = context.getRequestDeadline();
 
         final HttpHost target = route.getTargetHost();
         final HttpHost proxy = route.getProxyHost();
@@ -435,14 +518,24 @@ public class MainClientExec implements ClientExecChain {
                 this.connManager.connect(
                         managedConn,
                         route.getProxyHost(), route.getLocalAddress(),
-                        timeout > 0 ? timeout : 0,
+                        Deadlines.cap(deadline, timeout > 0 ? timeout : 0),
                         context);
             }
 
             connect.removeHeaders(AUTH.PROXY_AUTH_RESP);
             this.authenticator.generateAuthResponse(connect, proxyAuthState, context);
 
-            response = this.requestExecutor.execute(connect, managedConn, context);
+            if (deadline > 0) {
+                final int socketTimeout = managedConn.getSocketTimeout();
+                managedConn.setSocketTimeout(Deadlines.cap(deadline, socketTimeout));
+                try {
+                    response = this.requestExecutor.execute(connect, managedConn, context);
+                } finally {
+                    restoreSocketTimeout(managedConn, socketTimeout);
+                }
+            } else {
+                response = this.requestExecutor.execute(connect, managedConn, context);
+            }
 
             final int status = response.getStatusLine().getStatusCode();
             if (status < 200) {
@@ -0,0 +1,196 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.execchain;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.config.RateLimitConfig;
+
+/**
+ * Token bucket of a single route or host, implemented as a generic cell
+ * rate algorithm so that taking a permit is a single compare-and-set of
+ * the time at which the bucket would be full again. All times are in
+ * nanoseconds as returned by {@link System#nanoTime()}.
+ * <p/>
+ * A rate adapted to the quota reported by the server only lasts until the
+ * quota is reset; after that the configured rate applies again, even if
+ * the server stops reporting its quota.
+ * <p/>
+ * A limiter that is full again can be evicted, after which it refuses
+ * permits and adaptations so that they go to the limiter replacing it.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class RateLimiter {
+
+    // value of fullAt once the limiter has been evicted
+    static final long EVICTED = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final long baseInterval;
+    private final AtomicLong fullAt;
+
+    private volatile long interval;
+    private volatile long resetAt;
+
+    RateLimiter(final RateLimitConfig config, final long now) {
+        super();
+        this.capacity = config.getPermitsPerPeriod();
+        this.baseInterval = Math.max(1,
+                TimeUnit.MILLISECONDS.toNanos(config.getPeriod()) / this.capacity);
+        this.interval = this.baseInterval;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a permit and returns the time to wait before it may be used, or
+     * <code>-1</code> without taking one if that time would exceed the given
+     * maximum. A negative maximum means there is none. Returns
+     * {@link #EVICTED} if the limiter has been evicted.
+     */
+    long reserve(final long now, final long maxWait) {
+        for (;;) {
+            final long i = getInterval(now);
+            final long current = this.fullAt.get();
+            if (current == EVICTED) {
+                return EVICTED;
+            }
+            final long next = Math.max(current, now) + i;
+            final long wait = next - this.capacity * i - now;
+            if (maxWait >= 0 && wait > maxWait) {
+                return -1;
+            }
+            if (this.fullAt.compareAndSet(current, next)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Withholds permits until the given time and empties the bucket, so that
+     * the rate ramps up again from there. Returns <code>false</code> if
+     * the limiter has been evicted.
+     */
+    boolean pauseUntil(final long until) {
+        final long target = until + (this.capacity - 1) * this.interval;
+        // an adapted rate must not end before the pause does
+        if (target - this.resetAt > 0) {
+            this.resetAt = target;
+        }
+        return raiseFullAt(target);
+    }
+
+    /**
+     * Spreads the permits the server has left over the time until its quota
+     * is reset, never exceeding the configured rate or the permits left.
+     * Returns <code>false</code> if the limiter has been evicted.
+     */
+    boolean adapt(final long remaining, final long untilReset, final long now) {
+        if (remaining <= 0) {
+            return pauseUntil(now + untilReset);
+        }
+        final long i = Math.max(this.baseInterval, untilReset / remaining);
+        this.resetAt = now + untilReset;
+        this.interval = i;
+        return raiseFullAt(now + (this.capacity - Math.min(remaining, this.capacity)) * i);
+    }
+
+    /**
+     * Evicts the limiter if it is full again and no adapted rate applies,
+     * in which case it can be replaced by a new limiter without losing
+     * anything. Returns <code>true</code> if the limiter has been evicted.
+     */
+    boolean evict(final long now) {
+        if (getInterval(now) != this.baseInterval) {
+            return false;
+        }
+        for (;;) {
+            final long current = this.fullAt.get();
+            if (current == EVICTED) {
+                return true;
+            }
+            if (current - now > 0) {
+                return false;
+            }
+            if (this.fullAt.compareAndSet(current, EVICTED)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the current interval between permits, going back to the
+     * configured one once the quota of the server has been reset.
+     */
+    private long getInterval(final long now) {
+        final long i = this.interval;
+        if (i == this.baseInterval || now - this.resetAt < 0) {
+            return i;
+        }
+        synchronized (this) {
+            if (this.interval != this.baseInterval) {
+                // The quota of the server has been refilled, and so has the bucket
+                final long target = this.resetAt;
+                for (;;) {
+                    final long current = this.fullAt.get();
+                    if (current == EVICTED || current - target <= 0
+                            || this.fullAt.compareAndSet(current, target)) {
+                        break;
+                    }
+                }
+                this.interval = this.baseInterval;
+            }
+        }
+        return this.baseInterval;
+    }
+
+    private boolean raiseFullAt(final long target) {
+        for (;;) {
+            final long current = this.fullAt.get();
+            if (current == EVICTED) {
+                return false;
+            }
+            if (current - target >= 0 || this.fullAt.compareAndSet(current, target)) {
+                return true;
+            }
+        }
+    }
+
+    int getAvailablePermits(final long now) {
+        final long i = getInterval(now);
+        final long full = this.fullAt.get();
+        if (full == EVICTED) {
+            return this.capacity;
+        }
+        final long slack = this.capacity * i - (Math.max(full, now) - now);
+        return (int) Math.max(0, Math.min(this.capacity, slack / i));
+    }
+
+}
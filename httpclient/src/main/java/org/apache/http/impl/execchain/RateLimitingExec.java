@@ -0,0 +1,270 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.config.RateLimitConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.util.Args;
+
+/**
+ * {@link ClientExecChain} implementation that keeps requests within a
+ * client side rate limit per {@link HttpRoute}, or per target host if
+ * {@link RateLimitConfig#isPerHost()} is set. Each request takes a permit
+ * from a token bucket before it is executed. If no permit is available the
+ * request waits for one, up to {@link RateLimitConfig#getMaxWait()} and the
+ * deadline of the request; requests that cannot get a permit in time fail
+ * with {@link RateLimitExceededException}, or with
+ * {@link RequestTimeoutException} if the deadline is what bounds the wait.
+ * <p/>
+ * If the limiter is adaptive, a <code>429</code> or <code>503</code>
+ * response with a <code>Retry-After</code> header withholds permits until
+ * the given time, and the <code>X-RateLimit-Remaining</code> and
+ * <code>X-RateLimit-Reset</code> headers spread the remaining quota of the
+ * server over the time until it is reset. The reset time is read as
+ * seconds from now, or as seconds since the epoch for values large enough
+ * to be one.
+ * <p/>
+ * Taking a permit does not lock, so the limiter adds no contention
+ * between threads sending requests to the same route. Limiters that are
+ * full again are discarded as routes accumulate.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class RateLimitingExec implements ClientExecChain {
+
+    private static final long EPOCH_SECONDS_THRESHOLD = 1000000000L;
+    // number of limiters that makes the creation of another one purge
+    // full limiters first
+    private static final int MIN_PURGE_SIZE = 64;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ClientExecChain requestExecutor;
+    private final RateLimitConfig config;
+    private final ConcurrentMap<Object, RateLimiter> limiters;
+    private volatile int purgeSize;
+    private final AtomicLong requestsDelayed;
+    private final AtomicLong requestsRejected;
+
+    public RateLimitingExec(
+            final ClientExecChain requestExecutor,
+            final RateLimitConfig config) {
+        super();
+        Args.notNull(requestExecutor, "HTTP request executor");
+        Args.notNull(config, "Rate limit config");
+        Args.positive(config.getPermitsPerPeriod(), "Permits per period");
+        Args.positive(config.getPeriod(), "Period");
+        this.requestExecutor = requestExecutor;
+        this.config = config;
+        this.limiters = new ConcurrentHashMap<Object, RateLimiter>();
+        this.purgeSize = MIN_PURGE_SIZE;
+        this.requestsDelayed = new AtomicLong();
+        this.requestsRejected = new AtomicLong();
+    }
+
+    private Object getKey(final HttpRoute route) {
+        return this.config.isPerHost() ? route.getTargetHost() : route;
+    }
+
+    private RateLimiter getLimiter(final HttpRoute route) {
+        final Object key = getKey(route);
+        RateLimiter limiter = this.limiters.get(key);
+        if (limiter == null) {
+            if (this.limiters.size() >= this.purgeSize) {
+                purgeLimiters();
+            }
+            final RateLimiter newLimiter = new RateLimiter(this.config, System.nanoTime());
+            limiter = this.limiters.putIfAbsent(key, newLimiter);
+            if (limiter == null) {
+                limiter = newLimiter;
+            }
+        }
+        return limiter;
+    }
+
+    private RateLimiter replaceLimiter(final HttpRoute route, final RateLimiter limiter) {
+        this.limiters.remove(getKey(route), limiter);
+        return getLimiter(route);
+    }
+
+    private void purgeLimiters() {
+        final long now = System.nanoTime();
+        for (final Map.Entry<Object, RateLimiter> entry: this.limiters.entrySet()) {
+            final RateLimiter limiter = entry.getValue();
+            if (limiter.evict(now)) {
+                this.limiters.remove(entry.getKey(), limiter);
+            }
+        }
+        // purge again once the number of limiters has doubled
+        this.purgeSize = Math.max(MIN_PURGE_SIZE, this.limiters.size() * 2);
+    }
+
+    int getLimiterCount() {
+        return this.limiters.size();
+    }
+
+    /**
+     * Returns the number of permits currently available to the given route.
+     */
+    public int getAvailablePermits(final HttpRoute route) {
+        final RateLimiter limiter = this.limiters.get(getKey(route));
+        return limiter != null ?
+                limiter.getAvailablePermits(System.nanoTime()) : this.config.getPermitsPerPeriod();
+    }
+
+    /**
+     * Returns the number of requests that had to wait for a permit.
+     */
+    public long getRequestsDelayed() {
+        return this.requestsDelayed.get();
+    }
+
+    /**
+     * Returns the number of requests that failed to get a permit in time.
+     */
+    public long getRequestsRejected() {
+        return this.requestsRejected.get();
+    }
+
+    public CloseableHttpResponse execute(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        Args.notNull(route, "HTTP route");
+        Args.notNull(context, "HTTP context");
+        final RateLimiter limiter = acquire(route, context);
+        final CloseableHttpResponse response = this.requestExecutor.execute(
+                route, request, context, execAware);
+        if (this.config.isAdaptive()) {
+            adapt(route, limiter, response);
+        }
+        return response;
+    }
+
+    private RateLimiter acquire(
+            final HttpRoute route,
+            final HttpClientContext context) throws IOException {
+        long maxWait = this.config.getMaxWait() >= 0 ?
+                TimeUnit.MILLISECONDS.toNanos(this.config.getMaxWait()) : -1;
+        boolean boundedByDeadline = false;
+        final long deadline = context.getRequestDeadline();
+        if (deadline > 0) {
+            final long remaining = TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(0, deadline - System.currentTimeMillis()));
+            if (maxWait < 0 || remaining < maxWait) {
+                maxWait = remaining;
+                boundedByDeadline = true;
+            }
+        }
+        RateLimiter limiter = getLimiter(route);
+        long wait;
+        while ((wait = limiter.reserve(System.nanoTime(), maxWait)) == RateLimiter.EVICTED) {
+            limiter = replaceLimiter(route, limiter);
+        }
+        if (wait < 0) {
+            this.requestsRejected.incrementAndGet();
+            if (boundedByDeadline) {
+                throw new RequestTimeoutException(
+                        "Request deadline exceeded waiting for rate limit of " + getKey(route));
+            }
+            throw new RateLimitExceededException("Rate limit of " + getKey(route) + " exceeded");
+        }
+        if (wait > 0) {
+            this.requestsDelayed.incrementAndGet();
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Rate limit of " + getKey(route) + " reached; wait for "
+                        + TimeUnit.NANOSECONDS.toMillis(wait) + " ms");
+            }
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait), (int) (wait % 1000000));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+        return limiter;
+    }
+
+    private void adapt(final HttpRoute route, final RateLimiter limiter, final HttpResponse response) {
+        final long now = System.nanoTime();
+        final long currentTime = System.currentTimeMillis();
+        RateLimiter current = limiter;
+        final int status = response.getStatusLine().getStatusCode();
+        if (status == 429 || status == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            final long retryAfter = RetryAfter.getInterval(response, currentTime);
+            if (retryAfter >= 0) {
+                final long until = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+                while (!current.pauseUntil(until)) {
+                    current = replaceLimiter(route, current);
+                }
+                return;
+            }
+        }
+        final Header remainingHeader = response.getFirstHeader("X-RateLimit-Remaining");
+        final Header resetHeader = response.getFirstHeader("X-RateLimit-Reset");
+        if (remainingHeader == null || resetHeader == null) {
+            return;
+        }
+        final long remaining;
+        final long reset;
+        try {
+            remaining = Long.parseLong(remainingHeader.getValue().trim());
+            reset = Long.parseLong(resetHeader.getValue().trim());
+        } catch (final NumberFormatException ignore) {
+            return;
+        }
+        final long untilReset = reset >= EPOCH_SECONDS_THRESHOLD ?
+                reset * 1000 - currentTime : reset * 1000;
+        final long untilResetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, untilReset));
+        while (!current.adapt(remaining, untilResetNanos, now)) {
+            current = replaceLimiter(route, current);
+        }
+    }
+
+}
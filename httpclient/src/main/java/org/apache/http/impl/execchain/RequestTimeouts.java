@@ -0,0 +1,65 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.apache.http.annotation.Immutable;
+import org.apache.http.conn.RequestTimeoutException;
+
+/**
+ * Tells timeouts caused by the end-to-end deadline of a request from
+ * ordinary ones.
+ *
+ * @see org.apache.http.conn.Deadlines
+ *
+ * @since 4.3
+ */
+@Immutable
+final class RequestTimeouts {
+
+    private RequestTimeouts() {
+    }
+
+    /**
+     * Translates a timeout that occurred because its value had been capped
+     * at the deadline into a {@link RequestTimeoutException}.
+     */
+    static IOException translate(final long deadline, final IOException ex) {
+        if (deadline > 0
+                && ex instanceof InterruptedIOException
+                && !(ex instanceof RequestTimeoutException)
+                && !(ex instanceof RequestAbortedException)
+                && System.currentTimeMillis() >= deadline) {
+            return new RequestTimeoutException("Request deadline exceeded", ex);
+        }
+        return ex;
+    }
+
+}
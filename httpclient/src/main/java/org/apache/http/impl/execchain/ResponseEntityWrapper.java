@@ -80,7 +80,12 @@ class ResponseEntityWrapper extends HttpEntityWrapper implements EofSensorWatche
 
     @Override
     public InputStream getContent() throws IOException {
-        return new EofSensorInputStream(this.wrappedEntity.getContent(), this);
+        InputStream content = this.wrappedEntity.getContent();
+        if (this.connReleaseTrigger != null && this.connReleaseTrigger.getDeadline() > 0) {
+            content = new DeadlineInputStream(content, this.connReleaseTrigger,
+                    this.connReleaseTrigger.getDeadline(), this.connReleaseTrigger.getSocketTimeout());
+        }
+        return new EofSensorInputStream(content, this);
     }
 
     @Deprecated
@@ -92,7 +97,22 @@ class ResponseEntityWrapper extends HttpEntityWrapper implements EofSensorWatche
     @Override
     public void writeTo(final OutputStream outstream) throws IOException {
         try {
-            this.wrappedEntity.writeTo(outstream);
+            if (this.connReleaseTrigger != null && this.connReleaseTrigger.getDeadline() > 0) {
+                final InputStream instream = new DeadlineInputStream(this.wrappedEntity.getContent(),
+                        this.connReleaseTrigger, this.connReleaseTrigger.getDeadline(),
+                        this.connReleaseTrigger.getSocketTimeout());
+                try {
+                    final byte[] buffer = new byte[4096];
+                    int l;
+                    while ((l = instream.read(buffer)) != -1) {
+                        outstream.write(buffer, 0, l);
+                    }
+                } finally {
+                    instream.close();
+                }
+            } else {
+                this.wrappedEntity.writeTo(outstream);
+            }
             releaseConnection();
         } finally {
             cleanup();
@@ -0,0 +1,77 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.annotation.Immutable;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * Helper for reading the <code>Retry-After</code> header of a response.
+ *
+ * @since 4.3
+ */
+@Immutable
+public final class RetryAfter {
+
+    private RetryAfter() {
+    }
+
+    /**
+     * Returns the interval requested by the <code>Retry-After</code> header
+     * of the response in milliseconds or <code>-1</code> if the header is
+     * absent or malformed. The header may give the interval in seconds or
+     * the date to retry at, which is measured from the given current time.
+     *
+     * @param response the response.
+     * @param now the current time in milliseconds since the epoch.
+     */
+    public static long getInterval(final HttpResponse response, final long now) {
+        final Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return -1;
+        }
+        final String value = header.getValue().trim();
+        try {
+            final long seconds = Long.parseLong(value);
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (final NumberFormatException ignore) {
+        }
+        try {
+            final Date date = DateUtils.parseDate(value);
+            return Math.max(0, date.getTime() - now);
+        } catch (final DateParseException ignore) {
+            return -1;
+        }
+    }
+
+}
@@ -28,39 +28,93 @@
 package org.apache.http.impl.execchain;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
-import org.apache.http.annotation.Immutable;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.NonRepeatableRequestException;
+import org.apache.http.client.RetryBudget;
+import org.apache.http.client.RetryIntervalStrategy;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpExecutionAware;
 import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.util.Args;
 
 /**
+ * {@link ClientExecChain} implementation that retries requests failing with
+ * an I/O error as long as the {@link HttpRequestRetryHandler} allows. Retries
+ * can optionally be delayed by a {@link RetryIntervalStrategy} and capped by
+ * a {@link RetryBudget}; successful responses are credited to the budget.
+ *
  * @since 4.3
  */
-@Immutable
+@ThreadSafe
 public class RetryExec implements ClientExecChain {
 
     private final Log log = LogFactory.getLog(getClass());
 
     private final ClientExecChain requestExecutor;
     private final HttpRequestRetryHandler retryHandler;
+    private final RetryIntervalStrategy retryIntervalStrategy;
+    private final RetryBudget retryBudget;
+    private final AtomicLong retriesAttempted;
+    private final AtomicLong retriesSuppressed;
 
+    /**
+     * @param requestExecutor the next executor in the chain.
+     * @param retryHandler decides whether a failed request may be retried.
+     * @param retryIntervalStrategy determines the delay before each retry;
+     *   retries are sent immediately if <code>null</code>.
+     * @param retryBudget caps the retries per route; unlimited if <code>null</code>.
+     */
     public RetryExec(
             final ClientExecChain requestExecutor,
-            final HttpRequestRetryHandler retryHandler) {
+            final HttpRequestRetryHandler retryHandler,
+            final RetryIntervalStrategy retryIntervalStrategy,
+            final RetryBudget retryBudget) {
         Args.notNull(requestExecutor, "HTTP request executor");
         Args.notNull(retryHandler, "HTTP request retry handler");
         this.requestExecutor = requestExecutor;
         this.retryHandler = retryHandler;
+        this.retryIntervalStrategy = retryIntervalStrategy;
+        this.retryBudget = retryBudget;
+        this.retriesAttempted = new AtomicLong(0);
+        this.retriesSuppressed = new AtomicLong(0);
+    }
+
+    public RetryExec(
+            final ClientExecChain requestExecutor,
+            final HttpRequestRetryHandler retryHandler) {
+        this(requestExecutor, retryHandler, null, null);
+    }
+
+    /**
+     * Returns the number of retries sent so far.
+     */
+    public long getRetriesAttempted() {
+        return this.retriesAttempted.get();
+    }
+
+    /**
+     * Returns the number of retries the retry budget has suppressed.
+     */
+    public long getRetriesSuppressed() {
+        return this.retriesSuppressed.get();
+    }
+
+    static boolean isSuccess(final HttpResponse response) {
+        final int status = response.getStatusLine().getStatusCode();
+        return status < HttpStatus.SC_INTERNAL_SERVER_ERROR && status != 429;
     }
 
     public CloseableHttpResponse execute(
@@ -74,12 +128,22 @@ public class RetryExec implements ClientExecChain {
         final Header[] origheaders = request.getAllHeaders();
         for (int execCount = 1;; execCount++) {
             try {
-                return this.requestExecutor.execute(route, request, context, execAware);
+                final CloseableHttpResponse response = this.requestExecutor.execute(
+                        route, request, context, execAware);
+                if (this.retryBudget != null && isSuccess(response)) {
+                    this.retryBudget.success(route);
+                }
+                return response;
             } catch (final IOException ex) {
                 if (execAware != null && execAware.isAborted()) {
                     this.log.debug("Request has been aborted");
                     throw ex;
                 }
+                if (ex instanceof CircuitBreakerOpenException
+                        || ex instanceof RateLimitExceededException
+                        || ex instanceof RequestTimeoutException) {
+                    throw ex;
+                }
                 if (retryHandler.retryRequest(ex, execCount, context)) {
                     if (this.log.isInfoEnabled()) {
                         this.log.info("I/O exception ("+ ex.getClass().getName() +
@@ -94,6 +158,30 @@ public class RetryExec implements ClientExecChain {
                         throw new NonRepeatableRequestException("Cannot retry request " +
                                 "with a non-repeatable request entity", ex);
                     }
+                    final long interval = this.retryIntervalStrategy != null ?
+                            this.retryIntervalStrategy.getRetryInterval(execCount, null, context) : 0;
+                    final long deadline = context.getRequestDeadline();
+                    if (deadline > 0 && System.currentTimeMillis() + interval >= deadline) {
+                        this.log.debug("Request deadline does not leave time for a retry");
+                        throw new RequestTimeoutException("Request deadline exceeded", ex);
+                    }
+                    if (this.retryBudget != null && !this.retryBudget.tryRetry(route)) {
+                        this.retriesSuppressed.incrementAndGet();
+                        this.log.debug("Retry budget of route " + route + " exhausted");
+                        throw ex;
+                    }
+                    this.retriesAttempted.incrementAndGet();
+                    if (interval > 0) {
+                        if (this.log.isDebugEnabled()) {
+                            this.log.debug("Wait for " + interval);
+                        }
+                        try {
+                            Thread.sleep(interval);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(e.getMessage());
+                        }
+                    }
                     request.setHeaders(origheaders);
                     this.log.info("Retrying request");
                 } else {
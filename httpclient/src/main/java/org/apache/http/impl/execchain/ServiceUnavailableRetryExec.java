@@ -29,11 +29,14 @@ package org.apache.http.impl.execchain;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpException;
-import org.apache.http.annotation.Immutable;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.RetryBudget;
+import org.apache.http.client.RetryIntervalStrategy;
 import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpExecutionAware;
@@ -45,25 +48,65 @@ import org.apache.http.util.Args;
 /**
  * {@link ClientExecChain} implementation that can automatically retry the request in case of
  * a non-2xx response using the {@link ServiceUnavailableRetryStrategy} interface.
+ * The interval between retries is taken from the {@link RetryIntervalStrategy}
+ * if one is given, and retries are capped by an optional {@link RetryBudget}.
  *
  * @since 4.3
  */
-@Immutable
+@ThreadSafe
 public class ServiceUnavailableRetryExec implements ClientExecChain {
 
     private final Log log = LogFactory.getLog(getClass());
 
     private final ClientExecChain requestExecutor;
     private final ServiceUnavailableRetryStrategy retryStrategy;
+    private final RetryIntervalStrategy retryIntervalStrategy;
+    private final RetryBudget retryBudget;
+    private final AtomicLong retriesAttempted;
+    private final AtomicLong retriesSuppressed;
 
+    /**
+     * @param requestExecutor the next executor in the chain.
+     * @param retryStrategy decides whether a response is to be retried.
+     * @param retryIntervalStrategy determines the delay before each retry;
+     *   {@link ServiceUnavailableRetryStrategy#getRetryInterval()} is used
+     *   if <code>null</code>.
+     * @param retryBudget caps the retries per route; unlimited if <code>null</code>.
+     */
     public ServiceUnavailableRetryExec(
             final ClientExecChain requestExecutor,
-            final ServiceUnavailableRetryStrategy retryStrategy) {
+            final ServiceUnavailableRetryStrategy retryStrategy,
+            final RetryIntervalStrategy retryIntervalStrategy,
+            final RetryBudget retryBudget) {
         super();
         Args.notNull(requestExecutor, "HTTP request executor");
         Args.notNull(retryStrategy, "Retry strategy");
         this.requestExecutor = requestExecutor;
         this.retryStrategy = retryStrategy;
+        this.retryIntervalStrategy = retryIntervalStrategy;
+        this.retryBudget = retryBudget;
+        this.retriesAttempted = new AtomicLong(0);
+        this.retriesSuppressed = new AtomicLong(0);
+    }
+
+    public ServiceUnavailableRetryExec(
+            final ClientExecChain requestExecutor,
+            final ServiceUnavailableRetryStrategy retryStrategy) {
+        this(requestExecutor, retryStrategy, null, null);
+    }
+
+    /**
+     * Returns the number of retries sent so far.
+     */
+    public long getRetriesAttempted() {
+        return this.retriesAttempted.get();
+    }
+
+    /**
+     * Returns the number of retries the retry budget has suppressed.
+     */
+    public long getRetriesSuppressed() {
+        return this.retriesSuppressed.get();
     }
 
     public CloseableHttpResponse execute(
@@ -76,13 +119,29 @@ public class ServiceUnavailableRetryExec implements ClientExecChain {
                     route, request, context, execAware);
             try {
                 if (this.retryStrategy.retryRequest(response, c, context)) {
+                    final long nextInterval = this.retryIntervalStrategy != null ?
+                            this.retryIntervalStrategy.getRetryInterval(c, response, context) :
+                            this.retryStrategy.getRetryInterval();
+                    final long deadline = context.getRequestDeadline();
+                    if (deadline > 0 && System.currentTimeMillis() + nextInterval >= deadline) {
+                        this.log.debug("Request deadline does not leave time for a retry");
+                        return response;
+                    }
+                    if (this.retryBudget != null && !this.retryBudget.tryRetry(route)) {
+                        this.retriesSuppressed.incrementAndGet();
+                        this.log.debug("Retry budget of route " + route + " exhausted");
+                        return response;
+                    }
+                    this.retriesAttempted.incrementAndGet();
                     response.close();
-                    final long nextInterval = this.retryStrategy.getRetryInterval();
-                    try {
-                        this.log.trace("Wait for " + nextInterval);
-                        Thread.sleep(nextInterval);
-                    } catch (final InterruptedException e) {
-                        throw new InterruptedIOException(e.getMessage());
+                    if (nextInterval > 0) {
+                        try {
+                            this.log.trace("Wait for " + nextInterval);
+                            Thread.sleep(nextInterval);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(e.getMessage());
+                        }
                     }
                 } else {
                     return response;
@@ -0,0 +1,254 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ChannelSocketFactory}.
+ */
+public class TestChannelSocketFactory extends LocalServerTestBase {
+
+    private final List<Socket> clients = new ArrayList<Socket>();
+    private ChannelSocketFactory socketFactory;
+    private ServerSocket blackhole;
+    private HttpHost host;
+    private HttpContext context;
+
+    @Before
+    public void setup() throws Exception {
+        socketFactory = new ChannelSocketFactory();
+        host = new HttpHost("localhost");
+        context = new BasicHttpContext();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        socketFactory.shutdown();
+        for (final Socket sock: clients) {
+            sock.close();
+        }
+        if (blackhole != null) {
+            blackhole.close();
+        }
+    }
+
+    /**
+     * Returns the address of a listener whose backlog is full, so that
+     * connection attempts neither succeed nor fail.
+     */
+    private InetSocketAddress blackhole() throws IOException {
+        final InetAddress loopback = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+        blackhole = new ServerSocket(0, 1, loopback);
+        final InetSocketAddress address = new InetSocketAddress(loopback, blackhole.getLocalPort());
+        for (int i = 0; i < 10; i++) {
+            final Socket sock = new Socket();
+            clients.add(sock);
+            try {
+                sock.connect(address, 200);
+            } catch (final SocketTimeoutException ex) {
+                return address;
+            }
+        }
+        throw new IllegalStateException("Backlog cannot be filled");
+    }
+
+    @Test
+    public void testConnect() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        try {
+            final Socket sock = socketFactory.createSocket(context);
+            Assert.assertNotNull(sock.getChannel());
+            final Socket connected = socketFactory.connectSocket(1000, sock, host,
+                    new InetSocketAddress("localhost", server.getLocalPort()), null, context);
+            Assert.assertSame(sock, connected);
+            Assert.assertTrue(connected.isConnected());
+            Assert.assertTrue(connected.getChannel().isBlocking());
+
+            final Socket accepted = server.accept();
+            try {
+                accepted.getOutputStream().write(42);
+                Assert.assertEquals(42, connected.getInputStream().read());
+            } finally {
+                accepted.close();
+                connected.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test(expected=ConnectException.class)
+    public void testConnectRefused() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        final int port = server.getLocalPort();
+        server.close();
+        final Socket sock = socketFactory.createSocket(context);
+        socketFactory.connectSocket(1000, sock, host,
+                new InetSocketAddress("localhost", port), null, context);
+    }
+
+    @Test
+    public void testConnectTimeout() throws Exception {
+        final InetSocketAddress address = blackhole();
+        final Socket sock = socketFactory.createSocket(context);
+        final long start = System.currentTimeMillis();
+        try {
+            socketFactory.connectSocket(300, sock, host, address, null, context);
+            Assert.fail("ConnectTimeoutException expected");
+        } catch (final ConnectTimeoutException expected) {
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue("Timed out after " + elapsed + " ms", elapsed >= 250 && elapsed < 2000);
+        Assert.assertTrue(sock.isClosed());
+    }
+
+    @Test
+    public void testConcurrentConnectsShareSelector() throws Exception {
+        final InetSocketAddress address = blackhole();
+        final int threadsBefore = countConnectorThreads();
+        final Thread[] threads = new Thread[20];
+        final AtomicInteger timeouts = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        final Socket sock = socketFactory.createSocket(context);
+                        socketFactory.connectSocket(500, sock, host, address, null, context);
+                    } catch (final ConnectTimeoutException ex) {
+                        timeouts.incrementAndGet();
+                    } catch (final IOException ex) {
+                    }
+                }
+
+            });
+        }
+        final long start = System.currentTimeMillis();
+        for (final Thread thread: threads) {
+            thread.start();
+        }
+        Thread.sleep(200);
+        Assert.assertEquals(threadsBefore + 1, countConnectorThreads());
+        for (final Thread thread: threads) {
+            thread.join(5000);
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertEquals(threads.length, timeouts.get());
+        Assert.assertTrue("Timed out after " + elapsed + " ms", elapsed < 2000);
+    }
+
+    private static int countConnectorThreads() {
+        final Thread[] threads = new Thread[Thread.activeCount() * 2 + 10];
+        final int n = Thread.enumerate(threads);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (threads[i].getName().startsWith("channel-connector-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testAbortOnClose() throws Exception {
+        final InetSocketAddress address = blackhole();
+        final Socket sock = socketFactory.createSocket(context);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final Thread thread = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    socketFactory.connectSocket(10000, sock, host, address, null, context);
+                } catch (final Exception ex) {
+                    failure.set(ex);
+                }
+            }
+
+        });
+        thread.start();
+        Thread.sleep(200);
+        final long start = System.currentTimeMillis();
+        sock.close();
+        thread.join(5000);
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertTrue("Aborted after " + elapsed + " ms", elapsed < 500);
+        Assert.assertNotNull(failure.get());
+        Assert.assertFalse(failure.get() instanceof ConnectTimeoutException);
+    }
+
+    @Test
+    public void testWithPoolingConnectionManager() throws Exception {
+        startServer();
+        final InetSocketAddress address = this.localServer.getServiceAddress();
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", socketFactory)
+                    .build());
+        try {
+            final HttpClient client = HttpClients.custom().setConnectionManager(mgr).build();
+            final HttpHost target = new HttpHost("localhost", address.getPort(), "http");
+            for (int i = 0; i < 3; i++) {
+                final HttpResponse response = client.execute(target, new HttpGet("/random/100"));
+                Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+                Assert.assertEquals(100, EntityUtils.toByteArray(response.getEntity()).length);
+            }
+        } finally {
+            mgr.shutdown();
+        }
+    }
+
+}
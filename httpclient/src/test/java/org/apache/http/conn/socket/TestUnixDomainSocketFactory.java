@@ -0,0 +1,325 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.UnixDomainRoutePlanner;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnixDomainSocketFactory {
+
+    private File socketFile;
+    private UnixDomainServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(UnixDomainSocketFactory.isSupported());
+        this.socketFile = File.createTempFile("httpclient", ".sock");
+        this.socketFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.server != null) {
+            this.server.shutdown();
+        }
+        if (this.socketFile != null) {
+            this.socketFile.delete();
+        }
+    }
+
+    @Test
+    public void testEcho() throws Exception {
+        this.server = new UnixDomainServer(this.socketFile, UnixDomainServer.ECHO);
+        this.server.start();
+
+        final UnixDomainSocketFactory sf = new UnixDomainSocketFactory(this.socketFile.getPath());
+        final Socket socket = sf.connectSocket(1000, sf.createSocket(null), null, null, null, null);
+        try {
+            Assert.assertTrue(socket.isConnected());
+            socket.setSoTimeout(5000);
+            final OutputStream out = socket.getOutputStream();
+            out.write("ping".getBytes("US-ASCII"));
+            out.flush();
+            final byte[] b = new byte[4];
+            int off = 0;
+            final InputStream in = socket.getInputStream();
+            while (off < b.length) {
+                final int n = in.read(b, off, b.length - off);
+                Assert.assertTrue(n > 0);
+                off += n;
+            }
+            Assert.assertEquals("ping", new String(b, "US-ASCII"));
+        } finally {
+            socket.close();
+        }
+        Assert.assertTrue(socket.isClosed());
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        this.server = new UnixDomainServer(this.socketFile, UnixDomainServer.SILENT);
+        this.server.start();
+
+        final UnixDomainSocketFactory sf = new UnixDomainSocketFactory(this.socketFile.getPath());
+        final Socket socket = sf.connectSocket(1000, sf.createSocket(null), null, null, null, null);
+        try {
+            socket.setSoTimeout(100);
+            final long start = System.currentTimeMillis();
+            try {
+                socket.getInputStream().read();
+                Assert.fail("SocketTimeoutException expected");
+            } catch (final SocketTimeoutException expected) {
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start >= 90);
+            Assert.assertFalse(socket.isClosed());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testCloseAbortsRead() throws Exception {
+        this.server = new UnixDomainServer(this.socketFile, UnixDomainServer.SILENT);
+        this.server.start();
+
+        final UnixDomainSocketFactory sf = new UnixDomainSocketFactory(this.socketFile.getPath());
+        final Socket socket = sf.connectSocket(1000, sf.createSocket(null), null, null, null, null);
+        final Thread closer = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    socket.close();
+                } catch (final Exception ignore) {
+                }
+            }
+
+        };
+        closer.start();
+        final long start = System.currentTimeMillis();
+        try {
+            socket.getInputStream().read();
+            Assert.fail("IOException expected");
+        } catch (final IOException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertTrue(socket.isClosed());
+        closer.join();
+    }
+
+    @Test(expected=IOException.class)
+    public void testConnectMissingSocket() throws Exception {
+        final UnixDomainSocketFactory sf = new UnixDomainSocketFactory(this.socketFile.getPath());
+        sf.connectSocket(1000, sf.createSocket(null), null, null, null, null);
+    }
+
+    @Test
+    public void testRoutePlanner() throws Exception {
+        final UnixDomainRoutePlanner planner = new UnixDomainRoutePlanner(
+                "unix", null, "service.internal");
+        final HttpRoute route1 = planner.determineRoute(
+                new HttpHost("Service.Internal"), new HttpGet("/"), new BasicHttpContext());
+        Assert.assertEquals(new HttpHost("localhost", -1, "unix"), route1.getProxyHost());
+        Assert.assertEquals(80, route1.getTargetHost().getPort());
+        final HttpRoute route2 = planner.determineRoute(
+                new HttpHost("somehost"), new HttpGet("/"), new BasicHttpContext());
+        Assert.assertNull(route2.getProxyHost());
+    }
+
+    @Test
+    public void testRequestsThroughSocket() throws Exception {
+        this.server = new UnixDomainServer(this.socketFile, UnixDomainServer.HTTP);
+        this.server.start();
+
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainSocketFactory.getSocketFactory())
+            .register("unix", new UnixDomainSocketFactory(this.socketFile.getPath()))
+            .build();
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(registry);
+        final CloseableHttpClient client = HttpClients.custom()
+            .setConnectionManager(mgr)
+            .setRoutePlanner(new UnixDomainRoutePlanner("unix", null, "service.internal"))
+            .build();
+        try {
+            for (int i = 0; i < 3; i++) {
+                final HttpResponse response = client.execute(new HttpGet("http://service.internal/stuff/" + i));
+                Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+                Assert.assertEquals("GET http://service.internal/stuff/" + i + " HTTP/1.1",
+                        EntityUtils.toString(response.getEntity()));
+            }
+            Assert.assertEquals(1, this.server.getAcceptedConnectionCount());
+            Assert.assertEquals(1, mgr.getTotalStats().getAvailable());
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Minimal server listening on a Unix domain socket. Uses reflection as
+     * Unix domain socket channels require Java 16.
+     */
+    static class UnixDomainServer extends Thread {
+
+        static final int ECHO = 0;
+        static final int SILENT = 1;
+        static final int HTTP = 2;
+
+        private final ServerSocketChannel serverChannel;
+        private final int mode;
+        private final AtomicInteger accepted;
+
+        UnixDomainServer(final File file, final int mode) throws Exception {
+            super();
+            final Class<?> familyClass = Class.forName("java.net.ProtocolFamily");
+            final Object unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+            final Method open = ServerSocketChannel.class.getMethod("open", familyClass);
+            final Method addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod(
+                    "of", String.class);
+            final Method bind = ServerSocketChannel.class.getMethod("bind", SocketAddress.class);
+            this.serverChannel = (ServerSocketChannel) open.invoke(null, unix);
+            bind.invoke(this.serverChannel, addressOf.invoke(null, file.getPath()));
+            this.mode = mode;
+            this.accepted = new AtomicInteger();
+            setDaemon(true);
+        }
+
+        int getAcceptedConnectionCount() {
+            return this.accepted.get();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (;;) {
+                    final SocketChannel channel = this.serverChannel.accept();
+                    this.accepted.incrementAndGet();
+                    final Thread worker = new Thread() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                try {
+                                    handle(channel);
+                                } finally {
+                                    channel.close();
+                                }
+                            } catch (final IOException ignore) {
+                            }
+                        }
+
+                    };
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+            } catch (final IOException ignore) {
+            }
+        }
+
+        private void handle(final SocketChannel channel) throws IOException {
+            final InputStream in = Channels.newInputStream(channel);
+            final OutputStream out = Channels.newOutputStream(channel);
+            final byte[] b = new byte[1024];
+            switch (this.mode) {
+            case ECHO:
+                int n;
+                while ((n = in.read(b)) != -1) {
+                    out.write(b, 0, n);
+                }
+                break;
+            case SILENT:
+                while (in.read(b) != -1) {
+                }
+                break;
+            case HTTP:
+                for (;;) {
+                    final String requestLine = readLine(in);
+                    if (requestLine == null) {
+                        return;
+                    }
+                    String line;
+                    do {
+                        line = readLine(in);
+                    } while (line != null && line.length() > 0);
+                    final byte[] body = requestLine.getBytes("US-ASCII");
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n")
+                            .getBytes("US-ASCII"));
+                    out.write(body);
+                    out.flush();
+                }
+            }
+        }
+
+        private static String readLine(final InputStream in) throws IOException {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            int ch;
+            while ((ch = in.read()) != -1) {
+                if (ch == '\n') {
+                    final String line = buf.toString("US-ASCII");
+                    return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+                }
+                buf.write(ch);
+            }
+            return null;
+        }
+
+        void shutdown() throws IOException {
+            this.serverChannel.close();
+        }
+
+    }
+
+}
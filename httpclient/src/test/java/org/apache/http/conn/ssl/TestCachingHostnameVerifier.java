@@ -0,0 +1,336 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.Principal;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachingHostnameVerifier}.
+ */
+public class TestCachingHostnameVerifier {
+
+    /**
+     * Certificate that expires after the given time.
+     */
+    static class ShortLivedCertificate extends X509Certificate {
+
+        private final X509Certificate cert;
+        private final Date notAfter;
+
+        ShortLivedCertificate(final X509Certificate cert, final long millis) {
+            super();
+            this.cert = cert;
+            this.notAfter = new Date(System.currentTimeMillis() + millis);
+        }
+
+        @Override
+        public void checkValidity() throws java.security.cert.CertificateExpiredException,
+                java.security.cert.CertificateNotYetValidException {
+            checkValidity(new Date());
+        }
+
+        @Override
+        public void checkValidity(final Date date)
+                throws java.security.cert.CertificateExpiredException,
+                java.security.cert.CertificateNotYetValidException {
+            if (date.after(this.notAfter)) {
+                throw new java.security.cert.CertificateExpiredException();
+            }
+            this.cert.checkValidity(date);
+        }
+
+        @Override
+        public Date getNotAfter() {
+            return this.notAfter;
+        }
+
+        @Override
+        public int getVersion() {
+            return this.cert.getVersion();
+        }
+
+        @Override
+        public BigInteger getSerialNumber() {
+            return this.cert.getSerialNumber();
+        }
+
+        @Override
+        public Principal getIssuerDN() {
+            return this.cert.getIssuerDN();
+        }
+
+        @Override
+        public Principal getSubjectDN() {
+            return this.cert.getSubjectDN();
+        }
+
+        @Override
+        public javax.security.auth.x500.X500Principal getSubjectX500Principal() {
+            return this.cert.getSubjectX500Principal();
+        }
+
+        @Override
+        public java.util.Collection<java.util.List<?>> getSubjectAlternativeNames()
+                throws java.security.cert.CertificateParsingException {
+            return this.cert.getSubjectAlternativeNames();
+        }
+
+        @Override
+        public Date getNotBefore() {
+            return this.cert.getNotBefore();
+        }
+
+        @Override
+        public byte[] getTBSCertificate() throws CertificateEncodingException {
+            return this.cert.getTBSCertificate();
+        }
+
+        @Override
+        public byte[] getSignature() {
+            return this.cert.getSignature();
+        }
+
+        @Override
+        public String getSigAlgName() {
+            return this.cert.getSigAlgName();
+        }
+
+        @Override
+        public String getSigAlgOID() {
+            return this.cert.getSigAlgOID();
+        }
+
+        @Override
+        public byte[] getSigAlgParams() {
+            return this.cert.getSigAlgParams();
+        }
+
+        @Override
+        public boolean[] getIssuerUniqueID() {
+            return this.cert.getIssuerUniqueID();
+        }
+
+        @Override
+        public boolean[] getSubjectUniqueID() {
+            return this.cert.getSubjectUniqueID();
+        }
+
+        @Override
+        public boolean[] getKeyUsage() {
+            return this.cert.getKeyUsage();
+        }
+
+        @Override
+        public int getBasicConstraints() {
+            return this.cert.getBasicConstraints();
+        }
+
+        @Override
+        public byte[] getEncoded() throws CertificateEncodingException {
+            return this.cert.getEncoded();
+        }
+
+        @Override
+        public void verify(final PublicKey key) throws CertificateException,
+                java.security.NoSuchAlgorithmException, java.security.InvalidKeyException,
+                java.security.NoSuchProviderException, java.security.SignatureException {
+            this.cert.verify(key);
+        }
+
+        @Override
+        public void verify(final PublicKey key, final String sigProvider)
+                throws CertificateException, java.security.NoSuchAlgorithmException,
+                java.security.InvalidKeyException, java.security.NoSuchProviderException,
+                java.security.SignatureException {
+            this.cert.verify(key, sigProvider);
+        }
+
+        @Override
+        public String toString() {
+            return this.cert.toString();
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return this.cert.getPublicKey();
+        }
+
+        public boolean hasUnsupportedCriticalExtension() {
+            return this.cert.hasUnsupportedCriticalExtension();
+        }
+
+        public Set<String> getCriticalExtensionOIDs() {
+            return this.cert.getCriticalExtensionOIDs();
+        }
+
+        public Set<String> getNonCriticalExtensionOIDs() {
+            return this.cert.getNonCriticalExtensionOIDs();
+        }
+
+        public byte[] getExtensionValue(final String oid) {
+            return this.cert.getExtensionValue(oid);
+        }
+
+    }
+
+    static class CountingVerifier extends AbstractVerifier {
+
+        int count;
+
+        public void verify(
+                final String host,
+                final String[] cns,
+                final String[] subjectAlts) throws SSLException {
+            this.count++;
+            verify(host, cns, subjectAlts, false);
+        }
+
+    }
+
+    static X509Certificate load(final byte[] b) throws Exception {
+        final CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        return (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(b));
+    }
+
+    private CountingVerifier counting;
+    private X509Certificate foo;
+    private X509Certificate fooBar;
+
+    @Before
+    public void setup() throws Exception {
+        counting = new CountingVerifier();
+        foo = load(CertificatesToPlayWith.X509_FOO);
+        fooBar = load(CertificatesToPlayWith.X509_FOO_BAR);
+    }
+
+    @Test
+    public void testDecisionsCached() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(counting);
+
+        for (int i = 0; i < 3; i++) {
+            verifier.verify("foo.com", foo);
+            verifier.verify("bar.com", fooBar);
+        }
+        Assert.assertEquals(2, counting.count);
+        Assert.assertEquals(4, verifier.getHitCount());
+        Assert.assertEquals(2, verifier.getMissCount());
+    }
+
+    @Test
+    public void testFailuresCached() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(counting);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                verifier.verify("bar.com", foo);
+                Assert.fail("SSLException expected");
+            } catch (final SSLException expected) {
+                Assert.assertTrue(expected.getMessage().contains("bar.com"));
+            }
+        }
+        Assert.assertEquals(1, counting.count);
+    }
+
+    @Test
+    public void testDecisionsPerHost() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(counting);
+
+        verifier.verify("foo.com", fooBar);
+        verifier.verify("bar.com", fooBar);
+        try {
+            verifier.verify("a.bar.com", fooBar);
+            Assert.fail("SSLException expected");
+        } catch (final SSLException expected) {
+        }
+        Assert.assertEquals(3, counting.count);
+    }
+
+    @Test
+    public void testCacheBounded() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(
+                counting, 1, 1, TimeUnit.HOURS);
+
+        verifier.verify("foo.com", foo);
+        verifier.verify("foo.com", fooBar);
+        verifier.verify("foo.com", foo);
+        Assert.assertEquals(3, counting.count);
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(
+                counting, 10, 100, TimeUnit.MILLISECONDS);
+
+        verifier.verify("foo.com", foo);
+        verifier.verify("foo.com", foo);
+        Assert.assertEquals(1, counting.count);
+        Thread.sleep(200);
+        verifier.verify("foo.com", foo);
+        Assert.assertEquals(2, counting.count);
+    }
+
+    @Test
+    public void testCertificateValidityHonored() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(counting);
+        final X509Certificate cert = new ShortLivedCertificate(foo, 200);
+
+        verifier.verify("foo.com", cert);
+        verifier.verify("foo.com", cert);
+        Assert.assertEquals(1, counting.count);
+        Thread.sleep(300);
+        verifier.verify("foo.com", cert);
+        verifier.verify("foo.com", cert);
+        Assert.assertEquals(3, counting.count);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final CachingHostnameVerifier verifier = new CachingHostnameVerifier(counting);
+
+        verifier.verify("foo.com", foo);
+        verifier.clear();
+        verifier.verify("foo.com", foo);
+        Assert.assertEquals(2, counting.count);
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachingTrustManager}.
+ */
+public class TestCachingTrustManager {
+
+    static class CountingTrustStrategy implements TrustStrategy {
+
+        int count;
+        boolean trusted = true;
+
+        public boolean isTrusted(
+                final X509Certificate[] chain, final String authType) throws CertificateException {
+            this.count++;
+            return this.trusted;
+        }
+
+    }
+
+    static class RejectingTrustManager implements X509TrustManager {
+
+        public void checkClientTrusted(
+                final X509Certificate[] chain, final String authType) throws CertificateException {
+            throw new CertificateException("Not trusted");
+        }
+
+        public void checkServerTrusted(
+                final X509Certificate[] chain, final String authType) throws CertificateException {
+            throw new CertificateException("Not trusted");
+        }
+
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+    }
+
+    private CountingTrustStrategy strategy;
+    private CachingTrustManager trustManager;
+    private X509Certificate[] foo;
+    private X509Certificate[] fooBar;
+
+    @Before
+    public void setup() throws Exception {
+        strategy = new CountingTrustStrategy();
+        trustManager = new CachingTrustManager(
+                new TrustManagerDecorator(new RejectingTrustManager(), strategy));
+        foo = new X509Certificate[] {
+                TestCachingHostnameVerifier.load(CertificatesToPlayWith.X509_FOO) };
+        fooBar = new X509Certificate[] {
+                TestCachingHostnameVerifier.load(CertificatesToPlayWith.X509_FOO_BAR) };
+    }
+
+    @Test
+    public void testTrustedChainsCached() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            trustManager.checkServerTrusted(foo, "RSA");
+            trustManager.checkServerTrusted(fooBar, "RSA");
+        }
+        Assert.assertEquals(2, strategy.count);
+        Assert.assertEquals(4, trustManager.getHitCount());
+
+        trustManager.checkServerTrusted(foo, "DHE_RSA");
+        Assert.assertEquals(3, strategy.count);
+    }
+
+    @Test
+    public void testRejectedChainsNotCached() throws Exception {
+        strategy.trusted = false;
+        for (int i = 0; i < 2; i++) {
+            try {
+                trustManager.checkServerTrusted(foo, "RSA");
+                Assert.fail("CertificateException expected");
+            } catch (final CertificateException expected) {
+            }
+        }
+        Assert.assertEquals(2, strategy.count);
+    }
+
+    @Test
+    public void testCertificateValidityHonored() throws Exception {
+        final X509Certificate[] chain = new X509Certificate[] {
+                new TestCachingHostnameVerifier.ShortLivedCertificate(foo[0], 200) };
+        trustManager.checkServerTrusted(chain, "RSA");
+        trustManager.checkServerTrusted(chain, "RSA");
+        Assert.assertEquals(1, strategy.count);
+        Thread.sleep(300);
+        trustManager.checkServerTrusted(chain, "RSA");
+        Assert.assertEquals(2, strategy.count);
+    }
+
+    @Test
+    public void testClearedOnTrustConfigurationChange() throws Exception {
+        trustManager.checkServerTrusted(foo, "RSA");
+        strategy.trusted = false;
+        trustManager.clear();
+        try {
+            trustManager.checkServerTrusted(foo, "RSA");
+            Assert.fail("CertificateException expected");
+        } catch (final CertificateException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.ssl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.http.HttpHost;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.localserver.LocalTestServer;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TLS session resumption of {@link SSLSocketFactory} against a local server
+ * with a self-signed RSA certificate, created with
+ * <pre>
+ * keytool -genkeypair -alias localhost -keyalg RSA -keysize 2048 -sigalg SHA256withRSA
+ *   -dname "CN=localhost, OU=HttpComponents Project, O=Apache Software Foundation"
+ *   -ext "SAN=dns:localhost,ip:127.0.0.1" -validity 36500 -storetype jks
+ *   -keystore test-rsa.keystore -storepass nopassword -keypass nopassword
+ * </pre>
+ */
+public class TestSSLSessionResumption extends LocalServerTestBase {
+
+    private SSLContext clientSSLContext;
+
+    @Before
+    public void setUp() throws Exception {
+        final URL url = getClass().getClassLoader().getResource("test-rsa.keystore");
+        final KeyStore keystore  = KeyStore.getInstance("jks");
+        final char[] pwd = "nopassword".toCharArray();
+        keystore.load(url.openStream(), pwd);
+
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keystore);
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keystore, pwd);
+
+        final SSLContext serverSSLContext = SSLContext.getInstance("TLS");
+        serverSSLContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        this.clientSSLContext = SSLContext.getInstance("TLS");
+        this.clientSSLContext.init(null, tmf.getTrustManagers(), null);
+
+        this.localServer = new LocalTestServer(serverSSLContext);
+        this.localServer.registerDefaultHandlers();
+        this.localServer.start();
+    }
+
+    private void get(final SSLSocketFactory socketFactory, final HttpHost host) throws Exception {
+        final HttpContext context = new BasicHttpContext();
+        final Socket socket = socketFactory.createSocket(context);
+        final InetSocketAddress remoteAddress = this.localServer.getServiceAddress();
+        final Socket sslsocket = socketFactory.connectSocket(
+                0, socket, host, remoteAddress, null, context);
+        try {
+            final OutputStream outstream = sslsocket.getOutputStream();
+            outstream.write("GET / HTTP/1.0\r\n\r\n".getBytes("US-ASCII"));
+            outstream.flush();
+            final InputStream instream = sslsocket.getInputStream();
+            while (instream.read() != -1) {
+            }
+        } finally {
+            sslsocket.close();
+        }
+    }
+
+    @Test
+    public void testSessionResumption() throws Exception {
+        final HttpHost host = new HttpHost("localhost", 443, "https");
+        final SSLSocketFactory socketFactory = new SSLSocketFactory(this.clientSSLContext,
+                SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER, 10, 60);
+        Assert.assertEquals(10, this.clientSSLContext.getClientSessionContext().getSessionCacheSize());
+        Assert.assertEquals(60, this.clientSSLContext.getClientSessionContext().getSessionTimeout());
+
+        for (int i = 0; i < 5; i++) {
+            get(socketFactory, host);
+        }
+        final SSLHandshakeMetrics metrics = socketFactory.getHandshakeMetrics();
+        Assert.assertEquals(1, metrics.getFullHandshakeCount());
+        Assert.assertEquals(4, metrics.getResumedHandshakeCount());
+        Assert.assertEquals(0, metrics.getFailedHandshakeCount());
+        Assert.assertEquals(0.8, metrics.getResumptionRatio(), 0.001);
+        Assert.assertTrue(metrics.getMeanFullHandshakeTime() > 0);
+        Assert.assertTrue(metrics.getMeanResumedHandshakeTime() > 0);
+    }
+
+    @Test
+    public void testSessionsPinnedPerHost() throws Exception {
+        final SSLSocketFactory socketFactory = new SSLSocketFactory(this.clientSSLContext,
+                SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER, 10, 60);
+
+        // Same address, different target host names
+        get(socketFactory, new HttpHost("localhost", 443, "https"));
+        get(socketFactory, new HttpHost("127.0.0.1", 443, "https"));
+        get(socketFactory, new HttpHost("localhost", 443, "https"));
+
+        final SSLHandshakeMetrics metrics = socketFactory.getHandshakeMetrics();
+        Assert.assertEquals(2, metrics.getFullHandshakeCount());
+        Assert.assertEquals(1, metrics.getResumedHandshakeCount());
+    }
+
+    @Test
+    public void testFailedHandshakeCounted() throws Exception {
+        final SSLContext defaultsslcontext = SSLContext.getInstance("TLS");
+        defaultsslcontext.init(null, null, null);
+        final SSLSocketFactory socketFactory = new SSLSocketFactory(defaultsslcontext,
+                SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER, 10, 60);
+        try {
+            get(socketFactory, new HttpHost("localhost", 443, "https"));
+            Assert.fail("SSLException expected");
+        } catch (final SSLException expected) {
+        }
+        Assert.assertEquals(1, socketFactory.getHandshakeMetrics().getFailedHandshakeCount());
+    }
+
+}
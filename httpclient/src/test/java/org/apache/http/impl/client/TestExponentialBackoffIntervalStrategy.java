@@ -0,0 +1,142 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.RetryIntervalStrategy;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExponentialBackoffIntervalStrategy {
+
+    private FixedRandom random;
+    private MockClock clock;
+    private ExponentialBackoffIntervalStrategy impl;
+
+    @SuppressWarnings("serial")
+    static class FixedRandom extends Random {
+
+        private double value;
+
+        public void setValue(final double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return this.value;
+        }
+
+    }
+
+    @Before
+    public void setUp() {
+        random = new FixedRandom();
+        random.setValue(0.5);
+        clock = new MockClock();
+        impl = new ExponentialBackoffIntervalStrategy(100, 1000, random, clock);
+    }
+
+    private static HttpResponse serviceUnavailable() {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Oppsie");
+    }
+
+    @Test
+    public void isARetryIntervalStrategy() {
+        assertTrue(impl instanceof RetryIntervalStrategy);
+    }
+
+    @Test
+    public void doublesCeilingWithEachExecution() {
+        assertEquals(50, impl.getRetryInterval(1, null, null));
+        assertEquals(100, impl.getRetryInterval(2, null, null));
+        assertEquals(200, impl.getRetryInterval(3, null, null));
+        assertEquals(400, impl.getRetryInterval(4, null, null));
+    }
+
+    @Test
+    public void ceilingIsCappedAtMaxInterval() {
+        assertEquals(500, impl.getRetryInterval(5, null, null));
+        assertEquals(500, impl.getRetryInterval(100, null, null));
+    }
+
+    @Test
+    public void appliesFullJitter() {
+        random.setValue(0.0);
+        assertEquals(0, impl.getRetryInterval(3, null, null));
+        random.setValue(0.999);
+        assertEquals(399, impl.getRetryInterval(3, null, null));
+    }
+
+    @Test
+    public void honoursRetryAfterSeconds() {
+        final HttpResponse response = serviceUnavailable();
+        response.setHeader("Retry-After", "0");
+        assertEquals(0, impl.getRetryInterval(3, response, null));
+        response.setHeader("Retry-After", " 1 ");
+        assertEquals(1000, impl.getRetryInterval(1, response, null));
+    }
+
+    @Test
+    public void honoursRetryAfterDate() {
+        final HttpResponse response = serviceUnavailable();
+        final long now = 1234567000L;
+        clock.setCurrentTime(now);
+        response.setHeader("Retry-After", DateUtils.formatDate(new Date(now + 2000)));
+        assertEquals(1000, impl.getRetryInterval(1, response, null));
+        response.setHeader("Retry-After", DateUtils.formatDate(new Date(now - 5000)));
+        assertEquals(0, impl.getRetryInterval(1, response, null));
+    }
+
+    @Test
+    public void retryAfterIsCappedAtMaxInterval() {
+        final HttpResponse response = serviceUnavailable();
+        response.setHeader("Retry-After", "3600");
+        assertEquals(1000, impl.getRetryInterval(1, response, null));
+    }
+
+    @Test
+    public void ignoresMalformedRetryAfter() {
+        final HttpResponse response = serviceUnavailable();
+        response.setHeader("Retry-After", "soon");
+        assertEquals(50, impl.getRetryInterval(1, response, null));
+        response.setHeader("Retry-After", "-5");
+        assertEquals(50, impl.getRetryInterval(1, response, null));
+    }
+
+}
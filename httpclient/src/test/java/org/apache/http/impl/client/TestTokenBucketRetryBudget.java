@@ -0,0 +1,121 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.RetryBudget;
+import org.apache.http.conn.routing.HttpRoute;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTokenBucketRetryBudget {
+
+    private TokenBucketRetryBudget impl;
+    private HttpRoute route;
+
+    @Before
+    public void setUp() {
+        impl = new TokenBucketRetryBudget(0.1, 2);
+        route = new HttpRoute(new HttpHost("localhost:80"));
+    }
+
+    @Test
+    public void isARetryBudget() {
+        assertTrue(impl instanceof RetryBudget);
+    }
+
+    @Test
+    public void allowsBurstUpToBucketSize() {
+        assertTrue(impl.tryRetry(route));
+        assertTrue(impl.tryRetry(route));
+        assertFalse(impl.tryRetry(route));
+        assertEquals(0.0, impl.getAvailableRetries(route), 0.0);
+    }
+
+    @Test
+    public void successesRefillBucketByRatio() {
+        impl.tryRetry(route);
+        impl.tryRetry(route);
+        for (int i = 0; i < 9; i++) {
+            impl.success(route);
+        }
+        assertFalse(impl.tryRetry(route));
+        impl.success(route);
+        assertTrue(impl.tryRetry(route));
+        assertFalse(impl.tryRetry(route));
+    }
+
+    @Test
+    public void bucketDoesNotOverflow() {
+        for (int i = 0; i < 1000; i++) {
+            impl.success(route);
+        }
+        assertEquals(2.0, impl.getAvailableRetries(route), 0.0);
+    }
+
+    @Test
+    public void fullBucketsAreEvicted() {
+        impl.success(route);
+        assertEquals(0, impl.getBucketCount());
+        impl.tryRetry(route);
+        assertEquals(1, impl.getBucketCount());
+        for (int i = 0; i < 9; i++) {
+            impl.success(route);
+        }
+        assertEquals(1, impl.getBucketCount());
+        assertEquals(1.9, impl.getAvailableRetries(route), 0.001);
+        impl.success(route);
+        assertEquals(0, impl.getBucketCount());
+        assertEquals(2.0, impl.getAvailableRetries(route), 0.0);
+        assertTrue(impl.tryRetry(route));
+        assertTrue(impl.tryRetry(route));
+        assertFalse(impl.tryRetry(route));
+    }
+
+    @Test
+    public void routesHaveSeparateBuckets() {
+        final HttpRoute other = new HttpRoute(new HttpHost("otherhost:80"));
+        impl.tryRetry(route);
+        impl.tryRetry(route);
+        assertFalse(impl.tryRetry(route));
+        assertTrue(impl.tryRetry(other));
+    }
+
+    @Test
+    public void zeroRatioOnlyAllowsBurst() {
+        impl = new TokenBucketRetryBudget(0, 1);
+        assertTrue(impl.tryRetry(route));
+        impl.success(route);
+        assertFalse(impl.tryRetry(route));
+    }
+
+}
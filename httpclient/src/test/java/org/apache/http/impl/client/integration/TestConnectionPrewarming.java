@@ -0,0 +1,141 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.integration;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for connection pre-warming of <code>PoolingHttpClientConnectionManager</code>.
+ */
+public class TestConnectionPrewarming extends LocalServerTestBase {
+
+    private PoolingHttpClientConnectionManager mgr;
+
+    @Before
+    public void setup() throws Exception {
+        startServer();
+        mgr = new PoolingHttpClientConnectionManager();
+    }
+
+    @After
+    public void shutdownManager() throws Exception {
+        mgr.shutdown();
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        mgr.setDefaultMaxPerRoute(5);
+        final HttpRoute route = new HttpRoute(getServerHttp(), null, false);
+
+        Assert.assertEquals(3, mgr.prewarm(route, 3));
+        final PoolStats stats = mgr.getStats(route);
+        Assert.assertEquals(3, stats.getAvailable());
+        Assert.assertEquals(0, stats.getLeased());
+
+        final ConnectionRequest connRequest = mgr.requestConnection(route, null);
+        final HttpClientConnection conn = connRequest.get(0, null);
+        Assert.assertTrue(conn.isOpen());
+        mgr.releaseConnection(conn, null, -1, null);
+
+        // Connections available already count towards the target
+        Assert.assertEquals(1, mgr.prewarm(route, 4));
+        Assert.assertEquals(4, mgr.getStats(route).getAvailable());
+    }
+
+    @Test
+    public void testPrewarmWithinPoolLimits() throws Exception {
+        mgr.setDefaultMaxPerRoute(2);
+        final HttpRoute route = new HttpRoute(getServerHttp(), null, false);
+
+        Assert.assertEquals(2, mgr.prewarm(route, 5));
+        Assert.assertEquals(2, mgr.getStats(route).getAvailable());
+    }
+
+    @Test
+    public void testPrewarmInterrupted() throws Exception {
+        mgr.setDefaultMaxPerRoute(2);
+        final HttpRoute route = new HttpRoute(getServerHttp(), null, false);
+
+        // The third lease has to wait for the saturated route and gets interrupted
+        Thread.currentThread().interrupt();
+        try {
+            mgr.prewarm(route, 3);
+            Assert.fail("InterruptedException expected");
+        } catch (final InterruptedException expected) {
+        }
+        Assert.assertEquals(0, mgr.getStats(route).getLeased());
+    }
+
+    @Test
+    public void testPrewarmConnectFailure() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", port), null, false);
+
+        Assert.assertEquals(0, mgr.prewarm(route, 2));
+        final PoolStats stats = mgr.getStats(route);
+        Assert.assertEquals(0, stats.getAvailable());
+        Assert.assertEquals(0, stats.getLeased());
+    }
+
+    @Test
+    public void testMinIdleMaintenance() throws Exception {
+        mgr.setDefaultMaxPerRoute(5);
+        final HttpRoute route = new HttpRoute(getServerHttp(), null, false);
+
+        mgr.setMinIdlePerRoute(route, 2);
+        Assert.assertEquals(2, mgr.getMinIdlePerRoute(route));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (mgr.getStats(route).getAvailable() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, mgr.getStats(route).getAvailable());
+
+        mgr.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, mgr.getStats(route).getAvailable());
+        final long deadline2 = System.currentTimeMillis() + 5000;
+        while (mgr.getStats(route).getAvailable() < 2 && System.currentTimeMillis() < deadline2) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, mgr.getStats(route).getAvailable());
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.integration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultServiceUnavailableRetryStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Request deadline tests.
+ */
+public class TestRequestDeadline extends IntegrationTestBase {
+
+    private static final int LATENCY = 2000;
+
+    @Before
+    public void setUp() throws Exception {
+        startServer();
+    }
+
+    private static void pause(final long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException ex) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static RequestConfig deadline(final int timeout) {
+        return RequestConfig.custom().setRequestTimeout(timeout).build();
+    }
+
+    @Test
+    public void testFastRequestWithinDeadline() throws Exception {
+        this.localServer.register("*", new HttpRequestHandler() {
+
+            public void handle(
+                    final HttpRequest request,
+                    final HttpResponse response,
+                    final HttpContext context) throws HttpException, IOException {
+                response.setStatusCode(HttpStatus.SC_OK);
+                response.setEntity(new StringEntity("Whatever"));
+            }
+
+        });
+        this.httpclient = HttpClients.createDefault();
+
+        for (int i = 0; i < 3; i++) {
+            final HttpGet httpget = new HttpGet("/");
+            httpget.setConfig(deadline(5000));
+            final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+            try {
+                Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+                Assert.assertEquals("Whatever", EntityUtils.toString(response.getEntity()));
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSlowResponseHead() throws Exception {
+        this.localServer.register("*", new HttpRequestHandler() {
+
+            public void handle(
+                    final HttpRequest request,
+                    final HttpResponse response,
+                    final HttpContext context) throws HttpException, IOException {
+                pause(LATENCY);
+                response.setStatusCode(HttpStatus.SC_OK);
+            }
+
+        });
+        this.httpclient = HttpClients.createDefault();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(deadline(500));
+        final long start = System.currentTimeMillis();
+        try {
+            this.httpclient.execute(getServerHttp(), httpget);
+            Assert.fail("RequestTimeoutException expected");
+        } catch (final RequestTimeoutException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+    }
+
+    @Test
+    public void testSlowResponseBody() throws Exception {
+        this.localServer.register("*", new HttpRequestHandler() {
+
+            public void handle(
+                    final HttpRequest request,
+                    final HttpResponse response,
+                    final HttpContext context) throws HttpException, IOException {
+                response.setStatusCode(HttpStatus.SC_OK);
+                response.setEntity(new AbstractHttpEntity() {
+
+                    public boolean isRepeatable() {
+                        return false;
+                    }
+
+                    public long getContentLength() {
+                        return 8;
+                    }
+
+                    public InputStream getContent() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void writeTo(final OutputStream outstream) throws IOException {
+                        outstream.write(new byte[] {'W', 'h', 'a', 't'});
+                        outstream.flush();
+                        pause(LATENCY);
+                        outstream.write(new byte[] {'e', 'v', 'e', 'r'});
+                    }
+
+                    public boolean isStreaming() {
+                        return true;
+                    }
+
+                });
+            }
+
+        });
+        this.httpclient = HttpClients.createDefault();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(deadline(1000));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        try {
+            Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+            EntityUtils.toString(response.getEntity());
+            Assert.fail("RequestTimeoutException expected");
+        } catch (final RequestTimeoutException expected) {
+        } finally {
+            response.close();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+    }
+
+    @Test
+    public void testRedirectsBoundedByDeadline() throws Exception {
+        this.localServer.register("*", new HttpRequestHandler() {
+
+            public void handle(
+                    final HttpRequest request,
+                    final HttpResponse response,
+                    final HttpContext context) throws HttpException, IOException {
+                pause(200);
+                response.setStatusCode(HttpStatus.SC_MOVED_TEMPORARILY);
+                response.addHeader("Location", "/next" + System.nanoTime());
+            }
+
+        });
+        this.httpclient = HttpClients.createDefault();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(RequestConfig.custom()
+                .setRequestTimeout(700)
+                .setMaxRedirects(100)
+                .build());
+        final long start = System.currentTimeMillis();
+        try {
+            this.httpclient.execute(getServerHttp(), httpget);
+            Assert.fail("RequestTimeoutException expected");
+        } catch (final RequestTimeoutException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+    }
+
+    @Test
+    public void testNoRetryBeyondDeadline() throws Exception {
+        final AtomicInteger count = new AtomicInteger(0);
+        this.localServer.register("*", new HttpRequestHandler() {
+
+            public void handle(
+                    final HttpRequest request,
+                    final HttpResponse response,
+                    final HttpContext context) throws HttpException, IOException {
+                count.incrementAndGet();
+                response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+            }
+
+        });
+        this.httpclient = HttpClients.custom()
+            .setServiceUnavailableRetryStrategy(
+                    new DefaultServiceUnavailableRetryStrategy(3, LATENCY))
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(deadline(500));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        try {
+            Assert.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE,
+                    response.getStatusLine().getStatusCode());
+        } finally {
+            response.close();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+        Assert.assertEquals(1, count.get());
+    }
+
+}
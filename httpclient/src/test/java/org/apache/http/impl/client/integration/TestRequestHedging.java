@@ -0,0 +1,314 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client.integration;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RateLimitConfig;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.execchain.RateLimitExceededException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Request hedging tests.
+ */
+public class TestRequestHedging extends IntegrationTestBase {
+
+    private static final int LATENCY = 2000;
+
+    private PoolingHttpClientConnectionManager connManager;
+
+    @Before
+    public void setUp() throws Exception {
+        startServer();
+        this.connManager = new PoolingHttpClientConnectionManager();
+        this.connManager.setDefaultMaxPerRoute(10);
+    }
+
+    /**
+     * Delays the responses to the given number of initial requests.
+     */
+    private static class SlowFirstService implements HttpRequestHandler {
+
+        private final int slowRequests;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public SlowFirstService(final int slowRequests) {
+            super();
+            this.slowRequests = slowRequests;
+        }
+
+        public void handle(
+                final HttpRequest request,
+                final HttpResponse response,
+                final HttpContext context) throws HttpException, IOException {
+            if (this.count.incrementAndGet() <= this.slowRequests) {
+                try {
+                    Thread.sleep(LATENCY);
+                } catch (final InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+            }
+            response.setStatusCode(HttpStatus.SC_OK);
+            response.setEntity(new StringEntity("Whatever"));
+        }
+
+        public int getCount() {
+            return this.count.get();
+        }
+
+    }
+
+    /**
+     * Drops the connection of the first request after a short delay and
+     * delays the response to the second one.
+     */
+    private static class FailFirstService implements HttpRequestHandler {
+
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public void handle(
+                final HttpRequest request,
+                final HttpResponse response,
+                final HttpContext context) throws HttpException, IOException {
+            final int n = this.count.incrementAndGet();
+            try {
+                Thread.sleep(n == 1 ? 500 : 1000);
+            } catch (final InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+            if (n == 1) {
+                throw new IOException("Boom");
+            }
+            response.setStatusCode(HttpStatus.SC_OK);
+            response.setEntity(new StringEntity("Whatever"));
+        }
+
+        public int getCount() {
+            return this.count.get();
+        }
+
+    }
+
+    private static RequestConfig hedged(final int delay) {
+        return RequestConfig.custom().setHedgeDelay(delay).build();
+    }
+
+    @Test
+    public void testHedgedRequestWins() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(hedged(200));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        try {
+            Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+            Assert.assertEquals("Whatever", EntityUtils.toString(response.getEntity()));
+        } finally {
+            response.close();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+        Assert.assertEquals(2, service.getCount());
+        // The slow attempt has been aborted and its connection discarded
+        Assert.assertEquals(0, this.connManager.getTotalStats().getLeased());
+        Assert.assertEquals(1, this.connManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testHedgedRequestRecoversFailedRequest() throws Exception {
+        final FailFirstService service = new FailFirstService();
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .disableAutomaticRetries()
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(hedged(200));
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        try {
+            Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+            Assert.assertEquals("Whatever", EntityUtils.toString(response.getEntity()));
+        } finally {
+            response.close();
+        }
+        Assert.assertEquals(2, service.getCount());
+        Assert.assertEquals(0, this.connManager.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testNoHedgeForFastResponse() throws Exception {
+        final SlowFirstService service = new SlowFirstService(0);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .build();
+
+        for (int i = 0; i < 5; i++) {
+            final HttpGet httpget = new HttpGet("/");
+            httpget.setConfig(hedged(1000));
+            final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+            EntityUtils.consume(response.getEntity());
+        }
+        Assert.assertEquals(5, service.getCount());
+        Assert.assertEquals(1, this.localServer.getAcceptedConnectionCount());
+    }
+
+    @Test
+    public void testNoHedgeForNonIdempotentRequest() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .build();
+
+        final HttpPost httppost = new HttpPost("/");
+        httppost.setEntity(new StringEntity("stuff"));
+        httppost.setConfig(hedged(200));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httppost);
+        EntityUtils.consume(response.getEntity());
+        Assert.assertTrue(System.currentTimeMillis() - start >= LATENCY);
+        Assert.assertEquals(1, service.getCount());
+    }
+
+    @Test
+    public void testHedgeForRequestMarkedIdempotent() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .build();
+
+        final HttpPost httppost = new HttpPost("/");
+        httppost.setEntity(new StringEntity("stuff"));
+        httppost.setConfig(RequestConfig.copy(hedged(200)).setIdempotent(true).build());
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httppost);
+        EntityUtils.consume(response.getEntity());
+        Assert.assertTrue(System.currentTimeMillis() - start < LATENCY);
+        Assert.assertEquals(2, service.getCount());
+    }
+
+    private static RateLimitConfig permits(final int permits) {
+        return RateLimitConfig.custom()
+            .setPermitsPerPeriod(permits)
+            .setPeriod(60000)
+            .setMaxWait(0)
+            .build();
+    }
+
+    @Test
+    public void testHedgedRequestTakesPermit() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .setRateLimitConfig(permits(2))
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(hedged(200));
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        EntityUtils.consume(response.getEntity());
+        Assert.assertEquals(2, service.getCount());
+        // Both permits have been used up by the original request and its hedge
+        try {
+            this.httpclient.execute(getServerHttp(), new HttpGet("/"));
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+        Assert.assertEquals(2, service.getCount());
+    }
+
+    @Test
+    public void testNoHedgeWithoutPermit() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(100)
+            .setRateLimitConfig(permits(1))
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(hedged(200));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        EntityUtils.consume(response.getEntity());
+        Assert.assertTrue(System.currentTimeMillis() - start >= LATENCY);
+        Assert.assertEquals(1, service.getCount());
+    }
+
+    @Test
+    public void testHedgeBudgetExhausted() throws Exception {
+        final SlowFirstService service = new SlowFirstService(1);
+        this.localServer.register("*", service);
+        this.httpclient = HttpClients.custom()
+            .setConnectionManager(this.connManager)
+            .setHedgeBudget(0)
+            .build();
+
+        final HttpGet httpget = new HttpGet("/");
+        httpget.setConfig(hedged(200));
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.httpclient.execute(getServerHttp(), httpget);
+        EntityUtils.consume(response.getEntity());
+        Assert.assertTrue(System.currentTimeMillis() - start >= LATENCY);
+        Assert.assertEquals(1, service.getCount());
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.client.integration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainSocketFactory;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.VirtualThreads;
+import org.apache.http.impl.conn.PoolConcurrencyPolicy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.localserver.LocalTestServer;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Executes a large number of concurrent requests from virtual threads and
+ * verifies, by means of the JFR {@code jdk.VirtualThreadPinned} event, that
+ * no virtual thread gets pinned to its carrier while blocked in the client.
+ * <p/>
+ * The striped pool is used as it waits for connections on j.u.c locks only.
+ * The test is skipped on runtimes without virtual threads.
+ */
+public class TestVirtualThreadStress extends IntegrationTestBase {
+
+    private static final int REQUESTS = 10000;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        Assume.assumeTrue(isClassPresent("jdk.jfr.consumer.RecordingStream"));
+        this.localServer = new LocalTestServer(null, null);
+        this.localServer.registerDefaultHandlers();
+        this.localServer.setTimeout(30000);
+        this.localServer.start();
+    }
+
+    @Test
+    public void testNoCarrierPinning() throws Exception {
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainSocketFactory.getSocketFactory())
+                .build();
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(
+                registry, null, null, null, -1, TimeUnit.MILLISECONDS, PoolConcurrencyPolicy.STRIPED);
+        mgr.setMaxTotal(200);
+        mgr.setDefaultMaxPerRoute(200);
+        this.httpclient = HttpClients.custom().setConnectionManager(mgr).build();
+        final HttpHost target = getServerHttp();
+
+        final AtomicInteger pinned = new AtomicInteger(0);
+        final Object recording = startPinnedEventRecording(pinned);
+        final ExecutorService executor = VirtualThreads.newExecutor("stress-");
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+
+                    public Integer call() throws Exception {
+                        final HttpResponse response = httpclient.execute(
+                                target, new HttpGet("/random/1024"));
+                        EntityUtils.consume(response.getEntity());
+                        return Integer.valueOf(response.getStatusLine().getStatusCode());
+                    }
+
+                }));
+            }
+            for (final Future<Integer> future : futures) {
+                Assert.assertEquals(200, future.get(60, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+            // Give the stream a moment to deliver the events still in flight
+            Thread.sleep(1500);
+            recording.getClass().getMethod("close").invoke(recording);
+        }
+        Assert.assertEquals("Pinned virtual threads", 0, pinned.get());
+    }
+
+    private static boolean isClassPresent(final String name) {
+        try {
+            Class.forName(name);
+            return true;
+        } catch (final ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts a JFR recording stream counting pinned virtual threads. JFR
+     * streaming is accessed reflectively as it requires Java 14 or newer.
+     */
+    private static Object startPinnedEventRecording(final AtomicInteger counter) throws Exception {
+        final Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+        final Class<?> durationClass = Class.forName("java.time.Duration");
+        final Class<?> consumerClass = Class.forName("java.util.function.Consumer");
+        final Object stream = streamClass.newInstance();
+        final Object settings = streamClass.getMethod("enable", String.class)
+                .invoke(stream, "jdk.VirtualThreadPinned");
+        settings.getClass().getMethod("withThreshold", durationClass)
+                .invoke(settings, durationClass.getField("ZERO").get(null));
+        final Object consumer = Proxy.newProxyInstance(
+                consumerClass.getClassLoader(),
+                new Class<?>[] { consumerClass },
+                new InvocationHandler() {
+
+                    public Object invoke(
+                            final Object proxy,
+                            final Method method,
+                            final Object[] args) throws Throwable {
+                        if (method.getName().equals("accept")) {
+                            counter.incrementAndGet();
+                            return null;
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return Integer.valueOf(System.identityHashCode(proxy));
+                        }
+                        if (method.getName().equals("equals")) {
+                            return Boolean.valueOf(proxy == args[0]);
+                        }
+                        return "PinnedEventCounter";
+                    }
+
+                });
+        streamClass.getMethod("onEvent", String.class, consumerClass)
+                .invoke(stream, "jdk.VirtualThreadPinned", consumer);
+        streamClass.getMethod("startAsync").invoke(stream);
+        return stream;
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Micro-benchmark measuring the per request overhead of the connection
+ * proxy handed out by {@link PoolingHttpClientConnectionManager}. It compares
+ * {@link CPoolProxy} with a reflective JDK dynamic proxy, which is how pooled
+ * connections used to be wrapped.
+ * <p/>
+ * This is not a unit test. Run it manually with the test classpath:
+ * <pre>
+ * java org.apache.http.impl.conn.CPoolProxyBenchmark [requests]
+ * </pre>
+ */
+public class CPoolProxyBenchmark {
+
+    static volatile int sink;
+
+    public static void main(final String[] args) throws Exception {
+        final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+        final CPoolEntry entry = new CPoolEntry(LogFactory.getLog(CPoolProxyBenchmark.class),
+                "bench", route, new NullConnection(), -1, TimeUnit.MILLISECONDS);
+
+        for (int round = 0; round < 3; round++) {
+            run("reflective", entry, requests, true);
+            run("concrete  ", entry, requests, false);
+        }
+    }
+
+    private static void run(
+            final String name,
+            final CPoolEntry entry,
+            final int requests,
+            final boolean reflective) throws Exception {
+        final long bytes0 = allocatedBytes();
+        final long t0 = System.nanoTime();
+        int n = 0;
+        for (int i = 0; i < requests; i++) {
+            final HttpClientConnection conn = reflective ?
+                    ReflectiveProxy.newProxy(entry) : CPoolProxy.newProxy(entry);
+            n += execute(conn);
+        }
+        final long t1 = System.nanoTime();
+        final long bytes1 = allocatedBytes();
+        System.out.print(name + ": " + (t1 - t0) / requests + " ns/request");
+        if (bytes0 >= 0 && bytes1 >= 0) {
+            System.out.print(", " + (bytes1 - bytes0) / requests + " bytes/request");
+        }
+        System.out.println();
+        sink = n;
+    }
+
+    /**
+     * Connection calls made by a typical request execution.
+     */
+    private static int execute(final HttpClientConnection conn) throws Exception {
+        int n = 0;
+        if (conn.isOpen()) {
+            n++;
+        }
+        conn.setSocketTimeout(1000);
+        conn.sendRequestHeader(null);
+        conn.flush();
+        if (conn.isResponseAvailable(1000)) {
+            n++;
+        }
+        conn.receiveResponseHeader();
+        conn.receiveResponseEntity(null);
+        n += conn.getSocketTimeout();
+        if (conn.isOpen()) {
+            n++;
+        }
+        return n;
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            final Method method = clazz.getMethod("getThreadAllocatedBytes", long.class);
+            return ((Long) method.invoke(bean, Long.valueOf(Thread.currentThread().getId()))).longValue();
+        } catch (final Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Replica of the reflective proxy formerly used to wrap pooled connections.
+     */
+    static class ReflectiveProxy implements InvocationHandler {
+
+        private static final Method IS_OPEN_METHOD;
+
+        static {
+            try {
+                IS_OPEN_METHOD = HttpClientConnection.class.getMethod("isOpen");
+            } catch (final NoSuchMethodException ex) {
+                throw new Error(ex);
+            }
+        }
+
+        private volatile CPoolEntry poolEntry;
+
+        ReflectiveProxy(final CPoolEntry entry) {
+            super();
+            this.poolEntry = entry;
+        }
+
+        public Object invoke(
+                final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final CPoolEntry local = this.poolEntry;
+            if (method.equals(IS_OPEN_METHOD)) {
+                return Boolean.valueOf(local != null && local.getConnection().isOpen());
+            }
+            if (local == null) {
+                throw new ConnectionShutdownException();
+            }
+            try {
+                return method.invoke(local.getConnection(), args);
+            } catch (final InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        static HttpClientConnection newProxy(final CPoolEntry poolEntry) {
+            return (HttpClientConnection) Proxy.newProxyInstance(
+                    ReflectiveProxy.class.getClassLoader(),
+                    new Class<?>[] { SocketClientConnection.class, HttpContext.class },
+                    new ReflectiveProxy(poolEntry));
+        }
+
+    }
+
+    static class NullConnection implements SocketClientConnection {
+
+        private int timeout;
+
+        public void close() throws IOException {
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public boolean isStale() {
+            return false;
+        }
+
+        public void setSocketTimeout(final int timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getSocketTimeout() {
+            return this.timeout;
+        }
+
+        public void shutdown() throws IOException {
+        }
+
+        public HttpConnectionMetrics getMetrics() {
+            return null;
+        }
+
+        public boolean isResponseAvailable(final int timeout) throws IOException {
+            return true;
+        }
+
+        public void sendRequestHeader(final HttpRequest request) {
+        }
+
+        public void sendRequestEntity(final HttpEntityEnclosingRequest request) {
+        }
+
+        public HttpResponse receiveResponseHeader() {
+            return null;
+        }
+
+        public void receiveResponseEntity(final HttpResponse response) {
+        }
+
+        public void flush() throws IOException {
+        }
+
+        public InetAddress getLocalAddress() {
+            return null;
+        }
+
+        public int getLocalPort() {
+            return 0;
+        }
+
+        public InetAddress getRemoteAddress() {
+            return null;
+        }
+
+        public int getRemotePort() {
+            return 0;
+        }
+
+        public void bind(final Socket socket) throws IOException {
+        }
+
+        public Socket getSocket() {
+            return null;
+        }
+
+        public SSLSession getSSLSession() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainSocketFactory;
+
+/**
+ * Micro-benchmark measuring the per request overhead of leasing a pooled
+ * connection from {@link PoolingHttpClientConnectionManager} and releasing
+ * it again, with debug logging off, for both pool concurrency policies.
+ * <p/>
+ * This is not a unit test. Run it manually with the test classpath:
+ * <pre>
+ * java org.apache.http.impl.conn.ConnectionLeaseBenchmark [requests]
+ * </pre>
+ */
+public class ConnectionLeaseBenchmark {
+
+    static volatile int sink;
+
+    public static void main(final String[] args) throws Exception {
+        final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        for (int round = 0; round < 3; round++) {
+            run("strict ", PoolConcurrencyPolicy.STRICT, requests);
+            run("striped", PoolConcurrencyPolicy.STRIPED, requests);
+        }
+    }
+
+    private static void run(
+            final String name,
+            final PoolConcurrencyPolicy policy,
+            final int requests) throws Exception {
+        final HttpConnectionFactory<SocketClientConnection> connFactory =
+            new HttpConnectionFactory<SocketClientConnection>() {
+
+                public SocketClientConnection create(final ConnectionConfig config) {
+                    return new CPoolProxyBenchmark.NullConnection();
+                }
+
+            };
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainSocketFactory.getSocketFactory())
+                    .build(),
+                connFactory,
+                null, null, -1, TimeUnit.MILLISECONDS, policy);
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+        try {
+            final long bytes0 = allocatedBytes();
+            final long t0 = System.nanoTime();
+            int n = 0;
+            for (int i = 0; i < requests; i++) {
+                final ConnectionRequest request = mgr.requestConnection(route, null);
+                final HttpClientConnection conn = request.get(0, TimeUnit.MILLISECONDS);
+                n += conn.getSocketTimeout();
+                mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+            }
+            final long t1 = System.nanoTime();
+            final long bytes1 = allocatedBytes();
+            System.out.print(name + ": " + (t1 - t0) / requests + " ns/request");
+            if (bytes0 >= 0 && bytes1 >= 0) {
+                System.out.print(", " + (bytes1 - bytes0) / requests + " bytes/request");
+            }
+            System.out.println();
+            sink = n;
+        } finally {
+            mgr.shutdown();
+        }
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            final Method method = clazz.getMethod("getThreadAllocatedBytes", long.class);
+            return ((Long) method.invoke(bean, Long.valueOf(Thread.currentThread().getId()))).longValue();
+        } catch (final Exception ex) {
+            return -1;
+        }
+    }
+
+}
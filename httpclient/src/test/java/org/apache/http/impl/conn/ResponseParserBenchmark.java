@@ -0,0 +1,193 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.io.HttpMessageParser;
+import org.apache.http.io.SessionInputBuffer;
+import org.apache.http.util.EncodingUtils;
+
+/**
+ * Micro-benchmark comparing the default response head parsing with lazy
+ * header parsing, see {@link DefaultHttpResponseParser}. Response heads
+ * typical of web servers and JSON APIs are parsed and the headers the client
+ * itself inspects for every response are accessed.
+ * <p/>
+ * This is not a unit test. Run it manually with the test classpath:
+ * <pre>
+ * java org.apache.http.impl.conn.ResponseParserBenchmark [responses]
+ * </pre>
+ */
+public class ResponseParserBenchmark {
+
+    private static final String[] HEADS = {
+        "HTTP/1.1 200 OK\r\n" +
+        "Date: Tue, 05 Mar 2013 10:15:02 GMT\r\n" +
+        "Server: Apache/2.2.22 (Ubuntu)\r\n" +
+        "Last-Modified: Mon, 04 Mar 2013 18:01:44 GMT\r\n" +
+        "ETag: \"4a0c2-2c74-4d71d8e3a7e00\"\r\n" +
+        "Accept-Ranges: bytes\r\n" +
+        "Vary: Accept-Encoding\r\n" +
+        "Content-Encoding: gzip\r\n" +
+        "Cache-Control: max-age=3600, public\r\n" +
+        "Expires: Tue, 05 Mar 2013 11:15:02 GMT\r\n" +
+        "Keep-Alive: timeout=5, max=100\r\n" +
+        "Connection: Keep-Alive\r\n" +
+        "Content-Type: text/html; charset=UTF-8\r\n" +
+        "Content-Length: 0\r\n" +
+        "\r\n",
+        "HTTP/1.1 200 OK\r\n" +
+        "Server: nginx\r\n" +
+        "Date: Tue, 05 Mar 2013 10:15:03 GMT\r\n" +
+        "Content-Type: application/json; charset=utf-8\r\n" +
+        "Transfer-Encoding: chunked\r\n" +
+        "Connection: keep-alive\r\n" +
+        "Cache-Control: no-cache\r\n" +
+        "X-Request-Id: 8f14e45fceea167a5a36dedd4bea2543\r\n" +
+        "X-RateLimit-Limit: 5000\r\n" +
+        "X-RateLimit-Remaining: 4987\r\n" +
+        "X-Content-Type-Options: nosniff\r\n" +
+        "Set-Cookie: session=d41d8cd98f00b204e9800998ecf8427e; Path=/; HttpOnly\r\n" +
+        "\r\n" +
+        "0\r\n" +
+        "\r\n"
+    };
+
+    static volatile int sink;
+
+    public static void main(final String[] args) throws Exception {
+        final int responses = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final StringBuilder buffer = new StringBuilder();
+        for (final String head: HEADS) {
+            buffer.append(head);
+        }
+        final byte[] data = EncodingUtils.getAsciiBytes(buffer.toString());
+        for (int round = 0; round < 3; round++) {
+            run("default", data, responses, false);
+            run("lazy   ", data, responses, true);
+        }
+    }
+
+    private static void run(
+            final String name,
+            final byte[] data,
+            final int responses,
+            final boolean lazy) throws Exception {
+        final SessionInputBuffer inbuffer = new SessionInputBufferMock(new ReplayInputStream(data), 8192);
+        final HttpMessageParser<HttpResponse> parser = new DefaultHttpResponseParserFactory(
+                null, null, lazy).create(inbuffer, null);
+        final long bytes0 = allocatedBytes();
+        final long t0 = System.nanoTime();
+        int n = 0;
+        for (int i = 0; i < responses; i++) {
+            final HttpResponse response = parser.parse();
+            n += inspect(response);
+            // skip the last chunk of chunk coded responses
+            if (response.containsHeader("Transfer-Encoding")) {
+                inbuffer.readLine();
+                inbuffer.readLine();
+            }
+        }
+        final long t1 = System.nanoTime();
+        final long bytes1 = allocatedBytes();
+        System.out.print(name + ": " + (t1 - t0) / responses + " ns/response");
+        if (bytes0 >= 0 && bytes1 >= 0) {
+            System.out.print(", " + (bytes1 - bytes0) / responses + " bytes/response");
+        }
+        System.out.println();
+        sink = n;
+    }
+
+    /**
+     * Header access made by the client for every response.
+     */
+    private static int inspect(final HttpResponse response) {
+        int n = response.getStatusLine().getStatusCode();
+        final String[] names = { "Transfer-Encoding", "Content-Length", "Connection", "Content-Type" };
+        for (final String name: names) {
+            final Header header = response.getFirstHeader(name);
+            if (header != null) {
+                n += header.getValue().length();
+            }
+        }
+        final Header connection = response.getFirstHeader("Connection");
+        if (connection != null) {
+            n += connection.getElements().length;
+        }
+        return n;
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            final Method method = clazz.getMethod("getThreadAllocatedBytes", long.class);
+            return ((Long) method.invoke(bean, Long.valueOf(Thread.currentThread().getId()))).longValue();
+        } catch (final Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Endlessly replays the given data.
+     */
+    static class ReplayInputStream extends InputStream {
+
+        private final byte[] data;
+        private int pos;
+
+        ReplayInputStream(final byte[] data) {
+            super();
+            this.data = data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = this.data[this.pos] & 0xff;
+            this.pos = (this.pos + 1) % this.data.length;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int chunk = Math.min(len, this.data.length - this.pos);
+            System.arraycopy(this.data, this.pos, b, off, chunk);
+            this.pos = (this.pos + chunk) % this.data.length;
+            return chunk;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.util.EncodingUtils;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Memory benchmark measuring the heap retained by idle keep-alive
+ * connections. Every connection executes one request over an in-memory
+ * socket and is then released, the way pooled connections are. Connections
+ * with private session buffers are compared with connections borrowing
+ * their buffers from a {@link SessionBufferPool}.
+ * <p/>
+ * This is not a unit test. Run it manually with the test classpath:
+ * <pre>
+ * java org.apache.http.impl.conn.SessionBufferBenchmark [connections]
+ * </pre>
+ */
+public class SessionBufferBenchmark {
+
+    private static final byte[] RESPONSE = EncodingUtils.getAsciiBytes(
+            "HTTP/1.1 200 OK\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Length: 5\r\n\r\n" +
+            "hello");
+
+    public static void main(final String[] args) throws Exception {
+        final int connections = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        for (int round = 0; round < 2; round++) {
+            run("private buffers", new DefaultClientConnectionFactory(), null, connections);
+            final SessionBufferPool pool = new SessionBufferPool();
+            run("pooled buffers ", new DefaultClientConnectionFactory(pool, null, null), pool, connections);
+        }
+    }
+
+    private static void run(
+            final String name,
+            final HttpConnectionFactory<SocketClientConnection> connFactory,
+            final SessionBufferPool pool,
+            final int connections) throws Exception {
+        final long heap0 = usedHeap();
+        final List<SocketClientConnection> idle = new ArrayList<SocketClientConnection>(connections);
+        for (int i = 0; i < connections; i++) {
+            final SocketClientConnection conn = connFactory.create(null);
+            conn.bind(new TestSessionBufferPool.StreamSocket(
+                    new ByteArrayInputStream(RESPONSE), NullOutputStream.INSTANCE));
+            conn.sendRequestHeader(new BasicHttpRequest("GET", "/"));
+            conn.flush();
+            final HttpResponse response = conn.receiveResponseHeader();
+            conn.receiveResponseEntity(response);
+            EntityUtils.consume(response.getEntity());
+            ((SocketClientConnectionImpl) conn).releaseBuffers();
+            idle.add(conn);
+        }
+        final long heap1 = usedHeap();
+        System.out.print(name + ": " + (heap1 - heap0) / (1024 * 1024) + " MB for "
+                + connections + " idle connections, "
+                + (heap1 - heap0) / connections + " bytes/connection");
+        if (pool != null) {
+            System.out.print(", pool " + pool);
+        }
+        System.out.println();
+        for (final SocketClientConnection conn: idle) {
+            conn.shutdown();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean bean = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, bean.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    static class NullOutputStream extends OutputStream {
+
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(final int b) throws IOException {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+        }
+
+    }
+
+}
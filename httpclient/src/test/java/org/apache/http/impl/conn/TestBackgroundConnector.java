@@ -0,0 +1,224 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainSocketFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBackgroundConnector {
+
+    static class GatedSocketFactory implements ConnectionSocketFactory {
+
+        final AtomicInteger connects = new AtomicInteger();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile IOException failure;
+
+        public Socket createSocket(final HttpContext context) throws IOException {
+            return new Socket();
+        }
+
+        public Socket connectSocket(
+                final int connectTimeout,
+                final Socket socket,
+                final HttpHost host,
+                final InetSocketAddress remoteAddress,
+                final InetSocketAddress localAddress,
+                final HttpContext context) throws IOException, ConnectTimeoutException {
+            this.connects.incrementAndGet();
+            try {
+                this.gate.await();
+            } catch (final InterruptedException ex) {
+                throw new IOException("Interrupted");
+            }
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return PlainSocketFactory.getSocketFactory().connectSocket(
+                    connectTimeout, socket, host, remoteAddress, localAddress, context);
+        }
+
+    }
+
+    private ServerSocket server;
+    private GatedSocketFactory socketFactory;
+    private PoolingHttpClientConnectionManager mgr;
+    private HttpRoute route;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.socketFactory = new GatedSocketFactory();
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", this.socketFactory)
+            .build();
+        this.mgr = new PoolingHttpClientConnectionManager(registry);
+        this.mgr.setDefaultMaxPerRoute(2);
+        this.mgr.setConnectorThreads(2);
+        this.route = new HttpRoute(new HttpHost("127.0.0.1", this.server.getLocalPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.mgr.shutdown();
+        this.server.close();
+    }
+
+    private HttpClientConnection lease(final long timeout) throws Exception {
+        return this.mgr.requestConnection(this.route, null).get(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitAvailable(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (this.mgr.getStats(this.route).getAvailable() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, this.mgr.getStats(this.route).getAvailable());
+    }
+
+    @Test
+    public void testNewConnectionEstablishedInBackground() throws Exception {
+        final HttpClientConnection conn = lease(5000);
+        Assert.assertTrue(conn.isOpen());
+        Assert.assertEquals(1, this.socketFactory.connects.get());
+        Assert.assertEquals(1, this.mgr.getStats(this.route).getLeased());
+        this.mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, this.mgr.getStats(this.route).getAvailable());
+
+        final HttpClientConnection conn2 = lease(5000);
+        Assert.assertTrue(conn2.isOpen());
+        Assert.assertEquals(1, this.socketFactory.connects.get());
+        this.mgr.releaseConnection(conn2, null, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        this.mgr.setConnectorThreads(0);
+        final HttpClientConnection conn = lease(5000);
+        Assert.assertFalse(conn.isOpen());
+        Assert.assertEquals(0, this.socketFactory.connects.get());
+        this.mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testReleasedConnectionHandedOver() throws Exception {
+        final HttpClientConnection conn1 = lease(5000);
+        Assert.assertTrue(conn1.isOpen());
+        final SocketClientConnection underlying = CPoolProxy.getPoolEntry(conn1).getConnection();
+
+        this.socketFactory.gate = new CountDownLatch(1);
+        final HttpClientConnection[] result = new HttpClientConnection[1];
+        final Thread t = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    result[0] = lease(5000);
+                } catch (final Exception ignore) {
+                }
+            }
+
+        };
+        t.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (this.socketFactory.connects.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, this.socketFactory.connects.get());
+
+        this.mgr.releaseConnection(conn1, null, -1, TimeUnit.MILLISECONDS);
+        t.join(5000);
+        Assert.assertNotNull(result[0]);
+        Assert.assertTrue(result[0].isOpen());
+        Assert.assertSame(underlying, CPoolProxy.getPoolEntry(result[0]).getConnection());
+
+        // the connection nobody waits for any longer ends up in the pool
+        this.socketFactory.gate.countDown();
+        awaitAvailable(1);
+        Assert.assertEquals(1, this.mgr.getStats(this.route).getLeased());
+        this.mgr.releaseConnection(result[0], null, -1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, this.mgr.getStats(this.route).getAvailable());
+    }
+
+    @Test
+    public void testTimeoutWhileConnecting() throws Exception {
+        this.socketFactory.gate = new CountDownLatch(1);
+        try {
+            lease(100);
+            Assert.fail("ConnectionPoolTimeoutException expected");
+        } catch (final ConnectionPoolTimeoutException expected) {
+        }
+        this.socketFactory.gate.countDown();
+        awaitAvailable(1);
+
+        final HttpClientConnection conn = lease(5000);
+        Assert.assertTrue(conn.isOpen());
+        Assert.assertEquals(1, this.socketFactory.connects.get());
+        this.mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testConnectFailureRethrown() throws Exception {
+        this.socketFactory.failure = new ConnectException("Connection refused");
+        final HttpClientConnection conn = lease(5000);
+        Assert.assertFalse(conn.isOpen());
+        try {
+            this.mgr.connect(conn, this.route.getTargetHost(), null, 0, new BasicHttpContext());
+            Assert.fail("ConnectException expected");
+        } catch (final ConnectException expected) {
+        }
+        Assert.assertEquals(1, this.socketFactory.connects.get());
+        this.mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, this.mgr.getStats(this.route).getLeased());
+        Assert.assertEquals(0, this.mgr.getStats(this.route).getAvailable());
+    }
+
+}
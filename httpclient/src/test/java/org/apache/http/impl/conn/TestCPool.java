@@ -0,0 +1,166 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * {@link CPool} tests.
+ */
+public class TestCPool {
+
+    private ConnFactory<HttpRoute, SocketClientConnection> connFactory;
+    private HttpRoute route;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        connFactory = Mockito.mock(ConnFactory.class);
+        Mockito.when(connFactory.create(Mockito.any(HttpRoute.class))).thenAnswer(
+                new Answer<SocketClientConnection>() {
+
+            public SocketClientConnection answer(
+                    final InvocationOnMock invocation) throws Throwable {
+                final SocketClientConnection conn = Mockito.mock(SocketClientConnection.class);
+                Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+                return conn;
+            }
+
+        });
+        route = new HttpRoute(new HttpHost("somehost", 80));
+    }
+
+    /**
+     * Counts the scans for idle and expired connections.
+     */
+    static class CountingCPool extends CPool {
+
+        final AtomicInteger idleScans = new AtomicInteger();
+        final AtomicInteger expiredScans = new AtomicInteger();
+
+        CountingCPool(final ConnFactory<HttpRoute, SocketClientConnection> connFactory, final long timeToLive) {
+            super(connFactory, 3, 10, timeToLive, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void closeIdle(final long idletime, final TimeUnit tunit) {
+            this.idleScans.incrementAndGet();
+            super.closeIdle(idletime, tunit);
+        }
+
+        @Override
+        public void closeExpired() {
+            this.expiredScans.incrementAndGet();
+            super.closeExpired();
+        }
+
+    }
+
+    /**
+     * Releases the entry the way the connection manager does.
+     */
+    private static void release(final CPool pool, final CPoolEntry entry) {
+        entry.updateExpiry(0, TimeUnit.MILLISECONDS);
+        pool.release(entry, true);
+    }
+
+    @Test
+    public void testCloseIfIdleScansOnce() throws Exception {
+        final CountingCPool pool = new CountingCPool(connFactory, -1);
+        final CPoolEntry entry1 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        release(pool, entry1);
+        release(pool, entry2);
+        release(pool, entry3);
+        Thread.sleep(50);
+
+        pool.closeIfIdle(entry1, 10, TimeUnit.MILLISECONDS);
+        pool.closeIfIdle(entry2, 10, TimeUnit.MILLISECONDS);
+        pool.closeIfIdle(entry3, 10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, pool.idleScans.get());
+        Assert.assertEquals(0, pool.expiredScans.get());
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection()).close();
+        Mockito.verify(entry3.getConnection()).close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseIfIdleScansAgainAfterRelease() throws Exception {
+        final CountingCPool pool = new CountingCPool(connFactory, -1);
+        final CPoolEntry entry1 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        release(pool, entry1);
+        Thread.sleep(50);
+
+        pool.closeIfIdle(entry1, 10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, pool.idleScans.get());
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection(), Mockito.never()).close();
+
+        // Leased during the first scan, so it needs a scan of its own
+        release(pool, entry2);
+        Thread.sleep(50);
+        pool.closeIfIdle(entry2, 10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, pool.idleScans.get());
+        Mockito.verify(entry2.getConnection()).close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseIfExpiredScansOnce() throws Exception {
+        final CountingCPool pool = new CountingCPool(connFactory, 10);
+        final CPoolEntry entry1 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route, null).get(1, TimeUnit.SECONDS);
+        release(pool, entry1);
+        release(pool, entry2);
+        Thread.sleep(50);
+
+        pool.closeIfIdle(entry1, 0, TimeUnit.MILLISECONDS);
+        pool.closeIfIdle(entry2, 0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, pool.expiredScans.get());
+        Assert.assertEquals(0, pool.idleScans.get());
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection()).close();
+        pool.shutdown();
+    }
+
+}
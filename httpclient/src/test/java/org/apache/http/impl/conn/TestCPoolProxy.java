@@ -0,0 +1,110 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * {@link CPoolProxy} tests.
+ */
+public class TestCPoolProxy {
+
+    private SocketClientConnection conn;
+    private CPoolEntry entry;
+
+    @Before
+    public void setup() throws Exception {
+        conn = Mockito.mock(SocketClientConnection.class);
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost"));
+        entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testDelegation() throws Exception {
+        final HttpClientConnection proxy = CPoolProxy.newProxy(entry);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+        Mockito.when(conn.getSocketTimeout()).thenReturn(Integer.valueOf(123));
+
+        Assert.assertTrue(proxy.isOpen());
+        Assert.assertEquals(123, proxy.getSocketTimeout());
+        final HttpRequest request = new BasicHttpRequest("GET", "/");
+        proxy.sendRequestHeader(request);
+        proxy.flush();
+        proxy.setSocketTimeout(456);
+        proxy.close();
+
+        Mockito.verify(conn).sendRequestHeader(request);
+        Mockito.verify(conn).flush();
+        Mockito.verify(conn).setSocketTimeout(456);
+        Mockito.verify(conn).close();
+        Assert.assertSame(entry, CPoolProxy.getPoolEntry(proxy));
+    }
+
+    @Test
+    public void testDetached() throws Exception {
+        final HttpClientConnection proxy = CPoolProxy.newProxy(entry);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+
+        Assert.assertSame(entry, CPoolProxy.detach(proxy));
+        Assert.assertNull(CPoolProxy.detach(proxy));
+        Assert.assertFalse(proxy.isOpen());
+        Assert.assertTrue(proxy.isStale());
+        proxy.close();
+        proxy.shutdown();
+        Mockito.verify(conn, Mockito.never()).close();
+        Mockito.verify(conn, Mockito.never()).shutdown();
+        try {
+            proxy.sendRequestHeader(new BasicHttpRequest("GET", "/"));
+            Assert.fail("ConnectionShutdownException should have been thrown");
+        } catch (final ConnectionShutdownException expected) {
+        }
+        try {
+            CPoolProxy.getPoolEntry(proxy);
+            Assert.fail("ConnectionShutdownException should have been thrown");
+        } catch (final ConnectionShutdownException expected) {
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testForeignConnection() throws Exception {
+        CPoolProxy.getPoolEntry(conn);
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCachingDnsResolver {
+
+    static class StubResolver implements DnsResolver {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile InetAddress[] addresses;
+        volatile CountDownLatch blocker;
+
+        public InetAddress[] resolve(final String host) throws UnknownHostException {
+            calls.incrementAndGet();
+            final CountDownLatch latch = blocker;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException ex) {
+                    throw new UnknownHostException("interrupted");
+                }
+            }
+            final InetAddress[] result = addresses;
+            if (result == null) {
+                throw new UnknownHostException(host);
+            }
+            return result;
+        }
+
+    }
+
+    private StubResolver backend;
+    private CachingDnsResolver resolver;
+    private InetAddress ip1;
+    private InetAddress ip2;
+
+    @Before
+    public void setup() throws Exception {
+        backend = new StubResolver();
+        ip1 = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+        ip2 = InetAddress.getByAddress(new byte[] {10, 0, 0, 2});
+    }
+
+    @After
+    public void cleanup() {
+        if (backend.blocker != null) {
+            backend.blocker.countDown();
+        }
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void testCachedUntilExpiry() throws Exception {
+        resolver = new CachingDnsResolver(backend, 200, 0, 0, 0, TimeUnit.MILLISECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        backend.addresses = new InetAddress[] { ip2 };
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertEquals(1, backend.calls.get());
+        Assert.assertEquals(1, resolver.getHitCount());
+        Assert.assertEquals(1, resolver.getMissCount());
+
+        Thread.sleep(300);
+        Assert.assertArrayEquals(new InetAddress[] { ip2 }, resolver.resolve("somehost"));
+        Assert.assertEquals(2, backend.calls.get());
+        Assert.assertEquals(2, resolver.getMissCount());
+    }
+
+    @Test
+    public void testResultCannotBeModified() throws Exception {
+        resolver = new CachingDnsResolver(backend, 10, 0, 0, 0, TimeUnit.SECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+
+        resolver.resolve("somehost")[0] = ip2;
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        resolver = new CachingDnsResolver(backend, 10000, 200, 0, 0, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                resolver.resolve("somehost");
+                Assert.fail("UnknownHostException expected");
+            } catch (final UnknownHostException expected) {
+            }
+        }
+        Assert.assertEquals(1, backend.calls.get());
+        Assert.assertEquals(2, resolver.getHitCount());
+
+        backend.addresses = new InetAddress[] { ip1 };
+        Thread.sleep(300);
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertEquals(2, backend.calls.get());
+    }
+
+    @Test
+    public void testNegativeCachingDisabled() throws Exception {
+        resolver = new CachingDnsResolver(backend, 10000, 0, 0, 0, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                resolver.resolve("somehost");
+                Assert.fail("UnknownHostException expected");
+            } catch (final UnknownHostException expected) {
+            }
+        }
+        Assert.assertEquals(2, backend.calls.get());
+        Assert.assertEquals(0, resolver.getCacheSize());
+    }
+
+    @Test
+    public void testRefreshAheadDoesNotBlock() throws Exception {
+        resolver = new CachingDnsResolver(backend, 500, 0, 400, 0, TimeUnit.MILLISECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+        resolver.resolve("somehost");
+
+        Thread.sleep(200);
+        backend.addresses = new InetAddress[] { ip2 };
+        backend.blocker = new CountDownLatch(1);
+
+        // Entry is due for refresh: old addresses are served without blocking
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertEquals(1, resolver.getRefreshCount());
+
+        backend.blocker.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (backend.calls.get() < 2 || resolver.resolve("somehost")[0] != ip2) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, resolver.getMissCount());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsEntry() throws Exception {
+        resolver = new CachingDnsResolver(backend, 500, 10000, 400, 0, TimeUnit.MILLISECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+        resolver.resolve("somehost");
+
+        Thread.sleep(200);
+        backend.addresses = null;
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (backend.calls.get() < 2) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+    }
+
+    @Test
+    public void testResolveTimeout() throws Exception {
+        resolver = new CachingDnsResolver(backend, 10000, 0, 0, 100, TimeUnit.MILLISECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+        backend.blocker = new CountDownLatch(1);
+
+        final long start = System.currentTimeMillis();
+        try {
+            resolver.resolve("somehost");
+            Assert.fail("UnknownHostException expected");
+        } catch (final UnknownHostException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(1, resolver.getTimeoutCount());
+
+        // The resolution completes in the background and gets cached
+        backend.blocker.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (resolver.getCacheSize() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertEquals(1, backend.calls.get());
+    }
+
+    @Test
+    public void testConcurrentLookupsCoalesced() throws Exception {
+        resolver = new CachingDnsResolver(backend, 10000, 0, 0, 5000, TimeUnit.MILLISECONDS);
+        backend.addresses = new InetAddress[] { ip1 };
+        backend.blocker = new CountDownLatch(1);
+
+        final Thread[] threads = new Thread[5];
+        final AtomicInteger resolved = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        if (resolver.resolve("somehost")[0] == ip1) {
+                            resolved.incrementAndGet();
+                        }
+                    } catch (final UnknownHostException ex) {
+                    }
+                }
+
+            });
+            threads[i].start();
+        }
+        Thread.sleep(200);
+        backend.blocker.countDown();
+        for (final Thread thread: threads) {
+            thread.join(5000);
+        }
+        Assert.assertEquals(5, resolved.get());
+        Assert.assertEquals(1, backend.calls.get());
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * {@link ConnPoolMetrics} and {@link RouteMetrics} tests.
+ */
+public class TestConnPoolMetrics {
+
+    private StripedCPool pool;
+    private PoolingHttpClientConnectionManager mgr;
+    private HttpRoute route1;
+    private HttpRoute route2;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        final ConnFactory<HttpRoute, SocketClientConnection> connFactory = Mockito.mock(ConnFactory.class);
+        Mockito.when(connFactory.create(Mockito.any(HttpRoute.class))).thenAnswer(
+                new Answer<SocketClientConnection>() {
+
+            public SocketClientConnection answer(
+                    final InvocationOnMock invocation) throws Throwable {
+                final SocketClientConnection conn = Mockito.mock(SocketClientConnection.class);
+                Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+                return conn;
+            }
+
+        });
+        pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        mgr = new PoolingHttpClientConnectionManager(pool,
+                Mockito.mock(Lookup.class),
+                Mockito.mock(SchemePortResolver.class),
+                Mockito.mock(DnsResolver.class));
+        route1 = new HttpRoute(new HttpHost("somehost", 80));
+        route2 = new HttpRoute(new HttpHost("otherhost", 80));
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        mgr.shutdown();
+    }
+
+    private void leaseAndRelease(final HttpRoute route, final long keepalive) throws Exception {
+        final HttpClientConnection conn = mgr.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        mgr.releaseConnection(conn, null, keepalive, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testEmptyMetrics() throws Exception {
+        final RouteMetrics metrics = mgr.getMetrics(route1);
+        Assert.assertEquals(0, metrics.getLeaseCount());
+        Assert.assertEquals(0.0, metrics.getReuseRatio(), 0.0);
+        Assert.assertEquals(0, metrics.getLeaseWaitPercentile(99));
+        Assert.assertTrue(mgr.getMetrics().isEmpty());
+    }
+
+    @Test
+    public void testLeaseAndReuse() throws Exception {
+        leaseAndRelease(route1, -1);
+        leaseAndRelease(route1, -1);
+        leaseAndRelease(route1, -1);
+        leaseAndRelease(route2, -1);
+
+        final RouteMetrics metrics1 = mgr.getMetrics(route1);
+        Assert.assertEquals(3, metrics1.getLeaseCount());
+        Assert.assertEquals(2, metrics1.getReusedCount());
+        Assert.assertEquals(1, metrics1.getCreatedCount());
+        Assert.assertEquals(2.0 / 3.0, metrics1.getReuseRatio(), 0.0001);
+        long sum = 0;
+        for (final long count: metrics1.getLeaseWaitHistogram()) {
+            sum += count;
+        }
+        Assert.assertEquals(3, sum);
+
+        final Map<HttpRoute, RouteMetrics> all = mgr.getMetrics();
+        Assert.assertEquals(2, all.size());
+        Assert.assertEquals(1, all.get(route2).getLeaseCount());
+        Assert.assertEquals(4, mgr.getTotalMetrics().getLeaseCount());
+        Assert.assertEquals(2, mgr.getTotalMetrics().getCreatedCount());
+    }
+
+    @Test
+    public void testLeaseTimeout() throws Exception {
+        final HttpClientConnection conn = mgr.requestConnection(route1, null).get(1, TimeUnit.SECONDS);
+        try {
+            mgr.requestConnection(route1, null).get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("ConnectionPoolTimeoutException should have been thrown");
+        } catch (final ConnectionPoolTimeoutException expected) {
+        }
+        mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+        final RouteMetrics metrics = mgr.getMetrics(route1);
+        Assert.assertEquals(1, metrics.getLeaseCount());
+        Assert.assertEquals(1, metrics.getLeaseTimeoutCount());
+    }
+
+    @Test
+    public void testClosedAndExpired() throws Exception {
+        leaseAndRelease(route1, 10);
+        leaseAndRelease(route2, -1);
+        Thread.sleep(50);
+        mgr.closeExpiredConnections();
+        mgr.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        // closing again must not be counted twice
+        mgr.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+
+        final RouteMetrics metrics1 = mgr.getMetrics(route1);
+        Assert.assertEquals(1, metrics1.getClosedCount());
+        Assert.assertEquals(1, metrics1.getExpiredCount());
+        final RouteMetrics metrics2 = mgr.getMetrics(route2);
+        Assert.assertEquals(1, metrics2.getClosedCount());
+        Assert.assertEquals(0, metrics2.getExpiredCount());
+    }
+
+    @Test
+    public void testLeaseWaitHistogram() throws Exception {
+        final ConnPoolMetrics.Recorder recorder = new ConnPoolMetrics.Recorder();
+        for (int i = 0; i < 98; i++) {
+            recorder.leased(TimeUnit.MICROSECONDS.toNanos(3), true);
+        }
+        recorder.leased(TimeUnit.MILLISECONDS.toNanos(10), false);
+        recorder.leased(0, false);
+        final RouteMetrics metrics = recorder.snapshot();
+        Assert.assertEquals(100, metrics.getLeaseCount());
+        Assert.assertEquals(0.98, metrics.getReuseRatio(), 0.0001);
+        Assert.assertEquals(1, metrics.getLeaseWaitHistogram()[0]);
+        Assert.assertEquals(98, metrics.getLeaseWaitHistogram()[2]);
+        Assert.assertEquals(4, metrics.getLeaseWaitPercentile(50));
+        Assert.assertEquals(4, metrics.getLeaseWaitPercentile(99));
+        Assert.assertEquals(16384, metrics.getLeaseWaitPercentile(100));
+        Assert.assertEquals((98 * 3 + 10000) / 100.0, metrics.getMeanLeaseWait(), 0.0001);
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        leaseAndRelease(route1, -1);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.apache.http:type=ConnectionPool,name=test");
+        server.registerMBean(new ConnectionPoolMetrics(mgr), name);
+        try {
+            Assert.assertEquals(Long.valueOf(1), server.getAttribute(name, "LeaseCount"));
+            Assert.assertEquals(Integer.valueOf(1), server.getAttribute(name, "Available"));
+            final String[] routes = (String[]) server.getAttribute(name, "Routes");
+            Assert.assertEquals(1, routes.length);
+            final Object s = server.invoke(name, "getRouteMetrics",
+                    new Object[] { routes[0] }, new String[] { String.class.getName() });
+            Assert.assertNotNull(s);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainSocketFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Races connection attempts against local listeners some of which never
+ * accept connections.
+ */
+public class TestConnectRace {
+
+    private static final InetAddress GOOD = address(127, 0, 0, 1);
+    private static final InetAddress BLACKHOLE1 = address(127, 0, 0, 2);
+    private static final InetAddress BLACKHOLE2 = address(127, 0, 0, 3);
+
+    private final List<Socket> created = Collections.synchronizedList(new ArrayList<Socket>());
+    private final List<Socket> clients = new ArrayList<Socket>();
+    private final List<ServerSocket> servers = new ArrayList<ServerSocket>();
+    private Lookup<ConnectionSocketFactory> socketFactoryRegistry;
+    private SchemePortResolver schemePortResolver;
+    private DnsResolver dnsResolver;
+    private HttpClientConnectionOperator connectionOperator;
+    private HttpHost host;
+    private int port;
+
+    private static InetAddress address(final int a, final int b, final int c, final int d) {
+        try {
+            return InetAddress.getByAddress(new byte[] {(byte) a, (byte) b, (byte) c, (byte) d});
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        socketFactoryRegistry = Mockito.mock(Lookup.class);
+        schemePortResolver = Mockito.mock(SchemePortResolver.class);
+        dnsResolver = Mockito.mock(DnsResolver.class);
+        connectionOperator = new HttpClientConnectionOperator(
+                socketFactoryRegistry, schemePortResolver, dnsResolver);
+        host = new HttpHost("somehost");
+
+        final ConnectionSocketFactory sf = new ConnectionSocketFactory() {
+
+            public Socket createSocket(final HttpContext context) throws IOException {
+                final Socket sock = PlainSocketFactory.INSTANCE.createSocket(context);
+                created.add(sock);
+                return sock;
+            }
+
+            public Socket connectSocket(
+                    final int connectTimeout,
+                    final Socket sock,
+                    final HttpHost host,
+                    final InetSocketAddress remoteAddress,
+                    final InetSocketAddress localAddress,
+                    final HttpContext context) throws IOException {
+                return PlainSocketFactory.INSTANCE.connectSocket(
+                        connectTimeout, sock, host, remoteAddress, localAddress, context);
+            }
+
+        };
+        Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(sf);
+
+        // Listeners on several loopback addresses sharing the same port,
+        // one accepting connections and the others with a full backlog
+        for (int i = 0; i < 10 && servers.isEmpty(); i++) {
+            final ServerSocket good = new ServerSocket(0, 50, GOOD);
+            try {
+                servers.add(blackhole(BLACKHOLE1, good.getLocalPort()));
+                servers.add(blackhole(BLACKHOLE2, good.getLocalPort()));
+                servers.add(good);
+            } catch (final BindException ex) {
+                good.close();
+                closeServers();
+            }
+        }
+        Assert.assertFalse(servers.isEmpty());
+        port = servers.get(0).getLocalPort();
+        Mockito.when(schemePortResolver.resolve(host)).thenReturn(port);
+    }
+
+    private ServerSocket blackhole(final InetAddress address, final int port) throws IOException {
+        final ServerSocket server = new ServerSocket(port, 1, address);
+        servers.add(server);
+        for (int i = 0; i < 10; i++) {
+            final Socket sock = new Socket();
+            clients.add(sock);
+            try {
+                sock.connect(new InetSocketAddress(address, port), 200);
+            } catch (final SocketTimeoutException ex) {
+                servers.remove(server);
+                return server;
+            }
+        }
+        throw new IllegalStateException("Backlog of " + address + " cannot be filled");
+    }
+
+    private void closeServers() throws IOException {
+        for (final ServerSocket server: servers) {
+            server.close();
+        }
+        servers.clear();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        for (final Socket sock: clients) {
+            sock.close();
+        }
+        for (final Socket sock: created) {
+            sock.close();
+        }
+        closeServers();
+    }
+
+    private SocketClientConnection connection(final Socket[] bound) {
+        return (SocketClientConnection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { SocketClientConnection.class },
+                new InvocationHandler() {
+
+                    public Object invoke(
+                            final Object proxy, final Method method, final Object[] args) {
+                        if (method.getName().equals("bind")) {
+                            bound[0] = (Socket) args[0];
+                        }
+                        return null;
+                    }
+
+                });
+    }
+
+    @Test
+    public void testInterleaveAddressFamilies() throws Exception {
+        final InetAddress v4a = address(10, 0, 0, 1);
+        final InetAddress v4b = address(10, 0, 0, 2);
+        final InetAddress v6a = InetAddress.getByAddress(
+                new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1});
+        final InetAddress v6b = InetAddress.getByAddress(
+                new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2});
+
+        Assert.assertArrayEquals(new InetAddress[] { v6a, v4a, v6b, v4b },
+                HttpClientConnectionOperator.interleave(new InetAddress[] { v6a, v6b, v4a, v4b }));
+        Assert.assertArrayEquals(new InetAddress[] { v4a, v6a, v4b, v6b },
+                HttpClientConnectionOperator.interleave(new InetAddress[] { v4a, v4b, v6a, v6b }));
+        Assert.assertArrayEquals(new InetAddress[] { v4a, v4b },
+                HttpClientConnectionOperator.interleave(new InetAddress[] { v4a, v4b }));
+    }
+
+    @Test
+    public void testRaceSkipsBlackholedAddresses() throws Exception {
+        Mockito.when(dnsResolver.resolve("somehost")).thenReturn(
+                new InetAddress[] { BLACKHOLE1, BLACKHOLE2, GOOD });
+        connectionOperator.setConnectStaggerDelay(100);
+
+        final Socket[] bound = new Socket[1];
+        final long start = System.currentTimeMillis();
+        connectionOperator.connect(connection(bound), host, null, 10000, SocketConfig.DEFAULT,
+                new BasicHttpContext());
+        final long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertNotNull(bound[0]);
+        Assert.assertTrue(bound[0].isConnected());
+        Assert.assertEquals(new InetSocketAddress(GOOD, port), bound[0].getRemoteSocketAddress());
+        Assert.assertTrue("Connect took " + elapsed + " ms", elapsed < 5000);
+
+        // Losing attempts get closed
+        Assert.assertEquals(3, created.size());
+        for (final Socket sock: created) {
+            if (sock != bound[0]) {
+                Assert.assertTrue(sock.isClosed());
+            }
+        }
+    }
+
+    @Test
+    public void testRaceFailsWithinSingleConnectTimeout() throws Exception {
+        Mockito.when(dnsResolver.resolve("somehost")).thenReturn(
+                new InetAddress[] { BLACKHOLE1, BLACKHOLE2 });
+        connectionOperator.setConnectStaggerDelay(50);
+
+        final Socket[] bound = new Socket[1];
+        final long start = System.currentTimeMillis();
+        try {
+            connectionOperator.connect(connection(bound), host, null, 1000, SocketConfig.DEFAULT,
+                    new BasicHttpContext());
+            Assert.fail("ConnectTimeoutException expected");
+        } catch (final ConnectTimeoutException expected) {
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertNull(bound[0]);
+        Assert.assertTrue("Connect took " + elapsed + " ms", elapsed < 1900);
+    }
+
+    @Test
+    public void testSequentialConnectWaitsForEachAddress() throws Exception {
+        Mockito.when(dnsResolver.resolve("somehost")).thenReturn(
+                new InetAddress[] { BLACKHOLE1, GOOD });
+
+        final Socket[] bound = new Socket[1];
+        final long start = System.currentTimeMillis();
+        connectionOperator.connect(connection(bound), host, null, 500, SocketConfig.DEFAULT,
+                new BasicHttpContext());
+        final long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(new InetSocketAddress(GOOD, port), bound[0].getRemoteSocketAddress());
+        Assert.assertTrue("Connect took " + elapsed + " ms", elapsed >= 400);
+    }
+
+    @Test
+    public void testManagerConfiguresStaggerDelay() throws Exception {
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager();
+        try {
+            Assert.assertEquals(0, mgr.getConnectStaggerDelay());
+            mgr.setConnectStaggerDelay(1, TimeUnit.SECONDS);
+            Assert.assertEquals(1000, mgr.getConnectStaggerDelay());
+        } finally {
+            mgr.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Simulates connections opened in a burst in order to show how time to live
+ * jitter and draining spread reconnects over time.
+ */
+public class TestConnectionDrain {
+
+    private static final long TTL = 400;
+    private static final long DURATION = 2000;
+    private static final long BUCKET = 50;
+    private static final int CONNECTIONS = 30;
+
+    static class ConnectionState implements InvocationHandler {
+
+        volatile boolean open;
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            if (name.equals("isOpen")) {
+                return Boolean.valueOf(this.open);
+            } else if (name.equals("close") || name.equals("shutdown")) {
+                this.open = false;
+                return null;
+            } else if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if (name.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if (name.equals("toString")) {
+                return "connection@" + System.identityHashCode(proxy);
+            }
+            final Class<?> type = method.getReturnType();
+            if (type == Boolean.TYPE) {
+                return Boolean.FALSE;
+            } else if (type == Integer.TYPE) {
+                return Integer.valueOf(0);
+            } else if (type == Long.TYPE) {
+                return Long.valueOf(0);
+            }
+            return null;
+        }
+
+    }
+
+    private static final ConnFactory<HttpRoute, SocketClientConnection> CONN_FACTORY =
+            new ConnFactory<HttpRoute, SocketClientConnection>() {
+
+        public SocketClientConnection create(final HttpRoute route) {
+            return (SocketClientConnection) Proxy.newProxyInstance(
+                    SocketClientConnection.class.getClassLoader(),
+                    new Class<?>[] { SocketClientConnection.class },
+                    new ConnectionState());
+        }
+
+    };
+
+    /**
+     * Repeatedly leases all connections of a route at once, re-opening
+     * the ones that have been closed, and releases them again.
+     *
+     * @return the number of connections opened per time slot, skipping
+     *   the initial one.
+     */
+    @SuppressWarnings("unchecked")
+    private static int[] simulate(final double jitter, final long drainPeriod) throws Exception {
+        final StripedCPool pool = new StripedCPool(
+                CONN_FACTORY, CONNECTIONS, CONNECTIONS, TTL, TimeUnit.MILLISECONDS);
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(pool,
+                Mockito.mock(Lookup.class),
+                Mockito.mock(SchemePortResolver.class),
+                Mockito.mock(DnsResolver.class));
+        mgr.setTimeToLiveJitter(jitter);
+        mgr.setDrainPeriod(drainPeriod, TimeUnit.MILLISECONDS);
+        final HttpRoute route = new HttpRoute(new HttpHost("somehost", 80));
+        final int[] reconnects = new int[(int) (DURATION / BUCKET)];
+        try {
+            final long start = System.currentTimeMillis();
+            final List<HttpClientConnection> conns = new ArrayList<HttpClientConnection>(CONNECTIONS);
+            for (;;) {
+                final long elapsed = System.currentTimeMillis() - start;
+                if (elapsed >= DURATION) {
+                    break;
+                }
+                for (int i = 0; i < CONNECTIONS; i++) {
+                    final HttpClientConnection conn = mgr.requestConnection(route, null).get(
+                            1, TimeUnit.SECONDS);
+                    if (!conn.isOpen()) {
+                        final SocketClientConnection underlying = CPoolProxy.getPoolEntry(conn).getConnection();
+                        ((ConnectionState) Proxy.getInvocationHandler(underlying)).open = true;
+                        reconnects[(int) (elapsed / BUCKET)]++;
+                    }
+                    conns.add(conn);
+                }
+                Thread.sleep(5);
+                for (final HttpClientConnection conn: conns) {
+                    mgr.releaseConnection(conn, null, -1, TimeUnit.MILLISECONDS);
+                }
+                conns.clear();
+            }
+        } finally {
+            mgr.shutdown();
+        }
+        reconnects[0] = 0;
+        return reconnects;
+    }
+
+    private static int max(final int[] values) {
+        int max = 0;
+        for (final int value: values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static int sum(final int[] values) {
+        int sum = 0;
+        for (final int value: values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testReconnectRateFlattens() throws Exception {
+        final int[] burst = simulate(0, 0);
+        final int[] smooth = simulate(0.2, TTL / 4);
+
+        // without jitter the whole burst of connections reconnects at once
+        Assert.assertTrue(max(burst) >= CONNECTIONS);
+        // with jitter and draining reconnects are spread over several time slots
+        Assert.assertTrue("Peak reconnects: " + max(smooth), max(smooth) * 3 < max(burst) * 2);
+        // at the expense of a moderately shorter connection lifetime
+        Assert.assertTrue("Reconnects: " + sum(smooth), sum(smooth) <= sum(burst) * 2);
+    }
+
+}
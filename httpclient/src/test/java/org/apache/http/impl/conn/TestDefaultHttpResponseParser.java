@@ -29,10 +29,12 @@ package org.apache.http.impl.conn;
 
 import org.apache.http.Consts;
 import org.apache.http.Header;
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.ProtocolException;
+import org.apache.http.config.MessageConstraints;
 import org.apache.http.io.HttpMessageParser;
 import org.apache.http.io.SessionInputBuffer;
 import org.apache.http.util.CharArrayBuffer;
@@ -112,4 +114,78 @@ public class TestDefaultHttpResponseParser {
         parser.parse();
     }
 
+    private static final String HEAD =
+        "HTTP/1.1 200 OK\r\n" +
+        "Date: Tue, 05 Mar 2013 10:15:02 GMT\r\n" +
+        "Server: Apache\r\n" +
+        "Cache-Control: max-age=60, must-revalidate\r\n" +
+        "Content-Type: text/html; charset=UTF-8\r\n" +
+        "x-custom:   some value  \r\n" +
+        "Folded: first\r\n" +
+        "\t second\r\n" +
+        "Content-Length: 0\r\n" +
+        "\r\n";
+
+    private static HttpMessageParser<HttpResponse> createParser(
+            final String s, final MessageConstraints constraints, final boolean lazy) throws Exception {
+        final SessionInputBuffer inbuffer = new SessionInputBufferMock(s, Consts.ASCII);
+        return new DefaultHttpResponseParser(inbuffer, null, null, constraints, lazy);
+    }
+
+    @Test
+    public void testLazyHeaderParsing() throws Exception {
+        final HttpResponse response = createParser(HEAD, null, true).parse();
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        final Header[] headers = response.getAllHeaders();
+        Assert.assertEquals(7, headers.length);
+        Assert.assertSame("Date", headers[0].getName());
+        Assert.assertSame("Content-Type", headers[3].getName());
+        Assert.assertSame("text/html; charset=UTF-8", headers[3].getValue());
+        Assert.assertEquals("x-custom", headers[4].getName());
+        Assert.assertEquals("some value", headers[4].getValue());
+        Assert.assertEquals("first second", headers[5].getValue());
+        Assert.assertEquals("Server: Apache", headers[1].toString());
+
+        final HeaderElement[] elements = headers[2].getElements();
+        Assert.assertEquals(2, elements.length);
+        Assert.assertEquals("max-age", elements[0].getName());
+        Assert.assertEquals("60", elements[0].getValue());
+        Assert.assertEquals("must-revalidate", elements[1].getName());
+    }
+
+    @Test
+    public void testLazyHeadersMatchDefault() throws Exception {
+        final Header[] expected = createParser(HEAD, null, false).parse().getAllHeaders();
+        final Header[] headers = createParser(HEAD, null, true).parse().getAllHeaders();
+        Assert.assertEquals(expected.length, headers.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getName(), headers[i].getName());
+            Assert.assertEquals(expected[i].getValue(), headers[i].getValue());
+        }
+    }
+
+    @Test
+    public void testLazyParserReuse() throws Exception {
+        final HttpMessageParser<HttpResponse> parser = createParser(
+                "HTTP/1.1 200 OK\r\nServer: one\r\n\r\n" +
+                "HTTP/1.1 404 Not Found\r\nServer: two\r\nConnection: close\r\n\r\n", null, true);
+        final HttpResponse response1 = parser.parse();
+        final HttpResponse response2 = parser.parse();
+        Assert.assertEquals("one", response1.getFirstHeader("Server").getValue());
+        Assert.assertEquals(404, response2.getStatusLine().getStatusCode());
+        Assert.assertEquals("two", response2.getFirstHeader("Server").getValue());
+        Assert.assertSame("close", response2.getFirstHeader("Connection").getValue());
+    }
+
+    @Test(expected=ProtocolException.class)
+    public void testLazyInvalidHeader() throws Exception {
+        createParser("HTTP/1.1 200 OK\r\nno colon\r\n\r\n", null, true).parse();
+    }
+
+    @Test(expected=ProtocolException.class)
+    public void testLazyMaxHeaderCount() throws Exception {
+        final MessageConstraints constraints = MessageConstraints.custom().setMaxHeaderCount(3).build();
+        createParser(HEAD, constraints, true).parse();
+    }
+
 }
@@ -0,0 +1,187 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.pool.ConnFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * {@link IdleConnectionEvictor} tests.
+ */
+public class TestIdleConnectionEvictor {
+
+    private StripedCPool pool;
+    private PoolingHttpClientConnectionManager mgr;
+    private HttpRoute route;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        final ConnFactory<HttpRoute, SocketClientConnection> connFactory = Mockito.mock(ConnFactory.class);
+        Mockito.when(connFactory.create(Mockito.any(HttpRoute.class))).thenAnswer(
+                new Answer<SocketClientConnection>() {
+
+            public SocketClientConnection answer(
+                    final InvocationOnMock invocation) throws Throwable {
+                final SocketClientConnection conn = Mockito.mock(SocketClientConnection.class);
+                Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+                return conn;
+            }
+
+        });
+        pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        mgr = new PoolingHttpClientConnectionManager(pool,
+                Mockito.mock(Lookup.class),
+                Mockito.mock(SchemePortResolver.class),
+                Mockito.mock(DnsResolver.class));
+        route = new HttpRoute(new HttpHost("somehost", 80));
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        mgr.shutdown();
+    }
+
+    private SocketClientConnection leaseAndRelease(final long keepalive) throws Exception {
+        final HttpClientConnection conn = mgr.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        final SocketClientConnection underlying = CPoolProxy.getPoolEntry(conn).getConnection();
+        mgr.releaseConnection(conn, null, keepalive, TimeUnit.MILLISECONDS);
+        return underlying;
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 50, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        mgr.setConnectionEvictor(evictor);
+        final SocketClientConnection conn = leaseAndRelease(-1);
+        Assert.assertEquals(1, evictor.getTrackedCount());
+
+        evictor.evict(System.currentTimeMillis());
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+
+        Thread.sleep(100);
+        evictor.evict(System.currentTimeMillis());
+        Mockito.verify(conn).close();
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+        Assert.assertEquals(0, evictor.getTrackedCount());
+    }
+
+    @Test
+    public void testEvictExpired() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 0, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        mgr.setConnectionEvictor(evictor);
+        final SocketClientConnection conn = leaseAndRelease(50);
+
+        Thread.sleep(100);
+        evictor.evict(System.currentTimeMillis());
+        Mockito.verify(conn).close();
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testConnectionKeptAliveIndefinitelyNotTracked() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 0, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        mgr.setConnectionEvictor(evictor);
+        leaseAndRelease(-1);
+        Assert.assertEquals(0, evictor.getTrackedCount());
+    }
+
+    @Test
+    public void testReusedConnectionRescheduled() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 150, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        mgr.setConnectionEvictor(evictor);
+        final SocketClientConnection conn = leaseAndRelease(-1);
+        evictor.evict(System.currentTimeMillis());
+
+        Thread.sleep(100);
+        Assert.assertSame(conn, leaseAndRelease(-1));
+        Thread.sleep(100);
+        evictor.evict(System.currentTimeMillis());
+        Mockito.verify(conn, Mockito.never()).close();
+        Assert.assertEquals(1, evictor.getTrackedCount());
+
+        Thread.sleep(100);
+        evictor.evict(System.currentTimeMillis());
+        Mockito.verify(conn).close();
+    }
+
+    @Test
+    public void testLeasedConnectionNotClosed() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 50, TimeUnit.MILLISECONDS, 10, TimeUnit.MILLISECONDS);
+        mgr.setConnectionEvictor(evictor);
+        final SocketClientConnection conn = leaseAndRelease(-1);
+        final HttpClientConnection leased = mgr.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+
+        Thread.sleep(100);
+        evictor.evict(System.currentTimeMillis());
+        Mockito.verify(conn, Mockito.never()).close();
+        Assert.assertEquals(0, evictor.getTrackedCount());
+
+        mgr.releaseConnection(leased, null, -1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, evictor.getTrackedCount());
+    }
+
+    @Test
+    public void testStartShutdown() throws Exception {
+        final IdleConnectionEvictor evictor = new IdleConnectionEvictor(
+                mgr, 50, TimeUnit.MILLISECONDS);
+        evictor.start();
+        Assert.assertTrue(evictor.isRunning());
+        final SocketClientConnection conn = leaseAndRelease(-1);
+
+        Thread.sleep(300);
+        Mockito.verify(conn).close();
+
+        evictor.close();
+        evictor.awaitTermination(1, TimeUnit.SECONDS);
+        Assert.assertFalse(evictor.isRunning());
+        leaseAndRelease(-1);
+        Assert.assertEquals(0, evictor.getTrackedCount());
+    }
+
+}
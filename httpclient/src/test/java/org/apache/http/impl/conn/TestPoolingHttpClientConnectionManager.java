@@ -36,6 +36,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpHost;
 import org.apache.http.config.Lookup;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.DnsResolver;
@@ -186,4 +187,59 @@ public class TestPoolingHttpClientConnectionManager {
         Mockito.verify(entry, Mockito.never()).updateExpiry(Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testValidateAfterInactivity() throws Exception {
+        final HttpHost target = new HttpHost("localhost");
+        final HttpRoute route = new HttpRoute(target);
+
+        final CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+        entry.updateLastUsed(System.currentTimeMillis() - 10000);
+
+        Mockito.when(future.isCancelled()).thenReturn(Boolean.FALSE);
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenReturn(entry);
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+        Mockito.when(conn.isStale()).thenReturn(Boolean.TRUE);
+
+        mgr.setValidateAfterInactivity(1000);
+        final ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        final HttpClientConnection conn1 = connRequest1.get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(conn1);
+
+        Mockito.verify(conn).isStale();
+        Mockito.verify(conn).close();
+    }
+
+    @Test
+    public void testNoValidationWithinInactivityPeriod() throws Exception {
+        final HttpHost target = new HttpHost("localhost");
+        final HttpRoute route = new HttpRoute(target);
+
+        final CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+        entry.updateLastUsed(System.currentTimeMillis());
+
+        Mockito.when(future.isCancelled()).thenReturn(Boolean.FALSE);
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenReturn(entry);
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+
+        mgr.setValidateAfterInactivity(10000);
+        final ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        final HttpClientConnection conn1 = connRequest1.get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(conn1.isOpen());
+
+        Mockito.verify(conn, Mockito.never()).isStale();
+        Mockito.verify(conn, Mockito.never()).close();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testStrictPoolRejectsFifoReuse() throws Exception {
+        new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create().build(),
+                null, null, null, -1, TimeUnit.MILLISECONDS,
+                PoolConcurrencyPolicy.STRICT, PoolReusePolicy.FIFO);
+    }
+
 }
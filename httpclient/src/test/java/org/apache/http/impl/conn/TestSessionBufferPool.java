@@ -0,0 +1,191 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.conn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.util.EncodingUtils;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSessionBufferPool {
+
+    static class StreamSocket extends Socket {
+
+        private final InputStream in;
+        private final OutputStream out;
+
+        StreamSocket(final InputStream in, final OutputStream out) {
+            super();
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this.out;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void setSoTimeout(final int timeout) {
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return 0;
+        }
+
+    }
+
+    private SessionBufferPool pool;
+
+    @Before
+    public void setup() {
+        pool = new SessionBufferPool(1024, 2);
+    }
+
+    @Test
+    public void testLeaseRelease() {
+        final byte[] b1 = pool.lease();
+        Assert.assertEquals(1024, b1.length);
+        Assert.assertEquals(1, pool.getAllocatedCount());
+        pool.release(b1);
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertSame(b1, pool.lease());
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testMaxIdle() {
+        final byte[] b1 = pool.lease();
+        final byte[] b2 = pool.lease();
+        final byte[] b3 = pool.lease();
+        pool.release(b1);
+        pool.release(b2);
+        pool.release(b3);
+        Assert.assertEquals(2, pool.getIdleCount());
+        pool.release(new byte[16]);
+        Assert.assertEquals(2, pool.getIdleCount());
+        pool.clear();
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    private SocketClientConnectionImpl bind(final String response, final OutputStream out) throws Exception {
+        final DefaultClientConnectionFactory connFactory = new DefaultClientConnectionFactory(pool, null, null);
+        final SocketClientConnection conn = connFactory.create(null);
+        conn.bind(new StreamSocket(
+                new ByteArrayInputStream(EncodingUtils.getAsciiBytes(response)), out));
+        return (SocketClientConnectionImpl) conn;
+    }
+
+    private static String exchange(final SocketClientConnectionImpl conn) throws Exception {
+        conn.sendRequestHeader(new BasicHttpRequest("GET", "/"));
+        conn.flush();
+        final HttpResponse response = conn.receiveResponseHeader();
+        conn.receiveResponseEntity(response);
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    private static String content(final int len) {
+        final StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < len; i++) {
+            buffer.append((char) ('a' + i % 26));
+        }
+        return buffer.toString();
+    }
+
+    @Test
+    public void testBuffersBorrowedWhileLeased() throws Exception {
+        final String content = content(2000);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SocketClientConnectionImpl conn = bind(
+                "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc" +
+                "HTTP/1.1 200 OK\r\nContent-Length: 2000\r\n\r\n" + content, out);
+
+        Assert.assertEquals("abc", exchange(conn));
+        Assert.assertEquals("GET / HTTP/1.1\r\n\r\n", EncodingUtils.getAsciiString(out.toByteArray()));
+        Assert.assertEquals(2, pool.getAllocatedCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        // The second response is still buffered
+        conn.releaseBuffers();
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Assert.assertEquals(content, exchange(conn));
+        conn.releaseBuffers();
+        Assert.assertEquals(2, pool.getIdleCount());
+        Assert.assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testBuffersReused() throws Exception {
+        final SocketClientConnectionImpl conn1 = bind(
+                "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc", new ByteArrayOutputStream());
+        Assert.assertEquals("abc", exchange(conn1));
+        conn1.releaseBuffers();
+
+        final SocketClientConnectionImpl conn2 = bind(
+                "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\ndef", new ByteArrayOutputStream());
+        Assert.assertEquals("def", exchange(conn2));
+        conn2.releaseBuffers();
+        Assert.assertEquals(2, pool.getAllocatedCount());
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void testLargeContent() throws Exception {
+        final String content = content(5000);
+        final SocketClientConnectionImpl conn = bind(
+                "HTTP/1.1 200 OK\r\nContent-Length: 5000\r\n\r\n" + content,
+                new ByteArrayOutputStream());
+        Assert.assertEquals(content, exchange(conn));
+        conn.close();
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+}
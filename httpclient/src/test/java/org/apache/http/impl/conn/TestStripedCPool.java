@@ -0,0 +1,649 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.pool.PoolStats;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * {@link StripedCPool} tests.
+ */
+public class TestStripedCPool {
+
+    private ConnFactory<HttpRoute, SocketClientConnection> connFactory;
+    private HttpRoute route1;
+    private HttpRoute route2;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        connFactory = Mockito.mock(ConnFactory.class);
+        Mockito.when(connFactory.create(Mockito.any(HttpRoute.class))).thenAnswer(
+                new Answer<SocketClientConnection>() {
+
+            public SocketClientConnection answer(
+                    final InvocationOnMock invocation) throws Throwable {
+                final SocketClientConnection conn = Mockito.mock(SocketClientConnection.class);
+                Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+                return conn;
+            }
+
+        });
+        route1 = new HttpRoute(new HttpHost("somehost", 80));
+        route2 = new HttpRoute(new HttpHost("otherhost", 80));
+    }
+
+    @Test
+    public void testLeaseRelease() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route2, null).get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(entry1);
+        Assert.assertNotNull(entry2);
+        Assert.assertNotNull(entry3);
+        Assert.assertNotSame(entry1, entry2);
+
+        PoolStats totals = pool.getTotalStats();
+        Assert.assertEquals(3, totals.getLeased());
+        Assert.assertEquals(0, totals.getAvailable());
+
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        pool.release(entry3, false);
+        Mockito.verify(entry1.getConnection(), Mockito.never()).close();
+        Mockito.verify(entry3.getConnection(), Mockito.times(1)).close();
+
+        totals = pool.getTotalStats();
+        Assert.assertEquals(0, totals.getLeased());
+        Assert.assertEquals(2, totals.getAvailable());
+        final PoolStats stats1 = pool.getStats(route1);
+        Assert.assertEquals(0, stats1.getLeased());
+        Assert.assertEquals(2, stats1.getAvailable());
+        final PoolStats stats2 = pool.getStats(route2);
+        Assert.assertEquals(0, stats2.getLeased());
+        Assert.assertEquals(0, stats2.getAvailable());
+
+        final CPoolEntry entry4 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        Assert.assertSame(entry2, entry4);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLeaseStateful() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        entry1.setState("some-stuff");
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+
+        final CPoolEntry entry3 = pool.lease(route1, "some-stuff").get(1, TimeUnit.SECONDS);
+        Assert.assertSame(entry1, entry3);
+        final CPoolEntry entry4 = pool.lease(route1, "other-stuff").get(1, TimeUnit.SECONDS);
+        Assert.assertSame(entry2, entry4);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMaxPerRouteLimit() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        pool.setMaxPerRoute(route2, 1);
+
+        pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route2, null).get(1, TimeUnit.SECONDS);
+
+        try {
+            pool.lease(route1, null).get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+        final Future<CPoolEntry> future = pool.lease(route2, null);
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+        pool.release(entry3, true);
+        Assert.assertSame(entry3, future.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(3, pool.getTotalStats().getLeased());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMaxTotalLimitEvictsIdleConnectionOfOtherRoute() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 2, -1, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final Future<CPoolEntry> future = pool.lease(route2, null);
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+
+        pool.release(entry1, true);
+        final CPoolEntry entry3 = pool.lease(route2, null).get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(entry3);
+        Mockito.verify(entry1.getConnection()).close();
+
+        final PoolStats totals = pool.getTotalStats();
+        Assert.assertEquals(2, totals.getLeased());
+        Assert.assertEquals(0, totals.getAvailable());
+        Assert.assertEquals(0, pool.getStats(route1).getAvailable());
+
+        pool.release(entry2, true);
+        pool.release(entry3, true);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWaiterOnOtherRouteWokenUpOnRelease() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 1, -1, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final AtomicReference<CPoolEntry> leased = new AtomicReference<CPoolEntry>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread t = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    leased.set(pool.lease(route2, null).get(5, TimeUnit.SECONDS));
+                } catch (final Exception ex) {
+                } finally {
+                    latch.countDown();
+                }
+            }
+
+        });
+        t.start();
+        while (pool.getTotalStats().getPending() == 0) {
+            Thread.sleep(5);
+        }
+        pool.release(entry1, false);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(leased.get());
+        Assert.assertEquals(route2, leased.get().getRoute());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCancelPendingRequest() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final Future<CPoolEntry> future = pool.lease(route1, null);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final Thread t = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch (final Exception ex) {
+                    failure.set(ex);
+                } finally {
+                    latch.countDown();
+                }
+            }
+
+        });
+        t.start();
+        while (pool.getTotalStats().getPending() == 0) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(failure.get() instanceof InterruptedException);
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertEquals(0, pool.getTotalStats().getPending());
+        pool.shutdown();
+    }
+
+    private Thread startWaiter(
+            final StripedCPool pool,
+            final int priority,
+            final long timeout,
+            final String name,
+            final List<String> order) {
+        final Thread t = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    final CPoolEntry entry = pool.lease(route1, null, priority, null).get(
+                            timeout, TimeUnit.MILLISECONDS);
+                    order.add(name);
+                    pool.release(entry, true);
+                } catch (final Exception ex) {
+                    order.add(name + " failed");
+                }
+            }
+
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitPending(final StripedCPool pool, final int pending) throws Exception {
+        while (pool.getTotalStats().getPending() < pending) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testWaitersServedByPriority() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final Thread t1 = startWaiter(pool, 0, 5000, "low", order);
+        awaitPending(pool, 1);
+        final Thread t2 = startWaiter(pool, 0, 5000, "low 2", order);
+        awaitPending(pool, 2);
+        final Thread t3 = startWaiter(pool, 5, 5000, "high", order);
+        awaitPending(pool, 3);
+
+        pool.release(entry, true);
+        t1.join(5000);
+        t2.join(5000);
+        t3.join(5000);
+        Assert.assertEquals(Arrays.asList("high", "low", "low 2"), order);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWaitersServedByDeadline() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final Thread t1 = startWaiter(pool, 0, 0, "no deadline", order);
+        awaitPending(pool, 1);
+        final Thread t2 = startWaiter(pool, 0, 10000, "late", order);
+        awaitPending(pool, 2);
+        final Thread t3 = startWaiter(pool, 0, 5000, "early", order);
+        awaitPending(pool, 3);
+
+        pool.release(entry, true);
+        t1.join(5000);
+        t2.join(5000);
+        t3.join(5000);
+        Assert.assertEquals(Arrays.asList("early", "late", "no deadline"), order);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testNewRequestDoesNotJumpQueue() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final Thread t1 = startWaiter(pool, 1, 5000, "waiter", order);
+        awaitPending(pool, 1);
+        pool.release(entry, true);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(5, TimeUnit.SECONDS);
+        t1.join(5000);
+        Assert.assertEquals(Arrays.asList("waiter"), order);
+        Assert.assertSame(entry, entry2);
+        pool.release(entry2, true);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testServedIfReleasedBeforeDeadline() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final Thread releaser = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException ignore) {
+                }
+                pool.release(entry, true);
+            }
+
+        };
+        releaser.start();
+        final CPoolEntry next = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        Assert.assertSame(entry, next);
+        releaser.join();
+
+        try {
+            pool.lease(route1, null).get(20, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+        Assert.assertEquals(0, pool.getTotalStats().getPending());
+        pool.release(next, true);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseExpiredAndIdle() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, 10, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route2, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        Assert.assertEquals(2, pool.getTotalStats().getAvailable());
+
+        pool.closeIdle(1, TimeUnit.HOURS);
+        Assert.assertEquals(2, pool.getTotalStats().getAvailable());
+
+        Thread.sleep(20);
+        pool.closeExpired();
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection()).close();
+        final PoolStats totals = pool.getTotalStats();
+        Assert.assertEquals(0, totals.getAvailable());
+        Assert.assertEquals(0, totals.getLeased());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testPurgeIdleRoutes() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route2, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry2, false);
+        Assert.assertEquals(2, pool.getRouteCount());
+
+        pool.purgeIdleRoutes(1, TimeUnit.HOURS);
+        Assert.assertEquals(2, pool.getRouteCount());
+
+        pool.purgeIdleRoutes(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, pool.getRouteCount());
+
+        pool.release(entry1, true);
+        pool.purgeIdleRoutes(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, pool.getRouteCount());
+        Assert.assertEquals(1, pool.getStats(route1).getAvailable());
+
+        pool.closeIdle(0, TimeUnit.MILLISECONDS);
+        pool.purgeIdleRoutes(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, pool.getRouteCount());
+        final PoolStats totals = pool.getTotalStats();
+        Assert.assertEquals(0, totals.getAvailable());
+        Assert.assertEquals(0, totals.getLeased());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLeaseAfterRoutePurged() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+
+        final Future<CPoolEntry> future1 = pool.lease(route1, null);
+        final Future<CPoolEntry> future2 = pool.lease(route1, null);
+        pool.purgeIdleRoutes(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, pool.getRouteCount());
+
+        final CPoolEntry entry1 = future1.get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(entry1);
+        Assert.assertEquals(1, pool.getRouteCount());
+        Assert.assertEquals(1, pool.getStats(route1).getLeased());
+        try {
+            // the per route limit still applies to requests made prior to the purge
+            future2.get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+
+        pool.release(entry1, true);
+        Assert.assertSame(entry1, future2.get(1, TimeUnit.SECONDS));
+        pool.release(entry1, true);
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+        pool.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRouteStateBoundedOverManyRoutes() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        final PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager(pool,
+                Mockito.mock(Lookup.class),
+                Mockito.mock(SchemePortResolver.class),
+                Mockito.mock(DnsResolver.class));
+        mgr.setMaxRouteIdleTime(1, TimeUnit.MILLISECONDS);
+        final HttpRoute route = new HttpRoute(new HttpHost("somehost", 80));
+        final HttpClientConnection conn = mgr.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+
+        int maxRoutes = 0;
+        for (int i = 0; i < 1000000; i++) {
+            final HttpRoute other = new HttpRoute(new HttpHost("host" + i, 80));
+            mgr.requestConnection(other, null).cancel();
+            if (i % 1000 == 0) {
+                maxRoutes = Math.max(maxRoutes, pool.getRouteCount());
+            }
+            if (i % 100000 == 0) {
+                final HttpClientConnection leased = mgr.requestConnection(other, null).get(
+                        1, TimeUnit.SECONDS);
+                mgr.releaseConnection(leased, null, 0, TimeUnit.MILLISECONDS);
+                mgr.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            }
+        }
+        // route state retained at any time is a small fraction of all routes seen
+        Assert.assertTrue("Retained " + maxRoutes + " routes", maxRoutes < 100000);
+
+        Thread.sleep(5);
+        mgr.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        // the route with a leased connection is never purged
+        Assert.assertEquals(1, pool.getRouteCount());
+        Assert.assertEquals(1, mgr.getMetrics().size());
+        Assert.assertEquals(11, mgr.getTotalMetrics().getLeaseCount());
+        mgr.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+        mgr.shutdown();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testLeaseAfterShutdown() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        pool.shutdown();
+        Mockito.verify(entry1.getConnection()).close();
+        pool.lease(route1, null);
+    }
+
+    @Test
+    public void testConcurrentLeaseRelease() throws Exception {
+        final int routeCount = 50;
+        final int threadCount = 16;
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 40, -1, TimeUnit.MILLISECONDS);
+        final List<HttpRoute> routes = new ArrayList<HttpRoute>();
+        for (int i = 0; i < routeCount; i++) {
+            routes.add(new HttpRoute(new HttpHost("host" + i, 80)));
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final int n = i;
+            threads.add(new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        for (int c = 0; c < 2000; c++) {
+                            final HttpRoute route = routes.get((n * 7 + c) % routeCount);
+                            final CPoolEntry entry = pool.lease(route, null).get(5, TimeUnit.SECONDS);
+                            Assert.assertTrue(pool.getTotalStats().getLeased() <= 40);
+                            pool.release(entry, c % 10 != 0);
+                        }
+                    } catch (final Throwable ex) {
+                        failure.set(ex);
+                    }
+                }
+
+            }));
+        }
+        for (final Thread t: threads) {
+            t.start();
+        }
+        for (final Thread t: threads) {
+            t.join();
+        }
+        Assert.assertNull(failure.get());
+        final PoolStats totals = pool.getTotalStats();
+        Assert.assertEquals(0, totals.getLeased());
+        Assert.assertEquals(0, totals.getPending());
+        Assert.assertTrue(totals.getAvailable() <= 40);
+        pool.shutdown();
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testLifoReuse() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 3, 10, -1, TimeUnit.MILLISECONDS,
+                PoolReusePolicy.LIFO);
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        pool.release(entry3, true);
+        for (int i = 0; i < 5; i++) {
+            final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+            Assert.assertSame(entry3, entry);
+            pool.release(entry, true);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFifoReuse() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 3, 10, -1, TimeUnit.MILLISECONDS,
+                PoolReusePolicy.FIFO);
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        pool.release(entry3, true);
+        final CPoolEntry[] expected = new CPoolEntry[] { entry1, entry2, entry3 };
+        for (int i = 0; i < 6; i++) {
+            final CPoolEntry entry = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+            Assert.assertSame(expected[i % 3], entry);
+            pool.release(entry, true);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFifoReuseWithState() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 3, 10, -1, TimeUnit.MILLISECONDS,
+                PoolReusePolicy.FIFO);
+        final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        final CPoolEntry entry3 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+        entry2.setState("some state");
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        pool.release(entry3, true);
+        Assert.assertSame(entry2, pool.lease(route1, "some state").get(1, TimeUnit.SECONDS));
+        Assert.assertSame(entry1, pool.lease(route1, "other state").get(1, TimeUnit.SECONDS));
+        Assert.assertSame(entry3, pool.lease(route1, null).get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    /**
+     * Runs a burst of concurrent requests followed by a period of moderate
+     * load and returns the number of connections that survive idle connection
+     * eviction.
+     */
+    private int simulateBurstyLoad(
+            final PoolReusePolicy policy, final Set<CPoolEntry> used) throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 8, 10, -1, TimeUnit.MILLISECONDS,
+                policy);
+        final List<CPoolEntry> burst = new ArrayList<CPoolEntry>();
+        for (int i = 0; i < 8; i++) {
+            burst.add(pool.lease(route1, null).get(1, TimeUnit.SECONDS));
+        }
+        for (final CPoolEntry entry: burst) {
+            entry.updateExpiry(-1, TimeUnit.MILLISECONDS);
+            pool.release(entry, true);
+        }
+        Thread.sleep(200);
+        for (int i = 0; i < 50; i++) {
+            final CPoolEntry entry1 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+            final CPoolEntry entry2 = pool.lease(route1, null).get(1, TimeUnit.SECONDS);
+            used.add(entry1);
+            used.add(entry2);
+            entry1.updateExpiry(-1, TimeUnit.MILLISECONDS);
+            pool.release(entry1, true);
+            entry2.updateExpiry(-1, TimeUnit.MILLISECONDS);
+            pool.release(entry2, true);
+        }
+        pool.closeIdle(100, TimeUnit.MILLISECONDS);
+        final int available = pool.getStats(route1).getAvailable();
+        pool.shutdown();
+        return available;
+    }
+
+    @Test
+    public void testBurstyLoadHotSet() throws Exception {
+        final Set<CPoolEntry> lifoUsed = new HashSet<CPoolEntry>();
+        Assert.assertEquals(2, simulateBurstyLoad(PoolReusePolicy.LIFO, lifoUsed));
+        Assert.assertEquals(2, lifoUsed.size());
+
+        final Set<CPoolEntry> fifoUsed = new HashSet<CPoolEntry>();
+        Assert.assertEquals(8, simulateBurstyLoad(PoolReusePolicy.FIFO, fifoUsed));
+        Assert.assertEquals(8, fifoUsed.size());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link TimingWheel} tests.
+ */
+public class TestTimingWheel {
+
+    private static List<String> items(final List<TimingWheel.Timeout<String>> timeouts) {
+        final List<String> items = new ArrayList<String>();
+        for (final TimingWheel.Timeout<String> timeout: timeouts) {
+            items.add(timeout.getItem());
+        }
+        return items;
+    }
+
+    @Test
+    public void testTimeoutsWithinLowestWheel() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<String>(10, 4, 1000);
+        wheel.add("a", 1050);
+        wheel.add("b", 1015);
+        Assert.assertEquals(2, wheel.size());
+        Assert.assertTrue(wheel.advance(1010).isEmpty());
+        Assert.assertEquals(Arrays.asList("b"), items(wheel.advance(1020)));
+        Assert.assertTrue(wheel.advance(1049).isEmpty());
+        Assert.assertEquals(Arrays.asList("a"), items(wheel.advance(1050)));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testOverdueTimeout() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<String>(10, 4, 1000);
+        wheel.add("a", 500);
+        Assert.assertEquals(Arrays.asList("a"), items(wheel.advance(1000)));
+    }
+
+    @Test
+    public void testCascading() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<String>(1, 3, 0);
+        wheel.add("a", 100);
+        wheel.add("b", 5000);
+        wheel.add("c", 64 * 64 * 64 * 3);
+        Assert.assertTrue(wheel.advance(99).isEmpty());
+        Assert.assertEquals(Arrays.asList("a"), items(wheel.advance(100)));
+        Assert.assertTrue(wheel.advance(4999).isEmpty());
+        Assert.assertEquals(Arrays.asList("b"), items(wheel.advance(5000)));
+        Assert.assertTrue(wheel.advance(64 * 64 * 64 * 3 - 1).isEmpty());
+        Assert.assertEquals(Arrays.asList("c"), items(wheel.advance(64 * 64 * 64 * 3)));
+    }
+
+    @Test
+    public void testRandomDeadlines() throws Exception {
+        final Random random = new Random(42);
+        final TimingWheel<Long> wheel = new TimingWheel<Long>(7, 3, 0);
+        for (int i = 0; i < 2000; i++) {
+            final long deadline = random.nextInt(3000000);
+            wheel.add(Long.valueOf(deadline), deadline);
+        }
+        long now = 0;
+        int count = 0;
+        while (wheel.size() > 0) {
+            now += 1 + random.nextInt(5000);
+            for (final TimingWheel.Timeout<Long> timeout: wheel.advance(now)) {
+                final long deadline = timeout.getItem().longValue();
+                Assert.assertTrue(deadline <= now);
+                Assert.assertTrue(deadline > now - 5000 - 7);
+                count++;
+            }
+        }
+        Assert.assertEquals(2000, count);
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.BackoffManager;
+import org.apache.http.client.config.CircuitBreakerConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCircuitBreakerExec {
+
+    /**
+     * Fails with an I/O error, throws the given exception, returns the given
+     * status or takes the given time, depending on how it has been set up.
+     */
+    static class ScriptedExec implements ClientExecChain {
+
+        private volatile boolean failing;
+        private volatile Exception error;
+        private volatile int status = HttpStatus.SC_OK;
+        private volatile long delay;
+        private int count;
+
+        public CloseableHttpResponse execute(
+                final HttpRoute route,
+                final HttpRequestWrapper request,
+                final HttpClientContext context,
+                final HttpExecutionAware execAware) throws IOException, HttpException {
+            this.count++;
+            if (this.delay > 0) {
+                try {
+                    Thread.sleep(this.delay);
+                } catch (final InterruptedException ex) {
+                    throw new IOException(ex.getMessage());
+                }
+            }
+            if (this.failing) {
+                throw new IOException("Oppsie");
+            }
+            if (this.error instanceof IOException) {
+                throw (IOException) this.error;
+            } else if (this.error instanceof HttpException) {
+                throw (HttpException) this.error;
+            } else if (this.error instanceof RuntimeException) {
+                throw (RuntimeException) this.error;
+            }
+            return Proxies.enhanceResponse(
+                    new BasicHttpResponse(HttpVersion.HTTP_1_1, this.status, "whatever"), null);
+        }
+
+    }
+
+    static class RecordingBackoffManager implements BackoffManager {
+
+        final List<String> events = new ArrayList<String>();
+
+        public void backOff(final HttpRoute route) {
+            this.events.add("backOff");
+        }
+
+        public void probe(final HttpRoute route) {
+            this.events.add("probe");
+        }
+
+    }
+
+    private HttpRoute route;
+    private HttpClientContext context;
+    private ScriptedExec exec;
+    private RecordingBackoffManager backoffManager;
+    private CircuitBreakerExec breakerExec;
+
+    @Before
+    public void setup() throws Exception {
+        route = new HttpRoute(new HttpHost("foo", 80));
+        context = HttpClientContext.create();
+        exec = new ScriptedExec();
+        backoffManager = new RecordingBackoffManager();
+        final CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+            .setSlidingWindowSize(4)
+            .setMinimumNumberOfCalls(4)
+            .setFailureRateThreshold(50)
+            .setSlowCallDuration(50)
+            .setWaitDurationInOpenState(100)
+            .setPermittedCallsInHalfOpenState(2)
+            .build();
+        breakerExec = new CircuitBreakerExec(exec, config, backoffManager);
+    }
+
+    private boolean call() throws Exception {
+        try {
+            breakerExec.execute(route, HttpRequestWrapper.wrap(new HttpGet("/")), context, null);
+            return true;
+        } catch (final CircuitBreakerOpenException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+
+    private void openCircuit() throws Exception {
+        exec.failing = true;
+        for (int i = 0; i < 4; i++) {
+            call();
+        }
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+    }
+
+    @Test
+    public void testStaysClosedBelowThreshold() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            exec.failing = i % 4 == 0;
+            call();
+        }
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breakerExec.getState(route));
+    }
+
+    @Test
+    public void testOpensOnFailureRateAndFailsFast() throws Exception {
+        exec.failing = true;
+        Assert.assertFalse(call());
+        Assert.assertFalse(call());
+        Assert.assertFalse(call());
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breakerExec.getState(route));
+        Assert.assertFalse(call());
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+        Assert.assertEquals(4, exec.count);
+        try {
+            call();
+            Assert.fail("CircuitBreakerOpenException expected");
+        } catch (final CircuitBreakerOpenException expected) {
+        }
+        Assert.assertEquals(4, exec.count);
+        Assert.assertEquals(1, backoffManager.events.size());
+        Assert.assertEquals("backOff", backoffManager.events.get(0));
+    }
+
+    @Test
+    public void testServerErrorsCountAsFailures() throws Exception {
+        exec.status = HttpStatus.SC_SERVICE_UNAVAILABLE;
+        for (int i = 0; i < 4; i++) {
+            call();
+        }
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+    }
+
+    @Test
+    public void testOtherErrorsNotRecorded() throws Exception {
+        final Exception[] errors = new Exception[] {
+            new HttpException("Protocol error"),
+            new IllegalStateException("Oppsie"),
+            new RequestTimeoutException("Request deadline exceeded")
+        };
+        for (int i = 0; i < 8; i++) {
+            exec.error = errors[i % errors.length];
+            try {
+                breakerExec.execute(route, HttpRequestWrapper.wrap(new HttpGet("/")), context, null);
+                Assert.fail("Exception expected");
+            } catch (final CircuitBreakerOpenException ex) {
+                throw ex;
+            } catch (final Exception expected) {
+            }
+        }
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breakerExec.getState(route));
+        Assert.assertEquals(8, exec.count);
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() throws Exception {
+        final CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+            .setSlidingWindowSize(2)
+            .setMinimumNumberOfCalls(2)
+            .setSlowCallRateThreshold(100)
+            .setSlowCallDuration(20)
+            .build();
+        breakerExec = new CircuitBreakerExec(exec, config);
+        exec.delay = 30;
+        Assert.assertTrue(call());
+        Assert.assertTrue(call());
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseCircuit() throws Exception {
+        openCircuit();
+        Thread.sleep(150);
+        exec.failing = false;
+        Assert.assertTrue(call());
+        Assert.assertEquals(CircuitBreakerExec.State.HALF_OPEN, breakerExec.getState(route));
+        Assert.assertTrue(call());
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breakerExec.getState(route));
+        Assert.assertEquals("probe", backoffManager.events.get(backoffManager.events.size() - 1));
+    }
+
+    @Test
+    public void testHalfOpenLimitsProbes() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(CircuitBreakerConfig.custom()
+            .setPermittedCallsInHalfOpenState(2)
+            .setWaitDurationInOpenState(0)
+            .setMinimumNumberOfCalls(1)
+            .setSlidingWindowSize(2)
+            .build());
+        breaker.record(true, false, 0);
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.tryAcquire(1));
+        Assert.assertTrue(breaker.tryAcquire(1));
+        Assert.assertFalse(breaker.tryAcquire(1));
+        breaker.release();
+        Assert.assertTrue(breaker.tryAcquire(1));
+    }
+
+    @Test
+    public void testHalfOpenFailureReopensCircuit() throws Exception {
+        openCircuit();
+        Thread.sleep(150);
+        exec.failing = true;
+        Assert.assertFalse(call());
+        Assert.assertFalse(call());
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+        try {
+            call();
+            Assert.fail("CircuitBreakerOpenException expected");
+        } catch (final CircuitBreakerOpenException expected) {
+        }
+    }
+
+    @Test
+    public void testRoutesHaveSeparateCircuits() throws Exception {
+        openCircuit();
+        final HttpRoute other = new HttpRoute(new HttpHost("bar", 80));
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breakerExec.getState(other));
+        exec.failing = false;
+        breakerExec.execute(other, HttpRequestWrapper.wrap(new HttpGet("/")), context, null);
+    }
+
+    @Test
+    public void testHealthyBreakersEvicted() throws Exception {
+        exec.failing = true;
+        call();
+        exec.failing = false;
+        for (int i = 0; i < 100; i++) {
+            final HttpRoute other = new HttpRoute(new HttpHost("host" + i, 80));
+            breakerExec.execute(other, HttpRequestWrapper.wrap(new HttpGet("/")), context, null);
+        }
+        Assert.assertTrue(breakerExec.getBreakerCount() < 64);
+        // The failure recorded before is still there
+        exec.failing = true;
+        call();
+        call();
+        call();
+        Assert.assertEquals(CircuitBreakerExec.State.OPEN, breakerExec.getState(route));
+    }
+
+    @Test
+    public void testEvictOnlyBreakersWithoutFailures() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(CircuitBreakerConfig.DEFAULT);
+        Assert.assertTrue(breaker.evict());
+        Assert.assertEquals(CircuitBreaker.Transition.EVICTED, breaker.record(true, false, 0));
+        final CircuitBreaker failed = new CircuitBreaker(CircuitBreakerConfig.DEFAULT);
+        Assert.assertEquals(CircuitBreaker.Transition.NONE, failed.record(true, false, 0));
+        Assert.assertFalse(failed.evict());
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.AuthenticationStrategy;
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestMainClientExec {
+
+    static class FailingRequestExecutor extends HttpRequestExecutor {
+
+        final AtomicLong received;
+        int failures;
+        IOException failure;
+        boolean receivePartially;
+        int count;
+
+        FailingRequestExecutor(final AtomicLong received) {
+            super();
+            this.received = received;
+        }
+
+        @Override
+        public HttpResponse execute(
+                final HttpRequest request,
+                final HttpClientConnection conn,
+                final HttpContext context) throws IOException {
+            this.count++;
+            if (this.count <= this.failures) {
+                if (this.receivePartially) {
+                    this.received.addAndGet(10);
+                }
+                throw this.failure;
+            }
+            return new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        }
+
+    }
+
+    private HttpClientConnectionManager connManager;
+    private HttpClientConnection managedConn;
+    private AtomicLong received;
+    private FailingRequestExecutor requestExecutor;
+    private MainClientExec mainClientExec;
+    private HttpRoute route;
+
+    @Before
+    public void setup() throws Exception {
+        connManager = Mockito.mock(HttpClientConnectionManager.class);
+        managedConn = Mockito.mock(HttpClientConnection.class);
+        received = new AtomicLong(0);
+        final HttpConnectionMetrics metrics = Mockito.mock(HttpConnectionMetrics.class);
+        Mockito.when(metrics.getReceivedBytesCount()).thenAnswer(new Answer<Long>() {
+
+            public Long answer(final InvocationOnMock invocation) throws Throwable {
+                return Long.valueOf(received.get());
+            }
+
+        });
+        Mockito.when(managedConn.getMetrics()).thenReturn(metrics);
+        Mockito.when(managedConn.isOpen()).thenReturn(Boolean.TRUE);
+        final ConnectionRequest connRequest = Mockito.mock(ConnectionRequest.class);
+        Mockito.when(connRequest.get(Mockito.anyLong(), Mockito.<TimeUnit>any())).thenReturn(managedConn);
+        Mockito.when(connManager.requestConnection(
+                Mockito.<HttpRoute>any(), Mockito.anyObject())).thenReturn(connRequest);
+        final ConnectionReuseStrategy reuseStrategy = Mockito.mock(ConnectionReuseStrategy.class);
+        Mockito.when(reuseStrategy.keepAlive(
+                Mockito.<HttpResponse>any(), Mockito.<HttpContext>any())).thenReturn(Boolean.TRUE);
+        requestExecutor = new FailingRequestExecutor(received);
+        mainClientExec = new MainClientExec(
+                requestExecutor,
+                connManager,
+                reuseStrategy,
+                Mockito.mock(ConnectionKeepAliveStrategy.class),
+                Mockito.mock(AuthenticationStrategy.class),
+                Mockito.mock(AuthenticationStrategy.class),
+                Mockito.mock(UserTokenHandler.class));
+        route = new HttpRoute(new HttpHost("somehost", 80));
+    }
+
+    @Test
+    public void testReplayIdempotentRequestOnReusedConnection() throws Exception {
+        requestExecutor.failures = 1;
+        requestExecutor.failure = new NoHttpResponseException("No response");
+        final HttpRequestWrapper request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+
+        final HttpResponse response = mainClientExec.execute(
+                route, request, HttpClientContext.create(), null);
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(2, requestExecutor.count);
+        Mockito.verify(managedConn).close();
+    }
+
+    @Test
+    public void testReplayOnlyOnce() throws Exception {
+        requestExecutor.failures = 2;
+        requestExecutor.failure = new NoHttpResponseException("No response");
+        final HttpRequestWrapper request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+        try {
+            mainClientExec.execute(route, request, HttpClientContext.create(), null);
+            Assert.fail("NoHttpResponseException should have been thrown");
+        } catch (final NoHttpResponseException expected) {
+        }
+        Assert.assertEquals(2, requestExecutor.count);
+    }
+
+    @Test
+    public void testNoReplayOfNonIdempotentRequest() throws Exception {
+        requestExecutor.failures = 1;
+        requestExecutor.failure = new NoHttpResponseException("No response");
+        final HttpPost post = new HttpPost("/test");
+        post.setEntity(new StringEntity("stuff"));
+        final HttpRequestWrapper request = HttpRequestWrapper.wrap(post);
+        try {
+            mainClientExec.execute(route, request, HttpClientContext.create(), null);
+            Assert.fail("NoHttpResponseException should have been thrown");
+        } catch (final NoHttpResponseException expected) {
+        }
+        Assert.assertEquals(1, requestExecutor.count);
+    }
+
+    @Test
+    public void testNoReplayAfterResponseDataReceived() throws Exception {
+        requestExecutor.failures = 1;
+        requestExecutor.failure = new IOException("Connection reset");
+        requestExecutor.receivePartially = true;
+        final HttpRequestWrapper request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+        try {
+            mainClientExec.execute(route, request, HttpClientContext.create(), null);
+            Assert.fail("IOException should have been thrown");
+        } catch (final IOException expected) {
+        }
+        Assert.assertEquals(1, requestExecutor.count);
+    }
+
+    @Test
+    public void testNoReplayOnSocketTimeout() throws Exception {
+        requestExecutor.failures = 1;
+        requestExecutor.failure = new SocketTimeoutException("Read timed out");
+        final HttpRequestWrapper request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+        try {
+            mainClientExec.execute(route, request, HttpClientContext.create(), null);
+            Assert.fail("SocketTimeoutException should have been thrown");
+        } catch (final SocketTimeoutException expected) {
+        }
+        Assert.assertEquals(1, requestExecutor.count);
+    }
+
+}
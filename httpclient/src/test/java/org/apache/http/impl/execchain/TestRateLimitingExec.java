@@ -0,0 +1,328 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.config.CircuitBreakerConfig;
+import org.apache.http.client.config.RateLimitConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRateLimitingExec {
+
+    /**
+     * Returns a copy of the given response for every request.
+     */
+    static class ScriptedExec implements ClientExecChain {
+
+        private volatile HttpResponse response =
+            new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        private int count;
+
+        public CloseableHttpResponse execute(
+                final HttpRoute route,
+                final HttpRequestWrapper request,
+                final HttpClientContext context,
+                final HttpExecutionAware execAware) throws IOException, HttpException {
+            this.count++;
+            final HttpResponse copy = new BasicHttpResponse(this.response.getStatusLine());
+            copy.setHeaders(this.response.getAllHeaders());
+            return Proxies.enhanceResponse(copy, null);
+        }
+
+    }
+
+    private HttpRoute route;
+    private HttpClientContext context;
+    private ScriptedExec exec;
+
+    @Before
+    public void setup() throws Exception {
+        route = new HttpRoute(new HttpHost("foo", 80));
+        context = HttpClientContext.create();
+        exec = new ScriptedExec();
+    }
+
+    private static RateLimitConfig.Builder limit(final int permits, final int period) {
+        return RateLimitConfig.custom().setPermitsPerPeriod(permits).setPeriod(period);
+    }
+
+    private void call(final ClientExecChain chain) throws Exception {
+        chain.execute(route, HttpRequestWrapper.wrap(new HttpGet("/")), context, null).close();
+    }
+
+    @Test
+    public void testBurstThenFailFast() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(3, 10000).setMaxWait(0).build());
+        for (int i = 0; i < 3; i++) {
+            call(limiter);
+        }
+        Assert.assertEquals(0, limiter.getAvailablePermits(route));
+        try {
+            call(limiter);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+        Assert.assertEquals(3, exec.count);
+        Assert.assertEquals(1, limiter.getRequestsRejected());
+        Assert.assertEquals(0, limiter.getRequestsDelayed());
+    }
+
+    @Test
+    public void testBlockingWaitsForPermit() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec, limit(1, 200).build());
+        final long start = System.currentTimeMillis();
+        call(limiter);
+        call(limiter);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+        Assert.assertEquals(2, exec.count);
+        Assert.assertEquals(1, limiter.getRequestsDelayed());
+    }
+
+    @Test
+    public void testWaitBoundedByMaxWait() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(1, 10000).setMaxWait(100).build());
+        call(limiter);
+        final long start = System.currentTimeMillis();
+        try {
+            call(limiter);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testWaitBoundedByDeadline() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec, limit(1, 10000).build());
+        call(limiter);
+        context.setRequestDeadline(System.currentTimeMillis() + 100);
+        try {
+            call(limiter);
+            Assert.fail("RequestTimeoutException expected");
+        } catch (final RequestTimeoutException expected) {
+        }
+        Assert.assertEquals(1, exec.count);
+    }
+
+    @Test
+    public void testRetryAfterWithholdsPermits() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(10, 1000).setMaxWait(0).build());
+        exec.response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        exec.response.setHeader("Retry-After", "5");
+        call(limiter);
+        Assert.assertEquals(0, limiter.getAvailablePermits(route));
+        try {
+            call(limiter);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void testRetryAfterDateWithholdsPermits() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(10, 1000).setMaxWait(0).build());
+        exec.response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        exec.response.setHeader("Retry-After",
+                DateUtils.formatDate(new Date(System.currentTimeMillis() + 10000)));
+        call(limiter);
+        Assert.assertEquals(0, limiter.getAvailablePermits(route));
+    }
+
+    @Test
+    public void testRetryAfterIgnoredIfNotAdaptive() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(10, 1000).setMaxWait(0).setAdaptive(false).build());
+        exec.response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        exec.response.setHeader("Retry-After", "5");
+        call(limiter);
+        call(limiter);
+        Assert.assertEquals(2, exec.count);
+    }
+
+    @Test
+    public void testExhaustedQuotaWithholdsPermits() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(10, 1000).setMaxWait(0).build());
+        exec.response.setHeader("X-RateLimit-Remaining", "0");
+        exec.response.setHeader("X-RateLimit-Reset",
+                Long.toString(System.currentTimeMillis() / 1000 + 60));
+        call(limiter);
+        Assert.assertEquals(0, limiter.getAvailablePermits(route));
+    }
+
+    @Test
+    public void testRemainingQuotaSpread() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(100, 1000).setMaxWait(0).build());
+        exec.response.setHeader("X-RateLimit-Remaining", "2");
+        exec.response.setHeader("X-RateLimit-Reset", "10");
+        call(limiter);
+        Assert.assertEquals(2, limiter.getAvailablePermits(route));
+        call(limiter);
+        call(limiter);
+        try {
+            call(limiter);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void testAdaptedRateEndsWithQuotaReset() throws Exception {
+        final RateLimiter limiter = new RateLimiter(limit(100, 1000).build(), 0);
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        limiter.adapt(2, second, 0);
+        Assert.assertEquals(2, limiter.getAvailablePermits(0));
+        Assert.assertEquals(0, limiter.reserve(0, 0));
+        Assert.assertEquals(0, limiter.reserve(0, 0));
+        Assert.assertEquals(-1, limiter.reserve(0, 0));
+        // no further quota reported: the configured rate applies after the reset
+        Assert.assertEquals(100, limiter.getAvailablePermits(5 * second));
+        Assert.assertEquals(0, limiter.reserve(5 * second, 0));
+    }
+
+    @Test
+    public void testFullLimitersEvicted() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec, limit(1, 10).build());
+        for (int i = 0; i < 64; i++) {
+            route = new HttpRoute(new HttpHost("host" + i, 80));
+            call(limiter);
+        }
+        Assert.assertEquals(64, limiter.getLimiterCount());
+        Thread.sleep(50);
+        route = new HttpRoute(new HttpHost("foo", 80));
+        call(limiter);
+        Assert.assertEquals(1, limiter.getLimiterCount());
+        Assert.assertEquals(65, exec.count);
+    }
+
+    @Test
+    public void testEvictOnlyFullLimiter() throws Exception {
+        final RateLimiter limiter = new RateLimiter(limit(2, 1000).build(), 0);
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        Assert.assertEquals(0, limiter.reserve(0, 0));
+        Assert.assertFalse(limiter.evict(0));
+        Assert.assertTrue(limiter.evict(second));
+        Assert.assertEquals(RateLimiter.EVICTED, limiter.reserve(second, 0));
+        Assert.assertFalse(limiter.pauseUntil(2 * second));
+        Assert.assertFalse(limiter.adapt(1, second, second));
+        Assert.assertEquals(2, limiter.getAvailablePermits(second));
+    }
+
+    @Test
+    public void testAdaptedLimiterNotEvicted() throws Exception {
+        final RateLimiter limiter = new RateLimiter(limit(100, 1000).build(), 0);
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        Assert.assertTrue(limiter.adapt(100, 10 * second, 0));
+        Assert.assertFalse(limiter.evict(second));
+        Assert.assertTrue(limiter.evict(20 * second));
+    }
+
+    @Test
+    public void testRejectedRequestNotRecordedByCircuitBreaker() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(1, 10000).setMaxWait(0).build());
+        final CircuitBreakerExec breaker = new CircuitBreakerExec(limiter, CircuitBreakerConfig.custom()
+            .setSlidingWindowSize(2)
+            .setMinimumNumberOfCalls(2)
+            .setFailureRateThreshold(50)
+            .build());
+        call(breaker);
+        for (int i = 0; i < 3; i++) {
+            try {
+                call(breaker);
+                Assert.fail("RateLimitExceededException expected");
+            } catch (final RateLimitExceededException expected) {
+            }
+        }
+        Assert.assertEquals(CircuitBreakerExec.State.CLOSED, breaker.getState(route));
+        Assert.assertEquals(3, limiter.getRequestsRejected());
+    }
+
+    @Test
+    public void testPerHostLimiterSharedByRoutes() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(1, 10000).setMaxWait(0).setPerHost(true).build());
+        call(limiter);
+        route = new HttpRoute(new HttpHost("foo", 80), null, new HttpHost("proxy", 8080), false);
+        Assert.assertEquals(0, limiter.getAvailablePermits(route));
+        try {
+            call(limiter);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void testRejectedRequestNotRetried() throws Exception {
+        final RateLimitingExec limiter = new RateLimitingExec(exec,
+                limit(1, 10000).setMaxWait(0).build());
+        final RetryExec retryExec = new RetryExec(limiter, new HttpRequestRetryHandler() {
+
+            public boolean retryRequest(
+                    final IOException exception,
+                    final int executionCount,
+                    final HttpContext context) {
+                return true;
+            }
+
+        });
+        call(retryExec);
+        try {
+            call(retryExec);
+            Assert.fail("RateLimitExceededException expected");
+        } catch (final RateLimitExceededException expected) {
+        }
+        Assert.assertEquals(0, retryExec.getRetriesAttempted());
+    }
+
+}
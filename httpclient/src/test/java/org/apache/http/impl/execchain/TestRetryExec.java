@@ -0,0 +1,218 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.RetryIntervalStrategy;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.RequestTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.TokenBucketRetryBudget;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRetryExec {
+
+    /**
+     * Fails the given number of executions with an I/O error before
+     * returning the given status.
+     */
+    static class FailingExec implements ClientExecChain {
+
+        private final int failures;
+        private final int status;
+        private int count;
+
+        FailingExec(final int failures, final int status) {
+            super();
+            this.failures = failures;
+            this.status = status;
+        }
+
+        public CloseableHttpResponse execute(
+                final HttpRoute route,
+                final HttpRequestWrapper request,
+                final HttpClientContext context,
+                final HttpExecutionAware execAware) throws IOException, HttpException {
+            this.count++;
+            if (this.count <= this.failures) {
+                throw new IOException("Oppsie " + this.count);
+            }
+            return Proxies.enhanceResponse(
+                    new BasicHttpResponse(HttpVersion.HTTP_1_1, this.status, "whatever"), null);
+        }
+
+        int getCount() {
+            return this.count;
+        }
+
+    }
+
+    static class RecordingIntervalStrategy implements RetryIntervalStrategy {
+
+        final List<Integer> counts = new ArrayList<Integer>();
+        final List<HttpResponse> responses = new ArrayList<HttpResponse>();
+
+        public long getRetryInterval(
+                final int executionCount, final HttpResponse response, final HttpContext context) {
+            this.counts.add(Integer.valueOf(executionCount));
+            this.responses.add(response);
+            return 1;
+        }
+
+    }
+
+    private HttpRoute route;
+    private HttpRequestWrapper request;
+    private HttpClientContext context;
+    private HttpRequestRetryHandler retryHandler;
+
+    @Before
+    public void setup() throws Exception {
+        route = new HttpRoute(new HttpHost("foo", 80));
+        request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+        context = HttpClientContext.create();
+        retryHandler = new HttpRequestRetryHandler() {
+
+            public boolean retryRequest(
+                    final IOException exception, final int executionCount, final HttpContext context) {
+                return executionCount <= 3;
+            }
+
+        };
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws Exception {
+        final FailingExec exec = new FailingExec(2, HttpStatus.SC_OK);
+        final RecordingIntervalStrategy intervalStrategy = new RecordingIntervalStrategy();
+        final RetryExec retryExec = new RetryExec(exec, retryHandler, intervalStrategy, null);
+        final CloseableHttpResponse response = retryExec.execute(route, request, context, null);
+        Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(3, exec.getCount());
+        Assert.assertEquals(2, retryExec.getRetriesAttempted());
+        Assert.assertEquals(0, retryExec.getRetriesSuppressed());
+        Assert.assertEquals(2, intervalStrategy.counts.size());
+        Assert.assertEquals(Integer.valueOf(1), intervalStrategy.counts.get(0));
+        Assert.assertEquals(Integer.valueOf(2), intervalStrategy.counts.get(1));
+        Assert.assertNull(intervalStrategy.responses.get(0));
+    }
+
+    @Test
+    public void testRetryBudgetExhausted() throws Exception {
+        final FailingExec exec = new FailingExec(3, HttpStatus.SC_OK);
+        final TokenBucketRetryBudget budget = new TokenBucketRetryBudget(0.5, 1);
+        final RetryExec retryExec = new RetryExec(exec, retryHandler, null, budget);
+        try {
+            retryExec.execute(route, request, context, null);
+            Assert.fail("IOException expected");
+        } catch (final IOException ex) {
+            Assert.assertEquals("Oppsie 2", ex.getMessage());
+        }
+        Assert.assertEquals(2, exec.getCount());
+        Assert.assertEquals(1, retryExec.getRetriesAttempted());
+        Assert.assertEquals(1, retryExec.getRetriesSuppressed());
+        Assert.assertEquals(0.0, budget.getAvailableRetries(route), 0.0);
+    }
+
+    @Test
+    public void testDeadlineDoesNotSpendRetryBudget() throws Exception {
+        final FailingExec exec = new FailingExec(1, HttpStatus.SC_OK);
+        final TokenBucketRetryBudget budget = new TokenBucketRetryBudget(0.5, 1);
+        final RetryExec retryExec = new RetryExec(exec, retryHandler, null, budget);
+        context.setRequestDeadline(System.currentTimeMillis() - 1);
+        try {
+            retryExec.execute(route, request, context, null);
+            Assert.fail("RequestTimeoutException expected");
+        } catch (final RequestTimeoutException expected) {
+        }
+        Assert.assertEquals(1, exec.getCount());
+        Assert.assertEquals(0, retryExec.getRetriesAttempted());
+        Assert.assertEquals(0, retryExec.getRetriesSuppressed());
+        Assert.assertEquals(1.0, budget.getAvailableRetries(route), 0.0);
+    }
+
+    @Test
+    public void testOpenCircuitNotRetried() throws Exception {
+        final ClientExecChain exec = new ClientExecChain() {
+
+            public CloseableHttpResponse execute(
+                    final HttpRoute route,
+                    final HttpRequestWrapper request,
+                    final HttpClientContext context,
+                    final HttpExecutionAware execAware) throws IOException, HttpException {
+                throw new CircuitBreakerOpenException("Open");
+            }
+
+        };
+        final RetryExec retryExec = new RetryExec(exec, retryHandler);
+        try {
+            retryExec.execute(route, request, context, null);
+            Assert.fail("CircuitBreakerOpenException expected");
+        } catch (final CircuitBreakerOpenException expected) {
+        }
+        Assert.assertEquals(0, retryExec.getRetriesAttempted());
+    }
+
+    @Test
+    public void testSuccessCreditedToBudget() throws Exception {
+        final TokenBucketRetryBudget budget = new TokenBucketRetryBudget(0.5, 1);
+        budget.tryRetry(route);
+        final RetryExec retryExec = new RetryExec(
+                new FailingExec(0, HttpStatus.SC_OK), retryHandler, null, budget);
+        retryExec.execute(route, request, context, null);
+        Assert.assertEquals(0.5, budget.getAvailableRetries(route), 0.0);
+    }
+
+    @Test
+    public void testServerErrorNotCreditedToBudget() throws Exception {
+        final TokenBucketRetryBudget budget = new TokenBucketRetryBudget(0.5, 1);
+        budget.tryRetry(route);
+        final RetryExec retryExec = new RetryExec(
+                new FailingExec(0, HttpStatus.SC_SERVICE_UNAVAILABLE), retryHandler, null, budget);
+        retryExec.execute(route, request, context, null);
+        Assert.assertEquals(0.0, budget.getAvailableRetries(route), 0.0);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package org.apache.http.impl.execchain;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultServiceUnavailableRetryStrategy;
+import org.apache.http.impl.client.TokenBucketRetryBudget;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestServiceUnavailableRetryExec {
+
+    private HttpRoute route;
+    private HttpRequestWrapper request;
+    private HttpClientContext context;
+
+    @Before
+    public void setup() throws Exception {
+        route = new HttpRoute(new HttpHost("foo", 80));
+        request = HttpRequestWrapper.wrap(new HttpGet("/test"));
+        context = HttpClientContext.create();
+    }
+
+    @Test
+    public void testRetryIntervalFromStrategy() throws Exception {
+        final TestRetryExec.FailingExec exec = new TestRetryExec.FailingExec(
+                0, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        final TestRetryExec.RecordingIntervalStrategy intervalStrategy =
+                new TestRetryExec.RecordingIntervalStrategy();
+        final ServiceUnavailableRetryExec retryExec = new ServiceUnavailableRetryExec(
+                exec, new DefaultServiceUnavailableRetryStrategy(2, 60000), intervalStrategy, null);
+        final CloseableHttpResponse response = retryExec.execute(route, request, context, null);
+        Assert.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(3, exec.getCount());
+        Assert.assertEquals(2, retryExec.getRetriesAttempted());
+        Assert.assertEquals(2, intervalStrategy.responses.size());
+        Assert.assertNotNull(intervalStrategy.responses.get(0));
+    }
+
+    @Test
+    public void testRetryBudgetExhausted() throws Exception {
+        final TestRetryExec.FailingExec exec = new TestRetryExec.FailingExec(
+                0, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        final TokenBucketRetryBudget budget = new TokenBucketRetryBudget(0.1, 1);
+        final ServiceUnavailableRetryExec retryExec = new ServiceUnavailableRetryExec(
+                exec, new DefaultServiceUnavailableRetryStrategy(5, 1), null, budget);
+        final CloseableHttpResponse response = retryExec.execute(route, request, context, null);
+        Assert.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(2, exec.getCount());
+        Assert.assertEquals(1, retryExec.getRetriesAttempted());
+        Assert.assertEquals(1, retryExec.getRetriesSuppressed());
+    }
+
+}